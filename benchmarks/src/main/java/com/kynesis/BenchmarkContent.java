@@ -0,0 +1,30 @@
+package com.kynesis;
+
+import java.util.SplittableRandom;
+
+// Shared fixtures for the benchmarks
+final class BenchmarkContent {
+  private BenchmarkContent() {}
+
+  // Parses a "WIDTHxHEIGHT" parameter
+  static int[] size(String size) {
+    int split = size.indexOf('x');
+    return new int[] {
+      Integer.parseInt(size.substring(0, split)), Integer.parseInt(size.substring(split + 1))
+    };
+  }
+
+  // Model with roughly the given fraction of the cells in the rectangle set to opaque colours
+  static GridModel model(int minColumn, int minRow, int columns, int rows, double density) {
+    GridModel model = new GridModel();
+    SplittableRandom random = new SplittableRandom(42);
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column++) {
+        if (random.nextDouble() < density) {
+          model.set(minColumn + column, minRow + row, 0xFF000000 | random.nextInt(1 << 24));
+        }
+      }
+    }
+    return model;
+  }
+}
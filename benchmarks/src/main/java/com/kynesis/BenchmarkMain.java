@@ -0,0 +1,32 @@
+package com.kynesis;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Entry point of the benchmark jar. Passes the arguments on to JMH, adding JSON output to
+// target/jmh-results.json unless a result format or file is given, so runs of different releases
+// can be compared with any JMH result viewer.
+public final class BenchmarkMain {
+  private static final String DEFAULT_RESULT = "target/jmh-results.json";
+
+  private BenchmarkMain() {}
+
+  public static void main(String[] args) throws Exception {
+    List<String> options = new ArrayList<>(Arrays.asList(args));
+    if (!options.contains("-rf")) {
+      options.add("-rf");
+      options.add("json");
+    }
+    if (!options.contains("-rff")) {
+      Path result = Paths.get(DEFAULT_RESULT);
+      Files.createDirectories(result.getParent());
+      options.add("-rff");
+      options.add(result.toString());
+    }
+    org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+  }
+}
@@ -0,0 +1,70 @@
+package com.kynesis;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Whole-operation times of the bulk editing API on a square of the given edge: filling it,
+// copying and pasting its top-left quarter, and flood filling an enclosed area of the same size
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BulkEditBenchmark {
+  // Edge of the filled square, in cells
+  @Param({"1000", "10000"})
+  public int edge;
+
+  private GridModel model;
+  private GridRegion region;
+  private int value;
+  private int floodValue;
+
+  @Setup
+  public void setUp() {
+    int quarter = edge / 2;
+    model = new GridModel();
+    model.fillRect(0, 0, edge - 1, edge - 1, 1);
+    region = model.copyRegion(0, 0, quarter - 1, quarter - 1);
+    // A wall of 1s around an empty square for the flood fill, to the right of the filled one
+    model.fillRect(edge, 0, edge + quarter + 1, quarter + 1, 1);
+    model.fillRect(edge + 1, 1, edge + quarter, quarter, 0);
+  }
+
+  @Benchmark
+  public GridModel fillRect() {
+    value = value % 1000 + 2;
+    model.fillRect(0, 0, edge - 1, edge - 1, value);
+    return model;
+  }
+
+  @Benchmark
+  public GridRegion copyRegion() {
+    int quarter = edge / 2;
+    return model.copyRegion(0, 0, quarter - 1, quarter - 1);
+  }
+
+  @Benchmark
+  public GridModel pasteRegion() {
+    model.pasteRegion(region, edge / 4, edge / 4);
+    return model;
+  }
+
+  // Alternates the enclosed area between empty and filled
+  @Benchmark
+  public long floodFill() {
+    floodValue = floodValue == 0 ? 2 : 0;
+    return model.floodFill(edge + 1, 1, floodValue, Long.MAX_VALUE);
+  }
+}
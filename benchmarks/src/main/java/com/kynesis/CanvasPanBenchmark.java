@@ -0,0 +1,92 @@
+package com.kynesis;
+
+import java.util.concurrent.TimeUnit;
+import javafx.scene.image.WritableImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Pan-by-delta sequences on an offscreen InfiniteGrid, with and without scroll blitting. Every
+// frame moves the viewport by whole pixels and is snapshotted like a displayed frame would be.
+// The faster the pan, the more often scroll blitting reads a new frame back and the larger the
+// strips it paints, until a full repaint is as cheap: compare the speeds to find that point.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(
+    value = 1,
+    jvmArgsAppend = {
+      "-Dglass.platform=Monocle",
+      "-Dmonocle.platform=Headless",
+      "-Dprism.order=sw"
+    })
+public class CanvasPanBenchmark {
+  private static final int PAN_FRAMES = 30;
+
+  @Param({"1280x720", "3840x2160"})
+  public String size;
+
+  // Fraction of the visible cells holding content
+  @Param({"0", "0.05", "0.5"})
+  public double density;
+
+  @Param({"false", "true"})
+  public boolean scrollBlit;
+
+  // Pixels panned per frame horizontally, and half that vertically
+  @Param({"2", "32", "320"})
+  public int speed;
+
+  private InfiniteGrid grid;
+  private WritableImage image;
+
+  @Setup
+  public void setUp() throws InterruptedException {
+    FxThread.start();
+    int[] extent = BenchmarkContent.size(size);
+    // Cells are 10 pixels at scale 1; cover the viewport and the distance panned back and forth
+    GridModel model =
+        BenchmarkContent.model(
+            0,
+            0,
+            (extent[0] + PAN_FRAMES * speed) / 10,
+            (extent[1] + PAN_FRAMES * speed / 2) / 10,
+            density);
+    grid =
+        FxThread.call(
+            () -> {
+              InfiniteGrid canvas = new InfiniteGrid(extent[0], extent[1]);
+              canvas.setScrollBlit(scrollBlit);
+              canvas.setModel(model);
+              return canvas;
+            });
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PAN_FRAMES)
+  public WritableImage pan() {
+    return FxThread.call(
+        () -> {
+          // Out and back again so the viewport stays over the content
+          double direction = grid.getGridX() > 0 ? -1 : 1;
+          for (int frame = 0; frame < PAN_FRAMES; frame++) {
+            grid.setGridX(grid.getGridX() + direction * speed);
+            grid.setGridY(grid.getGridY() + direction * (speed / 2));
+            grid.render();
+            image = grid.snapshot(null, image);
+          }
+          return image;
+        });
+  }
+}
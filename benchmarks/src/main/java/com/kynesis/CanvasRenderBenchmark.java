@@ -0,0 +1,73 @@
+package com.kynesis;
+
+import java.util.concurrent.TimeUnit;
+import javafx.scene.image.WritableImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Full InfiniteGrid.render() into an offscreen canvas per render mode. Each frame is snapshotted,
+// since the canvas only records commands and rasterizes them when the frame is consumed.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(
+    value = 1,
+    jvmArgsAppend = {
+      "-Dglass.platform=Monocle",
+      "-Dmonocle.platform=Headless",
+      "-Dprism.order=sw"
+    })
+public class CanvasRenderBenchmark {
+  @Param({"1280x720", "3840x2160"})
+  public String size;
+
+  // Fraction of the visible cells holding content
+  @Param({"0", "0.05", "0.5"})
+  public double density;
+
+  @Param({"LINES", "PATH", "RECTS", "TILE"})
+  public GridRenderMode mode;
+
+  private InfiniteGrid grid;
+  private WritableImage image;
+  private double offset;
+
+  @Setup
+  public void setUp() throws InterruptedException {
+    FxThread.start();
+    int[] extent = BenchmarkContent.size(size);
+    GridModel model = BenchmarkContent.model(0, 0, extent[0] / 10, extent[1] / 10, density);
+    grid =
+        FxThread.call(
+            () -> {
+              InfiniteGrid canvas = new InfiniteGrid(extent[0], extent[1]);
+              canvas.setRenderMode(mode);
+              canvas.setModel(model);
+              return canvas;
+            });
+  }
+
+  @Benchmark
+  public WritableImage render() {
+    return FxThread.call(
+        () -> {
+          // Alternate between two viewports so every frame differs
+          offset = offset == 0 ? 0.5 : 0;
+          grid.setGridX(offset);
+          grid.render();
+          image = grid.snapshot(null, image);
+          return image;
+        });
+  }
+}
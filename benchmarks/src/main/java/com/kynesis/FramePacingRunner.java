@@ -0,0 +1,363 @@
+package com.kynesis;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.scene.Scene;
+import javafx.scene.layout.StackPane;
+import javafx.stage.Stage;
+
+// End-to-end frame pacing check. Drives an InfiniteGrid in a real window through the scripted
+// FramePacingScenario sequences, one step per pulse of the toolkit's own pulse timer, and records
+// for each scenario the render time of every pulse, the pulses that were dropped because a frame
+// overran its period, and the bytes allocated on the FX thread. Writes a JSON report and exits
+// with status 1 when a scenario exceeds a budget, so a build can fail on a frame-rate regression
+// that a microbenchmark wouldn't show.
+//
+// Runs headless on the Monocle glass platform and the software pipeline unless those system
+// properties are given. From the benchmarks directory, after mvn package:
+//
+//   java -cp target/benchmarks.jar com.kynesis.FramePacingRunner [--option=value ...]
+//
+// Options: --size=WIDTHxHEIGHT, --frames and --warmup (pulses per scenario), --density (fraction
+// of cells with content), --scenario (regex on scenario names), --pulse-hz (nominal pulse rate),
+// --p50-budget and --p99-budget (milliseconds), --max-dropped (fraction of pulses) and --report.
+public final class FramePacingRunner {
+  private static final double NANOS_PER_MILLI = 1e6;
+
+  // Cells are 10 pixels at the default scale
+  private static final int CELL_PIXELS = 10;
+
+  private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+  static {
+    DEFAULTS.put("size", "1920x1080");
+    DEFAULTS.put("frames", "600");
+    DEFAULTS.put("warmup", "120");
+    DEFAULTS.put("density", "0.05");
+    DEFAULTS.put("scenario", ".*");
+    DEFAULTS.put("pulse-hz", "60");
+    DEFAULTS.put("p50-budget", "8");
+    DEFAULTS.put("p99-budget", "16.7");
+    DEFAULTS.put("max-dropped", "0.05");
+    DEFAULTS.put("report", "target/frame-pacing.json");
+  }
+
+  private FramePacingRunner() {}
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = parse(args);
+    int[] size = BenchmarkContent.size(options.get("size"));
+    int frames = Integer.parseInt(options.get("frames"));
+    int warmup = Integer.parseInt(options.get("warmup"));
+    double density = Double.parseDouble(options.get("density"));
+    Pattern filter = Pattern.compile(options.get("scenario"));
+    double pulseHz = Double.parseDouble(options.get("pulse-hz"));
+    double p50Budget = Double.parseDouble(options.get("p50-budget"));
+    double p99Budget = Double.parseDouble(options.get("p99-budget"));
+    double maxDropped = Double.parseDouble(options.get("max-dropped"));
+    Path report = Paths.get(options.get("report"));
+
+    setDefaultProperty("glass.platform", "Monocle");
+    setDefaultProperty("monocle.platform", "Headless");
+    setDefaultProperty("prism.order", "sw");
+    // The headless screen must hold the window
+    setDefaultProperty("headless.geometry", size[0] + "x" + size[1] + "-32");
+    FxThread.start();
+    // Each scenario closes its window, which mustn't shut the toolkit down
+    Platform.setImplicitExit(false);
+
+    List<Result> results = new ArrayList<>();
+    boolean passed = true;
+    try {
+      for (FramePacingScenario scenario : FramePacingScenario.all(size[0], size[1])) {
+        if (!filter.matcher(scenario.name).matches()) {
+          continue;
+        }
+        Result result = run(scenario, size[0], size[1], frames, warmup, density, pulseHz);
+        result.check(p50Budget, p99Budget, maxDropped);
+        passed &= result.failures.isEmpty();
+        results.add(result);
+        System.out.println(result.summary());
+      }
+    } finally {
+      Platform.exit();
+    }
+
+    Path parent = report.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    Files.write(
+        report,
+        json(options, results, passed).getBytes(StandardCharsets.UTF_8));
+    System.out.println((passed ? "PASSED" : "FAILED") + ", report written to " + report);
+    System.exit(passed ? 0 : 1);
+  }
+
+  // Runs one scenario in a fresh window and waits for its last pulse
+  private static Result run(
+      FramePacingScenario scenario,
+      int width,
+      int height,
+      int frames,
+      int warmup,
+      double density,
+      double pulseHz)
+      throws Exception {
+    // Enough content under the viewport for the whole run of the fastest pan
+    int pulses = warmup + frames;
+    GridModel model =
+        BenchmarkContent.model(
+            0,
+            0,
+            (width + 4 * pulses) / CELL_PIXELS,
+            (height + 3 * pulses) / CELL_PIXELS,
+            density);
+
+    CompletableFuture<Result> done = new CompletableFuture<>();
+    Platform.runLater(
+        () -> {
+          try {
+            start(scenario, model, width, height, frames, warmup, pulseHz, done);
+          } catch (Throwable t) {
+            done.completeExceptionally(t);
+          }
+        });
+    long timeout = (long) (pulses / pulseHz * 10) + 60;
+    return done.get(timeout, TimeUnit.SECONDS);
+  }
+
+  private static void start(
+      FramePacingScenario scenario,
+      GridModel model,
+      int width,
+      int height,
+      int frames,
+      int warmup,
+      double pulseHz,
+      CompletableFuture<Result> done) {
+    InfiniteGrid grid = new InfiniteGrid();
+    grid.setModel(model);
+    grid.setRenderStatsEnabled(true);
+    StackPane container = new StackPane(grid);
+    Stage stage = new Stage();
+    stage.setScene(new Scene(new StackPane(container), width, height));
+    stage.show();
+
+    Result result = new Result(scenario.name, frames);
+    RenderStats stats = grid.getRenderStats();
+    // An invalidation listener, as a change listener would box the new count every frame
+    InvalidationListener recorder =
+        observable -> {
+          if (result.recording && result.renders < result.renderTimes.length) {
+            result.renderTimes[result.renders++] = stats.getLastFrameTime();
+          }
+        };
+    stats.frameCountProperty().addListener(recorder);
+
+    long period = Math.round(1e9 / pulseHz);
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    new AnimationTimer() {
+      private int frame;
+      private long lastPulse;
+
+      @Override
+      public void handle(long now) {
+        if (frame == warmup) {
+          result.recording = true;
+          result.startNanos = now;
+          result.startBytes = threads.getThreadAllocatedBytes(thread);
+        } else if (result.recording) {
+          // A pulse that came more than half a period late stands for the ones it replaced
+          long pulsesElapsed = Math.round((double) (now - lastPulse) / period);
+          result.droppedPulses += Math.max(0, pulsesElapsed - 1);
+        }
+        lastPulse = now;
+
+        if (frame == warmup + frames) {
+          stop();
+          result.recording = false;
+          result.elapsedNanos = now - result.startNanos;
+          result.allocatedBytes = threads.getThreadAllocatedBytes(thread) - result.startBytes;
+          stage.close();
+          done.complete(result);
+          return;
+        }
+        scenario.step.apply(grid, container, frame);
+        frame++;
+      }
+    }.start();
+  }
+
+  private static Map<String, String> parse(String[] args) {
+    Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+    for (String arg : args) {
+      int split = arg.indexOf('=');
+      String name = arg.startsWith("--") && split > 2 ? arg.substring(2, split) : null;
+      if (name == null || !DEFAULTS.containsKey(name)) {
+        throw new IllegalArgumentException(
+            "Unknown option " + arg + "; options are --" + String.join("=, --", DEFAULTS.keySet())
+                + "=");
+      }
+      options.put(name, arg.substring(split + 1));
+    }
+    return options;
+  }
+
+  private static void setDefaultProperty(String key, String value) {
+    if (System.getProperty(key) == null) {
+      System.setProperty(key, value);
+    }
+  }
+
+  private static String json(Map<String, String> options, List<Result> results, boolean passed) {
+    StringBuilder json = new StringBuilder("{\n  \"options\": {");
+    String separator = "\n";
+    for (Map.Entry<String, String> option : options.entrySet()) {
+      json.append(separator)
+          .append("    ")
+          .append(quote(option.getKey()))
+          .append(": ")
+          .append(quote(option.getValue()));
+      separator = ",\n";
+    }
+    json.append("\n  },\n  \"scenarios\": [");
+    separator = "\n";
+    for (Result result : results) {
+      json.append(separator).append(result.json());
+      separator = ",\n";
+    }
+    json.append("\n  ],\n  \"passed\": ").append(passed).append("\n}\n");
+    return json.toString();
+  }
+
+  static String quote(String value) {
+    return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+  }
+
+  // Measurements of one scenario, collected on the FX thread
+  private static final class Result {
+    final String name;
+    final long[] renderTimes;
+    int renders;
+    long droppedPulses;
+    long startNanos;
+    long elapsedNanos;
+    long startBytes;
+    long allocatedBytes;
+    boolean recording;
+    final List<String> failures = new ArrayList<>();
+
+    private long[] sorted;
+
+    Result(String name, int frames) {
+      this.name = name;
+      this.renderTimes = new long[frames];
+    }
+
+    int frames() {
+      return renderTimes.length;
+    }
+
+    // Nearest-rank percentile of the render times, in milliseconds
+    double percentileMillis(double percentile) {
+      if (sorted == null) {
+        sorted = Arrays.copyOf(renderTimes, renders);
+        Arrays.sort(sorted);
+      }
+      if (sorted.length == 0) {
+        return 0;
+      }
+      int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+      return sorted[Math.max(rank - 1, 0)] / NANOS_PER_MILLI;
+    }
+
+    double meanMillis() {
+      long total = 0;
+      for (int i = 0; i < renders; i++) {
+        total += renderTimes[i];
+      }
+      return renders == 0 ? 0 : total / NANOS_PER_MILLI / renders;
+    }
+
+    double droppedFraction() {
+      return (double) droppedPulses / (frames() + droppedPulses);
+    }
+
+    double bytesPerFrame() {
+      return (double) allocatedBytes / frames();
+    }
+
+    double megabytesPerSecond() {
+      return elapsedNanos == 0 ? 0 : allocatedBytes / (elapsedNanos / 1e9) / (1 << 20);
+    }
+
+    void check(double p50Budget, double p99Budget, double maxDropped) {
+      if (percentileMillis(50) > p50Budget) {
+        failures.add(String.format(Locale.ROOT, "p50 over %.2f ms", p50Budget));
+      }
+      if (percentileMillis(99) > p99Budget) {
+        failures.add(String.format(Locale.ROOT, "p99 over %.2f ms", p99Budget));
+      }
+      if (droppedFraction() > maxDropped) {
+        failures.add(String.format(Locale.ROOT, "over %.1f%% pulses dropped", maxDropped * 100));
+      }
+    }
+
+    String summary() {
+      return String.format(
+          Locale.ROOT,
+          "%-18s p50 %6.2f ms  p99 %6.2f ms  max %6.2f ms  dropped %4d  %8.0f B/frame  %s",
+          name,
+          percentileMillis(50),
+          percentileMillis(99),
+          percentileMillis(100),
+          droppedPulses,
+          bytesPerFrame(),
+          failures.isEmpty() ? "ok" : String.join(", ", failures));
+    }
+
+    String json() {
+      StringBuilder failed = new StringBuilder();
+      for (String failure : failures) {
+        failed.append(failed.length() == 0 ? "" : ", ").append(quote(failure));
+      }
+      return String.format(
+          Locale.ROOT,
+          "    {\"name\": %s, \"frames\": %d, \"renders\": %d, \"p50Ms\": %.3f, \"p99Ms\": %.3f,"
+              + " \"maxMs\": %.3f, \"meanMs\": %.3f, \"droppedPulses\": %d,"
+              + " \"allocatedBytesPerFrame\": %.0f, \"allocationMBPerSecond\": %.2f,"
+              + " \"passed\": %b, \"failures\": [%s]}",
+          quote(name),
+          frames(),
+          renders,
+          percentileMillis(50),
+          percentileMillis(99),
+          percentileMillis(100),
+          meanMillis(),
+          droppedPulses,
+          bytesPerFrame(),
+          megabytesPerSecond(),
+          failures.isEmpty(),
+          failed);
+    }
+  }
+}
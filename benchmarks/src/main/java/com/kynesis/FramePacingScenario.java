@@ -0,0 +1,94 @@
+package com.kynesis;
+
+import java.util.List;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+
+// Scripted interaction driven one step per pulse by FramePacingRunner. A step changes the grid the
+// way a user would between two frames, so every pulse has something to render.
+final class FramePacingScenario {
+  // Applies the changes of one pulse; frame counts from 0 and includes the warmup pulses. The
+  // container fills the window and lays the grid out at its own size.
+  interface Step {
+    void apply(InfiniteGrid grid, Region container, int frame);
+  }
+
+  // Pixels panned per pulse, 240 pixels per second at 60 Hz
+  private static final double PAN_SPEED = 4;
+
+  // Pulses per zoom sweep from the finest to the coarsest scale and back
+  private static final int ZOOM_PERIOD = 240;
+  private static final double ZOOM_RANGE = 64;
+
+  // Pulses between style changes while scrolling
+  private static final int STYLE_PERIOD = 20;
+
+  // Pulses per resize cycle, and the smallest grid as a fraction of the configured size
+  private static final int RESIZE_PERIOD = 120;
+  private static final double RESIZE_MIN = 0.5;
+
+  // Cells painted per pulse by the brush
+  private static final int BRUSH_SIZE = 3;
+
+  final String name;
+  final Step step;
+
+  private FramePacingScenario(String name, Step step) {
+    this.name = name;
+    this.step = step;
+  }
+
+  static List<FramePacingScenario> all(int width, int height) {
+    return List.of(
+        new FramePacingScenario("pan", (grid, container, frame) -> grid.panBy(-PAN_SPEED, 0)),
+        new FramePacingScenario(
+            "pan-diagonal",
+            (grid, container, frame) -> grid.panBy(-PAN_SPEED, -PAN_SPEED * 0.75)),
+        new FramePacingScenario(
+            "zoom-sweep",
+            (grid, container, frame) -> {
+              // Exponential in and out around the centre, so every step is the same ratio
+              int phase = frame % ZOOM_PERIOD;
+              double direction = phase < ZOOM_PERIOD / 2 ? 1 : -1;
+              double factor = Math.pow(ZOOM_RANGE, 2.0 / ZOOM_PERIOD);
+              grid.zoom(
+                  Math.pow(factor, -direction), grid.getWidth() / 2, grid.getHeight() / 2);
+            }),
+        new FramePacingScenario(
+            "style-mid-scroll",
+            (grid, container, frame) -> {
+              grid.panBy(-PAN_SPEED, 0);
+              if (frame % STYLE_PERIOD == 0) {
+                boolean odd = frame / STYLE_PERIOD % 2 == 1;
+                grid.setMinorGridLineStroke(odd ? Color.LIGHTBLUE : Color.LIGHTGRAY);
+                grid.setMajorGridLineWidth(odd ? 2 : 1);
+                grid.setGridLevelSpacings(odd ? new Number[] {10, 50, 250} : new Number[0]);
+              }
+            }),
+        new FramePacingScenario(
+            "resize",
+            (grid, container, frame) -> {
+              double t = (1 - Math.cos(2 * Math.PI * frame / RESIZE_PERIOD)) / 2;
+              double fraction = 1 - (1 - RESIZE_MIN) * t;
+              // The container shrinks inside the window rather than with it: the headless toolkit
+              // can't grow a window it has painted
+              container.setMaxSize(Math.round(width * fraction), Math.round(height * fraction));
+            }),
+        new FramePacingScenario(
+            "brush",
+            (grid, container, frame) -> {
+              // A sine stroke across the viewport, a few cells per pulse
+              double x = frame * 2.0 % grid.getWidth();
+              double y = grid.getHeight() / 2 * (1 + 0.6 * Math.sin(frame / 15.0));
+              int column = grid.cellColumnAt(x);
+              int row = grid.cellRowAt(y);
+              grid.getModel()
+                  .fillRect(
+                      column,
+                      row,
+                      column + BRUSH_SIZE - 1,
+                      row + BRUSH_SIZE - 1,
+                      0xFF000000 | frame * 0x10307 & 0xFFFFFF);
+            }));
+  }
+}
@@ -0,0 +1,45 @@
+package com.kynesis;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import javafx.application.Platform;
+
+// Runs benchmark bodies on the FX thread of a toolkit started once per forked JVM. The canvas
+// benchmarks fork with the headless Monocle glass platform and the software pipeline.
+final class FxThread {
+  private static boolean started;
+
+  private FxThread() {}
+
+  static synchronized void start() throws InterruptedException {
+    if (started) {
+      return;
+    }
+    CountDownLatch latch = new CountDownLatch(1);
+    Platform.startup(latch::countDown);
+    latch.await();
+    started = true;
+  }
+
+  static <T> T call(Supplier<T> task) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    Platform.runLater(
+        () -> {
+          try {
+            result.complete(task.get());
+          } catch (Throwable t) {
+            result.completeExceptionally(t);
+          }
+        });
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+}
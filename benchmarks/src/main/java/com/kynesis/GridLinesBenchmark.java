@@ -0,0 +1,62 @@
+package com.kynesis;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Visible line computation for one layer: locating the first line and enumerating the positions
+// of every line crossing the viewport, at different spacings, scales and viewport sizes
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridLinesBenchmark {
+  @Param({"1280x720", "3840x2160"})
+  public String size;
+
+  @Param({"5", "10", "50"})
+  public double spacing;
+
+  @Param({"0.5", "1", "4"})
+  public double scale;
+
+  private final GridLines columns = new GridLines();
+  private final GridLines rows = new GridLines();
+  private int width;
+  private int height;
+  private double origin;
+
+  @Setup
+  public void setUp() {
+    int[] extent = BenchmarkContent.size(size);
+    width = extent[0];
+    height = extent[1];
+  }
+
+  @Benchmark
+  public double visibleLines() {
+    // A new origin every call so nothing is hoisted out of the loop
+    origin += 0.37;
+    columns.compute(origin, width, spacing, scale);
+    rows.compute(-origin, height, spacing, scale);
+    double sum = 0;
+    for (long i = 0; i < columns.count(); i++) {
+      sum += columns.position(i);
+    }
+    for (long i = 0; i < rows.count(); i++) {
+      sum += rows.position(i);
+    }
+    return sum;
+  }
+}
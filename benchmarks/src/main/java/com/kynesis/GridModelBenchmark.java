@@ -0,0 +1,97 @@
+package com.kynesis;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Cell store throughput: random reads and writes over a square region of a populated model, and
+// filling a rectangle cell by cell and in bulk. Scores are per cell.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridModelBenchmark {
+  private static final int BATCH = 4096;
+  private static final int FILL = 256;
+
+  // Edge of the square region accessed, in cells
+  @Param({"256", "4096"})
+  public int region;
+
+  // Fraction of the region's cells holding content beforehand
+  @Param({"0.05", "0.5"})
+  public double density;
+
+  private GridModel model;
+  private final int[] columns = new int[BATCH];
+  private final int[] rows = new int[BATCH];
+  private int value;
+  private int fillOrigin;
+
+  @Setup
+  public void setUp() {
+    int populated = Math.min(region, 1024);
+    model = BenchmarkContent.model(0, 0, populated, populated, density);
+    SplittableRandom random = new SplittableRandom(7);
+    for (int i = 0; i < BATCH; i++) {
+      columns[i] = random.nextInt(region);
+      rows[i] = random.nextInt(region);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public int get() {
+    int sum = 0;
+    for (int i = 0; i < BATCH; i++) {
+      sum += model.get(columns[i], rows[i]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public int set() {
+    value++;
+    int sum = 0;
+    for (int i = 0; i < BATCH; i++) {
+      sum += model.set(columns[i], rows[i], value);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(FILL * FILL)
+  public GridModel fillBySet() {
+    value++;
+    fillOrigin = (fillOrigin + FILL / 2) % region;
+    for (int row = 0; row < FILL; row++) {
+      for (int column = 0; column < FILL; column++) {
+        model.set(fillOrigin + column, fillOrigin + row, value);
+      }
+    }
+    return model;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(FILL * FILL)
+  public GridModel fillRect() {
+    value++;
+    fillOrigin = (fillOrigin + FILL / 2) % region;
+    model.fillRect(fillOrigin, fillOrigin, fillOrigin + FILL - 1, fillOrigin + FILL - 1, value);
+    return model;
+  }
+}
@@ -0,0 +1,64 @@
+package com.kynesis;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Full frames from the headless raster backend, still and while panning
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RasterRenderBenchmark {
+  private static final int PAN_FRAMES = 60;
+
+  @Param({"1280x720", "3840x2160"})
+  public String size;
+
+  // Fraction of the visible cells holding content
+  @Param({"0", "0.05", "0.5"})
+  public double density;
+
+  private final GridStyle style = GridStyle.builder().build();
+  private RasterGridRenderer renderer;
+  private GridModel model;
+
+  @Setup
+  public void setUp() {
+    int[] extent = BenchmarkContent.size(size);
+    renderer = new RasterGridRenderer(extent[0], extent[1]);
+    // Cells are 10 pixels at scale 1; cover the viewport and the distance panned
+    model =
+        BenchmarkContent.model(
+            0, 0, extent[0] / 10 + 2 * PAN_FRAMES, extent[1] / 10 + 2 * PAN_FRAMES, density);
+  }
+
+  @Benchmark
+  public int[] render() {
+    renderer.paint(style, 1, 0.25, 0.25, model, IntUnaryOperator.identity());
+    return renderer.getPixels();
+  }
+
+  // A diagonal pan of PAN_FRAMES frames by a few pixels each, as produced by a mouse drag
+  @Benchmark
+  @OperationsPerInvocation(PAN_FRAMES)
+  public int[] pan() {
+    for (int frame = 0; frame < PAN_FRAMES; frame++) {
+      renderer.paint(style, 1, frame * 3.5, frame * 2.25, model, IntUnaryOperator.identity());
+    }
+    return renderer.getPixels();
+  }
+}
@@ -0,0 +1,462 @@
+package com.kynesis;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.ImagePattern;
+
+// Renderer that issues GraphicsContext commands, so it must be used on the FX thread. The render
+// mode picks how the lines of each layer are emitted; ASYNC_TILES is drawn like PATH here.
+public final class CanvasGridRenderer implements GridRenderer {
+  // Largest pattern tile edge, in pixels, before TILE mode falls back to PATH
+  private static final int MAX_TILE_SIZE = 2048;
+
+  // Pattern tiles kept for TILE mode, so zooming between a few scales reuses them
+  private static final int TILE_CACHE_SIZE = 4;
+
+  private static final int COLOR_CACHE_SIZE = 256;
+
+  private final GraphicsContext gc;
+  private GridRenderMode mode = GridRenderMode.PATH;
+
+  // Device pixels per canvas pixel, e.g. 2 on a HiDPI screen
+  private double pixelScale = 1;
+
+  // Pattern tiles for TILE mode, most recently used first, and the scale of the previous paint.
+  // A new tile is only rasterized once the scale is the same two paints running, so a zoom draws
+  // paths until it settles.
+  private final Tile[] tiles = new Tile[TILE_CACHE_SIZE];
+  private double lastScale = Double.NaN;
+
+  // Lines of each level, reused every frame
+  private final GridLevelLines levelLines = new GridLevelLines();
+
+  // Small direct-mapped cache of fills so merged cell runs don't allocate a Color each
+  private final int[] colorKeys = new int[COLOR_CACHE_SIZE];
+  private final Color[] colors = new Color[COLOR_CACHE_SIZE];
+
+  // Cell boundaries, reused every frame
+  private final GridLines cellColumns = new GridLines();
+  private final GridLines cellRows = new GridLines();
+
+  // Commands and lines issued since the last resetCounts(), for render statistics, with the lines
+  // counted per level of detail window position from the finest up. Counting is a few increments
+  // per level, so it is always on.
+  int strokeCount;
+  int fillCount;
+  long[] levelLineCounts = new long[0];
+  int levelCount;
+
+  // Pattern tiles rasterized over the renderer's lifetime
+  int tileRasterCount;
+
+  public CanvasGridRenderer(GraphicsContext gc) {
+    this.gc = gc;
+  }
+
+  public GridRenderMode getMode() {
+    return mode;
+  }
+
+  public void setMode(GridRenderMode mode) {
+    this.mode = mode;
+  }
+
+  public double getPixelScale() {
+    return pixelScale;
+  }
+
+  // Resolution of the output in device pixels per canvas pixel. Only the TILE mode pattern is
+  // rasterized here; it is drawn at this resolution so it stays sharp on HiDPI screens.
+  public void setPixelScale(double scale) {
+    this.pixelScale = scale > 0 ? scale : 1;
+  }
+
+  // Paints the whole canvas
+  @Override
+  public void paint(
+      GridStyle style,
+      double scale,
+      double originX,
+      double originY,
+      GridModel content,
+      IntUnaryOperator colorMap) {
+    Canvas canvas = gc.getCanvas();
+    paint(
+        style,
+        scale,
+        originX,
+        originY,
+        content,
+        colorMap,
+        0,
+        0,
+        canvas.getWidth(),
+        canvas.getHeight());
+  }
+
+  // Paints the canvas rectangle (x, y, width, height). Lines overhanging the rectangle are not
+  // clipped, so callers painting part of a frame clip first.
+  public void paint(
+      GridStyle style,
+      double scale,
+      double originX,
+      double originY,
+      GridModel content,
+      IntUnaryOperator colorMap,
+      double x,
+      double y,
+      double width,
+      double height) {
+    // Clear canvas with background color
+    gc.setFill(color(style.getBackground()));
+    gc.fillRect(x, y, width, height);
+    fillCount++;
+
+    if (content != null && !content.isEmpty()) {
+      drawCells(style, scale, originX, originY, content, colorMap, x, y, width, height);
+    }
+
+    if (!style.isShowGrid()) {
+      return;
+    }
+
+    Tile tile = mode == GridRenderMode.TILE ? tile(style, scale) : null;
+    if (tile != null) {
+      // All lines of the area with a single pattern fill. The pattern is anchored at the tile
+      // origin, so the fill is shifted instead of building a pattern for each offset.
+      int size = tile.size;
+      double offsetX = originX * scale - size * Math.floor(originX * scale / size);
+      double offsetY = originY * scale - size * Math.floor(originY * scale / size);
+      gc.save();
+      gc.translate(-offsetX, -offsetY);
+      gc.setFill(tile.pattern);
+      gc.fillRect(x + offsetX, y + offsetY, width, height);
+      gc.restore();
+      fillCount++;
+    } else {
+      drawLayers(style, scale, originX, originY, x, y, width, height);
+    }
+  }
+
+  // Fills the non-empty cells inside the area, visiting only chunks that intersect it
+  private void drawCells(
+      GridStyle style,
+      double scale,
+      double originX,
+      double originY,
+      GridModel content,
+      IntUnaryOperator colorMap,
+      double x,
+      double y,
+      double width,
+      double height) {
+    double spacing = style.getMinorSpacing();
+    if (!cellColumns.locate(originX, spacing, scale) || !cellRows.locate(originY, spacing, scale)) {
+      return;
+    }
+
+    int minColumn = clampToInt(cellColumns.indexAt(x));
+    int maxColumn = clampToInt(cellColumns.indexAt(x + width));
+    int minRow = clampToInt(cellRows.indexAt(y));
+    int maxRow = clampToInt(cellRows.indexAt(y + height));
+    int minChunkX = minColumn >> GridModel.CHUNK_SHIFT;
+    int maxChunkX = maxColumn >> GridModel.CHUNK_SHIFT;
+    int minChunkY = minRow >> GridModel.CHUNK_SHIFT;
+    int maxChunkY = maxRow >> GridModel.CHUNK_SHIFT;
+
+    // Probe the visible chunk range directly unless the model holds fewer chunks than that
+    long visibleChunks = ((long) maxChunkX - minChunkX + 1) * ((long) maxChunkY - minChunkY + 1);
+    if (visibleChunks <= content.getChunkCount()) {
+      for (int chunkY = minChunkY; chunkY <= maxChunkY; chunkY++) {
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+          GridChunk chunk = content.getChunk(chunkX, chunkY);
+          if (chunk != null) {
+            drawChunk(chunk, colorMap, minColumn, minRow, maxColumn, maxRow);
+          }
+        }
+      }
+    } else {
+      content.forEachChunk(
+          chunk -> {
+            int chunkX = chunk.getChunkX();
+            int chunkY = chunk.getChunkY();
+            if (chunkX >= minChunkX
+                && chunkX <= maxChunkX
+                && chunkY >= minChunkY
+                && chunkY <= maxChunkY) {
+              drawChunk(chunk, colorMap, minColumn, minRow, maxColumn, maxRow);
+            }
+          });
+    }
+  }
+
+  // Fills the cells of one chunk within the bounds, merging same-valued runs along each row
+  private void drawChunk(
+      GridChunk chunk,
+      IntUnaryOperator colorMap,
+      int minColumn,
+      int minRow,
+      int maxColumn,
+      int maxRow) {
+    long baseColumn = (long) chunk.getChunkX() << GridModel.CHUNK_SHIFT;
+    long baseRow = (long) chunk.getChunkY() << GridModel.CHUNK_SHIFT;
+    int fromColumn = (int) Math.max(minColumn - baseColumn, 0);
+    int toColumn = (int) Math.min(maxColumn - baseColumn, GridModel.CHUNK_MASK);
+    int fromRow = (int) Math.max(minRow - baseRow, 0);
+    int toRow = (int) Math.min(maxRow - baseRow, GridModel.CHUNK_MASK);
+
+    for (int row = fromRow; row <= toRow; row++) {
+      double top = cellRows.positionOf(baseRow + row);
+      double bottom = cellRows.positionOf(baseRow + row + 1);
+      int column = fromColumn;
+      while (column <= toColumn) {
+        int value = chunk.get(column, row);
+        int end = column + 1;
+        while (end <= toColumn && chunk.get(end, row) == value) {
+          end++;
+        }
+        if (value != 0) {
+          int argb = colorMap.applyAsInt(value);
+          if ((argb >>> 24) != 0) {
+            double left = cellColumns.positionOf(baseColumn + column);
+            double right = cellColumns.positionOf(baseColumn + end);
+            gc.setFill(color(argb));
+            gc.fillRect(left, top, right - left, bottom - top);
+            fillCount++;
+          }
+        }
+        column = end;
+      }
+    }
+  }
+
+  private Color color(int argb) {
+    int slot = (argb ^ argb >>> 8 ^ argb >>> 16) & (COLOR_CACHE_SIZE - 1);
+    Color color = colors[slot];
+    if (color == null || colorKeys[slot] != argb) {
+      color =
+          Color.rgb(argb >> 16 & 0xFF, argb >> 8 & 0xFF, argb & 0xFF, (argb >>> 24) / 255.0);
+      colors[slot] = color;
+      colorKeys[slot] = argb;
+    }
+    return color;
+  }
+
+  private static int clampToInt(long value) {
+    return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+  }
+
+  private void drawLayers(
+      GridStyle style,
+      double scale,
+      double originX,
+      double originY,
+      double x,
+      double y,
+      double width,
+      double height) {
+    GridLevelLines lines = levelLines;
+    if (!lines.compute(style, scale, originX, originY, x, y, width, height)) {
+      return;
+    }
+    if (levelLineCounts.length < lines.count) {
+      levelLineCounts = Arrays.copyOf(levelLineCounts, lines.count);
+    }
+    levelCount = Math.max(levelCount, lines.count);
+
+    // Finest level first so coarser lines end up on top; each line position is in one level only
+    for (int p = 0; p < lines.count; p++) {
+      if (!lines.drawn[p]) {
+        continue;
+      }
+      levelLineCounts[p] += lines.lineCount(p);
+      GridLevel level = style.getLevel(p);
+      gc.setGlobalAlpha(lines.lod.alphas[p]);
+      drawLayer(
+          lines.columns[p],
+          lines.columnCounts[p],
+          lines.rows[p],
+          lines.rowCounts[p],
+          level.getLineWidth(),
+          color(level.getStroke()),
+          x,
+          y,
+          width,
+          height);
+    }
+    gc.setGlobalAlpha(1);
+  }
+
+  private void drawLayer(
+      double[] columns,
+      int columnCount,
+      double[] rows,
+      int rowCount,
+      double lineWidth,
+      Color stroke,
+      double x,
+      double y,
+      double width,
+      double height) {
+    if (columnCount == 0 && rowCount == 0) {
+      return;
+    }
+    double right = x + width;
+    double bottom = y + height;
+
+    switch (mode) {
+      case LINES:
+        gc.setStroke(stroke);
+        gc.setLineWidth(lineWidth);
+
+        // Draw vertical lines
+        for (int i = 0; i < columnCount; i++) {
+          double canvasX = columns[i];
+          gc.strokeLine(canvasX, y, canvasX, bottom);
+        }
+
+        // Draw horizontal lines
+        for (int i = 0; i < rowCount; i++) {
+          double canvasY = rows[i];
+          gc.strokeLine(x, canvasY, right, canvasY);
+        }
+        strokeCount += columnCount + rowCount;
+        break;
+
+      case RECTS:
+        // Lines as rectangles centred on the grid coordinate, filled with a single command
+        double half = lineWidth / 2;
+        gc.setFill(stroke);
+        gc.beginPath();
+        for (int i = 0; i < columnCount; i++) {
+          gc.rect(columns[i] - half, y, lineWidth, height);
+        }
+        for (int i = 0; i < rowCount; i++) {
+          gc.rect(x, rows[i] - half, width, lineWidth);
+        }
+        gc.fill();
+        fillCount++;
+        break;
+
+      default:
+        // Every line becomes a sub-path so the whole level is a single stroke command
+        gc.setStroke(stroke);
+        gc.setLineWidth(lineWidth);
+        gc.beginPath();
+        for (int i = 0; i < columnCount; i++) {
+          double canvasX = columns[i];
+          gc.moveTo(canvasX, y);
+          gc.lineTo(canvasX, bottom);
+        }
+        for (int i = 0; i < rowCount; i++) {
+          double canvasY = rows[i];
+          gc.moveTo(x, canvasY);
+          gc.lineTo(right, canvasY);
+        }
+        gc.stroke();
+        strokeCount++;
+        break;
+    }
+  }
+
+  void resetCounts() {
+    strokeCount = 0;
+    fillCount = 0;
+    Arrays.fill(levelLineCounts, 0);
+    levelCount = 0;
+  }
+
+  // Returns the pattern tile for the style and scale, rasterizing it if the scale has settled,
+  // or null when the layers should be drawn as paths
+  private Tile tile(GridStyle style, double scale) {
+    boolean settled = scale == lastScale;
+    lastScale = scale;
+    for (int i = 0; i < tiles.length && tiles[i] != null; i++) {
+      Tile tile = tiles[i];
+      if (tile.scale == scale && tile.pixelScale == pixelScale && tile.style.equals(style)) {
+        System.arraycopy(tiles, 0, tiles, 1, i);
+        tiles[0] = tile;
+        return tile;
+      }
+    }
+    if (!settled) {
+      return null;
+    }
+    int size = tilePeriod(style, scale);
+    long pixels = wholePixels(size * pixelScale);
+    if (size == 0 || pixels == 0 || pixels > MAX_TILE_SIZE) {
+      return null;
+    }
+
+    // Lines only, on a transparent tile so cells show through. Lines sit at both edges of the
+    // tile so each half of a boundary line ends up in the pattern. The tile has a texel per
+    // device pixel and the pattern scales it back down to size.
+    Canvas scratch = new Canvas(pixels, pixels);
+    GraphicsContext scratchGc = scratch.getGraphicsContext2D();
+    scratchGc.scale(pixelScale, pixelScale);
+    new CanvasGridRenderer(scratchGc).drawLayers(style, scale, 0, 0, 0, 0, size, size);
+
+    SnapshotParameters params = new SnapshotParameters();
+    params.setFill(Color.TRANSPARENT);
+    WritableImage image = scratch.snapshot(params, null);
+    Tile tile = new Tile(style, scale, pixelScale, size, image);
+    System.arraycopy(tiles, 0, tiles, 1, tiles.length - 1);
+    tiles[0] = tile;
+    tileRasterCount++;
+    return tile;
+  }
+
+  // Pixel period after which all visible levels repeat, or 0 if it isn't a usable whole size
+  private int tilePeriod(GridStyle style, double scale) {
+    GridLod lod = levelLines.lod;
+    lod.update(style, scale);
+    long period = 1;
+    for (int p = 0; p < lod.count; p++) {
+      if (style.getLevel(p).isVisible() && lod.alphas[p] > 0) {
+        period = lcm(period, wholePixels(lod.spacings[p] * scale));
+      }
+    }
+    return period > 0 && period <= MAX_TILE_SIZE ? (int) period : 0;
+  }
+
+  private static long wholePixels(double value) {
+    double rounded = Math.rint(value);
+    return rounded >= 1 && Math.abs(value - rounded) < 1e-9 ? (long) rounded : 0;
+  }
+
+  private static long lcm(long a, long b) {
+    if (a == 0 || b == 0 || a > MAX_TILE_SIZE || b > MAX_TILE_SIZE) {
+      return 0;
+    }
+    long x = a;
+    long y = b;
+    while (y != 0) {
+      long t = x % y;
+      x = y;
+      y = t;
+    }
+    return a / x * b;
+  }
+
+  // A rasterized tile and the pattern that repeats it, for one style, scale and pixel scale
+  private static final class Tile {
+    final GridStyle style;
+    final double scale;
+    final double pixelScale;
+    final int size;
+    final ImagePattern pattern;
+
+    Tile(GridStyle style, double scale, double pixelScale, int size, WritableImage image) {
+      this.style = style;
+      this.scale = scale;
+      this.pixelScale = pixelScale;
+      this.size = size;
+      this.pattern = new ImagePattern(image, 0, 0, size, size, false);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package com.kynesis;
+
+// Open-addressing hash map from packed chunk coordinates to chunks. Keys stay primitive longs and
+// removal shifts later entries back instead of leaving tombstones, so lookups never box and the
+// table never degrades under churn.
+final class ChunkMap {
+  private static final int MIN_CAPACITY = 16;
+
+  private long[] keys;
+  private GridChunk[] values;
+  private int size;
+  private int mask;
+
+  ChunkMap() {
+    allocate(MIN_CAPACITY);
+  }
+
+  int size() {
+    return size;
+  }
+
+  // Number of slots; chunkAt(slot) returns null for free slots
+  int capacity() {
+    return values.length;
+  }
+
+  GridChunk chunkAt(int slot) {
+    return values[slot];
+  }
+
+  GridChunk get(long key) {
+    for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+      GridChunk value = values[slot];
+      if (value == null) {
+        return null;
+      }
+      if (keys[slot] == key) {
+        return value;
+      }
+    }
+  }
+
+  void put(long key, GridChunk chunk) {
+    if ((size + 1) * 2 > values.length) {
+      resize(values.length * 2);
+    }
+    int slot = slot(key);
+    while (values[slot] != null) {
+      if (keys[slot] == key) {
+        values[slot] = chunk;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = key;
+    values[slot] = chunk;
+    size++;
+  }
+
+  GridChunk remove(long key) {
+    int slot = slot(key);
+    while (values[slot] != null && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    GridChunk removed = values[slot];
+    if (removed == null) {
+      return null;
+    }
+
+    // Shift back entries whose probe sequence passes through the freed slot
+    int free = slot;
+    for (int next = (free + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+      int home = slot(keys[next]);
+      if (((next - home) & mask) >= ((next - free) & mask)) {
+        keys[free] = keys[next];
+        values[free] = values[next];
+        free = next;
+      }
+    }
+    values[free] = null;
+    size--;
+    return removed;
+  }
+
+  void clear() {
+    allocate(MIN_CAPACITY);
+    size = 0;
+  }
+
+  long getMemoryUsage() {
+    return 8L * keys.length + 8L * values.length;
+  }
+
+  private int slot(long key) {
+    // Murmur3 finalizer so neighbouring chunks spread over the table
+    long h = key;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return (int) h & mask;
+  }
+
+  private void resize(int capacity) {
+    long[] oldKeys = keys;
+    GridChunk[] oldValues = values;
+    allocate(capacity);
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldValues[i] != null) {
+        int slot = slot(oldKeys[i]);
+        while (values[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new GridChunk[capacity];
+    mask = capacity - 1;
+  }
+}
@@ -0,0 +1,339 @@
+package com.kynesis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+// Single-file chunk storage accessed through memory-mapped segments. The file is a 64 byte header
+// followed by fixed-size slots, each holding one chunk's cells as little-endian ints. The chunk
+// index is an open-addressing table of (key, slot) entries that itself lives in a run of slots
+// and is probed in place, so opening a file only maps the header regardless of its size. Freed
+// slots form a linked list through their first int.
+final class ChunkStore implements Closeable {
+  private static final long MAGIC = 0x4752494443484E4BL; // "GRIDCHNK"
+  private static final int VERSION = 1;
+
+  static final int CELLS = GridModel.CHUNK_SIZE * GridModel.CHUNK_SIZE;
+  static final int SLOT_BYTES = CELLS * 4;
+
+  private static final int HEADER_BYTES = 64;
+  private static final int SEGMENT_SLOTS = 256;
+  private static final long SEGMENT_BYTES = (long) SEGMENT_SLOTS * SLOT_BYTES;
+  private static final int ENTRY_BYTES = 16;
+  private static final int ENTRIES_PER_SLOT = SLOT_BYTES / ENTRY_BYTES;
+  private static final int INITIAL_INDEX_CAPACITY = ENTRIES_PER_SLOT;
+
+  // Header field offsets
+  private static final int H_MAGIC = 0;
+  private static final int H_VERSION = 8;
+  private static final int H_CHUNK_SIZE = 12;
+  private static final int H_INDEX_SLOT = 16;
+  private static final int H_INDEX_CAPACITY = 20;
+  private static final int H_CHUNK_COUNT = 24;
+  private static final int H_NEXT_SLOT = 28;
+  private static final int H_FREE_SLOT = 32;
+  private static final int H_CELL_COUNT = 40;
+
+  private static final int[] ZEROS = new int[CELLS];
+
+  private final FileChannel channel;
+  private final MappedByteBuffer header;
+  private MappedByteBuffer[] segments = new MappedByteBuffer[16];
+
+  private int indexSlot;
+  private int indexCapacity;
+  private int chunkCount;
+  private int nextSlot;
+  private int freeSlot;
+
+  private ChunkStore(FileChannel channel) throws IOException {
+    this.channel = channel;
+    boolean created = channel.size() < HEADER_BYTES;
+    header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+    header.order(ByteOrder.LITTLE_ENDIAN);
+    if (created) {
+      initialize();
+    } else {
+      if (header.getLong(H_MAGIC) != MAGIC) {
+        throw new IOException("Not a grid chunk file");
+      }
+      if (header.getInt(H_VERSION) != VERSION
+          || header.getInt(H_CHUNK_SIZE) != GridModel.CHUNK_SIZE) {
+        throw new IOException("Unsupported grid chunk file version");
+      }
+      indexSlot = header.getInt(H_INDEX_SLOT);
+      indexCapacity = header.getInt(H_INDEX_CAPACITY);
+      chunkCount = header.getInt(H_CHUNK_COUNT);
+      nextSlot = header.getInt(H_NEXT_SLOT);
+      freeSlot = header.getInt(H_FREE_SLOT);
+    }
+  }
+
+  static ChunkStore open(Path path) throws IOException {
+    FileChannel channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE);
+    try {
+      return new ChunkStore(channel);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  int getChunkCount() {
+    return chunkCount;
+  }
+
+  long getCellCount() {
+    return header.getLong(H_CELL_COUNT);
+  }
+
+  void setCellCount(long cells) {
+    header.putLong(H_CELL_COUNT, cells);
+  }
+
+  // Slot holding the chunk, or -1 if it isn't stored
+  int find(long key) throws IOException {
+    for (int entry = home(key, indexCapacity); ; entry = (entry + 1) & (indexCapacity - 1)) {
+      int slot = entrySlot(indexSlot, entry);
+      if (slot < 0) {
+        return -1;
+      }
+      if (entryKey(indexSlot, entry) == key) {
+        return slot;
+      }
+    }
+  }
+
+  // Adds an index entry with a zeroed slot for a chunk that isn't stored yet
+  int allocate(long key) throws IOException {
+    if ((chunkCount + 1) * 2 > indexCapacity) {
+      growIndex();
+    }
+    int slot;
+    if (freeSlot >= 0) {
+      slot = freeSlot;
+      freeSlot = slotBuffer(slot).getInt(0);
+      write(slot, ZEROS);
+    } else {
+      slot = nextSlot++;
+    }
+
+    insert(indexSlot, indexCapacity, key, slot);
+    chunkCount++;
+    writeHeader();
+    return slot;
+  }
+
+  // Removes the chunk's index entry and frees its slot
+  void delete(long key) throws IOException {
+    int mask = indexCapacity - 1;
+    int entry = home(key, indexCapacity);
+    int slot;
+    while ((slot = entrySlot(indexSlot, entry)) >= 0 && entryKey(indexSlot, entry) != key) {
+      entry = (entry + 1) & mask;
+    }
+    if (slot < 0) {
+      return;
+    }
+
+    // Shift back entries whose probe sequence passes through the freed entry
+    int free = entry;
+    for (int next = (free + 1) & mask;
+        entrySlot(indexSlot, next) >= 0;
+        next = (next + 1) & mask) {
+      long nextKey = entryKey(indexSlot, next);
+      int nextHome = home(nextKey, indexCapacity);
+      if (((next - nextHome) & mask) >= ((next - free) & mask)) {
+        setEntry(indexSlot, free, nextKey, entrySlot(indexSlot, next));
+        free = next;
+      }
+    }
+    setEntry(indexSlot, free, 0, -1);
+
+    releaseSlot(slot);
+    chunkCount--;
+    writeHeader();
+  }
+
+  void read(int slot, int[] cells) throws IOException {
+    slotBuffer(slot).asIntBuffer().get(cells);
+  }
+
+  void write(int slot, int[] cells) throws IOException {
+    slotBuffer(slot).asIntBuffer().put(cells);
+  }
+
+  // Calls the consumer with the key of every stored chunk; the store must not change meanwhile
+  void forEachKey(LongConsumer consumer) throws IOException {
+    for (int entry = 0; entry < indexCapacity; entry++) {
+      if (entrySlot(indexSlot, entry) >= 0) {
+        consumer.accept(entryKey(indexSlot, entry));
+      }
+    }
+  }
+
+  // Drops every chunk and shrinks the file back to an empty index
+  void clear() throws IOException {
+    Arrays.fill(segments, null);
+    channel.truncate(HEADER_BYTES);
+    initialize();
+  }
+
+  void flush() throws IOException {
+    writeHeader();
+    for (MappedByteBuffer segment : segments) {
+      if (segment != null) {
+        segment.force();
+      }
+    }
+    header.force();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      segments = null;
+      channel.close();
+    }
+  }
+
+  private void initialize() throws IOException {
+    header.putLong(H_MAGIC, MAGIC);
+    header.putInt(H_VERSION, VERSION);
+    header.putInt(H_CHUNK_SIZE, GridModel.CHUNK_SIZE);
+    header.putLong(H_CELL_COUNT, 0);
+    indexSlot = 0;
+    indexCapacity = INITIAL_INDEX_CAPACITY;
+    chunkCount = 0;
+    nextSlot = indexSlots(indexCapacity);
+    freeSlot = -1;
+    clearIndex(indexSlot, indexCapacity);
+    writeHeader();
+  }
+
+  private void writeHeader() {
+    header.putInt(H_INDEX_SLOT, indexSlot);
+    header.putInt(H_INDEX_CAPACITY, indexCapacity);
+    header.putInt(H_CHUNK_COUNT, chunkCount);
+    header.putInt(H_NEXT_SLOT, nextSlot);
+    header.putInt(H_FREE_SLOT, freeSlot);
+  }
+
+  // Moves the index to a table twice the size in fresh slots at the end of the file
+  private void growIndex() throws IOException {
+    int oldSlot = indexSlot;
+    int oldCapacity = indexCapacity;
+    int newSlot = nextSlot;
+    int newCapacity = oldCapacity * 2;
+    nextSlot += indexSlots(newCapacity);
+    clearIndex(newSlot, newCapacity);
+
+    for (int entry = 0; entry < oldCapacity; entry++) {
+      int slot = entrySlot(oldSlot, entry);
+      if (slot >= 0) {
+        insert(newSlot, newCapacity, entryKey(oldSlot, entry), slot);
+      }
+    }
+    indexSlot = newSlot;
+    indexCapacity = newCapacity;
+
+    for (int i = 0; i < indexSlots(oldCapacity); i++) {
+      releaseSlot(oldSlot + i);
+    }
+    writeHeader();
+  }
+
+  private void insert(int firstSlot, int capacity, long key, int slot) throws IOException {
+    int entry = home(key, capacity);
+    while (entrySlot(firstSlot, entry) >= 0) {
+      entry = (entry + 1) & (capacity - 1);
+    }
+    setEntry(firstSlot, entry, key, slot);
+  }
+
+  private void clearIndex(int firstSlot, int capacity) throws IOException {
+    for (int entry = 0; entry < capacity; entry++) {
+      setEntry(firstSlot, entry, 0, -1);
+    }
+  }
+
+  private void releaseSlot(int slot) throws IOException {
+    slotBuffer(slot).putInt(0, freeSlot);
+    freeSlot = slot;
+  }
+
+  private static int indexSlots(int capacity) {
+    return (capacity + ENTRIES_PER_SLOT - 1) / ENTRIES_PER_SLOT;
+  }
+
+  private static int home(long key, int capacity) {
+    long h = key;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return (int) h & (capacity - 1);
+  }
+
+  private long entryKey(int firstSlot, int entry) throws IOException {
+    return entryBuffer(firstSlot, entry).getLong(entryOffset(firstSlot, entry));
+  }
+
+  // Slot of the entry, or -1 if the entry is free
+  private int entrySlot(int firstSlot, int entry) throws IOException {
+    return entryBuffer(firstSlot, entry).getInt(entryOffset(firstSlot, entry) + 8);
+  }
+
+  private void setEntry(int firstSlot, int entry, long key, int slot) throws IOException {
+    ByteBuffer buffer = entryBuffer(firstSlot, entry);
+    int at = entryOffset(firstSlot, entry);
+    buffer.putLong(at, key);
+    buffer.putInt(at + 8, slot);
+  }
+
+  private ByteBuffer entryBuffer(int firstSlot, int entry) throws IOException {
+    return segment(firstSlot + entry / ENTRIES_PER_SLOT);
+  }
+
+  private static int entryOffset(int firstSlot, int entry) {
+    int slot = firstSlot + entry / ENTRIES_PER_SLOT;
+    return (slot % SEGMENT_SLOTS) * SLOT_BYTES + (entry % ENTRIES_PER_SLOT) * ENTRY_BYTES;
+  }
+
+  // View of one slot positioned at its first byte
+  private ByteBuffer slotBuffer(int slot) throws IOException {
+    ByteBuffer buffer = segment(slot).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int at = (slot % SEGMENT_SLOTS) * SLOT_BYTES;
+    buffer.position(at).limit(at + SLOT_BYTES);
+    return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  // Maps the segment containing the slot on first use
+  private MappedByteBuffer segment(int slot) throws IOException {
+    int index = slot / SEGMENT_SLOTS;
+    if (index >= segments.length) {
+      segments = Arrays.copyOf(segments, Math.max(index + 1, segments.length * 2));
+    }
+    MappedByteBuffer segment = segments[index];
+    if (segment == null) {
+      long position = HEADER_BYTES + index * SEGMENT_BYTES;
+      segment = channel.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_BYTES);
+      segment.order(ByteOrder.LITTLE_ENDIAN);
+      segments[index] = segment;
+    }
+    return segment;
+  }
+}
@@ -0,0 +1,101 @@
+package com.kynesis;
+
+// Union of dirty cell rectangles, kept as at most MAX_RECTS rectangles with inclusive bounds. An
+// added rectangle absorbs every rectangle whose bounding box with it covers no more cells than the
+// two do separately, which merges overlapping and adjacent edits such as the steps of a brush
+// stroke; a full set merges the pair that wastes the fewest cells. Rectangles are stored in
+// parallel arrays so recording an edit never allocates.
+final class DirtyRegion {
+  private static final int MAX_RECTS = 16;
+
+  private final int[] minColumns = new int[MAX_RECTS];
+  private final int[] minRows = new int[MAX_RECTS];
+  private final int[] maxColumns = new int[MAX_RECTS];
+  private final int[] maxRows = new int[MAX_RECTS];
+  private int count;
+
+  void add(int minColumn, int minRow, int maxColumn, int maxRow) {
+    if (minColumn > maxColumn || minRow > maxRow) {
+      return;
+    }
+    boolean merged = true;
+    while (merged) {
+      merged = false;
+      double area = area(minColumn, minRow, maxColumn, maxRow);
+      int best = -1;
+      double bestWaste = Double.MAX_VALUE;
+      for (int i = 0; i < count; i++) {
+        double union =
+            area(
+                Math.min(minColumn, minColumns[i]),
+                Math.min(minRow, minRows[i]),
+                Math.max(maxColumn, maxColumns[i]),
+                Math.max(maxRow, maxRows[i]));
+        double waste =
+            union - area - area(minColumns[i], minRows[i], maxColumns[i], maxRows[i]);
+        if (waste <= 0 || (count == MAX_RECTS && waste < bestWaste)) {
+          best = i;
+          bestWaste = waste;
+          if (waste <= 0) {
+            break;
+          }
+        }
+      }
+      if (best >= 0) {
+        // The union may now reach rectangles it didn't before, so look again
+        minColumn = Math.min(minColumn, minColumns[best]);
+        minRow = Math.min(minRow, minRows[best]);
+        maxColumn = Math.max(maxColumn, maxColumns[best]);
+        maxRow = Math.max(maxRow, maxRows[best]);
+        remove(best);
+        merged = true;
+      }
+    }
+    minColumns[count] = minColumn;
+    minRows[count] = minRow;
+    maxColumns[count] = maxColumn;
+    maxRows[count] = maxRow;
+    count++;
+  }
+
+  void clear() {
+    count = 0;
+  }
+
+  boolean isEmpty() {
+    return count == 0;
+  }
+
+  int count() {
+    return count;
+  }
+
+  int minColumn(int i) {
+    return minColumns[i];
+  }
+
+  int minRow(int i) {
+    return minRows[i];
+  }
+
+  int maxColumn(int i) {
+    return maxColumns[i];
+  }
+
+  int maxRow(int i) {
+    return maxRows[i];
+  }
+
+  private void remove(int i) {
+    count--;
+    minColumns[i] = minColumns[count];
+    minRows[i] = minRows[count];
+    maxColumns[i] = maxColumns[count];
+    maxRows[i] = maxRows[count];
+  }
+
+  // In double, as the product of two int spans overflows a long
+  private static double area(int minColumn, int minRow, int maxColumn, int maxRow) {
+    return ((double) maxColumn - minColumn + 1) * ((double) maxRow - minRow + 1);
+  }
+}
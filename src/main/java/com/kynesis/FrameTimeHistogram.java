@@ -0,0 +1,85 @@
+package com.kynesis;
+
+import java.util.Arrays;
+
+// Fixed-size log-linear histogram of durations in nanoseconds, after HdrHistogram: values are
+// counted in buckets whose width grows with the value, keeping every recorded value within about
+// 3% of its bucket. Recording is a few shifts and an array increment and never allocates.
+final class FrameTimeHistogram {
+  // 2^SUB_BUCKET_BITS buckets per power of two sets the relative precision
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  // Durations are clamped to 2^40 ns, about 18 minutes
+  private static final int MAX_BITS = 40;
+  private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+
+  private final long[] counts = new long[(MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+  private long count;
+  private long total;
+  private long max;
+
+  void record(long nanos) {
+    long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+    counts[index(value)]++;
+    count++;
+    total += value;
+    max = Math.max(max, value);
+  }
+
+  void reset() {
+    Arrays.fill(counts, 0);
+    count = 0;
+    total = 0;
+    max = 0;
+  }
+
+  long getCount() {
+    return count;
+  }
+
+  long getMax() {
+    return max;
+  }
+
+  double getMean() {
+    return count == 0 ? 0 : (double) total / count;
+  }
+
+  // Smallest recorded value, to bucket precision, that at least the given percentage of all
+  // values don't exceed; 0 when nothing was recorded
+  long getValueAtPercentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(highestEquivalent(i), max);
+      }
+    }
+    return max;
+  }
+
+  // Values below SUB_BUCKETS get a bucket each; above that, every power of two is split into
+  // SUB_BUCKETS buckets
+  private static int index(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+
+  // Largest value that falls into the bucket
+  private static long highestEquivalent(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long mantissa = index % SUB_BUCKETS + SUB_BUCKETS;
+    return ((mantissa + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,256 @@
+package com.kynesis;
+
+import java.util.Arrays;
+
+// Square block of GridModel cells. Values are kept in a short[] while they all fit in 16 bits and
+// promoted to an int[] on the first wider value.
+public final class GridChunk {
+  // Approximate JVM object and array header sizes used for memory reporting
+  private static final int OBJECT_OVERHEAD = 32;
+  private static final int ARRAY_OVERHEAD = 16;
+
+  private final int chunkX;
+  private final int chunkY;
+
+  private short[] shorts;
+  private int[] ints;
+
+  // Number of non-empty cells
+  private int cellCount;
+
+  // Persistence state for store-backed models: the chunk's slot in the store, whether it changed
+  // since it was last written there, and the CLOCK reference bit used for eviction
+  int slot = -1;
+  boolean dirty;
+  boolean referenced;
+
+  GridChunk(int chunkX, int chunkY) {
+    this.chunkX = chunkX;
+    this.chunkY = chunkY;
+    this.shorts = new short[GridModel.CHUNK_SIZE * GridModel.CHUNK_SIZE];
+  }
+
+  public int getChunkX() {
+    return chunkX;
+  }
+
+  public int getChunkY() {
+    return chunkY;
+  }
+
+  // Value of the cell at the given column and row inside the chunk
+  public int get(int localColumn, int localRow) {
+    return get(localRow << GridModel.CHUNK_SHIFT | localColumn);
+  }
+
+  public int getCellCount() {
+    return cellCount;
+  }
+
+  public boolean isEmpty() {
+    return cellCount == 0;
+  }
+
+  // Whether the chunk still uses 16-bit storage
+  public boolean isCompact() {
+    return ints == null;
+  }
+
+  public long getMemoryUsage() {
+    long arrayBytes = ints != null ? 4L * ints.length : 2L * shorts.length;
+    return OBJECT_OVERHEAD + ARRAY_OVERHEAD + arrayBytes;
+  }
+
+  int get(int index) {
+    return ints != null ? ints[index] : shorts[index];
+  }
+
+  // Stores a value and returns the previous one
+  int set(int index, int value) {
+    int old;
+    if (ints != null) {
+      old = ints[index];
+      ints[index] = value;
+    } else if (value == (short) value) {
+      old = shorts[index];
+      shorts[index] = (short) value;
+    } else {
+      promote();
+      old = ints[index];
+      ints[index] = value;
+    }
+
+    if (old == 0 && value != 0) {
+      cellCount++;
+    } else if (old != 0 && value == 0) {
+      cellCount--;
+    }
+    return old;
+  }
+
+  // Sets the cells of the local inclusive rectangle to value; returns whether any cell changed
+  boolean fill(int minColumn, int minRow, int maxColumn, int maxRow, int value) {
+    if (ints == null && value != (short) value) {
+      promote();
+    }
+    boolean changed = false;
+    for (int row = minRow; row <= maxRow; row++) {
+      int from = row << GridModel.CHUNK_SHIFT | minColumn;
+      changed |= fillSpan(from, from + maxColumn - minColumn + 1, value);
+    }
+    return changed;
+  }
+
+  // Writes (length, value) runs over the local inclusive rectangle in row-major order, wrapping
+  // from the end of one of its rows to the start of the next; returns whether any cell changed
+  boolean fillRuns(
+      int minColumn, int minRow, int maxColumn, int maxRow, int[] runs, int offset, int runCount) {
+    for (int i = 0; i < runCount && ints == null; i++) {
+      int value = runs[offset + 2 * i + 1];
+      if (value != (short) value) {
+        promote();
+      }
+    }
+    boolean changed = false;
+    int column = minColumn;
+    int row = minRow;
+    for (int i = 0; i < runCount; i++) {
+      int length = runs[offset + 2 * i];
+      int value = runs[offset + 2 * i + 1];
+      while (length > 0) {
+        int span = Math.min(length, maxColumn - column + 1);
+        int from = row << GridModel.CHUNK_SHIFT | column;
+        changed |= fillSpan(from, from + span, value);
+        length -= span;
+        column += span;
+        if (column > maxColumn) {
+          column = minColumn;
+          row++;
+        }
+      }
+    }
+    return changed;
+  }
+
+  // Copies length cells of one row of source, starting at sourceIndex, to index; a null source
+  // stands for empty cells. Returns whether any cell changed.
+  boolean copyFrom(GridChunk source, int sourceIndex, int index, int length) {
+    if (source == null) {
+      return fillSpan(index, index + length, 0);
+    }
+    if (ints == null && source.ints != null) {
+      for (int i = sourceIndex; i < sourceIndex + length; i++) {
+        if (source.ints[i] != (short) source.ints[i]) {
+          promote();
+          break;
+        }
+      }
+    }
+    boolean changed = false;
+    int delta = 0;
+    for (int i = 0; i < length; i++) {
+      int old = get(index + i);
+      int value = source.get(sourceIndex + i);
+      changed |= old != value;
+      delta += (value != 0 ? 1 : 0) - (old != 0 ? 1 : 0);
+    }
+    if (!changed) {
+      return false;
+    }
+    if (ints != null && source.ints != null) {
+      System.arraycopy(source.ints, sourceIndex, ints, index, length);
+    } else if (ints == null && source.ints == null) {
+      System.arraycopy(source.shorts, sourceIndex, shorts, index, length);
+    } else if (ints != null) {
+      for (int i = 0; i < length; i++) {
+        ints[index + i] = source.shorts[sourceIndex + i];
+      }
+    } else {
+      for (int i = 0; i < length; i++) {
+        shorts[index + i] = (short) source.ints[sourceIndex + i];
+      }
+    }
+    cellCount += delta;
+    return true;
+  }
+
+  // Sets cells from (inclusive) to to (exclusive) of a single row, in storage wide enough for value
+  private boolean fillSpan(int from, int to, int value) {
+    boolean changed = false;
+    int occupied = 0;
+    if (ints != null) {
+      for (int i = from; i < to; i++) {
+        int old = ints[i];
+        changed |= old != value;
+        occupied += old != 0 ? 1 : 0;
+      }
+      Arrays.fill(ints, from, to, value);
+    } else {
+      for (int i = from; i < to; i++) {
+        short old = shorts[i];
+        changed |= old != value;
+        occupied += old != 0 ? 1 : 0;
+      }
+      Arrays.fill(shorts, from, to, (short) value);
+    }
+    cellCount += (value != 0 ? to - from : 0) - occupied;
+    return changed;
+  }
+
+  // Replaces all cells, choosing compact storage when the values allow it
+  void load(int[] values) {
+    boolean compact = true;
+    int cells = 0;
+    for (int value : values) {
+      compact &= value == (short) value;
+      if (value != 0) {
+        cells++;
+      }
+    }
+    if (compact) {
+      ints = null;
+      if (shorts == null) {
+        shorts = new short[values.length];
+      }
+      for (int i = 0; i < values.length; i++) {
+        shorts[i] = (short) values[i];
+      }
+    } else {
+      ints = values.clone();
+      shorts = null;
+    }
+    cellCount = cells;
+  }
+
+  void copyTo(int[] values) {
+    if (ints != null) {
+      System.arraycopy(ints, 0, values, 0, ints.length);
+    } else {
+      for (int i = 0; i < shorts.length; i++) {
+        values[i] = shorts[i];
+      }
+    }
+  }
+
+  // Detached copy of the cells, without persistence state
+  GridChunk copy() {
+    GridChunk copy = new GridChunk(chunkX, chunkY, shorts != null ? shorts.clone() : null);
+    copy.ints = ints != null ? ints.clone() : null;
+    copy.cellCount = cellCount;
+    return copy;
+  }
+
+  private GridChunk(int chunkX, int chunkY, short[] shorts) {
+    this.chunkX = chunkX;
+    this.chunkY = chunkY;
+    this.shorts = shorts;
+  }
+
+  private void promote() {
+    ints = new int[shorts.length];
+    for (int i = 0; i < shorts.length; i++) {
+      ints[i] = shorts[i];
+    }
+    shorts = null;
+  }
+}
@@ -0,0 +1,184 @@
+package com.kynesis;
+
+// Conversions between canvas and grid coordinates for one viewport. Line positions come from the
+// same GridLines arithmetic the renderers draw with, so a point snapped to a line lands exactly on
+// the drawn line and a cell hit-test agrees exactly with the drawn cell edges. Which levels are
+// drawn is decided by GridLevelLines over the whole canvas, as for a full frame. Batch forms take
+// interleaved x, y pairs, like Transform.transform2DPoints, and may work in place.
+final class GridCoordinates {
+  private final GridLevelLines levels = new GridLevelLines();
+
+  // Cell boundaries, which are also the minor lines at the style's spacing
+  private final GridLines cellColumns = new GridLines();
+  private final GridLines cellRows = new GridLines();
+
+  // Finest and coarsest levels drawn at the scale, at their spacings after level of detail
+  private final GridLines minorColumns = new GridLines();
+  private final GridLines minorRows = new GridLines();
+  private final GridLines majorColumns = new GridLines();
+  private final GridLines majorRows = new GridLines();
+
+  private double scale;
+  private double originX;
+  private double originY;
+  private boolean valid;
+
+  // Whether any level is drawn to snap to
+  private boolean snappable;
+
+  // Rebases onto a viewport of width x height canvas pixels; returns false when its scale or
+  // position is degenerate
+  boolean update(
+      GridStyle style, double scale, double originX, double originY, double width, double height) {
+    this.scale = scale;
+    this.originX = originX;
+    this.originY = originY;
+    double spacing = style.getMinorSpacing();
+    valid =
+        cellColumns.locate(originX, spacing, scale) && cellRows.locate(originY, spacing, scale);
+    snappable =
+        valid
+            && style.isShowGrid()
+            && levels.select(style, scale, originX, originY, 0, 0, width, height);
+    if (snappable) {
+      double minorSpacing = levels.lod.spacings[levels.finestDrawn()];
+      double majorSpacing = levels.lod.spacings[levels.coarsestDrawn()];
+      snappable =
+          minorColumns.locate(originX, minorSpacing, scale)
+              && minorRows.locate(originY, minorSpacing, scale)
+              && majorColumns.locate(originX, majorSpacing, scale)
+              && majorRows.locate(originY, majorSpacing, scale);
+    }
+    return valid;
+  }
+
+  double screenToGridX(double x) {
+    return valid ? originX + x / scale : Double.NaN;
+  }
+
+  double screenToGridY(double y) {
+    return valid ? originY + y / scale : Double.NaN;
+  }
+
+  double gridToScreenX(double x) {
+    return valid ? cellColumns.positionAt(x) : Double.NaN;
+  }
+
+  double gridToScreenY(double y) {
+    return valid ? cellRows.positionAt(y) : Double.NaN;
+  }
+
+  double snapToMinorX(double x) {
+    return snappable ? snap(minorColumns, x) : Double.NaN;
+  }
+
+  double snapToMinorY(double y) {
+    return snappable ? snap(minorRows, y) : Double.NaN;
+  }
+
+  double snapToMajorX(double x) {
+    return snappable ? snap(majorColumns, x) : Double.NaN;
+  }
+
+  double snapToMajorY(double y) {
+    return snappable ? snap(majorRows, y) : Double.NaN;
+  }
+
+  int cellColumnAt(double x) {
+    return cell(cellColumns, x);
+  }
+
+  int cellRowAt(double y) {
+    return cell(cellRows, y);
+  }
+
+  void screenToGrid(
+      double[] source, int sourceOffset, double[] target, int targetOffset, int count) {
+    checkRanges(source, sourceOffset, target.length, targetOffset, count);
+    for (int i = 0; i < count; i++) {
+      double x = source[sourceOffset + 2 * i];
+      double y = source[sourceOffset + 2 * i + 1];
+      target[targetOffset + 2 * i] = screenToGridX(x);
+      target[targetOffset + 2 * i + 1] = screenToGridY(y);
+    }
+  }
+
+  void gridToScreen(
+      double[] source, int sourceOffset, double[] target, int targetOffset, int count) {
+    checkRanges(source, sourceOffset, target.length, targetOffset, count);
+    for (int i = 0; i < count; i++) {
+      double x = source[sourceOffset + 2 * i];
+      double y = source[sourceOffset + 2 * i + 1];
+      target[targetOffset + 2 * i] = gridToScreenX(x);
+      target[targetOffset + 2 * i + 1] = gridToScreenY(y);
+    }
+  }
+
+  void snapToMinor(
+      double[] source, int sourceOffset, double[] target, int targetOffset, int count) {
+    snap(minorColumns, minorRows, source, sourceOffset, target, targetOffset, count);
+  }
+
+  void snapToMajor(
+      double[] source, int sourceOffset, double[] target, int targetOffset, int count) {
+    snap(majorColumns, majorRows, source, sourceOffset, target, targetOffset, count);
+  }
+
+  void cellAt(double[] source, int sourceOffset, int[] target, int targetOffset, int count) {
+    checkRanges(source, sourceOffset, target.length, targetOffset, count);
+    for (int i = 0; i < count; i++) {
+      double x = source[sourceOffset + 2 * i];
+      double y = source[sourceOffset + 2 * i + 1];
+      target[targetOffset + 2 * i] = cell(cellColumns, x);
+      target[targetOffset + 2 * i + 1] = cell(cellRows, y);
+    }
+  }
+
+  private void snap(
+      GridLines columns,
+      GridLines rows,
+      double[] source,
+      int sourceOffset,
+      double[] target,
+      int targetOffset,
+      int count) {
+    checkRanges(source, sourceOffset, target.length, targetOffset, count);
+    for (int i = 0; i < count; i++) {
+      double x = source[sourceOffset + 2 * i];
+      double y = source[sourceOffset + 2 * i + 1];
+      target[targetOffset + 2 * i] = snappable ? snap(columns, x) : Double.NaN;
+      target[targetOffset + 2 * i + 1] = snappable ? snap(rows, y) : Double.NaN;
+    }
+  }
+
+  // Drawn position of the line nearest to the canvas coordinate, the later one on a tie
+  private static double snap(GridLines lines, double pixel) {
+    long index = lines.exactIndexAt(pixel);
+    if (index == Long.MAX_VALUE || index == Long.MIN_VALUE) {
+      return Double.NaN;
+    }
+    double before = lines.positionOf(index);
+    double after = lines.positionOf(index + 1);
+    return pixel - before < after - pixel ? before : after;
+  }
+
+  private int cell(GridLines lines, double pixel) {
+    if (!valid) {
+      throw new IllegalStateException("Grid scale or position is degenerate");
+    }
+    long index = lines.exactIndexAt(pixel);
+    return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, index));
+  }
+
+  private static void checkRanges(
+      double[] source, int sourceOffset, int targetLength, int targetOffset, int count) {
+    if (count < 0
+        || sourceOffset < 0
+        || targetOffset < 0
+        || sourceOffset > source.length - 2L * count
+        || targetOffset > targetLength - 2L * count) {
+      throw new IndexOutOfBoundsException(
+          "count " + count + " at offsets " + sourceOffset + ", " + targetOffset);
+    }
+  }
+}
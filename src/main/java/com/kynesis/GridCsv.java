@@ -0,0 +1,275 @@
+package com.kynesis;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+// Plain-text bridge for tools that can't read grid files: a "column,row,value" header line, then
+// one such line per non-empty cell, written chunk by chunk. Both directions stream through small
+// reused buffers, so converting a grid file to CSV holds one chunk at a time and reading CSV into
+// a file-backed model stays within the model's memory budget.
+public final class GridCsv {
+  public static final String HEADER = "column,row,value";
+
+  private static final int BUFFER_CHARS = 1 << 16;
+
+  private GridCsv() {}
+
+  // Writes the model's non-empty cells; returns the number of cells written
+  public static long write(GridModel model, Writer out) throws IOException {
+    LineWriter writer = new LineWriter(out);
+    try {
+      model.forEachChunk(
+          chunk -> {
+            int baseColumn = chunk.getChunkX() << GridModel.CHUNK_SHIFT;
+            int baseRow = chunk.getChunkY() << GridModel.CHUNK_SHIFT;
+            for (int i = 0; i < GridFileFormat.CELLS; i++) {
+              int value = chunk.get(i);
+              if (value != 0) {
+                writer.cell(
+                    baseColumn + (i & GridModel.CHUNK_MASK),
+                    baseRow + (i >> GridModel.CHUNK_SHIFT),
+                    value);
+              }
+            }
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return writer.finish();
+  }
+
+  // Writes the non-empty cells of a grid file without loading it into a model; returns the number
+  // of cells written
+  public static long write(GridFileReader reader, Writer out) throws IOException {
+    LineWriter writer = new LineWriter(out);
+    try {
+      reader.forEachChunk(
+          (chunkX, chunkY, cells) -> {
+            int baseColumn = chunkX << GridModel.CHUNK_SHIFT;
+            int baseRow = chunkY << GridModel.CHUNK_SHIFT;
+            for (int i = 0; i < cells.length; i++) {
+              if (cells[i] != 0) {
+                writer.cell(
+                    baseColumn + (i & GridModel.CHUNK_MASK),
+                    baseRow + (i >> GridModel.CHUNK_SHIFT),
+                    cells[i]);
+              }
+            }
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return writer.finish();
+  }
+
+  // Sets the cell of every line in the model, reporting their bounds as a single change; a value
+  // of 0 empties the cell. The header line is optional and blank lines are skipped. Consecutive
+  // lines in the same chunk, as write() produces them, are applied together. The import can't be
+  // undone, so an attached journal forgets its history. Returns the number of cells read.
+  public static long read(Reader in, GridModel model) throws IOException {
+    return new LineReader(in, model).read();
+  }
+
+  // Formats lines into a char buffer that is handed to the writer whenever it fills
+  private static final class LineWriter {
+    // Longest line: two 11 character ints and a third, two commas and a newline
+    private static final int MAX_LINE = 3 * 11 + 3;
+
+    private final Writer out;
+    private final char[] buffer = new char[BUFFER_CHARS];
+    private int length;
+    private long cells;
+
+    LineWriter(Writer out) throws IOException {
+      this.out = out;
+      out.write(HEADER);
+      out.write('\n');
+    }
+
+    void cell(int column, int row, int value) {
+      if (length + MAX_LINE > buffer.length) {
+        drain();
+      }
+      putInt(column);
+      buffer[length++] = ',';
+      putInt(row);
+      buffer[length++] = ',';
+      putInt(value);
+      buffer[length++] = '\n';
+      cells++;
+    }
+
+    long finish() throws IOException {
+      out.write(buffer, 0, length);
+      length = 0;
+      out.flush();
+      return cells;
+    }
+
+    private void putInt(int value) {
+      long v = value;
+      if (v < 0) {
+        buffer[length++] = '-';
+        v = -v;
+      }
+      int digits = 1;
+      for (long limit = 10; v >= limit && digits < 10; limit *= 10) {
+        digits++;
+      }
+      for (int i = length + digits - 1; i >= length; i--) {
+        buffer[i] = (char) ('0' + v % 10);
+        v /= 10;
+      }
+      length += digits;
+    }
+
+    private void drain() {
+      try {
+        out.write(buffer, 0, length);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      length = 0;
+    }
+  }
+
+  // Parses lines straight from a char buffer and collects the cells of one chunk at a time
+  private static final class LineReader {
+    private final Reader in;
+    private final GridModel model;
+    private final char[] buffer = new char[BUFFER_CHARS];
+    private int position;
+    private int limit;
+    private long line;
+
+    // Pending cells of the current chunk, as local indices and values
+    private final int[] indices = new int[GridFileFormat.CELLS];
+    private final int[] values = new int[GridFileFormat.CELLS];
+    private int pending;
+    private int chunkX;
+    private int chunkY;
+
+    private int minColumn = Integer.MAX_VALUE;
+    private int minRow = Integer.MAX_VALUE;
+    private int maxColumn = Integer.MIN_VALUE;
+    private int maxRow = Integer.MIN_VALUE;
+
+    LineReader(Reader in, GridModel model) {
+      this.in = in;
+      this.model = model;
+    }
+
+    long read() throws IOException {
+      long cells = 0;
+      int[] fields = new int[3];
+      while (peek() >= 0) {
+        line++;
+        int c = peek();
+        if (c == '\n' || c == '\r') {
+          skipLine();
+          continue;
+        }
+        if (line == 1 && c != '-' && (c < '0' || c > '9')) {
+          skipLine();
+          continue;
+        }
+        for (int field = 0; field < 3; field++) {
+          fields[field] = parseInt();
+          c = next();
+          boolean end = c < 0 || c == '\n' || c == '\r';
+          if (field < 2 ? c != ',' : !end) {
+            throw malformed();
+          }
+          if (c == '\r' && peek() == '\n') {
+            next();
+          }
+        }
+        add(fields[0], fields[1], fields[2]);
+        cells++;
+      }
+      flush();
+      if (minColumn <= maxColumn) {
+        model.importFinished(minColumn, minRow, maxColumn, maxRow);
+      }
+      return cells;
+    }
+
+    private void add(int column, int row, int value) {
+      int x = column >> GridModel.CHUNK_SHIFT;
+      int y = row >> GridModel.CHUNK_SHIFT;
+      if (pending == indices.length || pending > 0 && (x != chunkX || y != chunkY)) {
+        flush();
+      }
+      chunkX = x;
+      chunkY = y;
+      indices[pending] = GridModel.cellIndex(column, row);
+      values[pending] = value;
+      pending++;
+      minColumn = Math.min(minColumn, column);
+      minRow = Math.min(minRow, row);
+      maxColumn = Math.max(maxColumn, column);
+      maxRow = Math.max(maxRow, row);
+    }
+
+    private void flush() {
+      if (pending > 0) {
+        model.importCells(chunkX, chunkY, indices, values, pending);
+        pending = 0;
+      }
+    }
+
+    // Optionally signed decimal int
+    private int parseInt() throws IOException {
+      boolean negative = peek() == '-';
+      if (negative) {
+        next();
+      }
+      long value = 0;
+      int digits = 0;
+      for (int c = peek(); c >= '0' && c <= '9'; c = peek()) {
+        next();
+        value = value * 10 + (c - '0');
+        if (value > 1L << 31) {
+          throw malformed();
+        }
+        digits++;
+      }
+      value = negative ? -value : value;
+      if (digits == 0 || value != (int) value) {
+        throw malformed();
+      }
+      return (int) value;
+    }
+
+    private void skipLine() throws IOException {
+      for (int c = next(); c >= 0 && c != '\n'; c = next()) {
+        // Skipped
+      }
+    }
+
+    private int peek() throws IOException {
+      if (position == limit) {
+        limit = Math.max(in.read(buffer, 0, buffer.length), 0);
+        position = 0;
+        if (limit == 0) {
+          return -1;
+        }
+      }
+      return buffer[position];
+    }
+
+    private int next() throws IOException {
+      int c = peek();
+      if (c >= 0) {
+        position++;
+      }
+      return c;
+    }
+
+    private IOException malformed() {
+      return new IOException("Malformed CSV at line " + line);
+    }
+  }
+}
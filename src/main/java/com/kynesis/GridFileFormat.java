@@ -0,0 +1,145 @@
+package com.kynesis;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Layout of the grid content files written by GridFileWriter and read by GridFileReader. All
+// values are little-endian.
+//
+//   header  magic "GRIDDATA", version, chunk size, chunk count, index offset, cell count
+//   chunks  per non-empty chunk: chunk x, chunk y, encoding, payload length, payload
+//   index   per chunk, in file order: packed chunk key, offset of the chunk's record
+//
+// A payload holds the chunk's cells in row-major order, either as raw ints or, when that is
+// shorter, as (length, value) runs of an unsigned and a zigzag varint, so empty space costs a few
+// bytes per run and a chunk with a handful of cells shrinks to a few dozen bytes. The index comes
+// last so chunks can be written as they are produced; a file whose header still has index offset
+// 0 was never finished.
+final class GridFileFormat {
+  static final long MAGIC = 0x4752494444415441L; // "GRIDDATA"
+  static final int VERSION = 1;
+
+  static final int CELLS = GridModel.CHUNK_SIZE * GridModel.CHUNK_SIZE;
+  static final int RAW_BYTES = CELLS * 4;
+
+  static final int HEADER_BYTES = 40;
+  static final int RECORD_HEADER_BYTES = 13;
+  static final int INDEX_ENTRY_BYTES = 16;
+
+  // Room for the largest record plus the run that pushes an encoding past the raw size
+  static final int MAX_RECORD_BYTES = RECORD_HEADER_BYTES + RAW_BYTES + 10;
+
+  // Header field offsets
+  static final int H_MAGIC = 0;
+  static final int H_VERSION = 8;
+  static final int H_CHUNK_SIZE = 12;
+  static final int H_CHUNK_COUNT = 16;
+  static final int H_INDEX_OFFSET = 24;
+  static final int H_CELL_COUNT = 32;
+
+  // Record field offsets
+  static final int R_CHUNK_X = 0;
+  static final int R_CHUNK_Y = 4;
+  static final int R_ENCODING = 8;
+  static final int R_LENGTH = 9;
+
+  // Payload encodings
+  static final int RAW = 0;
+  static final int RUNS = 1;
+
+  private GridFileFormat() {}
+
+  // Appends the chunk's record at the buffer's position, which needs MAX_RECORD_BYTES of room
+  static void putChunk(ByteBuffer buffer, GridChunk chunk) {
+    int start = buffer.position();
+    int payload = start + RECORD_HEADER_BYTES;
+    buffer.putInt(start + R_CHUNK_X, chunk.getChunkX());
+    buffer.putInt(start + R_CHUNK_Y, chunk.getChunkY());
+
+    // Runs are abandoned as soon as they come out longer than the raw cells
+    buffer.position(payload);
+    boolean runs = true;
+    int index = 0;
+    while (index < CELLS && runs) {
+      int value = chunk.get(index);
+      int end = index + 1;
+      while (end < CELLS && chunk.get(end) == value) {
+        end++;
+      }
+      putUnsigned(buffer, end - index);
+      putSigned(buffer, value);
+      runs = buffer.position() - payload < RAW_BYTES;
+      index = end;
+    }
+    if (!runs) {
+      buffer.position(payload);
+      for (int i = 0; i < CELLS; i++) {
+        buffer.putInt(chunk.get(i));
+      }
+    }
+    buffer.put(start + R_ENCODING, (byte) (runs ? RUNS : RAW));
+    buffer.putInt(start + R_LENGTH, buffer.position() - payload);
+  }
+
+  // Decodes a payload of the given encoding and length, starting at the buffer's position, into
+  // cells
+  static void getCells(ByteBuffer buffer, int encoding, int length, int[] cells)
+      throws IOException {
+    int end = buffer.position() + length;
+    if (encoding == RAW && length == RAW_BYTES) {
+      buffer.asIntBuffer().get(cells);
+      buffer.position(end);
+      return;
+    }
+    if (encoding != RUNS) {
+      throw new IOException("Unknown chunk encoding " + encoding);
+    }
+    int index = 0;
+    while (index < CELLS && buffer.position() < end) {
+      int run = getUnsigned(buffer);
+      int value = getSigned(buffer);
+      if (run <= 0 || run > CELLS - index) {
+        throw new IOException("Corrupt chunk runs");
+      }
+      for (int i = index; i < index + run; i++) {
+        cells[i] = value;
+      }
+      index += run;
+    }
+    if (index != CELLS || buffer.position() != end) {
+      throw new IOException("Corrupt chunk runs");
+    }
+  }
+
+  static void putUnsigned(ByteBuffer buffer, int value) {
+    while ((value & ~0x7F) != 0) {
+      buffer.put((byte) (value & 0x7F | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  static void putSigned(ByteBuffer buffer, int value) {
+    putUnsigned(buffer, value << 1 ^ value >> 31);
+  }
+
+  static int getUnsigned(ByteBuffer buffer) throws IOException {
+    int value = 0;
+    int shift = 0;
+    int b;
+    do {
+      if (shift > 28) {
+        throw new IOException("Corrupt varint");
+      }
+      b = buffer.get();
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    return value;
+  }
+
+  static int getSigned(ByteBuffer buffer) throws IOException {
+    int value = getUnsigned(buffer);
+    return value >>> 1 ^ -(value & 1);
+  }
+}
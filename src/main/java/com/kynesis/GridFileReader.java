@@ -0,0 +1,255 @@
+package com.kynesis;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Streams grid content out of a file written by GridFileWriter, one chunk at a time. Opening reads
+// the header and the chunk index; records are then read through a reused direct buffer in file
+// order, so a full pass reads the file sequentially in large blocks, and a region is found in the
+// index and read without touching the chunks outside it. Memory stays at the buffer plus 16 bytes
+// of index per chunk however large the file is.
+public final class GridFileReader implements Closeable {
+  private static final int BUFFER_BYTES = 1 << 20;
+
+  // Receives each decoded chunk; the cell array is reused for the next one
+  public interface ChunkVisitor {
+    void visit(int chunkX, int chunkY, int[] cells) throws IOException;
+  }
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer =
+      ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+  // File offset of the buffer's first byte; the buffer's limit marks the bytes read
+  private long bufferStart;
+
+  // Key and record offset of every chunk, in file order
+  private final long[] keys;
+  private final long[] offsets;
+  private final long cellCount;
+
+  private final int[] cells = new int[GridFileFormat.CELLS];
+  private int[] runs = new int[64];
+
+  private GridFileReader(FileChannel channel) throws IOException {
+    this.channel = channel;
+    buffer.limit(0);
+    fill(0, GridFileFormat.HEADER_BYTES);
+    if (buffer.getLong(GridFileFormat.H_MAGIC) != GridFileFormat.MAGIC) {
+      throw new IOException("Not a grid file");
+    }
+    if (buffer.getInt(GridFileFormat.H_VERSION) != GridFileFormat.VERSION
+        || buffer.getInt(GridFileFormat.H_CHUNK_SIZE) != GridModel.CHUNK_SIZE) {
+      throw new IOException("Unsupported grid file version");
+    }
+    int chunkCount = buffer.getInt(GridFileFormat.H_CHUNK_COUNT);
+    long indexOffset = buffer.getLong(GridFileFormat.H_INDEX_OFFSET);
+    cellCount = buffer.getLong(GridFileFormat.H_CELL_COUNT);
+    if (indexOffset == 0) {
+      throw new IOException("Unfinished grid file");
+    }
+    if (chunkCount < 0
+        || indexOffset < GridFileFormat.HEADER_BYTES
+        || indexOffset + (long) chunkCount * GridFileFormat.INDEX_ENTRY_BYTES > channel.size()) {
+      throw new IOException("Corrupt grid file header");
+    }
+
+    keys = new long[chunkCount];
+    offsets = new long[chunkCount];
+    for (int i = 0; i < chunkCount; i++) {
+      long entry = indexOffset + (long) i * GridFileFormat.INDEX_ENTRY_BYTES;
+      fill(entry, GridFileFormat.INDEX_ENTRY_BYTES);
+      int at = (int) (entry - bufferStart);
+      keys[i] = buffer.getLong(at);
+      offsets[i] = buffer.getLong(at + 8);
+      if (offsets[i] < GridFileFormat.HEADER_BYTES || offsets[i] >= indexOffset) {
+        throw new IOException("Corrupt grid file index");
+      }
+    }
+  }
+
+  public static GridFileReader open(Path file) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      return new GridFileReader(channel);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  // Reads the whole file into a model; see readInto()
+  public static void read(Path file, GridModel model) throws IOException {
+    try (GridFileReader reader = open(file)) {
+      reader.readInto(model);
+    }
+  }
+
+  public int getChunkCount() {
+    return keys.length;
+  }
+
+  public long getCellCount() {
+    return cellCount;
+  }
+
+  // Decodes every chunk in file order
+  public void forEachChunk(ChunkVisitor visitor) throws IOException {
+    for (int i = 0; i < keys.length; i++) {
+      visitChunk(i, visitor);
+    }
+  }
+
+  // Decodes the chunks overlapping the inclusive cell rectangle, in file order
+  public void forEachChunk(
+      int minColumn, int minRow, int maxColumn, int maxRow, ChunkVisitor visitor)
+      throws IOException {
+    int minChunkX = minColumn >> GridModel.CHUNK_SHIFT;
+    int minChunkY = minRow >> GridModel.CHUNK_SHIFT;
+    int maxChunkX = maxColumn >> GridModel.CHUNK_SHIFT;
+    int maxChunkY = maxRow >> GridModel.CHUNK_SHIFT;
+    for (int i = 0; i < keys.length; i++) {
+      int chunkX = GridModel.chunkX(keys[i]);
+      int chunkY = GridModel.chunkY(keys[i]);
+      if (chunkX >= minChunkX
+          && chunkX <= maxChunkX
+          && chunkY >= minChunkY
+          && chunkY <= maxChunkY) {
+        visitChunk(i, visitor);
+      }
+    }
+  }
+
+  // Writes every cell of the file into the model, replacing what the chunks it covers held and
+  // reporting their bounds as a single change. A file-backed model stays within its memory
+  // budget. The import can't be undone, so an attached journal forgets its history.
+  public void readInto(GridModel model) throws IOException {
+    readInto(model, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+  }
+
+  // Writes the cells of the file inside the inclusive rectangle into the model, replacing what
+  // the stored chunks' part of the rectangle held; cells outside the rectangle are left alone
+  public void readInto(GridModel model, int minColumn, int minRow, int maxColumn, int maxRow)
+      throws IOException {
+    if (minColumn > maxColumn || minRow > maxRow) {
+      return;
+    }
+    int[] bounds = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+    forEachChunk(
+        minColumn,
+        minRow,
+        maxColumn,
+        maxRow,
+        (chunkX, chunkY, chunkCells) -> {
+          int baseColumn = chunkX << GridModel.CHUNK_SHIFT;
+          int baseRow = chunkY << GridModel.CHUNK_SHIFT;
+          int fromColumn = (int) Math.max((long) minColumn - baseColumn, 0);
+          int fromRow = (int) Math.max((long) minRow - baseRow, 0);
+          int toColumn = (int) Math.min((long) maxColumn - baseColumn, GridModel.CHUNK_MASK);
+          int toRow = (int) Math.min((long) maxRow - baseRow, GridModel.CHUNK_MASK);
+          if (fromColumn == 0
+              && fromRow == 0
+              && toColumn == GridModel.CHUNK_MASK
+              && toRow == GridModel.CHUNK_MASK) {
+            model.importChunk(chunkX, chunkY, chunkCells);
+          } else {
+            int runCount = runs(chunkCells, fromColumn, fromRow, toColumn, toRow);
+            model.restoreChunk(
+                chunkX, chunkY, fromColumn, fromRow, toColumn, toRow, runs, 0, runCount);
+          }
+          bounds[0] = Math.min(bounds[0], baseColumn + fromColumn);
+          bounds[1] = Math.min(bounds[1], baseRow + fromRow);
+          bounds[2] = Math.max(bounds[2], baseColumn + toColumn);
+          bounds[3] = Math.max(bounds[3], baseRow + toRow);
+        });
+    if (bounds[0] <= bounds[2]) {
+      model.importFinished(bounds[0], bounds[1], bounds[2], bounds[3]);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private void visitChunk(int i, ChunkVisitor visitor) throws IOException {
+    long offset = offsets[i];
+    fill(offset, GridFileFormat.RECORD_HEADER_BYTES);
+    int at = (int) (offset - bufferStart);
+    int chunkX = buffer.getInt(at + GridFileFormat.R_CHUNK_X);
+    int chunkY = buffer.getInt(at + GridFileFormat.R_CHUNK_Y);
+    int encoding = buffer.get(at + GridFileFormat.R_ENCODING);
+    int length = buffer.getInt(at + GridFileFormat.R_LENGTH);
+    if (GridModel.chunkKey(chunkX, chunkY) != keys[i]
+        || length <= 0
+        || length > GridFileFormat.RAW_BYTES) {
+      throw new IOException("Corrupt chunk record at " + offset);
+    }
+
+    fill(offset, GridFileFormat.RECORD_HEADER_BYTES + length);
+    buffer.position((int) (offset - bufferStart) + GridFileFormat.RECORD_HEADER_BYTES);
+    try {
+      GridFileFormat.getCells(buffer, encoding, length, cells);
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Corrupt chunk record at " + offset, e);
+    }
+    visitor.visit(chunkX, chunkY, cells);
+  }
+
+  // (length, value) runs over the local inclusive rectangle of a chunk's cells in row-major order,
+  // as GridModel.restoreChunk() takes them; returns the run count
+  private int runs(int[] chunkCells, int fromColumn, int fromRow, int toColumn, int toRow) {
+    int runCount = 0;
+    int value = 0;
+    int length = 0;
+    for (int row = fromRow; row <= toRow; row++) {
+      int rowStart = row << GridModel.CHUNK_SHIFT;
+      for (int column = fromColumn; column <= toColumn; column++) {
+        int cell = chunkCells[rowStart | column];
+        if (length > 0 && cell == value) {
+          length++;
+          continue;
+        }
+        if (length > 0) {
+          runCount = addRun(runCount, length, value);
+        }
+        value = cell;
+        length = 1;
+      }
+    }
+    return addRun(runCount, length, value);
+  }
+
+  private int addRun(int runCount, int length, int value) {
+    if (2 * runCount + 2 > runs.length) {
+      runs = Arrays.copyOf(runs, runs.length * 2);
+    }
+    runs[2 * runCount] = length;
+    runs[2 * runCount + 1] = value;
+    return runCount + 1;
+  }
+
+  // Makes sure the bytes [offset, offset + length) of the file are in the buffer, refilling it
+  // from offset with as much of the file as fits when they aren't
+  private void fill(long offset, int length) throws IOException {
+    if (offset >= bufferStart && offset + length <= bufferStart + buffer.limit()) {
+      return;
+    }
+    buffer.clear();
+    bufferStart = offset;
+    while (buffer.position() < length) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new EOFException("Truncated grid file");
+      }
+    }
+    buffer.flip();
+  }
+}
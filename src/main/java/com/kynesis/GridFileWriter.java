@@ -0,0 +1,146 @@
+package com.kynesis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Streams grid content to a file in the GridFileFormat layout, one chunk at a time. Records are
+// encoded into a reused direct buffer that is written out whenever it fills, so memory stays at
+// the buffer plus 16 bytes of index per chunk however large the file grows. The index and header
+// are written by close(); a file that wasn't closed is rejected by GridFileReader.
+public final class GridFileWriter implements Closeable {
+  private static final int BUFFER_BYTES = 1 << 20;
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer =
+      ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+  // File offset of the buffer's first byte
+  private long bufferStart;
+
+  // Key and record offset of every chunk written, in file order
+  private long[] keys = new long[256];
+  private long[] offsets = new long[256];
+  private int chunkCount;
+  private long cellCount;
+  private boolean closed;
+
+  private GridFileWriter(FileChannel channel) {
+    this.channel = channel;
+    // The header is rewritten with its final values on close; until then its index offset of 0
+    // marks the file as unfinished
+    buffer.putLong(GridFileFormat.H_MAGIC, GridFileFormat.MAGIC);
+    buffer.putInt(GridFileFormat.H_VERSION, GridFileFormat.VERSION);
+    buffer.putInt(GridFileFormat.H_CHUNK_SIZE, GridModel.CHUNK_SIZE);
+    buffer.position(GridFileFormat.HEADER_BYTES);
+  }
+
+  // Creates the file, replacing any existing one
+  public static GridFileWriter create(Path file) throws IOException {
+    return new GridFileWriter(
+        FileChannel.open(
+            file,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING));
+  }
+
+  // Writes all of the model's content to the file. A file-backed model is streamed through its
+  // memory budget like any other visit of its chunks.
+  public static void write(GridModel model, Path file) throws IOException {
+    try (GridFileWriter writer = create(file)) {
+      model.forEachChunk(
+          chunk -> {
+            try {
+              writer.writeChunk(chunk);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  // Appends one chunk; empty chunks are skipped. Each chunk should be written at most once, as
+  // readers apply records in file order and a later copy would replace an earlier one.
+  public void writeChunk(GridChunk chunk) throws IOException {
+    if (closed) {
+      throw new IOException("Writer is closed");
+    }
+    if (chunk.isEmpty()) {
+      return;
+    }
+    if (buffer.remaining() < GridFileFormat.MAX_RECORD_BYTES) {
+      drain();
+    }
+    if (chunkCount == keys.length) {
+      keys = Arrays.copyOf(keys, chunkCount * 2);
+      offsets = Arrays.copyOf(offsets, chunkCount * 2);
+    }
+    keys[chunkCount] = GridModel.chunkKey(chunk.getChunkX(), chunk.getChunkY());
+    offsets[chunkCount] = bufferStart + buffer.position();
+    chunkCount++;
+    cellCount += chunk.getCellCount();
+    GridFileFormat.putChunk(buffer, chunk);
+  }
+
+  public int getChunkCount() {
+    return chunkCount;
+  }
+
+  public long getCellCount() {
+    return cellCount;
+  }
+
+  // Writes the index and the header, then closes the file
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      long indexOffset = bufferStart + buffer.position();
+      for (int i = 0; i < chunkCount; i++) {
+        if (buffer.remaining() < GridFileFormat.INDEX_ENTRY_BYTES) {
+          drain();
+        }
+        buffer.putLong(keys[i]);
+        buffer.putLong(offsets[i]);
+      }
+      drain();
+
+      buffer.clear();
+      buffer.putLong(GridFileFormat.H_MAGIC, GridFileFormat.MAGIC);
+      buffer.putInt(GridFileFormat.H_VERSION, GridFileFormat.VERSION);
+      buffer.putInt(GridFileFormat.H_CHUNK_SIZE, GridModel.CHUNK_SIZE);
+      buffer.putInt(GridFileFormat.H_CHUNK_COUNT, chunkCount);
+      buffer.putLong(GridFileFormat.H_INDEX_OFFSET, indexOffset);
+      buffer.putLong(GridFileFormat.H_CELL_COUNT, cellCount);
+      buffer.limit(GridFileFormat.HEADER_BYTES);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer, buffer.position());
+      }
+    } finally {
+      channel.close();
+    }
+  }
+
+  // Writes out the buffered bytes and starts the buffer over at the end of the file
+  private void drain() throws IOException {
+    buffer.flip();
+    long position = bufferStart;
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+    bufferStart = position;
+    buffer.clear();
+  }
+}
@@ -0,0 +1,760 @@
+package com.kynesis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+
+// Undo/redo history for a GridModel. Attaching a journal makes the model report every set() and
+// fillRect() before applying it; the journal stores what changed as compact deltas grouped into
+// steps that undo() and redo() replay.
+//
+// Each step is a byte stream of entries using zigzag varints. A cell edit is its column and row
+// as a delta from the previous cell plus the old and new values, usually five bytes for a brush
+// sample. A fill is its rectangle and value followed by one entry per touched chunk holding the
+// overwritten cells as (length, value) runs, so filling empty space costs a few bytes per chunk
+// and undoing it clears whole chunks the way the fill set them. A paste stores the runs before
+// and after it wrote each chunk, and a flood fill the row spans it filled.
+//
+// Edits between beginStep() and endStep() form one step. Ungrouped single-cell edits that follow
+// each other within the coalesce window are merged into one step as well, so a brush stroke
+// painted through plain set() calls still undoes at once. When the history outgrows the memory
+// budget the oldest steps are dropped, or written to a temporary file if spilling is enabled.
+//
+// Like the model, a journal is not thread-safe and must be used from the thread editing it.
+public final class GridJournal implements Closeable {
+  public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+
+  // Approximate JVM footprint of a step without its data
+  private static final int STEP_OVERHEAD = 64;
+
+  // Entry tags
+  private static final int CELL = 0;
+  private static final int FILL = 1;
+  private static final int FILL_CHUNK = 2;
+  private static final int PASTE = 3;
+  private static final int PASTE_CHUNK = 4;
+  private static final int FLOOD = 5;
+
+  private final GridModel model;
+
+  // Oldest first; spilled steps are always a prefix of the undo deque
+  private final ArrayDeque<Step> undoSteps = new ArrayDeque<>();
+  private final ArrayDeque<Step> redoSteps = new ArrayDeque<>();
+
+  // Step new edits are appended to, null when the next edit starts a new one
+  private Step open;
+  private int depth;
+
+  private long coalesceWindow;
+  private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+  private long memoryUsage;
+
+  private boolean spillEnabled;
+  private FileChannel spillChannel;
+  private Path spillFile;
+  private long spillEnd;
+  private int spilledSteps;
+
+  // Replay scratch: entry offsets and the absolute cell coordinates decoded with them
+  private int[] entryOffsets = new int[64];
+  private int[] entryColumns = new int[64];
+  private int[] entryRows = new int[64];
+  private int[] runs = new int[2 * ChunkStore.CELLS];
+  private int[] spans = new int[48];
+
+  // Union of the rectangles a replay changed without the model reporting them
+  private int dirtyMinColumn;
+  private int dirtyMinRow;
+  private int dirtyMaxColumn;
+  private int dirtyMaxRow;
+  private boolean dirty;
+
+  public GridJournal(GridModel model) {
+    if (model.journal != null) {
+      throw new IllegalStateException("Model already has a journal");
+    }
+    this.model = model;
+    model.journal = this;
+  }
+
+  public GridModel getModel() {
+    return model;
+  }
+
+  // Groups the edits up to the matching endStep() into one undo step. Calls may nest.
+  public void beginStep() {
+    if (depth++ == 0) {
+      open = null;
+    }
+  }
+
+  public void endStep() {
+    if (depth == 0) {
+      throw new IllegalStateException("No step in progress");
+    }
+    if (--depth == 0) {
+      open = null;
+      enforceBudget();
+    }
+  }
+
+  public boolean canUndo() {
+    return !undoSteps.isEmpty();
+  }
+
+  public boolean canRedo() {
+    return !redoSteps.isEmpty();
+  }
+
+  public int getUndoCount() {
+    return undoSteps.size();
+  }
+
+  public int getRedoCount() {
+    return redoSteps.size();
+  }
+
+  // Reverts the most recent step; returns false if there is none
+  public boolean undo() {
+    checkIdle();
+    open = null;
+    Step step = undoSteps.pollLast();
+    if (step == null) {
+      return false;
+    }
+    if (step.spillOffset >= 0) {
+      load(step);
+    } else {
+      memoryUsage -= step.memoryUsage();
+    }
+    replay(step, true);
+    redoSteps.addLast(step);
+    memoryUsage += step.memoryUsage();
+    return true;
+  }
+
+  // Reapplies the most recently undone step; returns false if there is none
+  public boolean redo() {
+    checkIdle();
+    open = null;
+    Step step = redoSteps.pollLast();
+    if (step == null) {
+      return false;
+    }
+    replay(step, false);
+    undoSteps.addLast(step);
+    enforceBudget();
+    return true;
+  }
+
+  // Forgets all steps
+  public void clear() {
+    undoSteps.clear();
+    redoSteps.clear();
+    open = null;
+    memoryUsage = 0;
+    spilledSteps = 0;
+    spillEnd = 0;
+  }
+
+  // Bytes held in memory by the history, excluding spilled steps
+  public long getMemoryUsage() {
+    return memoryUsage;
+  }
+
+  // Bytes of history written to the spill file
+  public long getSpilledBytes() {
+    return spillEnd;
+  }
+
+  public long getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  // Bytes of history kept in memory before the oldest steps are dropped or spilled. The step
+  // being recorded is never removed, so a single larger step may exceed the budget.
+  public void setMemoryBudget(long bytes) {
+    if (bytes < 0) {
+      throw new IllegalArgumentException("Negative memory budget " + bytes);
+    }
+    memoryBudget = bytes;
+    enforceBudget();
+  }
+
+  public boolean isSpillEnabled() {
+    return spillEnabled;
+  }
+
+  // Whether steps over the budget go to a temporary file rather than being dropped
+  public void setSpillEnabled(boolean enabled) {
+    spillEnabled = enabled;
+  }
+
+  // Milliseconds within which ungrouped single-cell edits join the previous step; 0 disables it
+  public long getCoalesceWindow() {
+    return coalesceWindow / 1_000_000;
+  }
+
+  public void setCoalesceWindow(long millis) {
+    if (millis < 0) {
+      throw new IllegalArgumentException("Negative coalesce window " + millis);
+    }
+    coalesceWindow = millis * 1_000_000;
+    if (depth == 0) {
+      open = null;
+    }
+  }
+
+  // Detaches from the model and deletes the spill file
+  @Override
+  public void close() throws IOException {
+    if (model.journal == this) {
+      model.journal = null;
+    }
+    clear();
+    if (spillChannel != null) {
+      spillChannel.close();
+      spillChannel = null;
+      Files.deleteIfExists(spillFile);
+    }
+  }
+
+  // Recording, called by the model
+
+  void recordCell(int column, int row, int oldValue, int newValue) {
+    long now = System.nanoTime();
+    Step step = open;
+    if (step == null
+        || depth == 0 && (!step.coalescing || now - step.lastEdit > coalesceWindow)) {
+      step = start();
+      step.coalescing = depth == 0 && coalesceWindow > 0;
+    }
+    step.lastEdit = now;
+    long before = step.memoryUsage();
+    step.writeByte(CELL);
+    step.writeSigned(column - step.lastColumn);
+    step.writeSigned(row - step.lastRow);
+    step.writeSigned(oldValue);
+    step.writeSigned(newValue);
+    step.lastColumn = column;
+    step.lastRow = row;
+    memoryUsage += step.memoryUsage() - before;
+    if (depth == 0) {
+      enforceBudget();
+    }
+  }
+
+  void beginFill(int minColumn, int minRow, int maxColumn, int maxRow, int value) {
+    Step step = depth > 0 && open != null ? open : start();
+    step.fillValue = value;
+    step.pasting = false;
+    long before = step.memoryUsage();
+    step.writeByte(FILL);
+    step.writeSigned(minColumn);
+    step.writeSigned(minRow);
+    step.writeSigned(maxColumn);
+    step.writeSigned(maxRow);
+    step.writeSigned(value);
+    memoryUsage += step.memoryUsage() - before;
+  }
+
+  void beginPaste(int minColumn, int minRow, int maxColumn, int maxRow) {
+    Step step = depth > 0 && open != null ? open : start();
+    step.pasting = true;
+    long before = step.memoryUsage();
+    step.writeByte(PASTE);
+    step.writeSigned(minColumn);
+    step.writeSigned(minRow);
+    step.writeSigned(maxColumn);
+    step.writeSigned(maxRow);
+    memoryUsage += step.memoryUsage() - before;
+  }
+
+  void endPaste() {
+    endFill();
+  }
+
+  // Stores the cells of a chunk's local rectangle that the current fill or paste is about to
+  // overwrite. A fill needs no entry for chunks that are missing or already hold only its value.
+  void captureChunk(
+      int chunkX, int chunkY, GridChunk chunk, int fromColumn, int fromRow, int toColumn, int toRow) {
+    if (chunk == null && !open.pasting) {
+      return;
+    }
+    writeChunk(FILL_CHUNK, chunkX, chunkY, chunk, fromColumn, fromRow, toColumn, toRow);
+  }
+
+  // Stores the cells of a chunk's local rectangle as the current paste left them
+  void capturePasted(
+      int chunkX, int chunkY, GridChunk chunk, int fromColumn, int fromRow, int toColumn, int toRow) {
+    writeChunk(PASTE_CHUNK, chunkX, chunkY, chunk, fromColumn, fromRow, toColumn, toRow);
+  }
+
+  // Records the (row, minColumn, maxColumn) spans a flood fill changed from oldValue to newValue
+  void recordSpans(
+      int[] spans,
+      int count,
+      int oldValue,
+      int newValue,
+      int minColumn,
+      int minRow,
+      int maxColumn,
+      int maxRow) {
+    Step step = depth > 0 && open != null ? open : start();
+    long before = step.memoryUsage();
+    step.writeByte(FLOOD);
+    step.writeSigned(oldValue);
+    step.writeSigned(newValue);
+    step.writeSigned(minColumn);
+    step.writeSigned(minRow);
+    step.writeSigned(maxColumn);
+    step.writeSigned(maxRow);
+    step.writeUnsigned(count);
+    int row = 0;
+    int column = 0;
+    for (int i = 0; i < 3 * count; i += 3) {
+      step.writeSigned(spans[i] - row);
+      step.writeSigned(spans[i + 1] - column);
+      step.writeUnsigned(spans[i + 2] - spans[i + 1]);
+      row = spans[i];
+      column = spans[i + 1];
+    }
+    memoryUsage += step.memoryUsage() - before;
+    endFill();
+  }
+
+  private void writeChunk(
+      int tag,
+      int chunkX,
+      int chunkY,
+      GridChunk chunk,
+      int fromColumn,
+      int fromRow,
+      int toColumn,
+      int toRow) {
+    Step step = open;
+    long before = step.memoryUsage();
+    if (chunk == null || chunk.isEmpty()) {
+      if (tag == FILL_CHUNK && !step.pasting && step.fillValue == 0) {
+        return;
+      }
+      step.writeByte(tag);
+      step.writeSigned(chunkX);
+      step.writeSigned(chunkY);
+      step.writeByte(fromColumn);
+      step.writeByte(fromRow);
+      step.writeByte(toColumn);
+      step.writeByte(toRow);
+      step.writeUnsigned(1);
+      step.writeUnsigned((toColumn - fromColumn + 1) * (toRow - fromRow + 1));
+      step.writeSigned(0);
+      memoryUsage += step.memoryUsage() - before;
+      return;
+    }
+    int start = step.length;
+    step.writeByte(tag);
+    step.writeSigned(chunkX);
+    step.writeSigned(chunkY);
+    step.writeByte(fromColumn);
+    step.writeByte(fromRow);
+    step.writeByte(toColumn);
+    step.writeByte(toRow);
+    int countAt = step.length;
+    step.writeByte(0); // run count, patched below when it needs more bytes
+
+    int runs = 0;
+    int runValue = 0;
+    int runLength = 0;
+    int firstValue = chunk.get(fromColumn, fromRow);
+    boolean uniform = true;
+    for (int row = fromRow; row <= toRow; row++) {
+      for (int column = fromColumn; column <= toColumn; column++) {
+        int value = chunk.get(row << GridModel.CHUNK_SHIFT | column);
+        if (runLength > 0 && value == runValue) {
+          runLength++;
+          continue;
+        }
+        if (runLength > 0) {
+          step.writeUnsigned(runLength);
+          step.writeSigned(runValue);
+          runs++;
+        }
+        uniform &= value == firstValue;
+        runValue = value;
+        runLength = 1;
+      }
+    }
+    step.writeUnsigned(runLength);
+    step.writeSigned(runValue);
+    runs++;
+
+    if (tag == FILL_CHUNK && !step.pasting && uniform && runValue == step.fillValue) {
+      step.length = start;
+    } else {
+      step.insertCount(countAt, runs);
+    }
+    memoryUsage += step.memoryUsage() - before;
+  }
+
+  void endFill() {
+    if (depth == 0) {
+      open = null;
+      enforceBudget();
+    }
+  }
+
+  // Steps
+
+  private Step start() {
+    for (Step step : redoSteps) {
+      memoryUsage -= step.memoryUsage();
+    }
+    redoSteps.clear();
+    Step step = new Step();
+    undoSteps.addLast(step);
+    memoryUsage += step.memoryUsage();
+    open = step;
+    return step;
+  }
+
+  private void checkIdle() {
+    if (depth > 0) {
+      throw new IllegalStateException("Step in progress");
+    }
+  }
+
+  // Removes or spills the oldest steps until the in-memory history fits the budget
+  private void enforceBudget() {
+    while (memoryUsage > memoryBudget && undoSteps.size() - spilledSteps > 1) {
+      if (spillEnabled) {
+        Iterator<Step> steps = undoSteps.iterator();
+        Step step = steps.next();
+        for (int i = 0; i < spilledSteps; i++) {
+          step = steps.next();
+        }
+        if (step == open) {
+          return;
+        }
+        spill(step);
+      } else {
+        if (spilledSteps > 0) {
+          memoryUsage -= undoSteps.pollFirst().memoryUsage();
+          spilledSteps--;
+          continue;
+        }
+        Step step = undoSteps.peekFirst();
+        if (step == open) {
+          return;
+        }
+        undoSteps.pollFirst();
+        memoryUsage -= step.memoryUsage();
+      }
+    }
+  }
+
+  private void spill(Step step) {
+    try {
+      if (spillChannel == null) {
+        spillFile = Files.createTempFile("grid-journal", ".tmp");
+        spillFile.toFile().deleteOnExit();
+        spillChannel =
+            FileChannel.open(
+                spillFile,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+      }
+      ByteBuffer buffer = ByteBuffer.wrap(step.data, 0, step.length);
+      long position = spillEnd;
+      while (buffer.hasRemaining()) {
+        position += spillChannel.write(buffer, position);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    memoryUsage -= step.memoryUsage();
+    step.spillOffset = spillEnd;
+    spillEnd += step.length;
+    step.data = null;
+    memoryUsage += step.memoryUsage();
+    spilledSteps++;
+  }
+
+  // Reads back the newest spilled step, which sits at the end of the file
+  private void load(Step step) {
+    byte[] data = new byte[Math.max(step.length, 16)];
+    ByteBuffer buffer = ByteBuffer.wrap(data, 0, step.length);
+    try {
+      long position = step.spillOffset;
+      while (buffer.hasRemaining()) {
+        int read = spillChannel.read(buffer, position);
+        if (read < 0) {
+          throw new IOException("Truncated journal spill file");
+        }
+        position += read;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    memoryUsage -= step.memoryUsage();
+    step.data = data;
+    spillEnd = step.spillOffset;
+    step.spillOffset = -1;
+    spilledSteps--;
+  }
+
+  // Replay
+
+  // Applies a step backwards or forwards without recording it. Bulk edits are reported together
+  // once the whole step is applied.
+  private void replay(Step step, boolean undo) {
+    int entries = index(step);
+    dirty = false;
+    model.journal = null;
+    try {
+      if (undo) {
+        for (int i = entries - 1; i >= 0; i--) {
+          apply(step, i, true);
+        }
+      } else {
+        for (int i = 0; i < entries; i++) {
+          apply(step, i, false);
+        }
+      }
+    } finally {
+      model.journal = this;
+    }
+    if (dirty) {
+      model.fireCellsChanged(dirtyMinColumn, dirtyMinRow, dirtyMaxColumn, dirtyMaxRow);
+    }
+  }
+
+  private void addDirty(int minColumn, int minRow, int maxColumn, int maxRow) {
+    if (!dirty) {
+      dirtyMinColumn = minColumn;
+      dirtyMinRow = minRow;
+      dirtyMaxColumn = maxColumn;
+      dirtyMaxRow = maxRow;
+      dirty = true;
+      return;
+    }
+    dirtyMinColumn = Math.min(dirtyMinColumn, minColumn);
+    dirtyMinRow = Math.min(dirtyMinRow, minRow);
+    dirtyMaxColumn = Math.max(dirtyMaxColumn, maxColumn);
+    dirtyMaxRow = Math.max(dirtyMaxRow, maxRow);
+  }
+
+  // Records the offset of each entry, and the absolute coordinates of cell entries
+  private int index(Step step) {
+    int count = 0;
+    int column = 0;
+    int row = 0;
+    step.position = 0;
+    while (step.position < step.length) {
+      if (count == entryOffsets.length) {
+        entryOffsets = Arrays.copyOf(entryOffsets, count * 2);
+        entryColumns = Arrays.copyOf(entryColumns, count * 2);
+        entryRows = Arrays.copyOf(entryRows, count * 2);
+      }
+      entryOffsets[count] = step.position;
+      switch (step.readByte()) {
+        case CELL:
+          column += step.readSigned();
+          row += step.readSigned();
+          step.readSigned();
+          step.readSigned();
+          entryColumns[count] = column;
+          entryRows[count] = row;
+          break;
+        case FILL:
+          for (int i = 0; i < 5; i++) {
+            step.readSigned();
+          }
+          break;
+        case PASTE:
+          for (int i = 0; i < 4; i++) {
+            step.readSigned();
+          }
+          break;
+        case FLOOD:
+          for (int i = 0; i < 6; i++) {
+            step.readSigned();
+          }
+          int spanCount = step.readUnsigned();
+          for (int i = 0; i < spanCount; i++) {
+            step.readSigned();
+            step.readSigned();
+            step.readUnsigned();
+          }
+          break;
+        default:
+          step.readSigned();
+          step.readSigned();
+          step.position += 4;
+          int runs = step.readUnsigned();
+          for (int i = 0; i < runs; i++) {
+            step.readUnsigned();
+            step.readSigned();
+          }
+          break;
+      }
+      count++;
+    }
+    return count;
+  }
+
+  private void apply(Step step, int entry, boolean undo) {
+    step.position = entryOffsets[entry];
+    switch (step.readByte()) {
+      case CELL:
+        step.readSigned();
+        step.readSigned();
+        int oldValue = step.readSigned();
+        int newValue = step.readSigned();
+        model.set(entryColumns[entry], entryRows[entry], undo ? oldValue : newValue);
+        break;
+      case FILL:
+        int minColumn = step.readSigned();
+        int minRow = step.readSigned();
+        int maxColumn = step.readSigned();
+        int maxRow = step.readSigned();
+        int value = step.readSigned();
+        if (undo) {
+          // The chunk entries after this one were restored already
+          addDirty(minColumn, minRow, maxColumn, maxRow);
+        } else {
+          model.fillRect(minColumn, minRow, maxColumn, maxRow, value);
+        }
+        break;
+      case PASTE:
+        addDirty(step.readSigned(), step.readSigned(), step.readSigned(), step.readSigned());
+        break;
+      case FLOOD:
+        int floodOld = step.readSigned();
+        int floodNew = step.readSigned();
+        addDirty(step.readSigned(), step.readSigned(), step.readSigned(), step.readSigned());
+        int spanCount = step.readUnsigned();
+        if (spans.length < 3 * spanCount) {
+          spans = new int[3 * spanCount];
+        }
+        int row = 0;
+        int column = 0;
+        for (int i = 0; i < 3 * spanCount; i += 3) {
+          row += step.readSigned();
+          column += step.readSigned();
+          spans[i] = row;
+          spans[i + 1] = column;
+          spans[i + 2] = column + step.readUnsigned();
+        }
+        model.fillSpans(spans, spanCount, undo ? floodOld : floodNew);
+        break;
+      default:
+        // Chunk contents before a bulk edit are restored on undo, and after a paste on redo
+        int tag = step.data[step.position - 1];
+        if (undo == (tag == FILL_CHUNK)) {
+          int chunkX = step.readSigned();
+          int chunkY = step.readSigned();
+          int fromColumn = step.readByte();
+          int fromRow = step.readByte();
+          int toColumn = step.readByte();
+          int toRow = step.readByte();
+          int runCount = step.readUnsigned();
+          for (int i = 0; i < 2 * runCount; i += 2) {
+            runs[i] = step.readUnsigned();
+            runs[i + 1] = step.readSigned();
+          }
+          model.restoreChunk(
+              chunkX, chunkY, fromColumn, fromRow, toColumn, toRow, runs, 0, runCount);
+        }
+        break;
+    }
+  }
+
+  // Growable byte stream of one step's entries
+  private static final class Step {
+    byte[] data = new byte[16];
+    int length;
+    int position;
+
+    // Position in the spill file while the data lives there, or -1
+    long spillOffset = -1;
+
+    // Coordinates cell deltas are relative to
+    int lastColumn;
+    int lastRow;
+
+    // Value of the fill being recorded, whose already-filled chunks need no entry, or whether a
+    // paste is being recorded instead
+    int fillValue;
+    boolean pasting;
+
+    // Ungrouped brush step that later edits within the coalesce window may join
+    boolean coalescing;
+    long lastEdit;
+
+    long memoryUsage() {
+      return STEP_OVERHEAD + (data != null ? data.length : 0);
+    }
+
+    void writeByte(int value) {
+      if (length == data.length) {
+        data = Arrays.copyOf(data, length * 2);
+      }
+      data[length++] = (byte) value;
+    }
+
+    void writeUnsigned(int value) {
+      while ((value & ~0x7F) != 0) {
+        writeByte(value & 0x7F | 0x80);
+        value >>>= 7;
+      }
+      writeByte(value);
+    }
+
+    void writeSigned(int value) {
+      writeUnsigned(value << 1 ^ value >> 31);
+    }
+
+    // Replaces the one-byte placeholder at offset with a varint count, shifting what follows
+    void insertCount(int offset, int count) {
+      int extra = (31 - Integer.numberOfLeadingZeros(count | 1)) / 7;
+      if (length + extra > data.length) {
+        data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+      }
+      System.arraycopy(data, offset + 1, data, offset + 1 + extra, length - offset - 1);
+      int end = length + extra;
+      length = offset;
+      writeUnsigned(count);
+      length = end;
+    }
+
+    int readByte() {
+      return data[position++] & 0xFF;
+    }
+
+    int readUnsigned() {
+      int value = 0;
+      int shift = 0;
+      int b;
+      do {
+        b = data[position++];
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      return value;
+    }
+
+    int readSigned() {
+      int value = readUnsigned();
+      return value >>> 1 ^ -(value & 1);
+    }
+  }
+}
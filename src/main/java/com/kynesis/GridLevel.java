@@ -0,0 +1,65 @@
+package com.kynesis;
+
+import java.util.Objects;
+import javafx.scene.paint.Color;
+
+// One level of a grid's line hierarchy: lines every spacing grid units, lineWidth pixels wide, in
+// an ARGB stroke colour. Immutable, like the GridStyle that holds the levels.
+public final class GridLevel {
+  private final double spacing;
+  private final double lineWidth;
+  private final int stroke;
+  private final boolean visible;
+
+  public GridLevel(double spacing, double lineWidth, Color stroke, boolean visible) {
+    this(spacing, lineWidth, GridStyle.argb(stroke), visible);
+  }
+
+  GridLevel(double spacing, double lineWidth, int stroke, boolean visible) {
+    this.spacing = spacing;
+    this.lineWidth = lineWidth;
+    this.stroke = stroke;
+    this.visible = visible;
+  }
+
+  public double getSpacing() {
+    return spacing;
+  }
+
+  public double getLineWidth() {
+    return lineWidth;
+  }
+
+  public int getStroke() {
+    return stroke;
+  }
+
+  public boolean isVisible() {
+    return visible;
+  }
+
+  // The same level with its line width, which is in pixels, multiplied by factor
+  GridLevel scaledBy(double factor) {
+    return new GridLevel(spacing, lineWidth * factor, stroke, visible);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof GridLevel)) {
+      return false;
+    }
+    GridLevel other = (GridLevel) o;
+    return Double.compare(spacing, other.spacing) == 0
+        && Double.compare(lineWidth, other.lineWidth) == 0
+        && stroke == other.stroke
+        && visible == other.visible;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(spacing, lineWidth, stroke, visible);
+  }
+}
@@ -0,0 +1,231 @@
+package com.kynesis;
+
+// Lines of all grid levels covering an area, with every line position emitted once, by the
+// coarsest drawn level it lies on. Levels are counted first and dropped from the finest up until
+// the rest fit the line budget. A single pass over the finest drawn level then hands each of its
+// lines to the coarsest drawn level whose spacing is a whole multiple of its own and has a line
+// there, so no line is stroked a second time beneath a coarser one. A level whose spacing isn't
+// such a multiple gets a pass of its own, skipping the lines of the levels nested in it the same
+// way; lines it merely happens to share with the finest level are still drawn by both.
+//
+// Positions come from each owning level's own GridLines, so they are exactly where that level's
+// lines are drawn and snapped to. Buffers are reused across frames and only grow.
+final class GridLevelLines {
+  // Spacing ratios within this relative distance of a whole number count as nested
+  private static final double NESTED_TOLERANCE = 1e-9;
+
+  final GridLod lod = new GridLod();
+
+  // Window positions of the level of detail, from the finest up, and which of them are drawn
+  int count;
+  boolean[] drawn = new boolean[0];
+
+  // Positions of the lines each window position draws, along each axis
+  double[][] columns = new double[0][];
+  int[] columnCounts = new int[0];
+  double[][] rows = new double[0][];
+  int[] rowCounts = new int[0];
+
+  // Visible lines of each window position, each computed with its own line width as margin
+  private GridLines[] columnLines = new GridLines[0];
+  private GridLines[] rowLines = new GridLines[0];
+
+  // Lines of the finest drawn level covering every level nested in it
+  private final GridLines span = new GridLines();
+
+  // Whole spacing ratio of each position to the one being assigned, 0 if not nested
+  private long[] ratios = new long[0];
+
+  // Lays out the lines covering the area (x, y, width, height) of a target whose top-left shows
+  // grid coordinate (originX, originY); returns whether any level is drawn
+  boolean compute(
+      GridStyle style,
+      double scale,
+      double originX,
+      double originY,
+      double x,
+      double y,
+      double width,
+      double height) {
+    if (!select(style, scale, originX, originY, x, y, width, height)) {
+      return false;
+    }
+    assign(style, scale, originX, x, x + width, columnLines, columns, columnCounts);
+    assign(style, scale, originY, y, y + height, rowLines, rows, rowCounts);
+    return true;
+  }
+
+  // Decides which window positions are drawn over the area without laying out their lines, which
+  // takes time independent of the number of lines; returns whether any is drawn
+  boolean select(
+      GridStyle style,
+      double scale,
+      double originX,
+      double originY,
+      double x,
+      double y,
+      double width,
+      double height) {
+    lod.update(style, scale);
+    count = lod.count;
+    ensureLevels(count);
+
+    // Coarser levels claim the budget first, so over it the finest levels are dropped first and
+    // no frame ever emits more than maxLinesPerFrame lines
+    long budget = style.getMaxLinesPerFrame();
+    long used = 0;
+    boolean any = false;
+    for (int p = count - 1; p >= 0; p--) {
+      drawn[p] = false;
+      GridLevel level = style.getLevel(p);
+      if (!level.isVisible() || !(lod.alphas[p] > 0)) {
+        continue;
+      }
+      // Lines just outside the area still cover part of it with half their width
+      double margin = level.getLineWidth() / 2;
+      long lines =
+          columnLines[p].compute(
+                  originX, x - margin, x + width + margin, lod.spacings[p], scale)
+              + rowLines[p].compute(
+                  originY, y - margin, y + height + margin, lod.spacings[p], scale);
+      if (lines > 0 && lines <= budget - used) {
+        drawn[p] = true;
+        used += lines;
+        any = true;
+      }
+    }
+    return any;
+  }
+
+  // Window position of the finest and the coarsest drawn level, or -1 if none is drawn
+  int finestDrawn() {
+    for (int p = 0; p < count; p++) {
+      if (drawn[p]) {
+        return p;
+      }
+    }
+    return -1;
+  }
+
+  int coarsestDrawn() {
+    for (int p = count - 1; p >= 0; p--) {
+      if (drawn[p]) {
+        return p;
+      }
+    }
+    return -1;
+  }
+
+  // Lines drawn at window position p along both axes
+  long lineCount(int p) {
+    return drawn[p] ? (long) columnCounts[p] + rowCounts[p] : 0;
+  }
+
+  // Fills the position buffers of one axis
+  private void assign(
+      GridStyle style,
+      double scale,
+      double origin,
+      double from,
+      double to,
+      GridLines[] lines,
+      double[][] positions,
+      int[] counts) {
+    int finest = finestDrawn();
+    for (int p = 0; p < count; p++) {
+      counts[p] = 0;
+      if (drawn[p] && positions[p].length < lines[p].count()) {
+        positions[p] = new double[(int) Math.max(lines[p].count(), 2L * positions[p].length)];
+      }
+    }
+
+    // One pass over the finest level, widened to the thickest nested level's lines
+    double margin = 0;
+    for (int p = finest; p < count; p++) {
+      ratios[p] = drawn[p] ? wholeRatio(lod.spacings[p], lod.spacings[finest]) : 0;
+      if (ratios[p] > 0) {
+        margin = Math.max(margin, style.getLevel(p).getLineWidth() / 2);
+      }
+    }
+    long spanCount = span.compute(origin, from - margin, to + margin, lod.spacings[finest], scale);
+    if (spanCount == Long.MAX_VALUE) {
+      spanCount = 0;
+    }
+    for (long i = 0; i < spanCount; i++) {
+      long index = span.index(i);
+      int owner = finest;
+      long ownerIndex = index;
+      for (int p = count - 1; p > finest; p--) {
+        if (ratios[p] > 0 && Math.floorMod(index, ratios[p]) == 0) {
+          owner = p;
+          ownerIndex = Math.floorDiv(index, ratios[p]);
+          break;
+        }
+      }
+      GridLines own = lines[owner];
+      if (own.count() > 0
+          && ownerIndex >= own.index(0)
+          && ownerIndex <= own.index(own.count() - 1)) {
+        positions[owner][counts[owner]++] = own.positionOf(ownerIndex);
+      }
+    }
+
+    // Levels not nested in the finest one draw their own lines
+    for (int level = finest + 1; level < count; level++) {
+      if (!drawn[level] || wholeRatio(lod.spacings[level], lod.spacings[finest]) > 0) {
+        continue;
+      }
+      for (int p = level + 1; p < count; p++) {
+        ratios[p] = drawn[p] ? wholeRatio(lod.spacings[p], lod.spacings[level]) : 0;
+      }
+      GridLines own = lines[level];
+      for (long i = 0; i < own.count(); i++) {
+        long index = own.index(i);
+        boolean owned = false;
+        for (int p = level + 1; p < count && !owned; p++) {
+          owned = ratios[p] > 0 && Math.floorMod(index, ratios[p]) == 0;
+        }
+        if (!owned) {
+          positions[level][counts[level]++] = own.position(i);
+        }
+      }
+    }
+  }
+
+  // How many fine spacings make up a coarse one, or 0 if that isn't a whole number
+  private static long wholeRatio(double coarse, double fine) {
+    double ratio = coarse / fine;
+    double whole = Math.rint(ratio);
+    if (whole >= 1
+        && whole < Long.MAX_VALUE
+        && Math.abs(ratio - whole) <= whole * NESTED_TOLERANCE) {
+      return (long) whole;
+    }
+    return 0;
+  }
+
+  private void ensureLevels(int levels) {
+    if (drawn.length >= levels) {
+      return;
+    }
+    drawn = new boolean[levels];
+    columnCounts = new int[levels];
+    rowCounts = new int[levels];
+    ratios = new long[levels];
+    double[][] oldColumns = columns;
+    double[][] oldRows = rows;
+    columns = new double[levels][];
+    rows = new double[levels][];
+    GridLines[] oldColumnLines = columnLines;
+    GridLines[] oldRowLines = rowLines;
+    columnLines = new GridLines[levels];
+    rowLines = new GridLines[levels];
+    for (int p = 0; p < levels; p++) {
+      boolean reuse = p < oldColumns.length;
+      columns[p] = reuse ? oldColumns[p] : new double[0];
+      rows[p] = reuse ? oldRows[p] : new double[0];
+      columnLines[p] = reuse ? oldColumnLines[p] : new GridLines();
+      rowLines[p] = reuse ? oldRowLines[p] : new GridLines();
+    }
+  }
+}
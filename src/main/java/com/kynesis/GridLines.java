@@ -0,0 +1,127 @@
+package com.kynesis;
+
+// Visible lines of one axis of a grid layer. Lines are addressed by integer index relative to a
+// base index rebased onto the viewport origin, so positions never accumulate floating-point error
+// no matter how far the viewport is from the grid origin.
+final class GridLines {
+  // Beyond 2^53 consecutive line indices are no longer distinct doubles
+  private static final double MAX_INDEX = 0x1p53;
+
+  // Line index nearest to the viewport origin; all positions are derived relative to it
+  private long baseIndex;
+
+  // Visible lines, as offsets from baseIndex
+  private long first;
+  private long count;
+
+  private double spacing;
+  private double scale;
+
+  // Grid distance from the viewport origin to the base line, in (-spacing, 0]
+  private double offset;
+
+  // Computes the lines at index * spacing whose canvas position lies in [0, extentPixels] for a
+  // viewport starting at origin, and returns how many there are
+  long compute(double origin, double extentPixels, double spacing, double scale) {
+    return compute(origin, 0, extentPixels, spacing, scale);
+  }
+
+  // Computes the lines whose canvas position lies in [fromPixel, toPixel] and returns how many
+  // there are; 0 for a degenerate spacing, scale or origin. Positions depend only on the origin,
+  // so any window yields the same coordinates for the same line.
+  long compute(double origin, double fromPixel, double toPixel, double spacing, double scale) {
+    if (!(toPixel >= fromPixel) || !locate(origin, spacing, scale)) {
+      return 0;
+    }
+
+    double from = Math.ceil((fromPixel / scale - offset) / spacing);
+    double to = Math.floor((toPixel / scale - offset) / spacing);
+    double lines = to - from + 1;
+    if (!(lines > 0)) {
+      return 0;
+    }
+    if (!(lines < MAX_INDEX) || !(Math.abs(from) < MAX_INDEX)) {
+      // Too dense to enumerate; callers reject this through their line budget
+      first = 0;
+      count = Long.MAX_VALUE;
+      return count;
+    }
+    first = (long) from;
+    count = (long) lines;
+    return count;
+  }
+
+  // Rebases onto origin without enumerating lines, enabling indexAt() and positionOf(); returns
+  // false for a degenerate spacing, scale or origin
+  boolean locate(double origin, double spacing, double scale) {
+    count = 0;
+    if (!(spacing > 0) || !(scale > 0) || !Double.isFinite(origin)) {
+      return false;
+    }
+    double base = Math.floor(origin / spacing);
+    if (!(Math.abs(base) < MAX_INDEX)) {
+      return false;
+    }
+
+    this.spacing = spacing;
+    this.scale = scale;
+    baseIndex = (long) base;
+    offset = baseIndex * spacing - origin;
+    return true;
+  }
+
+  long count() {
+    return count;
+  }
+
+  // Global index of the i-th visible line
+  long index(long i) {
+    return baseIndex + first + i;
+  }
+
+  // Canvas coordinate of the i-th visible line
+  double position(long i) {
+    return ((first + i) * spacing + offset) * scale;
+  }
+
+  // Canvas coordinate of the line with the given global index; equal to position(i) for the same
+  // line
+  double positionOf(long index) {
+    return ((index - baseIndex) * spacing + offset) * scale;
+  }
+
+  // Canvas coordinate of a grid coordinate. Split at the nearest line so that for index * spacing
+  // the result is exactly positionOf(index).
+  double positionAt(double coordinate) {
+    double nearest = Math.rint(coordinate / spacing);
+    if (!(Math.abs(nearest) < MAX_INDEX)) {
+      return ((coordinate / spacing - baseIndex) * spacing + offset) * scale;
+    }
+    long index = (long) nearest;
+    return ((index - baseIndex) * spacing + offset + (coordinate - index * spacing)) * scale;
+  }
+
+  // Index of the line at or before the canvas coordinate, measured against positionOf() so that
+  // positionOf(index) <= pixel < positionOf(index + 1) holds exactly
+  long exactIndexAt(double pixel) {
+    long index = indexAt(pixel);
+    if (index == Long.MAX_VALUE || index == Long.MIN_VALUE) {
+      return index;
+    }
+    if (positionOf(index) > pixel) {
+      index--;
+    } else if (positionOf(index + 1) <= pixel) {
+      index++;
+    }
+    return index;
+  }
+
+  // Global index of the last line at or before the canvas coordinate
+  long indexAt(double pixel) {
+    double relative = Math.floor((pixel / scale - offset) / spacing);
+    if (!(Math.abs(relative) < MAX_INDEX)) {
+      return relative > 0 ? Long.MAX_VALUE : Long.MIN_VALUE;
+    }
+    return baseIndex + (long) relative;
+  }
+}
@@ -0,0 +1,76 @@
+package com.kynesis;
+
+// Level of detail for one scale. The style's levels continue above the coarsest one by its ratio
+// to the level below, and a window of as many levels as the style has is moved up that sequence
+// until its top level's lines are at least fadeSpacing pixels apart. Each window position keeps
+// the style of its level, so the top is always drawn like the coarsest level; the levels below it
+// fade out as their spacing shrinks until they are culled at minSpacing.
+final class GridLod {
+  // Upper bound on how many times the window is moved up while zooming out
+  private static final int MAX_LEVELS = 64;
+
+  // Levels in the window, the style's level count or 0 if nothing can be drawn, and the spacing
+  // and opacity drawn at each position
+  int count;
+  double[] spacings = new double[2];
+  double[] alphas = new double[2];
+
+  // Spacings of the finest and the coarsest position, and the finest position's opacity
+  double minorSpacing;
+  double majorSpacing;
+  double minorAlpha;
+
+  void update(GridStyle style, double scale) {
+    int levels = style.getLevelCount();
+    if (spacings.length < levels) {
+      spacings = new double[levels];
+      alphas = new double[levels];
+    }
+    for (int i = 0; i < levels; i++) {
+      spacings[i] = style.getLevel(i).getSpacing();
+    }
+    update(levels, style.getLodFadeSpacing(), style.getLodMinSpacing(), scale);
+  }
+
+  // Moves the window of spacings[0, levels) into place for the scale
+  private void update(int levels, double fadeSpacing, double minSpacing, double scale) {
+    double fadePixels = Math.max(fadeSpacing, minSpacing);
+
+    count = 0;
+    minorSpacing = 0;
+    majorSpacing = 0;
+    minorAlpha = 0;
+    if (!(scale > 0)) {
+      return;
+    }
+    for (int i = 0; i < levels; i++) {
+      if (!(spacings[i] > 0)) {
+        return;
+      }
+    }
+
+    int top = levels - 1;
+    double ratio = top > 0 ? Math.max(2, spacings[top] / spacings[top - 1]) : 2;
+    for (int level = 0; level < MAX_LEVELS && spacings[top] * scale < fadePixels; level++) {
+      System.arraycopy(spacings, 1, spacings, 0, top);
+      spacings[top] *= ratio;
+    }
+
+    for (int i = 0; i < top; i++) {
+      double pixels = spacings[i] * scale;
+      if (pixels >= fadePixels) {
+        alphas[i] = 1;
+      } else if (pixels >= minSpacing && fadePixels > minSpacing) {
+        alphas[i] = (pixels - minSpacing) / (fadePixels - minSpacing);
+      } else {
+        alphas[i] = 0;
+      }
+    }
+    alphas[top] = 1;
+
+    count = levels;
+    minorSpacing = spacings[0];
+    majorSpacing = spacings[top];
+    minorAlpha = alphas[0];
+  }
+}
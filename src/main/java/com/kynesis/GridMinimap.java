@@ -0,0 +1,297 @@
+package com.kynesis;
+
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.paint.Color;
+
+// Overview of an InfiniteGrid, centred on its viewport at a fixed fraction of its scale, with the
+// viewport outlined. The minimap draws mip levels of the view's tile cache: each level halves the
+// scale of the one below by averaging its pixels, down from the tiles the view itself draws, so
+// the overview shares the view's rendering instead of rasterizing the content a second time.
+// Pressing the pan button centres the view on the point under the pointer, and dragging pans it.
+public class GridMinimap extends Canvas {
+  // Each mip level quarters the base tiles behind a minimap tile, so deeper levels get expensive
+  private static final int MAX_MIP_LEVELS = 6;
+
+  private final InfiniteGrid view;
+
+  // Times the view's scale is halved for the minimap
+  private final IntegerProperty mipLevels = new SimpleIntegerProperty(this, "mipLevels", 3);
+
+  private final ObjectProperty<Color> viewportStroke =
+      new SimpleObjectProperty<>(this, "viewportStroke", Color.RED);
+
+  // Redraws are coalesced into one per pulse, like the view's
+  private boolean renderPending = true;
+  private final Runnable pulseListener = this::onPulse;
+  private final Runnable tileListener = this::requestRender;
+  private final GridModelListener modelListener =
+      (source, minColumn, minRow, maxColumn, maxRow) -> requestRender();
+
+  // Tile cache listened to while the minimap is in a scene
+  private GridTileCache cache;
+
+  // Pointer position during a drag
+  private boolean dragging;
+  private double lastX;
+  private double lastY;
+
+  public GridMinimap(InfiniteGrid view) {
+    this(view, 0, 0);
+  }
+
+  public GridMinimap(InfiniteGrid view, double width, double height) {
+    super(width, height);
+    this.view = view;
+
+    InvalidationListener invalidated = obs -> requestRender();
+    Observable[] dependencies = {
+      view.gridXProperty(),
+      view.gridYProperty(),
+      view.gridScaleProperty(),
+      view.widthProperty(),
+      view.heightProperty(),
+      view.cellColorMapProperty(),
+      view.showGridProperty(),
+      view.showMinorGridProperty(),
+      view.showMajorGridProperty(),
+      view.gridBackgroundProperty(),
+      view.minorGridSpacingProperty(),
+      view.minorGridLineWidthProperty(),
+      view.minorGridLineStrokeProperty(),
+      view.majorGridSpacingProperty(),
+      view.majorGridLineWidthProperty(),
+      view.majorGridLineStrokeProperty(),
+      view.gridLevelSpacingsProperty(),
+      view.gridLevelLineWidthsProperty(),
+      view.lodFadeSpacingProperty(),
+      view.lodMinSpacingProperty(),
+      view.maxLinesPerFrameProperty(),
+      mipLevels,
+      viewportStroke,
+      widthProperty(),
+      heightProperty()
+    };
+    for (Observable dependency : dependencies) {
+      dependency.addListener(invalidated);
+    }
+    for (int i = 0; i < InfiniteGrid.STYLED_GRID_LEVELS; i++) {
+      view.gridLevelStrokeProperty(i).addListener(invalidated);
+      view.showGridLevelProperty(i).addListener(invalidated);
+    }
+    view.modelProperty().addListener((obs, old, nv) -> modelChanged(old, nv));
+    view.tileCacheProperty().addListener((obs, old, nv) -> attach());
+    modelChanged(null, view.getModel());
+
+    addEventHandler(MouseEvent.MOUSE_PRESSED, this::mousePressed);
+    addEventHandler(MouseEvent.MOUSE_DRAGGED, this::mouseDragged);
+    addEventHandler(MouseEvent.MOUSE_RELEASED, event -> dragging = false);
+
+    sceneProperty().addListener((obs, old, nv) -> sceneChanged(old, nv));
+  }
+
+  public InfiniteGrid getView() {
+    return view;
+  }
+
+  // Marks the minimap dirty; the redraw happens at most once on the next pulse
+  public void requestRender() {
+    if (renderPending) {
+      return;
+    }
+    renderPending = true;
+    if (getScene() != null) {
+      Platform.requestNextPulse();
+    }
+  }
+
+  // Redraws immediately; prefer requestRender() unless the canvas is used offscreen
+  public void render() {
+    renderPending = false;
+    GraphicsContext gc = getGraphicsContext2D();
+    double width = getWidth();
+    double height = getHeight();
+    GridStyle style = view.getGridStyle();
+    gc.setFill(color(style.getBackground()));
+    gc.clearRect(0, 0, width, height);
+    gc.fillRect(0, 0, width, height);
+
+    double scale = view.getGridScale();
+    double mipScale = Math.scalb(scale, -getMipLevels());
+    GridTileCache tiles = view.getTileCache();
+    if (!(mipScale > 0) || Double.isInfinite(scale)) {
+      return;
+    }
+
+    // Grid position of the minimap's top-left corner, keeping the view's centre in the middle.
+    // Tiles are in device pixels, like the view's.
+    double pixelScale = view.getOutputScale();
+    double deviceScale = mipScale * pixelScale;
+    double deviceWidth = Math.ceil(width * pixelScale);
+    double deviceHeight = Math.ceil(height * pixelScale);
+    double vpX = view.getGridX() + (view.getWidth() / scale - width / mipScale) / 2;
+    double vpY = view.getGridY() + (view.getHeight() / scale - height / mipScale) / 2;
+    double originX = Math.floor(vpX * deviceScale + 0.5);
+    double originY = Math.floor(vpY * deviceScale + 0.5);
+    long minTileX = GridTileCache.tileIndex(originX);
+    long minTileY = GridTileCache.tileIndex(originY);
+    long maxTileX = GridTileCache.tileIndex(originX + deviceWidth - 1);
+    long maxTileY = GridTileCache.tileIndex(originY + deviceHeight - 1);
+    if (tiles != null
+        && minTileX > Integer.MIN_VALUE
+        && minTileY > Integer.MIN_VALUE
+        && maxTileX < Integer.MAX_VALUE
+        && maxTileY < Integer.MAX_VALUE) {
+      GridTileCache.Level level = view.tileLevel(tiles).mip(getMipLevels());
+      int size = GridTileCache.TILE_SIZE;
+      gc.setImageSmoothing(false);
+      for (int tileY = (int) minTileY; tileY <= maxTileY; tileY++) {
+        for (int tileX = (int) minTileX; tileX <= maxTileX; tileX++) {
+          // Only the visible part of a tile is built; until it is the background shows through
+          double x = tileX * (double) size - originX;
+          double y = tileY * (double) size - originY;
+          WritableImage image =
+              level.image(
+                  tileX,
+                  tileY,
+                  (int) Math.max(0, -x),
+                  (int) Math.max(0, -y),
+                  (int) Math.min(size, deviceWidth - x),
+                  (int) Math.min(size, deviceHeight - y));
+          if (image != null) {
+            gc.drawImage(
+                image, x / pixelScale, y / pixelScale, size / pixelScale, size / pixelScale);
+          }
+        }
+      }
+      gc.setImageSmoothing(true);
+      tiles.trim();
+    }
+
+    // Outline of the view, on pixel centres so the 1 pixel stroke stays sharp
+    double x = Math.floor(view.getGridX() * mipScale - originX / pixelScale) + 0.5;
+    double y = Math.floor(view.getGridY() * mipScale - originY / pixelScale) + 0.5;
+    gc.setStroke(viewportStroke.get());
+    gc.setLineWidth(1);
+    gc.strokeRect(
+        x,
+        y,
+        Math.max(1, Math.round(view.getWidth() * mipScale / scale)),
+        Math.max(1, Math.round(view.getHeight() * mipScale / scale)));
+  }
+
+  private void modelChanged(GridModel oldModel, GridModel newModel) {
+    if (oldModel != null) {
+      oldModel.removeListener(modelListener);
+    }
+    if (newModel != null) {
+      newModel.addListener(modelListener);
+    }
+    requestRender();
+  }
+
+  private void sceneChanged(Scene oldScene, Scene newScene) {
+    if (oldScene != null) {
+      oldScene.removePostLayoutPulseListener(pulseListener);
+    }
+    if (newScene != null) {
+      newScene.addPostLayoutPulseListener(pulseListener);
+      if (renderPending) {
+        Platform.requestNextPulse();
+      }
+    }
+    attach();
+  }
+
+  // Listens for finished tiles of the view's cache while the minimap is in a scene
+  private void attach() {
+    GridTileCache attached = getScene() != null ? view.getTileCache() : null;
+    if (attached != cache) {
+      if (cache != null) {
+        cache.removeTileListener(tileListener);
+      }
+      if (attached != null) {
+        attached.addTileListener(tileListener);
+      }
+      cache = attached;
+    }
+    requestRender();
+  }
+
+  private void onPulse() {
+    if (renderPending) {
+      render();
+    }
+  }
+
+  private static Color color(int argb) {
+    return Color.rgb(argb >> 16 & 0xFF, argb >> 8 & 0xFF, argb & 0xFF, (argb >>> 24) / 255.0);
+  }
+
+  // Event handlers
+
+  private void mousePressed(MouseEvent event) {
+    if (event.getButton() != view.getPanButton()) {
+      return;
+    }
+    dragging = true;
+    lastX = event.getX();
+    lastY = event.getY();
+    panView(getWidth() / 2 - lastX, getHeight() / 2 - lastY);
+    event.consume();
+  }
+
+  private void mouseDragged(MouseEvent event) {
+    if (!dragging) {
+      return;
+    }
+    panView(lastX - event.getX(), lastY - event.getY());
+    lastX = event.getX();
+    lastY = event.getY();
+    event.consume();
+  }
+
+  // Pans the view by a distance in minimap pixels
+  private void panView(double dx, double dy) {
+    double factor = Math.scalb(1.0, getMipLevels());
+    view.panBy(dx * factor, dy * factor);
+  }
+
+  // Mip Levels Property
+
+  public int getMipLevels() {
+    return Math.max(0, Math.min(mipLevels.get(), MAX_MIP_LEVELS));
+  }
+
+  public void setMipLevels(int levels) {
+    mipLevels.set(levels);
+  }
+
+  public IntegerProperty mipLevelsProperty() {
+    return mipLevels;
+  }
+
+  // Viewport Stroke Property
+
+  public Color getViewportStroke() {
+    return viewportStroke.get();
+  }
+
+  public void setViewportStroke(Color color) {
+    viewportStroke.set(color);
+  }
+
+  public ObjectProperty<Color> viewportStrokeProperty() {
+    return viewportStroke;
+  }
+}
@@ -0,0 +1,1001 @@
+package com.kynesis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+// Sparse cell content of an unbounded grid, addressed by (column, row) in minor grid cells. Cells
+// are stored in fixed-size chunks of primitive arrays keyed by their packed chunk coordinates.
+// A value of 0 means empty, and a chunk is reclaimed as soon as its last cell is emptied.
+//
+// A model opened on a file keeps only a working set of chunks in memory: chunks are faulted in
+// from the memory-mapped store on first access, and once the resident chunks exceed the memory
+// budget the least recently used ones (CLOCK approximation) are written back if dirty and dropped.
+public class GridModel implements Closeable {
+  public static final int CHUNK_SHIFT = 6;
+  public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+  static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  // Bulk edits of fewer cells than this run on the calling thread
+  private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+  private final ChunkMap chunks = new ChunkMap();
+  private long cellCount;
+
+  private GridModelListener[] listeners = new GridModelListener[0];
+
+  // Undo journal that records every edit before it is applied, if one is attached
+  GridJournal journal;
+
+  // Backing store, null for purely in-memory models
+  private ChunkStore store;
+  private long memoryBudget = Long.MAX_VALUE;
+  private long residentBytes;
+  private int clockHand;
+  private final int[] transfer = new int[ChunkStore.CELLS];
+
+  public GridModel() {}
+
+  private GridModel(ChunkStore store) {
+    this.store = store;
+    this.cellCount = store.getCellCount();
+  }
+
+  // Opens or creates a model backed by the given file. Opening only maps the file header, so it
+  // takes the same time for any file size.
+  public static GridModel open(Path file) throws IOException {
+    return new GridModel(ChunkStore.open(file));
+  }
+
+  public int get(int column, int row) {
+    GridChunk chunk = chunk(column >> CHUNK_SHIFT, row >> CHUNK_SHIFT, false);
+    return chunk == null ? 0 : chunk.get(cellIndex(column, row));
+  }
+
+  // Stores a value and returns the previous one
+  public int set(int column, int row, int value) {
+    GridChunk chunk = chunk(column >> CHUNK_SHIFT, row >> CHUNK_SHIFT, value != 0);
+    if (chunk == null) {
+      return 0;
+    }
+
+    int before = chunk.getCellCount();
+    long bytes = chunk.getMemoryUsage();
+    int old = chunk.set(cellIndex(column, row), value);
+    cellCount += chunk.getCellCount() - before;
+    residentBytes += chunk.getMemoryUsage() - bytes;
+    if (old != value) {
+      if (journal != null) {
+        journal.recordCell(column, row, old, value);
+      }
+      chunk.dirty = true;
+      if (chunk.isEmpty()) {
+        discard(chunk);
+      }
+      fireCellsChanged(column, row, column, row);
+    }
+    return old;
+  }
+
+  // Empties the model. Clearing can't be undone, so an attached journal forgets its history.
+  public void clear() {
+    if (journal != null) {
+      journal.clear();
+    }
+    if (isEmpty()) {
+      return;
+    }
+    chunks.clear();
+    cellCount = 0;
+    residentBytes = 0;
+    if (store != null) {
+      try {
+        store.clear();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    fireCellsChanged(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+  }
+
+  // Bulk editing
+
+  // Sets every cell of the inclusive rectangle to value and reports the rectangle as a single
+  // change. Large fills of an in-memory model work on whole chunks in parallel.
+  public void fillRect(int minColumn, int minRow, int maxColumn, int maxRow, int value) {
+    if (minColumn > maxColumn || minRow > maxRow) {
+      return;
+    }
+    if (journal != null) {
+      journal.beginFill(minColumn, minRow, maxColumn, maxRow, value);
+    }
+    fillCells(minColumn, minRow, maxColumn, maxRow, value);
+    if (journal != null) {
+      journal.endFill();
+    }
+    fireCellsChanged(minColumn, minRow, maxColumn, maxRow);
+  }
+
+  // Replaces the 4-connected area of cells equal to the one at (column, row) with value, a row
+  // span at a time, and reports the area's bounds as a single change. An area of more than
+  // maxArea cells, which includes any empty area open to unbounded space, is left unchanged.
+  // Returns the number of cells filled, or -1 if the area was too large.
+  public long floodFill(int column, int row, int value, long maxArea) {
+    int target = get(column, row);
+    if (target == value) {
+      return 0;
+    }
+    GridJournal recording = journal;
+    journal = null;
+    int[] spans = new int[48];
+    int spanCount = 0;
+    long[] seeds = {(long) column << 32 | (row & 0xFFFFFFFFL)};
+    int seedCount = 1;
+    long area = 0;
+    int minColumn = column;
+    int minRow = row;
+    int maxColumn = column;
+    int maxRow = row;
+    try {
+      while (seedCount > 0) {
+        long seed = seeds[--seedCount];
+        int x = (int) (seed >> 32);
+        int y = (int) seed;
+        if (get(x, y) != target) {
+          continue;
+        }
+        long budget = maxArea - area;
+        int left = runEnd(x, y, target, -1, budget);
+        int right = runEnd(x, y, target, 1, budget);
+        area += (long) right - left + 1;
+        if (area > maxArea) {
+          for (int i = 0; i < spanCount; i += 3) {
+            fillCells(spans[i + 1], spans[i], spans[i + 2], spans[i], target);
+          }
+          return -1;
+        }
+        fillCells(left, y, right, y, value);
+        if (spanCount + 3 > spans.length) {
+          spans = Arrays.copyOf(spans, spans.length * 2);
+        }
+        spans[spanCount++] = y;
+        spans[spanCount++] = left;
+        spans[spanCount++] = right;
+        minColumn = Math.min(minColumn, left);
+        maxColumn = Math.max(maxColumn, right);
+        minRow = Math.min(minRow, y);
+        maxRow = Math.max(maxRow, y);
+
+        // One seed for each run of matching cells in the rows above and below
+        for (int next = -1; next <= 1; next += 2) {
+          long nextRow = (long) y + next;
+          if (nextRow != (int) nextRow) {
+            continue;
+          }
+          for (long c = left; c <= right; c++) {
+            if (get((int) c, (int) nextRow) != target) {
+              continue;
+            }
+            if (seedCount == seeds.length) {
+              seeds = Arrays.copyOf(seeds, seedCount * 2);
+            }
+            seeds[seedCount++] = c << 32 | (nextRow & 0xFFFFFFFFL);
+            c = runEnd((int) c, (int) nextRow, target, 1, right - c) + 1L;
+          }
+        }
+      }
+    } finally {
+      journal = recording;
+    }
+    if (journal != null) {
+      journal.recordSpans(spans, spanCount / 3, target, value, minColumn, minRow, maxColumn, maxRow);
+    }
+    fireCellsChanged(minColumn, minRow, maxColumn, maxRow);
+    return area;
+  }
+
+  // Copies the cells of the inclusive rectangle into a detached region
+  public GridRegion copyRegion(int minColumn, int minRow, int maxColumn, int maxRow) {
+    long width = (long) maxColumn - minColumn + 1;
+    long height = (long) maxRow - minRow + 1;
+    if (width <= 0 || height <= 0 || width > Integer.MAX_VALUE || height > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "Invalid region " + minColumn + "," + minRow + " to " + maxColumn + "," + maxRow);
+    }
+    GridModel cells = new GridModel();
+    cells.copyCells(this, minColumn, minRow, 0, 0, (int) width, (int) height);
+    return new GridRegion((int) width, (int) height, cells);
+  }
+
+  // Replaces the cells of the region-sized rectangle at (column, row), including empty ones, with
+  // the region's cells, and reports the rectangle as a single change
+  public void pasteRegion(GridRegion region, int column, int row) {
+    long maxColumn = (long) column + region.getWidth() - 1;
+    long maxRow = (long) row + region.getHeight() - 1;
+    if (maxColumn > Integer.MAX_VALUE || maxRow > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Region doesn't fit at " + column + "," + row);
+    }
+    if (journal != null) {
+      journal.beginPaste(column, row, (int) maxColumn, (int) maxRow);
+    }
+    copyCells(region.cells, 0, 0, column, row, region.getWidth(), region.getHeight());
+    if (journal != null) {
+      journal.endPaste();
+    }
+    fireCellsChanged(column, row, (int) maxColumn, (int) maxRow);
+  }
+
+  // Sets runs of cells given as (row, minColumn, maxColumn) triples, without reporting them. Used
+  // by the journal to replay flood fills.
+  void fillSpans(int[] spans, int count, int value) {
+    for (int i = 0; i < 3 * count; i += 3) {
+      fillCells(spans[i + 1], spans[i], spans[i + 2], spans[i], value);
+    }
+  }
+
+  private void fillCells(int minColumn, int minRow, int maxColumn, int maxRow, int value) {
+    int minChunkX = minColumn >> CHUNK_SHIFT;
+    int minChunkY = minRow >> CHUNK_SHIFT;
+    int maxChunkX = maxColumn >> CHUNK_SHIFT;
+    int maxChunkY = maxRow >> CHUNK_SHIFT;
+    if (!isParallel(this, minColumn, minRow, maxColumn, maxRow)) {
+      if (value == 0) {
+        // Only chunks holding cells have anything to empty
+        for (long key : chunkKeys(minChunkX, minChunkY, maxChunkX, maxChunkY)) {
+          fillChunk(chunkX(key), chunkY(key), minColumn, minRow, maxColumn, maxRow, 0);
+        }
+        return;
+      }
+      for (int chunkY = minChunkY; chunkY <= maxChunkY; chunkY++) {
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+          fillChunk(chunkX, chunkY, minColumn, minRow, maxColumn, maxRow, value);
+        }
+      }
+      return;
+    }
+
+    // Chunks are looked up, journaled and accounted for on this thread and filled in parallel
+    GridChunk[] targets = collectChunks(minChunkX, minChunkY, maxChunkX, maxChunkY, value != 0);
+    int[] before = new int[targets.length];
+    long[] bytes = new long[targets.length];
+    boolean[] changed = new boolean[targets.length];
+    for (int i = 0; i < targets.length; i++) {
+      GridChunk chunk = targets[i];
+      if (journal != null) {
+        int baseColumn = chunk.getChunkX() << CHUNK_SHIFT;
+        int baseRow = chunk.getChunkY() << CHUNK_SHIFT;
+        journal.captureChunk(
+            chunk.getChunkX(),
+            chunk.getChunkY(),
+            chunk,
+            localMin(minColumn, baseColumn),
+            localMin(minRow, baseRow),
+            localMax(maxColumn, baseColumn),
+            localMax(maxRow, baseRow));
+      }
+      before[i] = chunk.getCellCount();
+      bytes[i] = chunk.getMemoryUsage();
+    }
+    ForkJoinPool.commonPool()
+        .invoke(
+            new ChunkTask(
+                0,
+                targets.length,
+                i -> {
+                  GridChunk chunk = targets[i];
+                  int baseColumn = chunk.getChunkX() << CHUNK_SHIFT;
+                  int baseRow = chunk.getChunkY() << CHUNK_SHIFT;
+                  changed[i] =
+                      chunk.fill(
+                          localMin(minColumn, baseColumn),
+                          localMin(minRow, baseRow),
+                          localMax(maxColumn, baseColumn),
+                          localMax(maxRow, baseRow),
+                          value);
+                }));
+    for (int i = 0; i < targets.length; i++) {
+      updateFilled(targets[i], before[i], bytes[i], changed[i]);
+    }
+  }
+
+  // Fills the part of the rectangle inside one chunk
+  private void fillChunk(
+      int chunkX, int chunkY, int minColumn, int minRow, int maxColumn, int maxRow, int value) {
+    int baseColumn = chunkX << CHUNK_SHIFT;
+    int baseRow = chunkY << CHUNK_SHIFT;
+    int fromColumn = localMin(minColumn, baseColumn);
+    int toColumn = localMax(maxColumn, baseColumn);
+    int fromRow = localMin(minRow, baseRow);
+    int toRow = localMax(maxRow, baseRow);
+
+    GridChunk chunk = chunk(chunkX, chunkY, value != 0);
+    if (journal != null) {
+      journal.captureChunk(chunkX, chunkY, chunk, fromColumn, fromRow, toColumn, toRow);
+    }
+    if (chunk != null && !(chunk.isEmpty() && value == 0)) {
+      int before = chunk.getCellCount();
+      long bytes = chunk.getMemoryUsage();
+      boolean changed = chunk.fill(fromColumn, fromRow, toColumn, toRow, value);
+      updateFilled(chunk, before, bytes, changed);
+    }
+  }
+
+  // Last column of the run of cells equal to target that contains column, searching in direction
+  // (-1 or 1) for at most limit cells. Missing chunks are skipped whole when target is empty.
+  private int runEnd(int column, int row, int target, int direction, long limit) {
+    long end =
+        direction > 0
+            ? Math.min(column + limit, Integer.MAX_VALUE)
+            : Math.max(column - limit, Integer.MIN_VALUE);
+    int chunkY = row >> CHUNK_SHIFT;
+    int rowIndex = (row & CHUNK_MASK) << CHUNK_SHIFT;
+    long last = column;
+    while (last != end) {
+      long next = last + direction;
+      long base = next >> CHUNK_SHIFT << CHUNK_SHIFT;
+      long edge = direction > 0 ? Math.min(base + CHUNK_MASK, end) : Math.max(base, end);
+      GridChunk chunk = chunk((int) (next >> CHUNK_SHIFT), chunkY, false);
+      if (chunk == null) {
+        if (target != 0) {
+          break;
+        }
+        last = edge;
+        continue;
+      }
+      for (long c = next; ; c += direction) {
+        if (chunk.get(rowIndex | (int) c & CHUNK_MASK) != target) {
+          return (int) last;
+        }
+        last = c;
+        if (c == edge) {
+          break;
+        }
+      }
+    }
+    return (int) last;
+  }
+
+  // Copies the width x height cells at (sourceColumn, sourceRow) of source to (column, row),
+  // emptying cells that are empty in the source
+  private void copyCells(
+      GridModel source,
+      int sourceColumn,
+      int sourceRow,
+      int column,
+      int row,
+      int width,
+      int height) {
+    int maxColumn = column + width - 1;
+    int maxRow = row + height - 1;
+    int columnOffset = sourceColumn - column;
+    int rowOffset = sourceRow - row;
+
+    // Chunks to write: those already holding cells in the rectangle, which may need emptying, and
+    // those overlapped by the source's non-empty chunks
+    long[] keys =
+        chunkKeys(
+            column >> CHUNK_SHIFT, row >> CHUNK_SHIFT, maxColumn >> CHUNK_SHIFT, maxRow >> CHUNK_SHIFT);
+    long[] sourceKeys =
+        source.chunkKeys(
+            sourceColumn >> CHUNK_SHIFT,
+            sourceRow >> CHUNK_SHIFT,
+            (sourceColumn + width - 1) >> CHUNK_SHIFT,
+            (sourceRow + height - 1) >> CHUNK_SHIFT);
+    int keyCount = keys.length;
+    keys = Arrays.copyOf(keys, keyCount + 4 * sourceKeys.length);
+    for (long key : sourceKeys) {
+      // Columns and rows of the source chunk clamped to the source rectangle, then moved here
+      int sourceBaseColumn = chunkX(key) << CHUNK_SHIFT;
+      int sourceBaseRow = chunkY(key) << CHUNK_SHIFT;
+      int fromColumn = Math.max(sourceBaseColumn, sourceColumn) - columnOffset;
+      int toColumn = Math.min(sourceBaseColumn | CHUNK_MASK, sourceColumn + width - 1) - columnOffset;
+      int fromRow = Math.max(sourceBaseRow, sourceRow) - rowOffset;
+      int toRow = Math.min(sourceBaseRow | CHUNK_MASK, sourceRow + height - 1) - rowOffset;
+      for (int chunkY = fromRow >> CHUNK_SHIFT; chunkY <= toRow >> CHUNK_SHIFT; chunkY++) {
+        for (int chunkX = fromColumn >> CHUNK_SHIFT; chunkX <= toColumn >> CHUNK_SHIFT; chunkX++) {
+          keys[keyCount++] = chunkKey(chunkX, chunkY);
+        }
+      }
+    }
+    Arrays.sort(keys, 0, keyCount);
+    int unique = 0;
+    for (int i = 0; i < keyCount; i++) {
+      if (unique == 0 || keys[i] != keys[unique - 1]) {
+        keys[unique++] = keys[i];
+      }
+    }
+
+    if (!isParallel(source, column, row, maxColumn, maxRow)) {
+      for (int i = 0; i < unique; i++) {
+        GridChunk chunk = chunk(chunkX(keys[i]), chunkY(keys[i]), true);
+        int before = chunk.getCellCount();
+        long bytes = chunk.getMemoryUsage();
+        captureCopy(chunk, column, row, maxColumn, maxRow, false);
+        boolean changed =
+            copyRows(chunk, column, row, maxColumn, maxRow, source, columnOffset, rowOffset, false);
+        captureCopy(chunk, column, row, maxColumn, maxRow, true);
+        updateFilled(chunk, before, bytes, changed);
+      }
+      return;
+    }
+
+    GridChunk[] targets = new GridChunk[unique];
+    int[] before = new int[unique];
+    long[] bytes = new long[unique];
+    boolean[] changed = new boolean[unique];
+    for (int i = 0; i < unique; i++) {
+      targets[i] = chunk(chunkX(keys[i]), chunkY(keys[i]), true);
+      before[i] = targets[i].getCellCount();
+      bytes[i] = targets[i].getMemoryUsage();
+      captureCopy(targets[i], column, row, maxColumn, maxRow, false);
+    }
+    ForkJoinPool.commonPool()
+        .invoke(
+            new ChunkTask(
+                0,
+                unique,
+                i ->
+                    changed[i] =
+                        copyRows(
+                            targets[i],
+                            column,
+                            row,
+                            maxColumn,
+                            maxRow,
+                            source,
+                            columnOffset,
+                            rowOffset,
+                            true)));
+    for (int i = 0; i < unique; i++) {
+      captureCopy(targets[i], column, row, maxColumn, maxRow, true);
+      updateFilled(targets[i], before[i], bytes[i], changed[i]);
+    }
+  }
+
+  // Copies the part of the rectangle inside chunk from source, shifted by the offsets, one row
+  // segment per source chunk. Concurrent copies only read the source's resident chunk table.
+  private static boolean copyRows(
+      GridChunk chunk,
+      int minColumn,
+      int minRow,
+      int maxColumn,
+      int maxRow,
+      GridModel source,
+      int columnOffset,
+      int rowOffset,
+      boolean concurrent) {
+    int baseColumn = chunk.getChunkX() << CHUNK_SHIFT;
+    int baseRow = chunk.getChunkY() << CHUNK_SHIFT;
+    int fromColumn = localMin(minColumn, baseColumn);
+    int toColumn = localMax(maxColumn, baseColumn);
+    boolean changed = false;
+    for (int localRow = localMin(minRow, baseRow); localRow <= localMax(maxRow, baseRow); localRow++) {
+      int sourceRow = baseRow + localRow + rowOffset;
+      int local = fromColumn;
+      while (local <= toColumn) {
+        int sourceColumn = baseColumn + local + columnOffset;
+        int length = Math.min(toColumn - local + 1, CHUNK_SIZE - (sourceColumn & CHUNK_MASK));
+        int chunkX = sourceColumn >> CHUNK_SHIFT;
+        int chunkY = sourceRow >> CHUNK_SHIFT;
+        GridChunk from =
+            concurrent
+                ? source.chunks.get(chunkKey(chunkX, chunkY))
+                : source.chunk(chunkX, chunkY, false);
+        changed |=
+            chunk.copyFrom(
+                from, cellIndex(sourceColumn, sourceRow), localRow << CHUNK_SHIFT | local, length);
+        local += length;
+      }
+    }
+    return changed;
+  }
+
+  // Journals the part of the rectangle inside chunk before or after a paste writes it
+  private void captureCopy(
+      GridChunk chunk, int minColumn, int minRow, int maxColumn, int maxRow, boolean pasted) {
+    if (journal == null) {
+      return;
+    }
+    int baseColumn = chunk.getChunkX() << CHUNK_SHIFT;
+    int baseRow = chunk.getChunkY() << CHUNK_SHIFT;
+    int fromColumn = localMin(minColumn, baseColumn);
+    int fromRow = localMin(minRow, baseRow);
+    int toColumn = localMax(maxColumn, baseColumn);
+    int toRow = localMax(maxRow, baseRow);
+    if (pasted) {
+      journal.capturePasted(
+          chunk.getChunkX(), chunk.getChunkY(), chunk, fromColumn, fromRow, toColumn, toRow);
+    } else {
+      journal.captureChunk(
+          chunk.getChunkX(), chunk.getChunkY(), chunk, fromColumn, fromRow, toColumn, toRow);
+    }
+  }
+
+  // Whether an edit of the rectangle reading from source is large enough to split across the
+  // common pool. Models on files fault chunks in and out, so they are edited on one thread.
+  private boolean isParallel(
+      GridModel source, int minColumn, int minRow, int maxColumn, int maxRow) {
+    double cells = ((double) maxColumn - minColumn + 1) * ((double) maxRow - minRow + 1);
+    return store == null
+        && source.store == null
+        && cells >= PARALLEL_THRESHOLD
+        && ForkJoinPool.getCommonPoolParallelism() >= 2;
+  }
+
+  // Resident chunks in the inclusive chunk range, created where missing if create is set. Finding
+  // the existing chunks of a large range scans the chunk table instead of probing every coordinate.
+  private GridChunk[] collectChunks(
+      int minChunkX, int minChunkY, int maxChunkX, int maxChunkY, boolean create) {
+    long range = ((long) maxChunkX - minChunkX + 1) * ((long) maxChunkY - minChunkY + 1);
+    if (!create && range > chunks.size()) {
+      GridChunk[] found = new GridChunk[chunks.size()];
+      int count = 0;
+      for (int slot = 0; slot < chunks.capacity(); slot++) {
+        GridChunk chunk = chunks.chunkAt(slot);
+        if (chunk != null
+            && chunk.getChunkX() >= minChunkX
+            && chunk.getChunkX() <= maxChunkX
+            && chunk.getChunkY() >= minChunkY
+            && chunk.getChunkY() <= maxChunkY) {
+          found[count++] = chunk;
+        }
+      }
+      return Arrays.copyOf(found, count);
+    }
+    if (range > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("Too many chunks to fill: " + range);
+    }
+    GridChunk[] found = new GridChunk[(int) range];
+    int count = 0;
+    for (int chunkY = minChunkY; chunkY <= maxChunkY; chunkY++) {
+      for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+        GridChunk chunk = chunk(chunkX, chunkY, create);
+        if (chunk != null) {
+          found[count++] = chunk;
+        }
+      }
+    }
+    return Arrays.copyOf(found, count);
+  }
+
+  // Keys of the non-empty chunks in the inclusive chunk range, resident or not
+  private long[] chunkKeys(int minChunkX, int minChunkY, int maxChunkX, int maxChunkY) {
+    long range = ((long) maxChunkX - minChunkX + 1) * ((long) maxChunkY - minChunkY + 1);
+    long[][] keys = {new long[16]};
+    int[] count = {0};
+    LongConsumer add =
+        key -> {
+          if (count[0] == keys[0].length) {
+            keys[0] = Arrays.copyOf(keys[0], count[0] * 2);
+          }
+          keys[0][count[0]++] = key;
+        };
+    try {
+      if (range <= getChunkCount()) {
+        for (int chunkY = minChunkY; chunkY <= maxChunkY; chunkY++) {
+          for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            long key = chunkKey(chunkX, chunkY);
+            if (chunks.get(key) != null || store != null && store.find(key) >= 0) {
+              add.accept(key);
+            }
+          }
+        }
+      } else {
+        LongConsumer filter =
+            key -> {
+              if (chunkX(key) >= minChunkX
+                  && chunkX(key) <= maxChunkX
+                  && chunkY(key) >= minChunkY
+                  && chunkY(key) <= maxChunkY) {
+                add.accept(key);
+              }
+            };
+        if (store != null) {
+          store.forEachKey(filter);
+        } else {
+          for (int slot = 0; slot < chunks.capacity(); slot++) {
+            GridChunk chunk = chunks.chunkAt(slot);
+            if (chunk != null) {
+              filter.accept(chunkKey(chunk.getChunkX(), chunk.getChunkY()));
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return Arrays.copyOf(keys[0], count[0]);
+  }
+
+  // Writes runs of (length, value) pairs back into the local inclusive rectangle of a chunk, in
+  // row-major order. Used by the journal to restore what a bulk edit overwrote.
+  void restoreChunk(
+      int chunkX,
+      int chunkY,
+      int fromColumn,
+      int fromRow,
+      int toColumn,
+      int toRow,
+      int[] runs,
+      int offset,
+      int runCount) {
+    boolean create = false;
+    for (int i = 0; i < runCount; i++) {
+      create |= runs[offset + 2 * i + 1] != 0;
+    }
+    GridChunk chunk = chunk(chunkX, chunkY, create);
+    if (chunk == null || !create && chunk.isEmpty()) {
+      return;
+    }
+    int before = chunk.getCellCount();
+    long bytes = chunk.getMemoryUsage();
+    boolean changed = chunk.fillRuns(fromColumn, fromRow, toColumn, toRow, runs, offset, runCount);
+    updateFilled(chunk, before, bytes, changed);
+  }
+
+  // Writes count cells, given as local indices and values, into one chunk without reporting them.
+  // Used by imports, which report their bounds through importFinished() once done.
+  void importCells(int chunkX, int chunkY, int[] indices, int[] values, int count) {
+    boolean create = false;
+    for (int i = 0; i < count; i++) {
+      create |= values[i] != 0;
+    }
+    GridChunk chunk = chunk(chunkX, chunkY, create);
+    if (chunk == null) {
+      return;
+    }
+    int before = chunk.getCellCount();
+    long bytes = chunk.getMemoryUsage();
+    boolean changed = false;
+    for (int i = 0; i < count; i++) {
+      changed |= chunk.set(indices[i], values[i]) != values[i];
+    }
+    updateFilled(chunk, before, bytes, changed);
+  }
+
+  // Replaces all cells of one chunk with the given values, without reporting them. Used by imports
+  // of whole chunks, which report their bounds through importFinished() once done.
+  void importChunk(int chunkX, int chunkY, int[] values) {
+    boolean create = false;
+    for (int i = 0; i < values.length && !create; i++) {
+      create = values[i] != 0;
+    }
+    GridChunk chunk = chunk(chunkX, chunkY, create);
+    if (chunk == null) {
+      return;
+    }
+    int before = chunk.getCellCount();
+    long bytes = chunk.getMemoryUsage();
+    chunk.load(values);
+    updateFilled(chunk, before, bytes, true);
+  }
+
+  // Reports the inclusive bounds of cells an import wrote with restoreChunk() or importCells().
+  // An import can't be undone, so an attached journal forgets its history, as on clear().
+  void importFinished(int minColumn, int minRow, int maxColumn, int maxRow) {
+    if (journal != null) {
+      journal.clear();
+    }
+    fireCellsChanged(minColumn, minRow, maxColumn, maxRow);
+  }
+
+  // Accounts for a bulk write to a chunk that held before cells in bytes of memory, dropping it if
+  // it ended up empty
+  private void updateFilled(GridChunk chunk, int before, long bytes, boolean changed) {
+    cellCount += chunk.getCellCount() - before;
+    residentBytes += chunk.getMemoryUsage() - bytes;
+    if (changed) {
+      chunk.dirty = true;
+    }
+    if (chunk.isEmpty()) {
+      discard(chunk);
+    }
+  }
+
+  // First and last local column or row of a chunk starting at base inside [min, max]
+  private static int localMin(int min, int base) {
+    return Math.max(min, base) & CHUNK_MASK;
+  }
+
+  private static int localMax(int max, int base) {
+    return Math.min(max, base | CHUNK_MASK) & CHUNK_MASK;
+  }
+
+  // Runs a body for each index of a range, halving the range across the pool
+  private static final class ChunkTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    // Fewest chunks a task handles itself rather than splitting
+    private static final int MIN_CHUNKS = 8;
+
+    private final int from;
+    private final int to;
+    private final IntConsumer body;
+
+    ChunkTask(int from, int to, IntConsumer body) {
+      this.from = from;
+      this.to = to;
+      this.body = body;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from >= 2 * MIN_CHUNKS && getPool() != null) {
+        int middle = (from + to) >>> 1;
+        invokeAll(new ChunkTask(from, middle, body), new ChunkTask(middle, to, body));
+        return;
+      }
+      for (int i = from; i < to; i++) {
+        body.accept(i);
+      }
+    }
+  }
+
+  public void addListener(GridModelListener listener) {
+    listeners = Arrays.copyOf(listeners, listeners.length + 1);
+    listeners[listeners.length - 1] = listener;
+  }
+
+  public void removeListener(GridModelListener listener) {
+    for (int i = 0; i < listeners.length; i++) {
+      if (listeners[i] == listener) {
+        GridModelListener[] remaining = new GridModelListener[listeners.length - 1];
+        System.arraycopy(listeners, 0, remaining, 0, i);
+        System.arraycopy(listeners, i + 1, remaining, i, remaining.length - i);
+        listeners = remaining;
+        return;
+      }
+    }
+  }
+
+  // Reports one changed rectangle, inclusive, to all listeners
+  protected void fireCellsChanged(int minColumn, int minRow, int maxColumn, int maxRow) {
+    for (GridModelListener listener : listeners) {
+      listener.cellsChanged(this, minColumn, minRow, maxColumn, maxRow);
+    }
+  }
+
+  // Chunk holding the given chunk coordinates, or null if all its cells are empty. For a
+  // file-backed model this loads the chunk if it isn't resident.
+  public GridChunk getChunk(int chunkX, int chunkY) {
+    return chunk(chunkX, chunkY, false);
+  }
+
+  // Number of non-empty chunks, resident or not
+  public int getChunkCount() {
+    return store != null ? store.getChunkCount() : chunks.size();
+  }
+
+  // Number of chunks currently held in memory
+  public int getResidentChunkCount() {
+    return chunks.size();
+  }
+
+  // Number of non-empty cells
+  public long getCellCount() {
+    return cellCount;
+  }
+
+  public boolean isEmpty() {
+    return cellCount == 0;
+  }
+
+  // Approximate heap footprint of the chunk table and all resident chunks
+  public long getMemoryUsage() {
+    return chunks.getMemoryUsage() + residentBytes;
+  }
+
+  public long getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  // Bytes of resident chunks a file-backed model keeps before evicting; ignored in memory
+  public void setMemoryBudget(long bytes) {
+    memoryBudget = bytes;
+    evict(null);
+  }
+
+  // Calls the visitor for every non-empty chunk, in no particular order. For a file-backed model
+  // chunks are loaded as they are visited and may be evicted again afterwards. The visitor must
+  // not modify the model.
+  public void forEachChunk(Consumer<GridChunk> visitor) {
+    if (store != null) {
+      try {
+        store.forEachKey(key -> visitor.accept(chunk(chunkX(key), chunkY(key), false)));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return;
+    }
+    for (int slot = 0; slot < chunks.capacity(); slot++) {
+      GridChunk chunk = chunks.chunkAt(slot);
+      if (chunk != null) {
+        visitor.accept(chunk);
+      }
+    }
+  }
+
+  boolean isFileBacked() {
+    return store != null;
+  }
+
+  // In-memory copy of the chunks in the inclusive chunk range, for readers on other threads. Large
+  // ranges are served from the chunk table rather than by probing every coordinate.
+  GridModel snapshot(int minChunkX, int minChunkY, int maxChunkX, int maxChunkY) {
+    GridModel copy = new GridModel();
+    long range = ((long) maxChunkX - minChunkX + 1) * ((long) maxChunkY - minChunkY + 1);
+    if (range <= getChunkCount()) {
+      for (int chunkY = minChunkY; chunkY <= maxChunkY; chunkY++) {
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+          GridChunk chunk = chunk(chunkX, chunkY, false);
+          if (chunk != null) {
+            copy.adopt(chunk.copy());
+          }
+        }
+      }
+    } else {
+      forEachChunk(
+          chunk -> {
+            int chunkX = chunk.getChunkX();
+            int chunkY = chunk.getChunkY();
+            if (chunkX >= minChunkX
+                && chunkX <= maxChunkX
+                && chunkY >= minChunkY
+                && chunkY <= maxChunkY) {
+              copy.adopt(chunk.copy());
+            }
+          });
+    }
+    return copy;
+  }
+
+  private void adopt(GridChunk chunk) {
+    chunks.put(chunkKey(chunk.getChunkX(), chunk.getChunkY()), chunk);
+    cellCount += chunk.getCellCount();
+    residentBytes += chunk.getMemoryUsage();
+  }
+
+  // Writes all dirty chunks back to the file
+  public void flush() throws IOException {
+    if (store == null) {
+      return;
+    }
+    for (int slot = 0; slot < chunks.capacity(); slot++) {
+      GridChunk chunk = chunks.chunkAt(slot);
+      if (chunk != null) {
+        writeBack(chunk);
+      }
+    }
+    store.setCellCount(cellCount);
+    store.flush();
+  }
+
+  // Flushes and closes the backing file; the model is empty afterwards
+  @Override
+  public void close() throws IOException {
+    if (store == null) {
+      return;
+    }
+    try {
+      flush();
+    } finally {
+      store.close();
+      store = null;
+      chunks.clear();
+      cellCount = 0;
+      residentBytes = 0;
+    }
+  }
+
+  // Resident chunk for the coordinates, faulting it in from the store or creating it as needed
+  GridChunk chunk(int chunkX, int chunkY, boolean create) {
+    long key = chunkKey(chunkX, chunkY);
+    GridChunk chunk = chunks.get(key);
+    if (chunk != null) {
+      chunk.referenced = true;
+      return chunk;
+    }
+    if (store == null && !create) {
+      return null;
+    }
+
+    try {
+      int slot = store != null ? store.find(key) : -1;
+      if (slot >= 0) {
+        chunk = new GridChunk(chunkX, chunkY);
+        store.read(slot, transfer);
+        chunk.load(transfer);
+        chunk.slot = slot;
+      } else if (create) {
+        chunk = new GridChunk(chunkX, chunkY);
+        if (store != null) {
+          chunk.slot = store.allocate(key);
+        }
+      } else {
+        return null;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    chunk.referenced = true;
+    chunks.put(key, chunk);
+    residentBytes += chunk.getMemoryUsage();
+    evict(chunk);
+    return chunk;
+  }
+
+  // Drops a chunk whose cells were all emptied, including its slot in the store
+  private void discard(GridChunk chunk) {
+    long key = chunkKey(chunk.getChunkX(), chunk.getChunkY());
+    chunks.remove(key);
+    residentBytes -= chunk.getMemoryUsage();
+    if (store != null) {
+      try {
+        store.delete(key);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  // Evicts unreferenced chunks until the resident set fits the budget, sparing keep
+  private void evict(GridChunk keep) {
+    if (store == null) {
+      return;
+    }
+    while (residentBytes > memoryBudget && chunks.size() > (keep != null ? 1 : 0)) {
+      if (clockHand >= chunks.capacity()) {
+        clockHand = 0;
+      }
+      GridChunk chunk = chunks.chunkAt(clockHand);
+      if (chunk == null || chunk == keep) {
+        clockHand++;
+      } else if (chunk.referenced) {
+        chunk.referenced = false;
+        clockHand++;
+      } else {
+        // Removal may shift another entry into this slot, so the hand stays put
+        writeBack(chunk);
+        chunks.remove(chunkKey(chunk.getChunkX(), chunk.getChunkY()));
+        residentBytes -= chunk.getMemoryUsage();
+      }
+    }
+  }
+
+  private void writeBack(GridChunk chunk) {
+    if (!chunk.dirty) {
+      return;
+    }
+    chunk.copyTo(transfer);
+    try {
+      store.write(chunk.slot, transfer);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    chunk.dirty = false;
+  }
+
+  static long chunkKey(int chunkX, int chunkY) {
+    return (long) chunkX << 32 | (chunkY & 0xFFFFFFFFL);
+  }
+
+  static int chunkX(long key) {
+    return (int) (key >> 32);
+  }
+
+  static int chunkY(long key) {
+    return (int) key;
+  }
+
+  static int cellIndex(int column, int row) {
+    return (row & CHUNK_MASK) << CHUNK_SHIFT | (column & CHUNK_MASK);
+  }
+}
@@ -0,0 +1,8 @@
+package com.kynesis;
+
+// Notified after cells of a GridModel change. The inclusive bounds cover every changed cell of one
+// operation, so bulk edits are reported once rather than cell by cell.
+@FunctionalInterface
+public interface GridModelListener {
+  void cellsChanged(GridModel model, int minColumn, int minRow, int maxColumn, int maxRow);
+}
@@ -0,0 +1,266 @@
+package com.kynesis;
+
+import java.util.function.LongSupplier;
+import javafx.animation.AnimationTimer;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.input.ZoomEvent;
+
+// Pan and zoom input for an InfiniteGrid. Mouse drags, scroll and zoom gestures and panBy() calls
+// only accumulate into a pending screen-space transform; an AnimationTimer applies it once per
+// pulse, so however many events a high-rate mouse delivers in a frame, the viewport properties
+// change once. A released drag keeps the grid gliding at the release velocity, slowed down
+// exponentially by the grid's scroll friction.
+final class GridNavigator {
+  // Zoom factor per pixel of scroll delta while Ctrl is held, about 6% per wheel notch
+  private static final double ZOOM_PER_SCROLL_PIXEL = 1.0015;
+
+  // Drag samples within this many nanoseconds of the release give the glide velocity
+  private static final long VELOCITY_WINDOW = 100_000_000L;
+  private static final int SAMPLES = 16;
+
+  // Glides slower than this, in pixels per second, stop
+  private static final double MIN_GLIDE_SPEED = 10;
+
+  // Longest interval, in seconds, a glide step covers, so a stalled frame doesn't jump ahead
+  private static final double MAX_STEP = 0.05;
+
+  private final InfiniteGrid grid;
+
+  private final AnimationTimer timer =
+      new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+          frame(now);
+        }
+      };
+  private boolean running;
+  private long lastFrame;
+
+  // Source of drag sample times, in nanoseconds; replaced by tests
+  LongSupplier clock = System::nanoTime;
+
+  // Transform of screen points s -> pendingScale * s + pendingX/Y accumulated since the last frame
+  private double pendingScale = 1;
+  private double pendingX;
+  private double pendingY;
+  private boolean pending;
+
+  // Current drag and its recent pointer positions, oldest overwritten first
+  private boolean dragging;
+  private double lastX;
+  private double lastY;
+  private final long[] sampleTimes = new long[SAMPLES];
+  private final double[] sampleX = new double[SAMPLES];
+  private final double[] sampleY = new double[SAMPLES];
+  private int sampleCount;
+
+  // Glide velocity in pixels per second
+  private boolean gliding;
+  private double velocityX;
+  private double velocityY;
+
+  GridNavigator(InfiniteGrid grid) {
+    this.grid = grid;
+    grid.addEventHandler(MouseEvent.MOUSE_PRESSED, this::mousePressed);
+    grid.addEventHandler(MouseEvent.MOUSE_DRAGGED, this::mouseDragged);
+    grid.addEventHandler(MouseEvent.MOUSE_RELEASED, this::mouseReleased);
+    grid.addEventHandler(ScrollEvent.SCROLL, this::scrolled);
+    grid.addEventHandler(ZoomEvent.ZOOM, this::zoomed);
+  }
+
+  // Moves the grid content by (dx, dy) screen pixels on the next frame
+  void panBy(double dx, double dy) {
+    pendingX += dx;
+    pendingY += dy;
+    schedule();
+  }
+
+  // Scales the grid by factor about the screen point (pivotX, pivotY) on the next frame
+  void zoomBy(double factor, double pivotX, double pivotY) {
+    if (!(factor > 0) || Double.isInfinite(factor)) {
+      return;
+    }
+    pendingScale *= factor;
+    pendingX = factor * pendingX + pivotX * (1 - factor);
+    pendingY = factor * pendingY + pivotY * (1 - factor);
+    schedule();
+  }
+
+  // Applies pending input now rather than on the next frame
+  void flush() {
+    if (pending) {
+      apply();
+    }
+  }
+
+  void stopGlide() {
+    gliding = false;
+    velocityX = 0;
+    velocityY = 0;
+  }
+
+  private void schedule() {
+    pending = true;
+    start();
+  }
+
+  private void start() {
+    if (!running) {
+      running = true;
+      lastFrame = 0;
+      timer.start();
+    }
+  }
+
+  // Advances a glide to the frame time now, in nanoseconds, and applies pending input
+  void frame(long now) {
+    double elapsed = lastFrame == 0 ? 0 : Math.min((now - lastFrame) / 1e9, MAX_STEP);
+    lastFrame = now;
+    if (gliding) {
+      pendingX += velocityX * elapsed;
+      pendingY += velocityY * elapsed;
+      pending = true;
+      double decay = Math.exp(-Math.max(grid.getScrollFriction(), 0) * elapsed);
+      velocityX *= decay;
+      velocityY *= decay;
+      if (Math.hypot(velocityX, velocityY) < MIN_GLIDE_SPEED) {
+        stopGlide();
+      }
+    }
+    if (pending) {
+      apply();
+    }
+    if (!gliding) {
+      timer.stop();
+      running = false;
+    }
+  }
+
+  // Moves the viewport so the grid point at screen point s ends up at pendingScale * s + pending
+  private void apply() {
+    double scale = grid.getGridScale() * pendingScale;
+    if (scale > 0 && !Double.isInfinite(scale)) {
+      if (pendingScale != 1) {
+        grid.setGridScale(scale);
+      }
+      grid.setGridX(grid.getGridX() - pendingX / scale);
+      grid.setGridY(grid.getGridY() - pendingY / scale);
+    }
+    pendingScale = 1;
+    pendingX = 0;
+    pendingY = 0;
+    pending = false;
+  }
+
+  // Event handlers
+
+  private void mousePressed(MouseEvent event) {
+    if (!grid.isNavigationEnabled() || event.getButton() != grid.getPanButton()) {
+      return;
+    }
+    dragging = true;
+    stopGlide();
+    lastX = event.getX();
+    lastY = event.getY();
+    clearSamples();
+    addSample(lastX, lastY);
+  }
+
+  private void mouseDragged(MouseEvent event) {
+    if (!dragging) {
+      return;
+    }
+    panBy(event.getX() - lastX, event.getY() - lastY);
+    lastX = event.getX();
+    lastY = event.getY();
+    addSample(lastX, lastY);
+    event.consume();
+  }
+
+  private void mouseReleased(MouseEvent event) {
+    if (!dragging || event.getButton() != grid.getPanButton()) {
+      return;
+    }
+    dragging = false;
+    addSample(event.getX(), event.getY());
+    if (grid.isInertialScrolling()) {
+      startGlide();
+    }
+    event.consume();
+  }
+
+  private void scrolled(ScrollEvent event) {
+    if (!grid.isNavigationEnabled() || dragging) {
+      return;
+    }
+    if (!event.isInertia()) {
+      stopGlide();
+    }
+    if (event.isControlDown()) {
+      zoomBy(Math.pow(ZOOM_PER_SCROLL_PIXEL, event.getDeltaY()), event.getX(), event.getY());
+    } else {
+      panBy(event.getDeltaX(), event.getDeltaY());
+    }
+    event.consume();
+  }
+
+  private void zoomed(ZoomEvent event) {
+    if (!grid.isNavigationEnabled()) {
+      return;
+    }
+    zoomBy(event.getZoomFactor(), event.getX(), event.getY());
+    event.consume();
+  }
+
+  // Glide velocity
+
+  boolean isGliding() {
+    return gliding;
+  }
+
+  double getVelocityX() {
+    return velocityX;
+  }
+
+  double getVelocityY() {
+    return velocityY;
+  }
+
+  void clearSamples() {
+    sampleCount = 0;
+  }
+
+  void addSample(double x, double y) {
+    int index = sampleCount++ % SAMPLES;
+    sampleTimes[index] = clock.getAsLong();
+    sampleX[index] = x;
+    sampleY[index] = y;
+  }
+
+  // Starts gliding at the pointer's average velocity over the samples just before the release
+  void startGlide() {
+    int newest = (sampleCount - 1) % SAMPLES;
+    long end = sampleTimes[newest];
+    int oldest = newest;
+    for (int i = 1; i < Math.min(sampleCount, SAMPLES); i++) {
+      int index = Math.floorMod(newest - i, SAMPLES);
+      if (end - sampleTimes[index] > VELOCITY_WINDOW) {
+        break;
+      }
+      oldest = index;
+    }
+    double seconds = (end - sampleTimes[oldest]) / 1e9;
+    if (seconds <= 0) {
+      return;
+    }
+    velocityX = (sampleX[newest] - sampleX[oldest]) / seconds;
+    velocityY = (sampleY[newest] - sampleY[oldest]) / seconds;
+    if (Math.hypot(velocityX, velocityY) >= MIN_GLIDE_SPEED) {
+      gliding = true;
+      start();
+    } else {
+      stopGlide();
+    }
+  }
+}
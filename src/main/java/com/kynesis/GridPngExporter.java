@@ -0,0 +1,330 @@
+package com.kynesis;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntUnaryOperator;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// Exports a grid-space rectangle as a PNG of any size without ever holding the whole image. The
+// image is painted by GridRaster in bands of rows on a ForkJoinPool, and each band is filtered and
+// deflated on its own thread into a raw deflate stream ended with a sync flush. The exporting
+// thread writes the bands out in order as IDAT chunks; concatenated, they form one zlib stream
+// whose checksum is combined from the bands'. Only a few bands per pool thread are in flight, so
+// memory grows with the band height and the image width, not with the image.
+//
+// The export runs on the calling thread and blocks until the image is written. cancel(), from any
+// thread, stops it after the bands in flight; the output is then left incomplete. The content must
+// not be modified while exporting; a file-backed model is read a band at a time on the calling
+// thread and painted from copies.
+public final class GridPngExporter {
+  public static final int DEFAULT_BAND_HEIGHT = 64;
+
+  // Reports the image rows written so far, on the exporting thread after each band
+  public interface ProgressListener {
+    void progress(int rowsWritten, int rows);
+  }
+
+  private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+  // zlib header for deflate with a 32K window, and a final empty fixed-Huffman block that ends the
+  // sync-flushed band streams
+  private static final byte[] ZLIB_HEADER = {0x78, (byte) 0x9C};
+  private static final byte[] FINAL_BLOCK = {0x03, 0x00};
+
+  private static final int ADLER_BASE = 65521;
+
+  // Bands in flight per pool thread, so the pool stays busy while the oldest band is written
+  private static final int BANDS_PER_THREAD = 2;
+
+  private final ForkJoinPool pool;
+  private int bandHeight = DEFAULT_BAND_HEIGHT;
+  private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+  private ProgressListener progressListener;
+  private volatile boolean cancelled;
+
+  public GridPngExporter() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  public GridPngExporter(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  public int getBandHeight() {
+    return bandHeight;
+  }
+
+  // Rows painted and deflated as one unit
+  public void setBandHeight(int rows) {
+    if (rows <= 0) {
+      throw new IllegalArgumentException("Invalid band height " + rows);
+    }
+    bandHeight = rows;
+  }
+
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  // Deflater level, 0 to 9, or Deflater.DEFAULT_COMPRESSION
+  public void setCompressionLevel(int level) {
+    if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid compression level " + level);
+    }
+    compressionLevel = level;
+  }
+
+  public ProgressListener getProgressListener() {
+    return progressListener;
+  }
+
+  public void setProgressListener(ProgressListener listener) {
+    progressListener = listener;
+  }
+
+  // Stops the running export after the bands in flight; a cancelled exporter stays cancelled
+  public void cancel() {
+    cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  // Writes the area gridWidth x gridHeight grid units wide whose top-left is grid coordinate
+  // (gridX, gridY), at scale pixels per grid unit. The style's line budget applies to the whole
+  // image as to a single frame, so large exports may need a larger one to keep their fine lines.
+  // Throws CancellationException if the export was cancelled.
+  public void export(
+      GridModel content,
+      IntUnaryOperator colorMap,
+      GridStyle style,
+      double scale,
+      double gridX,
+      double gridY,
+      double gridWidth,
+      double gridHeight,
+      OutputStream out)
+      throws IOException {
+    double pixelWidth = Math.ceil(gridWidth * scale);
+    double pixelHeight = Math.ceil(gridHeight * scale);
+    if (!(scale > 0) || !(pixelWidth >= 1) || !(pixelHeight >= 1)
+        || pixelWidth > Integer.MAX_VALUE || pixelHeight > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "Invalid export area " + gridWidth + "x" + gridHeight + " at scale " + scale);
+    }
+    int width = (int) pixelWidth;
+    int height = (int) pixelHeight;
+    int rows = (int) Math.max(1, Math.min(bandHeight, (Integer.MAX_VALUE - 8) / (4L * width + 1)));
+    if (content != null && content.isEmpty()) {
+      content = null;
+    }
+
+    // Laid out once for the whole image and shared by the bands
+    GridRaster.Lines lines = GridRaster.lines(style, scale, gridX, gridY, width, height);
+
+    writeHeader(out, width, height);
+    writeChunk(out, "IDAT", ZLIB_HEADER, ZLIB_HEADER.length);
+    ArrayDeque<ForkJoinTask<Band>> inFlight = new ArrayDeque<>();
+    int maxInFlight = Math.max(1, pool.getParallelism() * BANDS_PER_THREAD);
+    long adler = 1;
+    int next = 0;
+    int written = 0;
+    try {
+      while (written < height) {
+        while (next < height && inFlight.size() < maxInFlight) {
+          checkCancelled();
+          int top = next;
+          int bottom = (int) Math.min((long) top + rows, height);
+          GridModel bandContent = content;
+          if (content != null && content.isFileBacked()) {
+            // A band one pixel taller on either side covers every cell it draws
+            bandContent =
+                GridRaster.snapshot(
+                    content, style, scale, gridX, gridY + (top - 1) / scale, width,
+                    bottom - top + 2);
+          }
+          GridModel painted = bandContent;
+          inFlight.add(
+              pool.submit(
+                  () ->
+                      paintBand(
+                          painted, colorMap, style, scale, gridX, gridY, lines, width, top,
+                          bottom)));
+          next = bottom;
+        }
+        Band band = join(inFlight.poll());
+        writeChunk(out, "IDAT", band.data, band.length);
+        adler = combineAdler(adler, band.adler, band.rawLength);
+        written = band.bottom;
+        if (progressListener != null) {
+          progressListener.progress(written, height);
+        }
+      }
+    } finally {
+      for (ForkJoinTask<Band> task : inFlight) {
+        task.cancel(false);
+      }
+    }
+
+    byte[] trailer = Arrays.copyOf(FINAL_BLOCK, FINAL_BLOCK.length + 4);
+    ByteBuffer.wrap(trailer).putInt(FINAL_BLOCK.length, (int) adler);
+    writeChunk(out, "IDAT", trailer, trailer.length);
+    writeChunk(out, "IEND", new byte[0], 0);
+    out.flush();
+  }
+
+  // Paints, filters and deflates one band, on a pool thread
+  private Band paintBand(
+      GridModel content,
+      IntUnaryOperator colorMap,
+      GridStyle style,
+      double scale,
+      double gridX,
+      double gridY,
+      GridRaster.Lines lines,
+      int width,
+      int top,
+      int bottom) {
+    checkCancelled();
+    int[] pixels = new int[width * (bottom - top)];
+    GridRaster.paintBand(
+        pixels, width, top, bottom, style, scale, gridX, gridY, content, colorMap, lines);
+
+    // Each scanline is filter type 0 followed by its RGBA bytes
+    int stride = 4 * width + 1;
+    byte[] raw = new byte[stride * (bottom - top)];
+    for (int y = 0, at = 0; y < bottom - top; y++) {
+      raw[at++] = 0;
+      for (int x = 0, offset = y * width; x < width; x++) {
+        int argb = pixels[offset + x];
+        raw[at++] = (byte) (argb >> 16);
+        raw[at++] = (byte) (argb >> 8);
+        raw[at++] = (byte) argb;
+        raw[at++] = (byte) (argb >>> 24);
+      }
+    }
+    pixels = null;
+
+    Adler32 adler = new Adler32();
+    adler.update(raw);
+    Deflater deflater = new Deflater(compressionLevel, true);
+    try {
+      deflater.setInput(raw);
+      byte[] data = new byte[Math.max(64, raw.length / 8)];
+      int length = 0;
+      while (true) {
+        length += deflater.deflate(data, length, data.length - length, Deflater.SYNC_FLUSH);
+        if (length < data.length) {
+          break;
+        }
+        data = Arrays.copyOf(data, data.length * 2);
+      }
+      return new Band(bottom, data, length, (int) adler.getValue(), raw.length);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private void checkCancelled() {
+    if (cancelled) {
+      throw new CancellationException("Export cancelled");
+    }
+  }
+
+  private Band join(ForkJoinTask<Band> task) throws IOException {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Export interrupted");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  private static void writeHeader(OutputStream out, int width, int height) throws IOException {
+    out.write(SIGNATURE);
+    byte[] header = new byte[13];
+    ByteBuffer.wrap(header)
+        .putInt(width)
+        .putInt(height)
+        .put((byte) 8) // Bits per channel
+        .put((byte) 6) // RGBA
+        .put((byte) 0) // Deflate
+        .put((byte) 0) // Adaptive filtering
+        .put((byte) 0); // No interlace
+    writeChunk(out, "IHDR", header, header.length);
+  }
+
+  private static void writeChunk(OutputStream out, String type, byte[] data, int length)
+      throws IOException {
+    byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+    CRC32 crc = new CRC32();
+    crc.update(typeBytes);
+    crc.update(data, 0, length);
+    byte[] word = new byte[4];
+    ByteBuffer.wrap(word).putInt(length);
+    out.write(word);
+    out.write(typeBytes);
+    out.write(data, 0, length);
+    ByteBuffer.wrap(word).putInt((int) crc.getValue());
+    out.write(word);
+  }
+
+  // Adler-32 of two byte sequences in a row, from their separate checksums and the second length
+  static long combineAdler(long first, int second, long secondLength) {
+    long remainder = secondLength % ADLER_BASE;
+    long sum1 = first & 0xFFFF;
+    long sum2 = remainder * sum1 % ADLER_BASE;
+    sum1 += (second & 0xFFFF) + ADLER_BASE - 1;
+    sum2 += (first >>> 16 & 0xFFFF) + (second >>> 16 & 0xFFFF) + ADLER_BASE - remainder;
+    if (sum1 >= ADLER_BASE) {
+      sum1 -= ADLER_BASE;
+    }
+    if (sum1 >= ADLER_BASE) {
+      sum1 -= ADLER_BASE;
+    }
+    if (sum2 >= 2L * ADLER_BASE) {
+      sum2 -= 2L * ADLER_BASE;
+    }
+    if (sum2 >= ADLER_BASE) {
+      sum2 -= ADLER_BASE;
+    }
+    return sum2 << 16 | sum1;
+  }
+
+  // One deflated band and the raw bytes it stands for
+  private static final class Band {
+    final int bottom;
+    final byte[] data;
+    final int length;
+    final int adler;
+    final int rawLength;
+
+    Band(int bottom, byte[] data, int length, int adler, int rawLength) {
+      this.bottom = bottom;
+      this.data = data;
+      this.length = length;
+      this.adler = adler;
+      this.rawLength = rawLength;
+    }
+  }
+}
@@ -0,0 +1,419 @@
+package com.kynesis;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+// Pure-Java rasterizer that paints background, cells and grid lines into a non-premultiplied ARGB
+// int buffer without touching the FX toolkit, so it can run on any thread. Lines are axis-aligned
+// spans antialiased by pixel coverage; the lines of one layer are combined as a union before
+// blending, like a single stroked path.
+final class GridRaster {
+  // Per-thread row coverage of the band being painted, grown as needed
+  private static final ThreadLocal<float[]> ROW_COVERAGE =
+      ThreadLocal.withInitial(() -> new float[0]);
+
+  private GridRaster() {}
+
+  // Paints a width x height area whose top-left pixel shows grid coordinate (originX, originY).
+  // The content, if any, must not be modified while painting.
+  static void paint(
+      int[] pixels,
+      int width,
+      int height,
+      GridStyle style,
+      double scale,
+      double originX,
+      double originY,
+      GridModel content,
+      IntUnaryOperator colorMap) {
+    Lines lines = lines(style, scale, originX, originY, width, height);
+    paintRows(
+        pixels, 0, width, 0, height, style, scale, originX, originY, content, colorMap, lines);
+  }
+
+  // Lays out the grid lines of a width x height area, or returns null if it has none. Line
+  // budgets and coverage are worked out for the whole area, so disjoint bands painted with the
+  // same layout, on any threads, add up to exactly the pixels of a single paint.
+  static Lines lines(
+      GridStyle style, double scale, double originX, double originY, int width, int height) {
+    if (!style.isShowGrid()) {
+      return null;
+    }
+    GridLevelLines layout = new GridLevelLines();
+    if (!layout.compute(style, scale, originX, originY, 0, 0, width, height)) {
+      return null;
+    }
+    return new Lines(style, layout, width);
+  }
+
+  // Paints only rows top (inclusive) to bottom (exclusive) of the area laid out by lines
+  static void paintRows(
+      int[] pixels,
+      int width,
+      int top,
+      int bottom,
+      GridStyle style,
+      double scale,
+      double originX,
+      double originY,
+      GridModel content,
+      IntUnaryOperator colorMap,
+      Lines lines) {
+    paintRows(
+        pixels, 0, width, top, bottom, style, scale, originX, originY, content, colorMap, lines);
+  }
+
+  // Paints rows top (inclusive) to bottom (exclusive) of the area into a buffer holding just those
+  // rows, so an area too large for one buffer can be painted a band at a time. The bands add up
+  // to the pixels of a single paint, as with paintRows().
+  static void paintBand(
+      int[] band,
+      int width,
+      int top,
+      int bottom,
+      GridStyle style,
+      double scale,
+      double originX,
+      double originY,
+      GridModel content,
+      IntUnaryOperator colorMap,
+      Lines lines) {
+    paintRows(
+        band, top, width, top, bottom, style, scale, originX, originY, content, colorMap, lines);
+  }
+
+  // Paints rows top to bottom into a buffer whose first row is row first of the area
+  private static void paintRows(
+      int[] pixels,
+      int first,
+      int width,
+      int top,
+      int bottom,
+      GridStyle style,
+      double scale,
+      double originX,
+      double originY,
+      GridModel content,
+      IntUnaryOperator colorMap,
+      Lines lines) {
+    Arrays.fill(pixels, (top - first) * width, (bottom - first) * width, style.getBackground());
+    if (content != null && !content.isEmpty()) {
+      paintCells(
+          pixels, first, width, top, bottom, style, scale, originX, originY, content, colorMap);
+    }
+    if (lines != null) {
+      paintLines(pixels, first, width, top, bottom, lines);
+    }
+  }
+
+  // In-memory copy of the content chunks a width x height area overlaps, or null if there is
+  // nothing to draw. Lets other threads paint content that may change or fault in chunks.
+  static GridModel snapshot(
+      GridModel content,
+      GridStyle style,
+      double scale,
+      double originX,
+      double originY,
+      int width,
+      int height) {
+    if (content == null || content.isEmpty()) {
+      return null;
+    }
+    GridLines columns = new GridLines();
+    GridLines rows = new GridLines();
+    double spacing = style.getMinorSpacing();
+    if (!columns.locate(originX, spacing, scale) || !rows.locate(originY, spacing, scale)) {
+      return null;
+    }
+    return content.snapshot(
+        clampToInt(columns.indexAt(0)) >> GridModel.CHUNK_SHIFT,
+        clampToInt(rows.indexAt(0)) >> GridModel.CHUNK_SHIFT,
+        clampToInt(columns.indexAt(width)) >> GridModel.CHUNK_SHIFT,
+        clampToInt(rows.indexAt(height)) >> GridModel.CHUNK_SHIFT);
+  }
+
+  private static void paintCells(
+      int[] pixels,
+      int first,
+      int width,
+      int top,
+      int bottom,
+      GridStyle style,
+      double scale,
+      double originX,
+      double originY,
+      GridModel content,
+      IntUnaryOperator colorMap) {
+    GridLines columns = new GridLines();
+    GridLines rows = new GridLines();
+    double spacing = style.getMinorSpacing();
+    if (!columns.locate(originX, spacing, scale) || !rows.locate(originY, spacing, scale)) {
+      return;
+    }
+    int minColumn = clampToInt(columns.indexAt(0));
+    int maxColumn = clampToInt(columns.indexAt(width));
+    int minRow = clampToInt(rows.indexAt(top));
+    int maxRow = clampToInt(rows.indexAt(bottom));
+    int minChunkX = minColumn >> GridModel.CHUNK_SHIFT;
+    int maxChunkX = maxColumn >> GridModel.CHUNK_SHIFT;
+    int minChunkY = minRow >> GridModel.CHUNK_SHIFT;
+    int maxChunkY = maxRow >> GridModel.CHUNK_SHIFT;
+
+    // Probe the visible chunk range directly unless the model holds fewer chunks than that
+    long visibleChunks = ((long) maxChunkX - minChunkX + 1) * ((long) maxChunkY - minChunkY + 1);
+    if (visibleChunks <= content.getChunkCount()) {
+      for (int chunkY = minChunkY; chunkY <= maxChunkY; chunkY++) {
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+          GridChunk chunk = content.getChunk(chunkX, chunkY);
+          if (chunk != null) {
+            paintChunk(
+                pixels, first, width, top, bottom, columns, rows, chunk, minColumn, minRow,
+                maxColumn, maxRow, colorMap);
+          }
+        }
+      }
+    } else {
+      content.forEachChunk(
+          chunk -> {
+            int chunkX = chunk.getChunkX();
+            int chunkY = chunk.getChunkY();
+            if (chunkX >= minChunkX
+                && chunkX <= maxChunkX
+                && chunkY >= minChunkY
+                && chunkY <= maxChunkY) {
+              paintChunk(
+                  pixels, first, width, top, bottom, columns, rows, chunk, minColumn, minRow,
+                  maxColumn, maxRow, colorMap);
+            }
+          });
+    }
+  }
+
+  // Fills the cells of one chunk within the bounds, merging same-valued runs along each row
+  private static void paintChunk(
+      int[] pixels,
+      int first,
+      int width,
+      int top,
+      int bottom,
+      GridLines columns,
+      GridLines rows,
+      GridChunk chunk,
+      int minColumn,
+      int minRow,
+      int maxColumn,
+      int maxRow,
+      IntUnaryOperator colorMap) {
+    long baseColumn = (long) chunk.getChunkX() << GridModel.CHUNK_SHIFT;
+    long baseRow = (long) chunk.getChunkY() << GridModel.CHUNK_SHIFT;
+    int fromColumn = (int) Math.max(minColumn - baseColumn, 0);
+    int toColumn = (int) Math.min(maxColumn - baseColumn, GridModel.CHUNK_MASK);
+    int fromRow = (int) Math.max(minRow - baseRow, 0);
+    int toRow = (int) Math.min(maxRow - baseRow, GridModel.CHUNK_MASK);
+
+    for (int row = fromRow; row <= toRow; row++) {
+      double cellTop = rows.positionOf(baseRow + row);
+      double cellBottom = rows.positionOf(baseRow + row + 1);
+      if (cellBottom <= top || cellTop >= bottom) {
+        continue;
+      }
+      int column = fromColumn;
+      while (column <= toColumn) {
+        int value = chunk.get(column, row);
+        int end = column + 1;
+        while (end <= toColumn && chunk.get(end, row) == value) {
+          end++;
+        }
+        if (value != 0) {
+          double left = columns.positionOf(baseColumn + column);
+          double right = columns.positionOf(baseColumn + end);
+          fillRect(
+              pixels, first, width, top, bottom, left, cellTop, right, cellBottom,
+              colorMap.applyAsInt(value));
+        }
+        column = end;
+      }
+    }
+  }
+
+  private static void paintLines(
+      int[] pixels, int first, int width, int top, int bottom, Lines lines) {
+    float[] rowCoverage = ROW_COVERAGE.get();
+    if (rowCoverage.length < bottom - top) {
+      rowCoverage = new float[bottom - top];
+      ROW_COVERAGE.set(rowCoverage);
+    }
+
+    // Same levels and budget as the canvas path, finest first
+    for (int layer = 0; layer < lines.layers; layer++) {
+      Arrays.fill(rowCoverage, 0, bottom - top, 0);
+      double[] rows = lines.rows[layer];
+      for (double row : rows) {
+        accumulate(rowCoverage, top, bottom, row, lines.lineWidths[layer]);
+      }
+      float[] columnCoverage = lines.columnCoverage[layer];
+      int[] covered = lines.coveredColumns[layer];
+      int stroke = lines.strokes[layer];
+      double alpha = lines.alphas[layer];
+
+      for (int y = top; y < bottom; y++) {
+        int offset = (y - first) * width;
+        float cy = rowCoverage[y - top];
+        if (cy > 0) {
+          for (int x = 0; x < width; x++) {
+            float cx = columnCoverage[x];
+            double coverage = cx + cy - cx * cy;
+            pixels[offset + x] = blend(pixels[offset + x], stroke, coverage * alpha);
+          }
+        } else {
+          // Rows without a horizontal line only visit the covered columns
+          for (int x : covered) {
+            pixels[offset + x] = blend(pixels[offset + x], stroke, columnCoverage[x] * alpha);
+          }
+        }
+      }
+    }
+  }
+
+  // Adds the coverage of pixels start (inclusive) to end (exclusive), held from coverage[0] on, by
+  // a line of the given width centred on position, saturating at 1
+  private static void accumulate(
+      float[] coverage, int start, int end, double position, double lineWidth) {
+    double from = position - lineWidth / 2;
+    double to = position + lineWidth / 2;
+    int first = (int) Math.max(Math.floor(from), start);
+    int last = (int) Math.min(Math.ceil(to) - 1, end - 1);
+    for (int p = first; p <= last; p++) {
+      double overlap = Math.min(to, p + 1) - Math.max(from, p);
+      if (overlap > 0) {
+        coverage[p - start] = (float) Math.min(1, coverage[p - start] + overlap);
+      }
+    }
+  }
+
+  // Fills the rectangle between the edges, antialiased by the area each pixel covers, within
+  // the rows top (inclusive) to bottom (exclusive)
+  private static void fillRect(
+      int[] pixels,
+      int first,
+      int width,
+      int top,
+      int bottom,
+      double left,
+      double upper,
+      double right,
+      double lower,
+      int argb) {
+    if ((argb >>> 24) == 0) {
+      return;
+    }
+    boolean opaque = (argb >>> 24) == 0xFF;
+    int fromX = (int) Math.max(Math.floor(left), 0);
+    int toX = (int) Math.min(Math.ceil(right), width);
+    int fromY = (int) Math.max(Math.floor(upper), top);
+    int toY = (int) Math.min(Math.ceil(lower), bottom);
+
+    // Fully covered columns, with partially covered ones on either side
+    int fullFrom = (int) Math.min(Math.max(Math.ceil(left), fromX), toX);
+    int fullTo = (int) Math.max(Math.min(Math.floor(right), toX), fullFrom);
+
+    for (int y = fromY; y < toY; y++) {
+      int offset = (y - first) * width;
+      double cy = Math.min(lower, y + 1) - Math.max(upper, y);
+      if (cy <= 0) {
+        continue;
+      }
+      for (int x = fromX; x < fullFrom; x++) {
+        double cx = Math.min(right, x + 1) - Math.max(left, x);
+        pixels[offset + x] = blend(pixels[offset + x], argb, cx * cy);
+      }
+      if (opaque && cy >= 1) {
+        Arrays.fill(pixels, offset + fullFrom, offset + fullTo, argb);
+      } else {
+        for (int x = fullFrom; x < fullTo; x++) {
+          pixels[offset + x] = blend(pixels[offset + x], argb, cy);
+        }
+      }
+      for (int x = fullTo; x < toX; x++) {
+        double cx = Math.min(right, x + 1) - Math.max(left, x);
+        pixels[offset + x] = blend(pixels[offset + x], argb, cx * cy);
+      }
+    }
+  }
+
+  // Source-over of src, with its alpha scaled by coverage, onto dst
+  static int blend(int dst, int src, double coverage) {
+    double sa = (src >>> 24) / 255.0 * coverage;
+    if (sa <= 0) {
+      return dst;
+    }
+    double da = (dst >>> 24) / 255.0;
+    double dw = da * (1 - sa);
+    double oa = sa + dw;
+    int r = (int) Math.round(((src >> 16 & 0xFF) * sa + (dst >> 16 & 0xFF) * dw) / oa);
+    int g = (int) Math.round(((src >> 8 & 0xFF) * sa + (dst >> 8 & 0xFF) * dw) / oa);
+    int b = (int) Math.round(((src & 0xFF) * sa + (dst & 0xFF) * dw) / oa);
+    int a = (int) Math.round(oa * 255);
+    return a << 24 | r << 16 | g << 8 | b;
+  }
+
+  // Grid lines of a whole area, laid out once per paint: each drawn level's stroke, the coverage of
+  // every pixel column by its vertical lines and the positions of its horizontal lines. Never
+  // modified after construction, so the bands of one paint share it across threads.
+  static final class Lines {
+    private final int layers;
+    private final int[] strokes;
+    private final double[] alphas;
+    private final double[] lineWidths;
+    private final float[][] columnCoverage;
+    private final int[][] coveredColumns;
+    private final double[][] rows;
+
+    private Lines(GridStyle style, GridLevelLines layout, int width) {
+      int drawn = 0;
+      for (int p = 0; p < layout.count; p++) {
+        if (layout.drawn[p]) {
+          drawn++;
+        }
+      }
+      layers = drawn;
+      strokes = new int[drawn];
+      alphas = new double[drawn];
+      lineWidths = new double[drawn];
+      columnCoverage = new float[drawn][];
+      coveredColumns = new int[drawn][];
+      rows = new double[drawn][];
+
+      int layer = 0;
+      int[] covered = new int[width];
+      for (int p = 0; p < layout.count; p++) {
+        if (!layout.drawn[p]) {
+          continue;
+        }
+        GridLevel level = style.getLevel(p);
+        strokes[layer] = level.getStroke();
+        alphas[layer] = layout.lod.alphas[p];
+        lineWidths[layer] = level.getLineWidth();
+
+        float[] coverage = new float[width];
+        for (int i = 0; i < layout.columnCounts[p]; i++) {
+          accumulate(coverage, 0, width, layout.columns[p][i], lineWidths[layer]);
+        }
+        int coveredCount = 0;
+        for (int x = 0; x < width; x++) {
+          if (coverage[x] > 0) {
+            covered[coveredCount++] = x;
+          }
+        }
+        columnCoverage[layer] = coverage;
+        coveredColumns[layer] = Arrays.copyOf(covered, coveredCount);
+        rows[layer] = Arrays.copyOf(layout.rows[p], layout.rowCounts[p]);
+        layer++;
+      }
+    }
+  }
+
+  private static int clampToInt(long value) {
+    return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+  }
+}
@@ -0,0 +1,43 @@
+package com.kynesis;
+
+// Rectangular block of cells copied out of a GridModel with GridModel.copyRegion(). The cells are
+// kept sparsely in chunks, with the region's top-left cell at (0, 0). A region never changes after
+// it is copied, so it can be pasted any number of times, into any model.
+public final class GridRegion {
+  private final int width;
+  private final int height;
+
+  // Cells in region coordinates; never exposed, so never modified after the copy
+  final GridModel cells;
+
+  GridRegion(int width, int height, GridModel cells) {
+    this.width = width;
+    this.height = height;
+    this.cells = cells;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  // Value of the cell at the given column and row, relative to the region's top-left cell
+  public int get(int column, int row) {
+    if (column < 0 || row < 0 || column >= width || row >= height) {
+      throw new IndexOutOfBoundsException("Cell " + column + "," + row + " outside region");
+    }
+    return cells.get(column, row);
+  }
+
+  // Number of non-empty cells
+  public long getCellCount() {
+    return cells.getCellCount();
+  }
+
+  public long getMemoryUsage() {
+    return cells.getMemoryUsage();
+  }
+}
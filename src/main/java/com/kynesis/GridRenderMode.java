@@ -0,0 +1,21 @@
+package com.kynesis;
+
+// Strategy used by InfiniteGrid to emit the lines of each grid layer
+public enum GridRenderMode {
+  // One strokeLine command per line
+  LINES,
+
+  // All lines of a layer as sub-paths of a single path, stroked once
+  PATH,
+
+  // All lines of a layer as thin rectangles of a single path, filled once
+  RECTS,
+
+  // One pre-rasterized pattern tile repeated over the viewport with a single fill; falls back
+  // to PATH when the visible layers don't repeat on a whole number of pixels
+  TILE,
+
+  // Fixed-size tiles of background, cells and lines rasterized on worker threads and cached;
+  // tiles that aren't ready yet show background and lines only
+  ASYNC_TILES
+}
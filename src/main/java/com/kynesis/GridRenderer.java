@@ -0,0 +1,17 @@
+package com.kynesis;
+
+import java.util.function.IntUnaryOperator;
+
+// Paints a grid into a renderer-specific target: background, then the non-empty cells of the
+// content, then the grid lines. The target's top-left pixel shows grid coordinate
+// (originX, originY) and one grid unit spans scale pixels. Content may be null, and colorMap turns
+// cell values into non-premultiplied ARGB colours.
+public interface GridRenderer {
+  void paint(
+      GridStyle style,
+      double scale,
+      double originX,
+      double originY,
+      GridModel content,
+      IntUnaryOperator colorMap);
+}
@@ -0,0 +1,293 @@
+package com.kynesis;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import javafx.scene.paint.Color;
+
+// Immutable snapshot of the properties that determine how a grid looks, with colours as ARGB
+// ints. Safe to hand to rendering threads; equal styles render identical pixels. Take one from
+// InfiniteGrid.getGridStyle(), or build one without a canvas via builder().
+//
+// The lines form a hierarchy of levels ordered from the finest to the coarsest; the minor and
+// major getters describe the finest and the coarsest level. Cells are one per square of the finest
+// level.
+public final class GridStyle {
+  private final int background;
+  private final boolean showGrid;
+
+  private final List<GridLevel> levels;
+
+  private final double lodFadeSpacing;
+  private final double lodMinSpacing;
+  private final int maxLinesPerFrame;
+
+  GridStyle(
+      int background,
+      boolean showGrid,
+      GridLevel[] levels,
+      double lodFadeSpacing,
+      double lodMinSpacing,
+      int maxLinesPerFrame) {
+    if (levels.length == 0) {
+      throw new IllegalArgumentException("A grid style needs at least one level");
+    }
+    this.background = background;
+    this.showGrid = showGrid;
+    this.levels = Collections.unmodifiableList(Arrays.asList(levels.clone()));
+    this.lodFadeSpacing = lodFadeSpacing;
+    this.lodMinSpacing = lodMinSpacing;
+    this.maxLinesPerFrame = maxLinesPerFrame;
+  }
+
+  // Builder starting from the defaults of a new InfiniteGrid
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public int getBackground() {
+    return background;
+  }
+
+  public boolean isShowGrid() {
+    return showGrid;
+  }
+
+  // Levels from the finest to the coarsest
+  public List<GridLevel> getLevels() {
+    return levels;
+  }
+
+  public int getLevelCount() {
+    return levels.size();
+  }
+
+  public GridLevel getLevel(int index) {
+    return levels.get(index);
+  }
+
+  public boolean isShowMinor() {
+    return minor().isVisible();
+  }
+
+  public double getMinorSpacing() {
+    return minor().getSpacing();
+  }
+
+  public double getMinorLineWidth() {
+    return minor().getLineWidth();
+  }
+
+  public int getMinorStroke() {
+    return minor().getStroke();
+  }
+
+  public boolean isShowMajor() {
+    return major().isVisible();
+  }
+
+  public double getMajorSpacing() {
+    return major().getSpacing();
+  }
+
+  public double getMajorLineWidth() {
+    return major().getLineWidth();
+  }
+
+  public int getMajorStroke() {
+    return major().getStroke();
+  }
+
+  private GridLevel minor() {
+    return levels.get(0);
+  }
+
+  private GridLevel major() {
+    return levels.get(levels.size() - 1);
+  }
+
+  public double getLodFadeSpacing() {
+    return lodFadeSpacing;
+  }
+
+  public double getLodMinSpacing() {
+    return lodMinSpacing;
+  }
+
+  public int getMaxLinesPerFrame() {
+    return maxLinesPerFrame;
+  }
+
+  // The same grid for drawing at factor times the resolution: line widths and level of detail
+  // spacings, which are in pixels, are multiplied by factor
+  GridStyle scaledBy(double factor) {
+    if (factor == 1) {
+      return this;
+    }
+    GridLevel[] scaled = new GridLevel[levels.size()];
+    for (int i = 0; i < scaled.length; i++) {
+      scaled[i] = levels.get(i).scaledBy(factor);
+    }
+    return new GridStyle(
+        background,
+        showGrid,
+        scaled,
+        lodFadeSpacing * factor,
+        lodMinSpacing * factor,
+        maxLinesPerFrame);
+  }
+
+  static int argb(Color color) {
+    return (int) Math.round(color.getOpacity() * 255) << 24
+        | (int) Math.round(color.getRed() * 255) << 16
+        | (int) Math.round(color.getGreen() * 255) << 8
+        | (int) Math.round(color.getBlue() * 255);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof GridStyle)) {
+      return false;
+    }
+    GridStyle other = (GridStyle) o;
+    return background == other.background
+        && showGrid == other.showGrid
+        && levels.equals(other.levels)
+        && Double.compare(lodFadeSpacing, other.lodFadeSpacing) == 0
+        && Double.compare(lodMinSpacing, other.lodMinSpacing) == 0
+        && maxLinesPerFrame == other.maxLinesPerFrame;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(
+        background,
+        showGrid,
+        levels,
+        lodFadeSpacing,
+        lodMinSpacing,
+        maxLinesPerFrame);
+  }
+
+  // The minor and major setters describe a two-level grid, which levels() replaces
+  public static final class Builder {
+    private int background = argb(Color.WHITE);
+    private boolean showGrid = true;
+
+    private boolean showMinor = true;
+    private double minorSpacing = 10;
+    private double minorLineWidth = 0.5;
+    private int minorStroke = argb(Color.LIGHTGRAY);
+
+    private boolean showMajor = true;
+    private double majorSpacing = 50;
+    private double majorLineWidth = 1;
+    private int majorStroke = argb(Color.BLACK);
+
+    private GridLevel[] levels = {};
+
+    private double lodFadeSpacing = 6;
+    private double lodMinSpacing = 2;
+    private int maxLinesPerFrame = 8192;
+
+    private Builder() {}
+
+    public Builder background(Color color) {
+      background = argb(color);
+      return this;
+    }
+
+    public Builder showGrid(boolean value) {
+      showGrid = value;
+      return this;
+    }
+
+    public Builder showMinor(boolean value) {
+      showMinor = value;
+      return this;
+    }
+
+    public Builder minorSpacing(double spacing) {
+      minorSpacing = spacing;
+      return this;
+    }
+
+    public Builder minorLineWidth(double width) {
+      minorLineWidth = width;
+      return this;
+    }
+
+    public Builder minorStroke(Color color) {
+      minorStroke = argb(color);
+      return this;
+    }
+
+    public Builder showMajor(boolean value) {
+      showMajor = value;
+      return this;
+    }
+
+    public Builder majorSpacing(double spacing) {
+      majorSpacing = spacing;
+      return this;
+    }
+
+    public Builder majorLineWidth(double width) {
+      majorLineWidth = width;
+      return this;
+    }
+
+    public Builder majorStroke(Color color) {
+      majorStroke = argb(color);
+      return this;
+    }
+
+    // Levels from the finest to the coarsest; none goes back to the minor and major levels
+    public Builder levels(GridLevel... levels) {
+      this.levels = levels.clone();
+      return this;
+    }
+
+    public Builder levels(List<GridLevel> levels) {
+      this.levels = levels.toArray(new GridLevel[0]);
+      return this;
+    }
+
+    public Builder lodFadeSpacing(double pixels) {
+      lodFadeSpacing = pixels;
+      return this;
+    }
+
+    public Builder lodMinSpacing(double pixels) {
+      lodMinSpacing = pixels;
+      return this;
+    }
+
+    public Builder maxLinesPerFrame(int lines) {
+      maxLinesPerFrame = lines;
+      return this;
+    }
+
+    public GridStyle build() {
+      GridLevel[] built = levels;
+      if (built.length == 0) {
+        built =
+            new GridLevel[] {
+              new GridLevel(minorSpacing, minorLineWidth, minorStroke, showMinor),
+              new GridLevel(majorSpacing, majorLineWidth, majorStroke, showMajor)
+            };
+      }
+      return new GridStyle(
+          background,
+          showGrid,
+          built,
+          lodFadeSpacing,
+          lodMinSpacing,
+          maxLinesPerFrame);
+    }
+  }
+}
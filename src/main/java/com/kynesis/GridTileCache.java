@@ -0,0 +1,589 @@
+package com.kynesis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongSupplier;
+import javafx.application.Platform;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+// Square tiles of rendered grid pixels shared by every view that draws from the cache. Tiles are
+// grouped into levels keyed by style, scale, content and colour map, and laid out on the world
+// pixel lattice (grid coordinate times scale), so views showing the same content at the same
+// scale reuse each other's tiles wherever their viewports are. Base tiles are rasterized by
+// GridRaster on worker threads from a copy of the content chunks they overlap; mip levels halve
+// the scale of the level below them and are built by averaging 2x2 blocks of its pixels rather
+// than from the content. Finished pixels are uploaded into a WritableImage on the FX thread the
+// next time the tile is drawn. The cache follows edits to the content models itself, and evicts
+// the least recently drawn tiles once it holds more than its memory budget.
+public final class GridTileCache {
+  static final int TILE_SIZE = 256;
+
+  // Default budget, room for 512 tiles
+  public static final long DEFAULT_MEMORY_BUDGET = 128L << 20;
+
+  private static final long TILE_BYTES = 4L * TILE_SIZE * TILE_SIZE;
+
+  // Quadrant bits of a tile: top-left, top-right, bottom-left and bottom-right
+  private static final int ALL_QUADRANTS = 0xF;
+
+  // Tiles drawn within this many nanoseconds are kept even over the budget
+  private static final long RECENT = 250_000_000L;
+
+  // Queued tiles nobody has asked for within this many nanoseconds are skipped by the workers,
+  // e.g. those of a scale a view zoomed through
+  private static final long ABANDONED = 1_000_000_000L;
+
+  private static final ExecutorService WORKERS = createWorkers();
+
+  private final Map<LevelKey, Level> levels = new HashMap<>();
+
+  // All tiles, least recently drawn first
+  private final LinkedHashMap<Tile, Tile> tiles = new LinkedHashMap<>(64, 0.75f, true);
+
+  // Views to redraw when a tile is ready, and the models whose edits invalidate tiles
+  private final List<Runnable> tileListeners = new ArrayList<>();
+  private final Map<GridModel, Integer> models = new HashMap<>();
+  private final GridModelListener modelListener = this::cellsChanged;
+
+  // Source of the times tiles are drawn at, in nanoseconds; replaced by tests
+  LongSupplier clock = System::nanoTime;
+
+  private long memoryBudget;
+  private long renderedTileCount;
+  private long downsampledTileCount;
+
+  public GridTileCache() {
+    this(DEFAULT_MEMORY_BUDGET);
+  }
+
+  public GridTileCache(long memoryBudget) {
+    setMemoryBudget(memoryBudget);
+  }
+
+  public long getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  // Bytes of tile pixels kept before the least recently drawn tiles are evicted
+  public void setMemoryBudget(long bytes) {
+    if (bytes < 0) {
+      throw new IllegalArgumentException("Negative memory budget: " + bytes);
+    }
+    memoryBudget = bytes;
+    trim();
+  }
+
+  public long getMemoryUsage() {
+    return tiles.size() * TILE_BYTES;
+  }
+
+  public int getTileCount() {
+    return tiles.size();
+  }
+
+  // Tiles rasterized from content, and tiles built by downsampling a finer level, since creation
+  public long getRenderedTileCount() {
+    return renderedTileCount;
+  }
+
+  public long getDownsampledTileCount() {
+    return downsampledTileCount;
+  }
+
+  public void clear() {
+    for (Tile tile : tiles.keySet()) {
+      tile.evicted = true;
+    }
+    tiles.clear();
+    levels.clear();
+    for (GridModel model : models.keySet()) {
+      model.removeListener(modelListener);
+    }
+    models.clear();
+  }
+
+  void addTileListener(Runnable listener) {
+    tileListeners.add(listener);
+  }
+
+  void removeTileListener(Runnable listener) {
+    tileListeners.remove(listener);
+  }
+
+  // Base level drawing content at scale
+  Level level(GridStyle style, double scale, GridModel content, IntUnaryOperator colorMap) {
+    return level(new LevelKey(style, scale, content, colorMap, 0));
+  }
+
+  Level level(LevelKey key) {
+    Level level = levels.get(key);
+    if (level == null) {
+      level = new Level(key);
+      levels.put(key, level);
+      if (key.content != null) {
+        models.merge(key.content, 1, Integer::sum);
+        if (models.get(key.content) == 1) {
+          key.content.addListener(modelListener);
+        }
+      }
+    }
+    return level;
+  }
+
+  // Evicts the least recently drawn tiles, down to the budget, and forgets empty levels
+  void trim() {
+    long now = clock.getAsLong();
+    Iterator<Tile> it = tiles.keySet().iterator();
+    while (getMemoryUsage() > memoryBudget && it.hasNext()) {
+      Tile tile = it.next();
+      if (now - tile.lastUsed < RECENT) {
+        break;
+      }
+      it.remove();
+      tile.evicted = true;
+      tile.level.tiles.remove(tile.key);
+    }
+
+    Iterator<Level> levelIt = levels.values().iterator();
+    while (levelIt.hasNext()) {
+      Level level = levelIt.next();
+      GridModel content = level.key.content;
+      if (level.tiles.isEmpty()) {
+        levelIt.remove();
+        if (content != null && models.merge(content, -1, Integer::sum) == 0) {
+          models.remove(content);
+          content.removeListener(modelListener);
+        }
+      }
+    }
+  }
+
+  static long tileIndex(double worldPixel) {
+    return (long) Math.floor(worldPixel / TILE_SIZE);
+  }
+
+  // Marks the tiles the changed cells fall on stale at every level, with a pixel of slack for
+  // rounding; they keep their pixels until re-rendered
+  private void cellsChanged(
+      GridModel source, int minColumn, int minRow, int maxColumn, int maxRow) {
+    for (Level level : levels.values()) {
+      if (level.key.content != source) {
+        continue;
+      }
+      double cell = level.key.style.getMinorSpacing() * level.scale;
+      long minTileX = tileIndex(minColumn * cell - 1);
+      long minTileY = tileIndex(minRow * cell - 1);
+      long maxTileX = tileIndex((maxColumn + 1.0) * cell + 1);
+      long maxTileY = tileIndex((maxRow + 1.0) * cell + 1);
+      for (Tile tile : level.tiles.values()) {
+        if (tile.x >= minTileX && tile.x <= maxTileX && tile.y >= minTileY && tile.y <= maxTileY) {
+          tile.version++;
+        }
+      }
+    }
+  }
+
+  void tileRendered(Tile tile, int version, int[] pixels, int coverage, boolean downsampled) {
+    if (tile.requestedVersion == version) {
+      tile.requestedVersion = -1;
+    }
+    if (pixels == null || tile.evicted || version < tile.renderedVersion) {
+      return;
+    }
+    if (version == tile.renderedVersion && (tile.coverage & ~coverage) != 0) {
+      // Another build of this version finished first; keep the quadrants only it has
+      int[] current = tile.argb();
+      for (int quadrant = 0; quadrant < 4; quadrant++) {
+        if ((tile.coverage & ~coverage & 1 << quadrant) != 0) {
+          copyQuadrant(current, pixels, quadrant);
+        }
+      }
+      coverage |= tile.coverage;
+    }
+    tile.pixels = pixels;
+    tile.coverage = coverage;
+    tile.renderedVersion = version;
+    if (downsampled) {
+      downsampledTileCount++;
+    } else {
+      renderedTileCount++;
+    }
+    for (Runnable listener : tileListeners.toArray(new Runnable[0])) {
+      listener.run();
+    }
+  }
+
+  // Quadrant bits of the quadrants the tile pixels (x0, y0) to (x1, y1), exclusive, fall in
+  static int quadrants(int x0, int y0, int x1, int y1) {
+    int half = TILE_SIZE / 2;
+    int columns = (x0 < half && x1 > 0 ? 1 : 0) | (x0 < TILE_SIZE && x1 > half ? 2 : 0);
+    int rows = (y0 < half && y1 > 0 ? 1 : 0) | (y0 < TILE_SIZE && y1 > half ? 2 : 0);
+    return ((rows & 1) != 0 ? columns : 0) | ((rows & 2) != 0 ? columns << 2 : 0);
+  }
+
+  // Averages each 2x2 block of source into the given quadrant of target
+  static void downsample(int[] source, int[] target, int quadrant) {
+    int half = TILE_SIZE / 2;
+    int offset = (quadrant >> 1) * half * TILE_SIZE + (quadrant & 1) * half;
+    for (int y = 0; y < half; y++) {
+      int from = 2 * y * TILE_SIZE;
+      int to = offset + y * TILE_SIZE;
+      for (int x = 0; x < half; x++, from += 2) {
+        target[to + x] =
+            average(
+                source[from],
+                source[from + 1],
+                source[from + TILE_SIZE],
+                source[from + TILE_SIZE + 1]);
+      }
+    }
+  }
+
+  static void copyQuadrant(int[] source, int[] target, int quadrant) {
+    int half = TILE_SIZE / 2;
+    int offset = (quadrant >> 1) * half * TILE_SIZE + (quadrant & 1) * half;
+    for (int y = 0; y < half; y++) {
+      System.arraycopy(source, offset + y * TILE_SIZE, target, offset + y * TILE_SIZE, half);
+    }
+  }
+
+  static int average(int a, int b, int c, int d) {
+    // Alpha and green, then red and blue, summed in place with room for the carries
+    long ag =
+        (a >>> 8 & 0xFF00FFL)
+            + (b >>> 8 & 0xFF00FFL)
+            + (c >>> 8 & 0xFF00FFL)
+            + (d >>> 8 & 0xFF00FFL)
+            + 0x20002L;
+    long rb = (a & 0xFF00FFL) + (b & 0xFF00FFL) + (c & 0xFF00FFL) + (d & 0xFF00FFL) + 0x20002L;
+    return (int) ((ag >>> 2 & 0xFF00FFL) << 8 | rb >>> 2 & 0xFF00FFL);
+  }
+
+  // Bounded pool of daemon threads, leaving one core to the FX thread
+  private static ExecutorService createWorkers() {
+    int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    AtomicInteger count = new AtomicInteger();
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            30,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+              Thread thread = new Thread(runnable, "grid-tile-" + count.incrementAndGet());
+              thread.setDaemon(true);
+              thread.setPriority(Thread.NORM_PRIORITY - 1);
+              return thread;
+            });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  // The tiles of one style, scale, content and colour map; depth counts the halvings of the base
+  // scale for mip levels
+  final class Level {
+    private final LevelKey key;
+    private final double scale;
+    private final Map<Long, Tile> tiles = new HashMap<>();
+
+    private Level(LevelKey key) {
+      this.key = key;
+      this.scale = Math.scalb(key.scale, -key.depth);
+    }
+
+    LevelKey getKey() {
+      return key;
+    }
+
+    // Scale tiles of this level are drawn at
+    double getScale() {
+      return scale;
+    }
+
+    // Level at half the scale, built from this one
+    Level mip() {
+      return mip(1);
+    }
+
+    Level mip(int depth) {
+      LevelKey mip = key;
+      for (int i = 0; i < depth; i++) {
+        mip = mip.withDepth(mip.depth + 1);
+      }
+      return level(mip);
+    }
+
+    // Image of the tile, possibly stale, or null if it was never rendered. Schedules rendering of
+    // a missing or stale tile.
+    WritableImage image(int tileX, int tileY) {
+      return image(tileX, tileY, 0, 0, TILE_SIZE, TILE_SIZE);
+    }
+
+    // Image of a tile of which only the pixels (x0, y0) to (x1, y1), exclusive, are drawn. Mip
+    // tiles are built quadrant by quadrant, so other quadrants may be missing.
+    WritableImage image(int tileX, int tileY, int x0, int y0, int x1, int y1) {
+      Tile tile = request(tileX, tileY, x0, y0, x1, y1);
+      if (tile.pixels != null) {
+        if (tile.image == null) {
+          tile.image = new WritableImage(TILE_SIZE, TILE_SIZE);
+        }
+        tile.image
+            .getPixelWriter()
+            .setPixels(
+                0,
+                0,
+                TILE_SIZE,
+                TILE_SIZE,
+                PixelFormat.getIntArgbInstance(),
+                tile.pixels,
+                0,
+                TILE_SIZE);
+        tile.pixels = null;
+      }
+      return tile.image;
+    }
+
+    // Schedules rendering of a tile that is missing or stale, without drawing it
+    Tile request(int tileX, int tileY) {
+      return request(tileX, tileY, 0, 0, TILE_SIZE, TILE_SIZE);
+    }
+
+    Tile request(int tileX, int tileY, int x0, int y0, int x1, int y1) {
+      long key = (long) tileX << 32 | (tileY & 0xFFFFFFFFL);
+      Tile tile = tiles.get(key);
+      if (tile == null) {
+        tile = new Tile(this, key, tileX, tileY);
+        tiles.put(key, tile);
+        GridTileCache.this.tiles.put(tile, tile);
+      } else {
+        GridTileCache.this.tiles.get(tile);
+      }
+      tile.lastUsed = clock.getAsLong();
+      int need = need(x0, y0, x1, y1);
+      if (need != 0 && !tile.covers(need) && !tile.isRequested(need)) {
+        if (this.key.depth == 0) {
+          submitRaster(tile);
+        } else {
+          submitDownsample(tile, need, x0, y0, x1, y1);
+        }
+      }
+      return tile;
+    }
+
+    long now() {
+      return clock.getAsLong();
+    }
+
+    // Quadrants to build for the tile pixels (x0, y0) to (x1, y1); base tiles are rendered whole
+    private int need(int x0, int y0, int x1, int y1) {
+      return key.depth == 0 ? ALL_QUADRANTS : quadrants(x0, y0, x1, y1);
+    }
+
+    private void submitRaster(Tile tile) {
+      int version = tile.version;
+      tile.requestedVersion = version;
+      tile.requestedCoverage = ALL_QUADRANTS;
+      GridStyle style = key.style;
+      IntUnaryOperator colorMap = key.colorMap;
+      double originX = (double) tile.x * TILE_SIZE / scale;
+      double originY = (double) tile.y * TILE_SIZE / scale;
+      GridModel snapshot =
+          GridRaster.snapshot(key.content, style, scale, originX, originY, TILE_SIZE, TILE_SIZE);
+
+      WORKERS.execute(
+          () -> {
+            // Skip work the views no longer want
+            if (!tile.isWanted(version)) {
+              Platform.runLater(() -> tileRendered(tile, version, null, ALL_QUADRANTS, false));
+              return;
+            }
+            int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+            GridRaster.paint(
+                pixels,
+                TILE_SIZE,
+                TILE_SIZE,
+                style,
+                scale,
+                originX,
+                originY,
+                snapshot,
+                colorMap);
+            Platform.runLater(() -> tileRendered(tile, version, pixels, ALL_QUADRANTS, false));
+          });
+    }
+
+    // Downsamples the tiles below the needed quadrants of this one, keeping the quadrants already
+    // built at this version. Until the tiles below are current they are requested in turn,
+    // clipped to the needed pixels, and the tile is tried again when a view redraws after one of
+    // them arrives.
+    private void submitDownsample(Tile tile, int need, int x0, int y0, int x1, int y1) {
+      Level finer = level(key.withDepth(key.depth - 1));
+      int keep = tile.renderedVersion == tile.version ? tile.coverage : 0;
+      int build = need & ~keep;
+      int half = TILE_SIZE / 2;
+      int[][] sources = new int[4][];
+      boolean ready = true;
+      for (int quadrant = 0; quadrant < 4; quadrant++) {
+        if ((build & 1 << quadrant) == 0) {
+          continue;
+        }
+        int left = (quadrant & 1) * half;
+        int top = (quadrant >> 1) * half;
+        int sourceX0 = 2 * (Math.max(x0, left) - left);
+        int sourceY0 = 2 * (Math.max(y0, top) - top);
+        int sourceX1 = 2 * (Math.min(x1, left + half) - left);
+        int sourceY1 = 2 * (Math.min(y1, top + half) - top);
+        Tile source =
+            finer.request(
+                2 * tile.x + (quadrant & 1),
+                2 * tile.y + (quadrant >> 1),
+                sourceX0,
+                sourceY0,
+                sourceX1,
+                sourceY1);
+        if (ready && source.covers(finer.need(sourceX0, sourceY0, sourceX1, sourceY1))) {
+          sources[quadrant] = source.argb();
+        } else {
+          ready = false;
+        }
+      }
+      if (!ready) {
+        return;
+      }
+
+      int[] previous = keep != 0 ? tile.argb() : null;
+      int coverage = keep | build;
+      int version = tile.version;
+      tile.requestedVersion = version;
+      tile.requestedCoverage = coverage;
+      WORKERS.execute(
+          () -> {
+            int[] pixels = null;
+            if (tile.isWanted(version)) {
+              pixels = previous != null ? previous.clone() : new int[TILE_SIZE * TILE_SIZE];
+              for (int quadrant = 0; quadrant < 4; quadrant++) {
+                if (sources[quadrant] != null) {
+                  downsample(sources[quadrant], pixels, quadrant);
+                }
+              }
+            }
+            int[] result = pixels;
+            Platform.runLater(() -> tileRendered(tile, version, result, coverage, true));
+          });
+    }
+  }
+
+  static final class LevelKey {
+    final GridStyle style;
+    final double scale;
+    final GridModel content;
+    final IntUnaryOperator colorMap;
+    final int depth;
+
+    LevelKey(
+        GridStyle style, double scale, GridModel content, IntUnaryOperator colorMap, int depth) {
+      this.style = style;
+      this.scale = scale;
+      this.content = content;
+      this.colorMap = colorMap;
+      this.depth = depth;
+    }
+
+    LevelKey withDepth(int depth) {
+      return new LevelKey(style, scale, content, colorMap, depth);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof LevelKey)) {
+        return false;
+      }
+      LevelKey other = (LevelKey) o;
+      return style.equals(other.style)
+          && Double.compare(scale, other.scale) == 0
+          && content == other.content
+          && colorMap == other.colorMap
+          && depth == other.depth;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(
+          style,
+          scale,
+          System.identityHashCode(content),
+          System.identityHashCode(colorMap),
+          depth);
+    }
+  }
+
+  static final class Tile {
+    final Level level;
+    final long key;
+    final int x;
+    final int y;
+
+    // Content version the tile should show, and the versions rendered and in flight
+    volatile int version;
+    int renderedVersion = -1;
+    int requestedVersion = -1;
+    volatile boolean evicted;
+
+    // Quadrants built at the rendered version and by the build in flight; base tiles are whole
+    int coverage;
+    int requestedCoverage;
+
+    // When a view last asked for the tile, from the cache clock
+    volatile long lastUsed;
+
+    // Finished pixels waiting for upload, and the uploaded image
+    int[] pixels;
+    WritableImage image;
+
+    Tile(Level level, long key, int x, int y) {
+      this.level = level;
+      this.key = key;
+      this.x = x;
+      this.y = y;
+    }
+
+    boolean covers(int quadrants) {
+      return renderedVersion == version && (coverage & quadrants) == quadrants;
+    }
+
+    boolean isRequested(int quadrants) {
+      return requestedVersion == version && (requestedCoverage & quadrants) == quadrants;
+    }
+
+    // Whether a worker should still produce the given version
+    boolean isWanted(int version) {
+      return !evicted && this.version == version && level.now() - lastUsed < ABANDONED;
+    }
+
+    // Current pixels, read back from the image once uploaded
+    int[] argb() {
+      if (pixels != null) {
+        return pixels;
+      }
+      int[] argb = new int[TILE_SIZE * TILE_SIZE];
+      image
+          .getPixelReader()
+          .getPixels(
+              0, 0, TILE_SIZE, TILE_SIZE, PixelFormat.getIntArgbInstance(), argb, 0, TILE_SIZE);
+      return argb;
+    }
+  }
+}
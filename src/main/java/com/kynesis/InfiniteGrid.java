@@ -1,10 +1,23 @@
 package com.kynesis;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyLongProperty;
+import javafx.beans.property.ReadOnlyLongWrapper;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.value.ChangeListener;
 import javafx.css.CssMetaData;
 import javafx.css.SimpleStyleableBooleanProperty;
 import javafx.css.SimpleStyleableDoubleProperty;
@@ -13,19 +26,88 @@ import javafx.css.Styleable;
 import javafx.css.StyleableBooleanProperty;
 import javafx.css.StyleableDoubleProperty;
 import javafx.css.StyleableObjectProperty;
+import javafx.css.StyleableProperty;
 import javafx.css.StyleablePropertyFactory;
+import javafx.css.converter.SizeConverter;
+import javafx.geometry.VPos;
+import javafx.scene.Scene;
+import javafx.scene.SnapshotParameters;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.MouseButton;
 import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.transform.Transform;
+import javafx.stage.Window;
 
 public class InfiniteGrid extends Canvas {
   private static final StyleablePropertyFactory<InfiniteGrid> FACTORY =
       new StyleablePropertyFactory<>(Canvas.getClassCssMetaData());
 
+  // Default limit on the lines emitted by a single frame
+  private static final int DEFAULT_MAX_LINES_PER_FRAME = 8192;
+
+  // Levels of the grid hierarchy with their own stroke and visibility properties
+  public static final int STYLED_GRID_LEVELS = 8;
+
+  private static final Number[] NO_GRID_LEVELS = {};
+
+  // Default glide decay rate, which stops a fast flick within about a second
+  private static final double DEFAULT_SCROLL_FRICTION = 5;
+
+  // Scroll blit frames grow in steps of this many device pixels, so a live resize reallocates
+  // them every few hundred pixels rather than on every frame
+  private static final int FRAME_STEP = 256;
+
+  // A saved frame is blitted from until the strips painted around it would cover this fraction of
+  // the canvas. Saving reads the whole canvas back from the GPU, a cost that only pays off when
+  // spread over the frames in between; painting the strips grows with the distance scrolled since.
+  private static final double FRAME_REUSE_AREA = 0.25;
+
+  // Render statistics overlay
+  private static final Color OVERLAY_BACKGROUND = Color.rgb(0, 0, 0, 0.6);
+  private static final double OVERLAY_WIDTH = 300;
+  private static final double OVERLAY_LINE_HEIGHT = 16;
+  private static final double OVERLAY_MARGIN = 4;
+  private static final int OVERLAY_LINES = 4;
+
   // Grid coordinate properties (to track position in grid space)
   private final DoubleProperty gridX = new SimpleDoubleProperty();
   private final DoubleProperty gridY = new SimpleDoubleProperty();
 
+  // Cell content drawn beneath the grid lines, one cell per minor grid square
+  private final ObjectProperty<GridModel> model = new SimpleObjectProperty<>(this, "model");
+
+  // Maps a cell value to the ARGB colour it is drawn with; by default the value is the colour.
+  // ASYNC_TILES mode calls it from worker threads.
+  private final ObjectProperty<IntUnaryOperator> cellColorMap =
+      new SimpleObjectProperty<>(this, "cellColorMap", IntUnaryOperator.identity());
+
+  // Reuse the previous frame's pixels when the viewport only moves by whole pixels
+  private final BooleanProperty scrollBlit = new SimpleBooleanProperty(this, "scrollBlit");
+
+  // Hard cap on the lines emitted per frame
+  private final IntegerProperty maxLinesPerFrame =
+      new SimpleIntegerProperty(this, "maxLinesPerFrame", DEFAULT_MAX_LINES_PER_FRAME);
+
+  // Record render statistics, and additionally draw them over the grid
+  private final BooleanProperty renderStatsEnabled =
+      new SimpleBooleanProperty(this, "renderStatsEnabled");
+  private final BooleanProperty renderStatsOverlay =
+      new SimpleBooleanProperty(this, "renderStatsOverlay");
+
+  // Built-in pan and zoom: dragging with the pan button, scrolling (zooming with Ctrl held) and
+  // zoom gestures, and how quickly a released drag's glide slows down, as a decay rate per second
+  private final BooleanProperty navigationEnabled =
+      new SimpleBooleanProperty(this, "navigationEnabled", true);
+  private final ObjectProperty<MouseButton> panButton =
+      new SimpleObjectProperty<>(this, "panButton", MouseButton.PRIMARY);
+  private final BooleanProperty inertialScrolling =
+      new SimpleBooleanProperty(this, "inertialScrolling", true);
+  private final DoubleProperty scrollFriction =
+      new SimpleDoubleProperty(this, "scrollFriction", DEFAULT_SCROLL_FRICTION);
+
   // Grid visibility properties
   private final StyleableBooleanProperty showGrid;
   private final StyleableBooleanProperty showMinorGrid;
@@ -44,8 +126,90 @@ public class InfiniteGrid extends Canvas {
   private final StyleableDoubleProperty majorGridLineWidth;
   private final StyleableObjectProperty<Color> majorGridLineStroke;
 
+  // Grid hierarchy: spacings of the levels from the finest up, replacing the minor and major
+  // spacings when not empty, and their line widths, strokes and visibility
+  private final StyleableObjectProperty<Number[]> gridLevelSpacings;
+  private final StyleableObjectProperty<Number[]> gridLevelLineWidths;
+  private final List<StyleableObjectProperty<Color>> gridLevelStrokes;
+  private final List<StyleableBooleanProperty> showGridLevels;
+
   private final StyleableDoubleProperty gridScale;
 
+  // Level of detail: on-screen spacing, in pixels, where a layer starts fading and is culled
+  private final StyleableDoubleProperty lodFadeSpacing;
+  private final StyleableDoubleProperty lodMinSpacing;
+
+  private final StyleableObjectProperty<GridRenderMode> renderMode;
+
+  // Render invalidation state: property changes only mark the canvas dirty and the actual
+  // redraw runs once per pulse from the scene's post-layout pulse listener
+  private boolean renderPending = true;
+  private RedrawReason redrawReason = RedrawReason.INITIAL;
+  private final Runnable pulseListener = this::onPulse;
+  private final ReadOnlyLongWrapper coalescedRenderCount =
+      new ReadOnlyLongWrapper(this, "coalescedRenderCount");
+
+  // Cells edited since the last frame. While only cells have changed, the next frame repaints just
+  // their rectangles on top of the canvas's retained pixels; any other invalidation repaints all.
+  private final DirtyRegion dirtyCells = new DirtyRegion();
+  private final GridLines dirtyColumns = new GridLines();
+  private final GridLines dirtyRows = new GridLines();
+  private boolean repaintAll = true;
+
+  // Measurements of recorded frames, and the images drawn by the current frame
+  private final RenderStats renderStats = new RenderStats();
+  private int imageCount;
+  private Font overlayFont;
+
+  // Draws frames and regions of frames into this canvas
+  private final CanvasGridRenderer renderer = new CanvasGridRenderer(getGraphicsContext2D());
+
+  // Snapshot of the style properties, rebuilt after any style change
+  private GridStyle style;
+
+  // Rebased onto the viewport by each coordinate query
+  private final GridCoordinates coordinates = new GridCoordinates();
+
+  // Tiles for ASYNC_TILES mode, which other views of the same content may share, and the
+  // viewport they were last drawn at for prefetching. Views only listen for finished tiles while
+  // they are in a scene.
+  private final ObjectProperty<GridTileCache> tileCache =
+      new SimpleObjectProperty<>(this, "tileCache", new GridTileCache());
+  private final Runnable tileListener = () -> requestRender(RedrawReason.TILE);
+  private double tilesX;
+  private double tilesY;
+
+  // Copy of a recent frame for scroll blitting, valid while only the viewport has moved since.
+  // Canvas replays drawImage lazily, so the next snapshot goes to the other buffer. The buffers
+  // are kept across resizes and may be larger than the frame, which sits in their top-left
+  // corner at frameWidth x frameHeight device pixels. exposedArea is the canvas area the last
+  // blit had to paint around the frame.
+  private WritableImage frame;
+  private WritableImage spareFrame;
+  private boolean frameValid;
+  private double frameX;
+  private double frameY;
+  private int frameWidth;
+  private int frameHeight;
+  private double exposedArea;
+
+  // Size the grid prefers in layouts, as given to the constructor
+  private final double prefCanvasWidth;
+  private final double prefCanvasHeight;
+
+  // Device pixels per canvas pixel of the window showing the grid, e.g. 2 on a HiDPI screen, and
+  // the style scaled to match for rasterizing at that resolution
+  private double outputScale = 1;
+  private Window window;
+  private final ChangeListener<Window> windowListener = (obs, old, nv) -> windowChanged(nv);
+  private final InvalidationListener outputScaleListener = obs -> outputScaleChanged();
+  private GridStyle deviceStyle;
+
+  private final GridModelListener modelListener = this::cellsChanged;
+
+  // Accumulates pan and zoom input and applies it once per frame
+  private final GridNavigator navigator = new GridNavigator(this);
+
   // CSS property definitions
   private static final CssMetaData<InfiniteGrid, Boolean> SHOW_GRID =
       FACTORY.createBooleanCssMetaData("-fx-show-grid", s -> s.showGrid, true);
@@ -79,15 +243,63 @@ public class InfiniteGrid extends Canvas {
       FACTORY.createColorCssMetaData(
           "-fx-major-grid-line-stroke", s -> s.majorGridLineStroke, Color.GRAY);
 
+  // Space-separated sizes, e.g. "-fx-grid-level-spacings: 1 5 25 125". The CSS parser only reads
+  // sequences of sizes for properties it doesn't know, so the strokes and visibility of the levels
+  // are properties of their own, e.g. "-fx-grid-level-2-stroke".
+  private static final CssMetaData<InfiniteGrid, Number[]> GRID_LEVEL_SPACINGS =
+      new SizeSequenceCssMetaData("-fx-grid-level-spacings", s -> s.gridLevelSpacings);
+
+  private static final CssMetaData<InfiniteGrid, Number[]> GRID_LEVEL_LINE_WIDTHS =
+      new SizeSequenceCssMetaData("-fx-grid-level-line-widths", s -> s.gridLevelLineWidths);
+
+  private static final List<CssMetaData<InfiniteGrid, Color>> GRID_LEVEL_STROKES =
+      new ArrayList<>();
+
+  private static final List<CssMetaData<InfiniteGrid, Boolean>> SHOW_GRID_LEVELS =
+      new ArrayList<>();
+
+  static {
+    for (int i = 0; i < STYLED_GRID_LEVELS; i++) {
+      int level = i;
+      GRID_LEVEL_STROKES.add(
+          FACTORY.createColorCssMetaData(
+              "-fx-grid-level-" + level + "-stroke", s -> s.gridLevelStrokes.get(level), null));
+      SHOW_GRID_LEVELS.add(
+          FACTORY.createBooleanCssMetaData(
+              "-fx-show-grid-level-" + level, s -> s.showGridLevels.get(level), true));
+    }
+  }
+
   private static final CssMetaData<InfiniteGrid, Number> GRID_SCALE =
       FACTORY.createSizeCssMetaData("-fx-grid-scale", s -> s.gridScale, 1.0);
 
+  private static final CssMetaData<InfiniteGrid, Number> LOD_FADE_SPACING =
+      FACTORY.createSizeCssMetaData("-fx-lod-fade-spacing", s -> s.lodFadeSpacing, 6.0);
+
+  private static final CssMetaData<InfiniteGrid, Number> LOD_MIN_SPACING =
+      FACTORY.createSizeCssMetaData("-fx-lod-min-spacing", s -> s.lodMinSpacing, 2.0);
+
+  private static final CssMetaData<InfiniteGrid, GridRenderMode> RENDER_MODE =
+      FACTORY.createEnumCssMetaData(
+          GridRenderMode.class, "-fx-grid-render-mode", s -> s.renderMode, GridRenderMode.PATH);
+
+  private static final List<CssMetaData<? extends Styleable, ?>> CSS_META_DATA;
+
+  static {
+    List<CssMetaData<? extends Styleable, ?>> metaData = new ArrayList<>(FACTORY.getCssMetaData());
+    metaData.add(GRID_LEVEL_SPACINGS);
+    metaData.add(GRID_LEVEL_LINE_WIDTHS);
+    CSS_META_DATA = Collections.unmodifiableList(metaData);
+  }
+
   public InfiniteGrid() {
     this(0, 0);
   }
 
   public InfiniteGrid(double width, double height) {
     super(width, height);
+    prefCanvasWidth = width;
+    prefCanvasHeight = height;
 
     // Initialize styleable properties
     showGrid = new SimpleStyleableBooleanProperty(SHOW_GRID, this, "showGrid", true);
@@ -98,106 +310,722 @@ public class InfiniteGrid extends Canvas {
     gridBackground =
         new SimpleStyleableObjectProperty<>(GRID_BACKGROUND, this, "gridBackground", Color.WHITE);
     minorGridSpacing =
-        new SimpleStyleableDoubleProperty(MINOR_GRID_SPACING, this, "minorGridSpacing");
+        new SimpleStyleableDoubleProperty(MINOR_GRID_SPACING, this, "minorGridSpacing", 10.0);
     minorGridLineWidth =
-        new SimpleStyleableDoubleProperty(MINOR_GRID_LINE_WIDTH, this, "minorGridLineWidth");
+        new SimpleStyleableDoubleProperty(
+            MINOR_GRID_LINE_WIDTH, this, "minorGridLineWidth", 0.5);
     minorGridLineStroke =
         new SimpleStyleableObjectProperty<>(
             MINOR_GRID_LINE_STROKE, this, "minorGridLineStroke", Color.LIGHTGRAY);
     majorGridSpacing =
-        new SimpleStyleableDoubleProperty(MAJOR_GRID_SPACING, this, "majorGridSpacing");
+        new SimpleStyleableDoubleProperty(MAJOR_GRID_SPACING, this, "majorGridSpacing", 50.0);
     majorGridLineWidth =
-        new SimpleStyleableDoubleProperty(MAJOR_GRID_LINE_WIDTH, this, "majorGridLineWidth");
+        new SimpleStyleableDoubleProperty(
+            MAJOR_GRID_LINE_WIDTH, this, "majorGridLineWidth", 1.0);
     majorGridLineStroke =
         new SimpleStyleableObjectProperty<>(
             MAJOR_GRID_LINE_STROKE, this, "majorGridLineStroke", Color.BLACK);
-    gridScale = new SimpleStyleableDoubleProperty(GRID_SCALE, this, "gridScale");
-
-    // Add listeners to trigger render on property changes
-    showGrid.addListener((obs, old, nv) -> render());
-    showMinorGrid.addListener((obs, old, nv) -> render());
-    showMajorGrid.addListener((obs, old, nv) -> render());
-    gridBackground.addListener((obs, old, nv) -> render());
-    minorGridSpacing.addListener((obs, old, nv) -> render());
-    minorGridLineWidth.addListener((obs, old, nv) -> render());
-    minorGridLineStroke.addListener((obs, old, nv) -> render());
-    majorGridSpacing.addListener((obs, old, nv) -> render());
-    majorGridLineWidth.addListener((obs, old, nv) -> render());
-    majorGridLineStroke.addListener((obs, old, nv) -> render());
-    gridScale.addListener((obs, old, nv) -> render());
+    gridLevelSpacings =
+        new SimpleStyleableObjectProperty<>(
+            GRID_LEVEL_SPACINGS, this, "gridLevelSpacings", NO_GRID_LEVELS);
+    gridLevelLineWidths =
+        new SimpleStyleableObjectProperty<>(
+            GRID_LEVEL_LINE_WIDTHS, this, "gridLevelLineWidths", NO_GRID_LEVELS);
+    List<StyleableObjectProperty<Color>> strokes = new ArrayList<>();
+    List<StyleableBooleanProperty> shown = new ArrayList<>();
+    for (int i = 0; i < STYLED_GRID_LEVELS; i++) {
+      strokes.add(
+          new SimpleStyleableObjectProperty<>(
+              GRID_LEVEL_STROKES.get(i), this, "gridLevel" + i + "Stroke", null));
+      shown.add(
+          new SimpleStyleableBooleanProperty(
+              SHOW_GRID_LEVELS.get(i), this, "showGridLevel" + i, true));
+    }
+    gridLevelStrokes = Collections.unmodifiableList(strokes);
+    showGridLevels = Collections.unmodifiableList(shown);
+    gridScale = new SimpleStyleableDoubleProperty(GRID_SCALE, this, "gridScale", 1.0);
+    lodFadeSpacing =
+        new SimpleStyleableDoubleProperty(LOD_FADE_SPACING, this, "lodFadeSpacing", 6.0);
+    lodMinSpacing = new SimpleStyleableDoubleProperty(LOD_MIN_SPACING, this, "lodMinSpacing", 2.0);
+    renderMode =
+        new SimpleStyleableObjectProperty<>(
+            RENDER_MODE, this, "renderMode", GridRenderMode.PATH);
+
+    // Add listeners to schedule a render on property changes; style changes also drop
+    // the cached pattern tile
+    showGrid.addListener((obs, old, nv) -> styleChanged());
+    showMinorGrid.addListener((obs, old, nv) -> styleChanged());
+    showMajorGrid.addListener((obs, old, nv) -> styleChanged());
+    gridBackground.addListener((obs, old, nv) -> styleChanged());
+    minorGridSpacing.addListener((obs, old, nv) -> styleChanged());
+    minorGridLineWidth.addListener((obs, old, nv) -> styleChanged());
+    minorGridLineStroke.addListener((obs, old, nv) -> styleChanged());
+    majorGridSpacing.addListener((obs, old, nv) -> styleChanged());
+    majorGridLineWidth.addListener((obs, old, nv) -> styleChanged());
+    majorGridLineStroke.addListener((obs, old, nv) -> styleChanged());
+    gridLevelSpacings.addListener((obs, old, nv) -> styleChanged());
+    gridLevelLineWidths.addListener((obs, old, nv) -> styleChanged());
+    for (int i = 0; i < STYLED_GRID_LEVELS; i++) {
+      gridLevelStrokes.get(i).addListener((obs, old, nv) -> styleChanged());
+      showGridLevels.get(i).addListener((obs, old, nv) -> styleChanged());
+    }
+    gridScale.addListener((obs, old, nv) -> scaleChanged());
+    lodFadeSpacing.addListener((obs, old, nv) -> styleChanged());
+    lodMinSpacing.addListener((obs, old, nv) -> styleChanged());
+    renderMode.addListener((obs, old, nv) -> styleChanged());
+    gridX.addListener((obs, old, nv) -> requestRender(RedrawReason.VIEWPORT));
+    gridY.addListener((obs, old, nv) -> requestRender(RedrawReason.VIEWPORT));
+    maxLinesPerFrame.addListener((obs, old, nv) -> styleChanged());
+    scrollBlit.addListener((obs, old, nv) -> styleChanged());
+    renderStatsOverlay.addListener((obs, old, nv) -> requestRender(RedrawReason.STYLE));
+    navigationEnabled.addListener((obs, old, nv) -> navigator.stopGlide());
+    inertialScrolling.addListener((obs, old, nv) -> navigator.stopGlide());
+    model.addListener((obs, old, nv) -> modelChanged(old, nv));
+    cellColorMap.addListener((obs, old, nv) -> contentChanged());
+    tileCache.addListener((obs, old, nv) -> tileCacheChanged(old, nv));
+    widthProperty().addListener((obs, old, nv) -> sizeChanged());
+    heightProperty().addListener((obs, old, nv) -> sizeChanged());
+
+    // Follow the scene so the pending render is flushed on its pulses
+    sceneProperty().addListener((obs, old, nv) -> sceneChanged(old, nv));
+  }
+
+  // Marks the canvas dirty; the redraw happens at most once on the next pulse
+  public void requestRender() {
+    requestRender(RedrawReason.REQUESTED);
+  }
+
+  private void requestRender(RedrawReason reason) {
+    if (reason != RedrawReason.CONTENT) {
+      repaintAll = true;
+    }
+    if (renderPending) {
+      coalescedRenderCount.set(coalescedRenderCount.get() + 1);
+      return;
+    }
+    renderPending = true;
+    redrawReason = reason;
+    if (getScene() != null) {
+      Platform.requestNextPulse();
+    }
+  }
+
+  private void styleChanged() {
+    style = null;
+    deviceStyle = null;
+    frameValid = false;
+    requestRender(RedrawReason.STYLE);
+  }
+
+  private void scaleChanged() {
+    frameValid = false;
+    requestRender(RedrawReason.VIEWPORT);
+  }
+
+  private void modelChanged(GridModel oldModel, GridModel newModel) {
+    if (oldModel != null) {
+      oldModel.removeListener(modelListener);
+    }
+    if (newModel != null) {
+      newModel.addListener(modelListener);
+    }
+    contentChanged();
+  }
+
+  private void contentChanged() {
+    frameValid = false;
+    repaintAll = true;
+    requestRender(RedrawReason.CONTENT);
+  }
+
+  // The tile cache invalidates the tiles the changed cells fall on itself
+  private void cellsChanged(
+      GridModel source, int minColumn, int minRow, int maxColumn, int maxRow) {
+    frameValid = false;
+    dirtyCells.add(minColumn, minRow, maxColumn, maxRow);
+    requestRender(RedrawReason.CONTENT);
+  }
+
+  private void tileCacheChanged(GridTileCache oldCache, GridTileCache newCache) {
+    if (getScene() != null) {
+      if (oldCache != null) {
+        oldCache.removeTileListener(tileListener);
+      }
+      if (newCache != null) {
+        newCache.addTileListener(tileListener);
+      }
+    }
+    frameValid = false;
+    requestRender(RedrawReason.CONTENT);
+  }
+
+  // The frame buffers are kept: they are only replaced once too small, or far too large
+  private void sizeChanged() {
+    frameValid = false;
+    requestRender(RedrawReason.SIZE);
+  }
+
+  private void windowChanged(Window newWindow) {
+    if (window != null) {
+      window.renderScaleXProperty().removeListener(outputScaleListener);
+      window.renderScaleYProperty().removeListener(outputScaleListener);
+    }
+    window = newWindow;
+    if (window != null) {
+      window.renderScaleXProperty().addListener(outputScaleListener);
+      window.renderScaleYProperty().addListener(outputScaleListener);
+    }
+    outputScaleChanged();
+  }
+
+  // Moving to a screen with another render scale re-rasterizes tiles and frames at the new one
+  private void outputScaleChanged() {
+    double scale =
+        window != null ? Math.max(window.getRenderScaleX(), window.getRenderScaleY()) : 1;
+    if (!(scale > 0)) {
+      scale = 1;
+    }
+    if (scale != outputScale) {
+      outputScale = scale;
+      deviceStyle = null;
+      frameValid = false;
+      requestRender(RedrawReason.SIZE);
+    }
+  }
+
+  public boolean isRenderPending() {
+    return renderPending;
+  }
+
+  private void sceneChanged(Scene oldScene, Scene newScene) {
+    GridTileCache cache = tileCache.get();
+    if (oldScene != null) {
+      oldScene.removePostLayoutPulseListener(pulseListener);
+      oldScene.windowProperty().removeListener(windowListener);
+      if (cache != null) {
+        cache.removeTileListener(tileListener);
+      }
+    }
+    if (newScene != null) {
+      newScene.addPostLayoutPulseListener(pulseListener);
+      newScene.windowProperty().addListener(windowListener);
+      if (cache != null) {
+        cache.addTileListener(tileListener);
+      }
+      if (renderPending) {
+        Platform.requestNextPulse();
+      }
+    }
+    windowChanged(newScene != null ? newScene.getWindow() : null);
+  }
+
+  // Resizable: layouts size the grid to the space they give it, and the redraw that follows is
+  // coalesced with any other change into the next pulse
+
+  @Override
+  public boolean isResizable() {
+    return true;
+  }
+
+  @Override
+  public double minWidth(double height) {
+    return 0;
+  }
+
+  @Override
+  public double minHeight(double width) {
+    return 0;
+  }
+
+  @Override
+  public double prefWidth(double height) {
+    return prefCanvasWidth;
+  }
+
+  @Override
+  public double prefHeight(double width) {
+    return prefCanvasHeight;
+  }
+
+  @Override
+  public double maxWidth(double height) {
+    return Double.MAX_VALUE;
+  }
+
+  @Override
+  public double maxHeight(double width) {
+    return Double.MAX_VALUE;
+  }
+
+  @Override
+  public void resize(double width, double height) {
+    setWidth(width);
+    setHeight(height);
   }
 
+  private void onPulse() {
+    // Input that arrived after the navigator's timer ran this pulse still makes this frame
+    navigator.flush();
+    if (renderPending) {
+      render();
+    }
+  }
+
+  // Redraws immediately; prefer requestRender() unless the canvas is used offscreen
   public void render() {
+    RedrawReason reason = renderPending ? redrawReason : RedrawReason.REQUESTED;
+    if (!renderPending) {
+      repaintAll = true;
+    }
+    renderPending = false;
+
+    // Disabled statistics cost one branch and no allocation
+    boolean recording = renderStatsEnabled.get() || renderStatsOverlay.get();
+    long start = recording ? System.nanoTime() : 0;
+    renderer.resetCounts();
+    imageCount = 0;
+
+    renderFrame();
+
+    if (recording) {
+      renderStats.record(
+          System.nanoTime() - start,
+          renderer.strokeCount,
+          renderer.fillCount,
+          imageCount,
+          renderer.levelLineCounts,
+          renderer.levelCount,
+          reason);
+      if (renderStatsOverlay.get()) {
+        drawStatsOverlay();
+      }
+    }
+  }
+
+  private void renderFrame() {
     GraphicsContext gc = getGraphicsContext2D();
     double width = getWidth();
     double height = getHeight();
 
-    // Clear canvas with background color
-    gc.setFill(gridBackground.get());
-    gc.fillRect(0, 0, width, height);
+    // Get current viewport position
+    double vpX = gridX.get();
+    double vpY = gridY.get();
 
-    if (!showGrid.get()) {
+    renderer.setPixelScale(outputScale);
+    GridRenderMode mode = renderMode.get();
+    if (mode == GridRenderMode.ASYNC_TILES && !paintTiles(gc, vpX, vpY, width, height)) {
+      mode = GridRenderMode.PATH;
+    }
+    boolean partial = !repaintAll && mode != GridRenderMode.ASYNC_TILES;
+    repaintAll = false;
+    if (mode == GridRenderMode.ASYNC_TILES) {
+      // Placeholders would be frozen into the saved frame, so tiles are never blitted
+      dirtyCells.clear();
+      frameValid = false;
       return;
     }
 
-    // Get current viewport position
-    double vpX = gridX.get();
-    double vpY = gridY.get();
+    // A frame that only repaints edited cells isn't saved: that would snapshot the whole canvas
+    if (partial && repaintDirtyCells(mode, vpX, vpY, width, height)) {
+      return;
+    }
+    dirtyCells.clear();
 
-    // Draw minor grid
-    if (showMinorGrid.get()) {
-      gc.setStroke(minorGridLineStroke.get());
-      gc.setLineWidth(minorGridLineWidth.get());
-      double spacing = minorGridSpacing.get();
-
-      // Calculate first visible grid line positions
-      double firstX = spacing * Math.floor(vpX / spacing);
-      double firstY = spacing * Math.floor(vpY / spacing);
-
-      // Draw vertical lines
-      for (double x = firstX; x <= vpX + width; x += spacing) {
-        // Convert grid coordinate to canvas coordinate
-        double canvasX = x - vpX;
-        gc.strokeLine(canvasX, 0, canvasX, height);
+    boolean blitted = blitScroll(gc, mode, vpX, vpY, width, height);
+    if (!blitted) {
+      paint(mode, vpX, vpY, 0, 0, width, height);
+    }
+
+    // Blits keep drawing the saved frame until the exposed strips grow too large
+    if (scrollBlit.get() && (!blitted || exposedArea > FRAME_REUSE_AREA * width * height)) {
+      saveFrame(vpX, vpY, width, height);
+    }
+  }
+
+  // Clears and repaints the canvas rectangles of the edited cells, widened to whole device pixels
+  // so the repainted pixels replace the old ones exactly. Returns false, leaving the frame to a
+  // full repaint, when the cell positions can't be located or the rectangles cover much of the
+  // canvas.
+  private boolean repaintDirtyCells(
+      GridRenderMode mode, double vpX, double vpY, double width, double height) {
+    double spacing = style().getMinorSpacing();
+    double scale = gridScale.get();
+    if (!dirtyColumns.locate(vpX, spacing, scale) || !dirtyRows.locate(vpY, spacing, scale)) {
+      return false;
+    }
+    double area = 0;
+    for (int i = 0; i < dirtyCells.count(); i++) {
+      double left = Math.max(dirtyColumns.positionOf(dirtyCells.minColumn(i)), 0);
+      double top = Math.max(dirtyRows.positionOf(dirtyCells.minRow(i)), 0);
+      double right = Math.min(dirtyColumns.positionOf(dirtyCells.maxColumn(i) + 1L), width);
+      double bottom = Math.min(dirtyRows.positionOf(dirtyCells.maxRow(i) + 1L), height);
+      if (right > left && bottom > top) {
+        area += (right - left) * (bottom - top);
       }
+    }
+    if (area > width * height / 2) {
+      return false;
+    }
 
-      // Draw horizontal lines
-      for (double y = firstY; y <= vpY + height; y += spacing) {
-        // Convert grid coordinate to canvas coordinate
-        double canvasY = y - vpY;
-        gc.strokeLine(0, canvasY, width, canvasY);
+    GraphicsContext gc = getGraphicsContext2D();
+    for (int i = 0; i < dirtyCells.count(); i++) {
+      double left = Math.max(snapDown(dirtyColumns.positionOf(dirtyCells.minColumn(i))), 0);
+      double top = Math.max(snapDown(dirtyRows.positionOf(dirtyCells.minRow(i))), 0);
+      double right =
+          Math.min(snapUp(dirtyColumns.positionOf(dirtyCells.maxColumn(i) + 1L)), width);
+      double bottom = Math.min(snapUp(dirtyRows.positionOf(dirtyCells.maxRow(i) + 1L)), height);
+      if (right > left && bottom > top) {
+        gc.clearRect(left, top, right - left, bottom - top);
+        paintRegion(mode, vpX, vpY, left, top, right - left, bottom - top);
       }
     }
+    dirtyCells.clear();
+
+    // The overlay is translucent, so it is repainted from beneath rather than drawn over itself
+    if (renderStatsOverlay.get()) {
+      double overlayWidth = Math.min(OVERLAY_MARGIN + OVERLAY_WIDTH, width);
+      double overlayHeight =
+          Math.min(OVERLAY_MARGIN + 8 + OVERLAY_LINE_HEIGHT * OVERLAY_LINES, height);
+      gc.clearRect(0, 0, overlayWidth, overlayHeight);
+      paintRegion(mode, vpX, vpY, 0, 0, overlayWidth, overlayHeight);
+    }
+    return true;
+  }
+
+  private double snapDown(double x) {
+    return Math.floor(x * outputScale) / outputScale;
+  }
+
+  private double snapUp(double x) {
+    return Math.ceil(x * outputScale) / outputScale;
+  }
+
+  // On a whole device pixel translation from the saved frame, draws it shifted and paints only the
+  // exposed strips
+  private boolean blitScroll(
+      GraphicsContext gc,
+      GridRenderMode mode,
+      double vpX,
+      double vpY,
+      double width,
+      double height) {
+    if (!scrollBlit.get() || !frameValid || frame == null) {
+      return false;
+    }
+    double scale = gridScale.get() * outputScale;
+    double deviceDx = (vpX - frameX) * scale;
+    double deviceDy = (vpY - frameY) * scale;
+    if (deviceDx != Math.rint(deviceDx) || deviceDy != Math.rint(deviceDy)) {
+      return false;
+    }
+    double dx = deviceDx / outputScale;
+    double dy = deviceDy / outputScale;
+    if (Math.abs(dx) >= width || Math.abs(dy) >= height) {
+      return false;
+    }
+
+    gc.setImageSmoothing(false);
+    gc.drawImage(
+        frame,
+        0,
+        0,
+        frameWidth,
+        frameHeight,
+        -dx,
+        -dy,
+        frameWidth / outputScale,
+        frameHeight / outputScale);
+    gc.setImageSmoothing(true);
+    imageCount++;
+    exposedArea = Math.abs(dx) * height + Math.abs(dy) * (width - Math.abs(dx));
+
+    // Exposed column strip over the full height, then the row strip beside it
+    double stripX = dx > 0 ? width - dx : 0;
+    double restX = dx > 0 ? 0 : -dx;
+    if (dx != 0) {
+      paintRegion(mode, vpX, vpY, stripX, 0, Math.abs(dx), height);
+    }
+    if (dy != 0) {
+      double stripY = dy > 0 ? height - dy : 0;
+      paintRegion(mode, vpX, vpY, restX, stripY, width - Math.abs(dx), Math.abs(dy));
+    }
+    return true;
+  }
+
+  // Snapshots the canvas, a synchronous readback of the whole frame
+  private void saveFrame(double vpX, double vpY, double width, double height) {
+    // Blending a shifted translucent frame over itself would accumulate, so only opaque
+    // backgrounds are blitted
+    frameValid = false;
+    int w = (int) Math.ceil(width * outputScale);
+    int h = (int) Math.ceil(height * outputScale);
+    if (w <= 0 || h <= 0 || !gridBackground.get().isOpaque()) {
+      return;
+    }
+    // Transformed canvases don't snapshot to their own pixel grid
+    if (getScaleX() != 1 || getScaleY() != 1 || getRotate() != 0 || !getTransforms().isEmpty()) {
+      return;
+    }
+
+    // Reuse the spare buffer while it fits, unless it is over four times the area needed
+    WritableImage target = spareFrame;
+    if (target == null
+        || target.getWidth() < w
+        || target.getHeight() < h
+        || target.getWidth() * target.getHeight() > 4.0 * w * h) {
+      target = new WritableImage(frameStep(w), frameStep(h));
+    }
+    SnapshotParameters params = new SnapshotParameters();
+    params.setTransform(Transform.scale(outputScale, outputScale));
+    spareFrame = frame;
+    frame = snapshot(params, target);
+    frameX = vpX;
+    frameY = vpY;
+    frameWidth = w;
+    frameHeight = h;
+    frameValid = frame == target;
+  }
+
+  private static int frameStep(int pixels) {
+    return (pixels + FRAME_STEP - 1) / FRAME_STEP * FRAME_STEP;
+  }
 
-    // Draw major grid
-    if (showMajorGrid.get()) {
-      gc.setStroke(majorGridLineStroke.get());
-      gc.setLineWidth(majorGridLineWidth.get());
-      double spacing = majorGridSpacing.get();
+  // Last frame's statistics in the top-left corner. Drawn after the frame is saved for blitting,
+  // so the overlay never scrolls with the grid.
+  private void drawStatsOverlay() {
+    RenderStats stats = renderStats;
+    String[] lines = {
+      String.format(
+          "frame %.2f ms  p50 %.2f  p99 %.2f  max %.2f",
+          stats.getLastFrameTimeMillis(),
+          stats.getMedianFrameTimeMillis(),
+          stats.getP99FrameTimeMillis(),
+          stats.getMaxFrameTimeMillis()),
+      String.format("frames %d  reason %s", stats.getFrameCount(), stats.getLastRedrawReason()),
+      String.format(
+          "strokes %d  fills %d  images %d",
+          stats.getStrokeCommands(),
+          stats.getFillCommands(),
+          stats.getImageCommands()),
+      levelLinesText(stats)
+    };
 
-      // Calculate first visible grid line positions
-      double firstX = spacing * Math.floor(vpX / spacing);
-      double firstY = spacing * Math.floor(vpY / spacing);
+    GraphicsContext gc = getGraphicsContext2D();
+    gc.save();
+    gc.setFill(OVERLAY_BACKGROUND);
+    gc.fillRect(
+        OVERLAY_MARGIN, OVERLAY_MARGIN, OVERLAY_WIDTH, 8 + OVERLAY_LINE_HEIGHT * OVERLAY_LINES);
+    gc.setFill(Color.WHITE);
+    if (overlayFont == null) {
+      overlayFont = Font.font("Monospaced", 12);
+    }
+    gc.setFont(overlayFont);
+    gc.setTextBaseline(VPos.TOP);
+    for (int i = 0; i < lines.length; i++) {
+      gc.fillText(lines[i], 10, 8 + OVERLAY_LINE_HEIGHT * i);
+    }
+    gc.restore();
+  }
 
-      // Draw vertical lines
-      for (double x = firstX; x <= vpX + width; x += spacing) {
-        // Convert grid coordinate to canvas coordinate
-        double canvasX = x - vpX;
-        gc.strokeLine(canvasX, 0, canvasX, height);
+  // Lines per level from the finest to the coarsest, e.g. "lines 120 / 24 / 6"
+  private static String levelLinesText(RenderStats stats) {
+    StringBuilder text = new StringBuilder("lines");
+    for (int i = 0; i < stats.getLevelCount(); i++) {
+      text.append(i == 0 ? " " : " / ").append(stats.getLevelLines(i));
+    }
+    return text.toString();
+  }
+
+  // Draws the visible tiles, snapped to whole pixels, and queues any missing or stale ones
+  // followed by the ring of tiles the viewport is moving towards. Returns false when there is no
+  // tile cache or the viewport is too far out for tile indices, leaving the frame to the canvas
+  // path.
+  private boolean paintTiles(
+      GraphicsContext gc, double vpX, double vpY, double width, double height) {
+    // Tiles have a pixel per device pixel and are drawn scaled back to canvas pixels
+    double pixelScale = outputScale;
+    double scale = gridScale.get() * pixelScale;
+    double originX = Math.floor(vpX * scale + 0.5);
+    double originY = Math.floor(vpY * scale + 0.5);
+    long minTileX = GridTileCache.tileIndex(originX);
+    long minTileY = GridTileCache.tileIndex(originY);
+    long maxTileX = GridTileCache.tileIndex(originX + Math.ceil(width * pixelScale) - 1);
+    long maxTileY = GridTileCache.tileIndex(originY + Math.ceil(height * pixelScale) - 1);
+    GridTileCache cache = tileCache.get();
+    if (cache == null
+        || !(scale > 0)
+        || minTileX <= Integer.MIN_VALUE
+        || minTileY <= Integer.MIN_VALUE
+        || maxTileX >= Integer.MAX_VALUE
+        || maxTileY >= Integer.MAX_VALUE) {
+      return false;
+    }
+
+    GridTileCache.Level tiles = tileLevel(cache);
+    int size = GridTileCache.TILE_SIZE;
+    double tileSize = size / pixelScale;
+
+    gc.setImageSmoothing(false);
+    for (int tileY = (int) minTileY; tileY <= maxTileY; tileY++) {
+      for (int tileX = (int) minTileX; tileX <= maxTileX; tileX++) {
+        double x = (tileX * (double) size - originX) / pixelScale;
+        double y = (tileY * (double) size - originY) / pixelScale;
+        WritableImage image = tiles.image(tileX, tileY);
+        if (image != null) {
+          gc.drawImage(image, x, y, tileSize, tileSize);
+          imageCount++;
+        } else {
+          paintPlaceholder(gc, vpX, vpY, x, y, tileSize, tileSize);
+        }
+      }
+    }
+    gc.setImageSmoothing(true);
+
+    // Prefetch one tile beyond the edges the viewport is moving towards
+    int stepX = (int) Math.signum(vpX - tilesX);
+    int stepY = (int) Math.signum(vpY - tilesY);
+    tilesX = vpX;
+    tilesY = vpY;
+    long prefetchX = stepX > 0 ? maxTileX + 1 : minTileX - 1;
+    long prefetchY = stepY > 0 ? maxTileY + 1 : minTileY - 1;
+    if (stepX != 0) {
+      for (long tileY = minTileY - 1; tileY <= maxTileY + 1; tileY++) {
+        tiles.request((int) prefetchX, (int) tileY);
       }
+    }
+    if (stepY != 0) {
+      for (long tileX = minTileX - 1; tileX <= maxTileX + 1; tileX++) {
+        tiles.request((int) tileX, (int) prefetchY);
+      }
+    }
+
+    // Tiles scrolled away from stay until the cache is over budget, so short scrolls back and
+    // other views at this scale don't re-render them
+    cache.trim();
+    return true;
+  }
+
+  // Background and grid lines of a tile that isn't rendered yet; cells arrive with the tile
+  private void paintPlaceholder(
+      GraphicsContext gc,
+      double vpX,
+      double vpY,
+      double x,
+      double y,
+      double width,
+      double height) {
+    gc.save();
+    gc.beginPath();
+    gc.rect(x, y, width, height);
+    gc.clip();
+    renderer.setMode(GridRenderMode.PATH);
+    renderer.paint(style(), gridScale.get(), vpX, vpY, null, null, x, y, width, height);
+    gc.restore();
+  }
+
+  // Base tile level of the cache for this grid, at device resolution
+  GridTileCache.Level tileLevel(GridTileCache cache) {
+    if (deviceStyle == null) {
+      deviceStyle = style().scaledBy(outputScale);
+    }
+    return cache.level(
+        deviceStyle, gridScale.get() * outputScale, model.get(), cellColorMap.get());
+  }
+
+  double getOutputScale() {
+    return outputScale;
+  }
+
+  private GridStyle style() {
+    if (style == null) {
+      style =
+          new GridStyle(
+              GridStyle.argb(gridBackground.get()),
+              showGrid.get(),
+              gridLevels(),
+              lodFadeSpacing.get(),
+              lodMinSpacing.get(),
+              maxLinesPerFrame.get());
+    }
+    return style;
+  }
 
-      // Draw horizontal lines
-      for (double y = firstY; y <= vpY + height; y += spacing) {
-        // Convert grid coordinate to canvas coordinate
-        double canvasY = y - vpY;
-        gc.strokeLine(0, canvasY, width, canvasY);
+  // Levels of the hierarchy, the minor and major grid unless level spacings are set. Without
+  // their own, levels take line widths and strokes graded from the minor to the major ones; a
+  // shorter list of line widths repeats its last entry. The coarsest level shows with the major
+  // grid and the others with the minor grid.
+  private GridLevel[] gridLevels() {
+    Number[] spacings = gridLevelSpacings.get();
+    if (spacings == null || spacings.length == 0) {
+      spacings = new Number[] {minorGridSpacing.get(), majorGridSpacing.get()};
+    }
+    Number[] widths = gridLevelLineWidths.get();
+    int top = spacings.length - 1;
+    GridLevel[] levels = new GridLevel[spacings.length];
+    for (int i = 0; i <= top; i++) {
+      double t = top > 0 ? (double) i / top : 1;
+      double width;
+      if (widths != null && widths.length > 0) {
+        width = widths[Math.min(i, widths.length - 1)].doubleValue();
+      } else {
+        double minor = minorGridLineWidth.get();
+        width = minor + t * (majorGridLineWidth.get() - minor);
+      }
+      Color stroke = i < STYLED_GRID_LEVELS ? gridLevelStrokes.get(i).get() : null;
+      if (stroke == null) {
+        stroke = minorGridLineStroke.get().interpolate(majorGridLineStroke.get(), t);
       }
+      boolean visible =
+          (i == top ? showMajorGrid.get() : showMinorGrid.get())
+              && (i >= STYLED_GRID_LEVELS || showGridLevels.get(i).get());
+      levels[i] = new GridLevel(spacings[i].doubleValue(), width, stroke, visible);
     }
+    return levels;
+  }
+
+  private void paintRegion(
+      GridRenderMode mode,
+      double vpX,
+      double vpY,
+      double x,
+      double y,
+      double width,
+      double height) {
+    GraphicsContext gc = getGraphicsContext2D();
+    gc.save();
+    gc.beginPath();
+    gc.rect(x, y, width, height);
+    gc.clip();
+    paint(mode, vpX, vpY, x, y, width, height);
+    gc.restore();
+  }
+
+  // Paints background, cells and grid lines covering the canvas rectangle (x, y, width, height)
+  private void paint(
+      GridRenderMode mode,
+      double vpX,
+      double vpY,
+      double x,
+      double y,
+      double width,
+      double height) {
+    renderer.setMode(mode);
+    renderer.paint(
+        style(),
+        gridScale.get(),
+        vpX,
+        vpY,
+        model.get(),
+        cellColorMap.get(),
+        x,
+        y,
+        width,
+        height);
   }
 
   // Expose CSS metadata
   public static List<CssMetaData<? extends Styleable, ?>> getClassCssMetaData() {
-    return FACTORY.getCssMetaData();
+    return CSS_META_DATA;
   }
 
   @Override
@@ -358,6 +1186,375 @@ public class InfiniteGrid extends Canvas {
     return majorGridLineStroke;
   }
 
+  // Grid Level Properties
+
+  // Spacings of the grid levels from the finest to the coarsest; empty for the minor and major grid
+  public Number[] getGridLevelSpacings() {
+    return gridLevelSpacings.get();
+  }
+
+  public void setGridLevelSpacings(Number... spacings) {
+    gridLevelSpacings.set(spacings);
+  }
+
+  public ObjectProperty<Number[]> gridLevelSpacingsProperty() {
+    return gridLevelSpacings;
+  }
+
+  public Number[] getGridLevelLineWidths() {
+    return gridLevelLineWidths.get();
+  }
+
+  public void setGridLevelLineWidths(Number... widths) {
+    gridLevelLineWidths.set(widths);
+  }
+
+  public ObjectProperty<Number[]> gridLevelLineWidthsProperty() {
+    return gridLevelLineWidths;
+  }
+
+  // Stroke of a level below STYLED_GRID_LEVELS; null grades it between the minor and major strokes
+  public Color getGridLevelStroke(int level) {
+    return gridLevelStrokes.get(level).get();
+  }
+
+  public void setGridLevelStroke(int level, Color color) {
+    gridLevelStrokes.get(level).set(color);
+  }
+
+  public ObjectProperty<Color> gridLevelStrokeProperty(int level) {
+    return gridLevelStrokes.get(level);
+  }
+
+  public boolean isShowGridLevel(int level) {
+    return showGridLevels.get(level).get();
+  }
+
+  public void setShowGridLevel(int level, boolean value) {
+    showGridLevels.get(level).set(value);
+  }
+
+  public BooleanProperty showGridLevelProperty(int level) {
+    return showGridLevels.get(level);
+  }
+
+  // Render Mode Property
+
+  public GridRenderMode getRenderMode() {
+    return renderMode.get();
+  }
+
+  public void setRenderMode(GridRenderMode mode) {
+    renderMode.set(mode);
+  }
+
+  public ObjectProperty<GridRenderMode> renderModeProperty() {
+    return renderMode;
+  }
+
+  // Style Snapshot
+
+  // Immutable copy of the style properties, e.g. for drawing the same grid offscreen
+  public GridStyle getGridStyle() {
+    return style();
+  }
+
+  // Tile Cache Property
+
+  // Cache of ASYNC_TILES mode; views sharing one render common tiles once. Null disables tiles.
+  public GridTileCache getTileCache() {
+    return tileCache.get();
+  }
+
+  public void setTileCache(GridTileCache cache) {
+    tileCache.set(cache);
+  }
+
+  public ObjectProperty<GridTileCache> tileCacheProperty() {
+    return tileCache;
+  }
+
+  // Render Statistics
+
+  public RenderStats getRenderStats() {
+    return renderStats;
+  }
+
+  public boolean isRenderStatsEnabled() {
+    return renderStatsEnabled.get();
+  }
+
+  public void setRenderStatsEnabled(boolean value) {
+    renderStatsEnabled.set(value);
+  }
+
+  public BooleanProperty renderStatsEnabledProperty() {
+    return renderStatsEnabled;
+  }
+
+  // Records statistics like renderStatsEnabled and draws them over the grid
+  public boolean isRenderStatsOverlay() {
+    return renderStatsOverlay.get();
+  }
+
+  public void setRenderStatsOverlay(boolean value) {
+    renderStatsOverlay.set(value);
+  }
+
+  public BooleanProperty renderStatsOverlayProperty() {
+    return renderStatsOverlay;
+  }
+
+  public long getCoalescedRenderCount() {
+    return coalescedRenderCount.get();
+  }
+
+  public ReadOnlyLongProperty coalescedRenderCountProperty() {
+    return coalescedRenderCount.getReadOnlyProperty();
+  }
+
+  // Content Properties
+
+  public GridModel getModel() {
+    return model.get();
+  }
+
+  public void setModel(GridModel value) {
+    model.set(value);
+  }
+
+  public ObjectProperty<GridModel> modelProperty() {
+    return model;
+  }
+
+  public IntUnaryOperator getCellColorMap() {
+    return cellColorMap.get();
+  }
+
+  public void setCellColorMap(IntUnaryOperator map) {
+    cellColorMap.set(map);
+  }
+
+  public ObjectProperty<IntUnaryOperator> cellColorMapProperty() {
+    return cellColorMap;
+  }
+
+  // Scroll Blit Property
+
+  public boolean isScrollBlit() {
+    return scrollBlit.get();
+  }
+
+  public void setScrollBlit(boolean value) {
+    scrollBlit.set(value);
+  }
+
+  public BooleanProperty scrollBlitProperty() {
+    return scrollBlit;
+  }
+
+  // Line Budget Property
+
+  public int getMaxLinesPerFrame() {
+    return maxLinesPerFrame.get();
+  }
+
+  public void setMaxLinesPerFrame(int lines) {
+    maxLinesPerFrame.set(lines);
+  }
+
+  public IntegerProperty maxLinesPerFrameProperty() {
+    return maxLinesPerFrame;
+  }
+
+  // Zoom
+
+  // Multiplies the scale by factor while keeping the grid point under (pivotX, pivotY) in place
+  public void zoom(double factor, double pivotX, double pivotY) {
+    double scale = gridScale.get();
+    double newScale = scale * factor;
+    if (!(newScale > 0) || Double.isInfinite(newScale)) {
+      return;
+    }
+    double pivotGridX = gridX.get() + pivotX / scale;
+    double pivotGridY = gridY.get() + pivotY / scale;
+    gridScale.set(newScale);
+    gridX.set(pivotGridX - pivotX / newScale);
+    gridY.set(pivotGridY - pivotY / newScale);
+  }
+
+  // Navigation
+
+  // Moves the grid content by (dx, dy) screen pixels. Calls are accumulated and applied together
+  // on the next frame, along with any mouse and gesture input.
+  public void panBy(double dx, double dy) {
+    navigator.panBy(dx, dy);
+  }
+
+  public boolean isNavigationEnabled() {
+    return navigationEnabled.get();
+  }
+
+  public void setNavigationEnabled(boolean value) {
+    navigationEnabled.set(value);
+  }
+
+  public BooleanProperty navigationEnabledProperty() {
+    return navigationEnabled;
+  }
+
+  public MouseButton getPanButton() {
+    return panButton.get();
+  }
+
+  public void setPanButton(MouseButton button) {
+    panButton.set(button);
+  }
+
+  public ObjectProperty<MouseButton> panButtonProperty() {
+    return panButton;
+  }
+
+  public boolean isInertialScrolling() {
+    return inertialScrolling.get();
+  }
+
+  public void setInertialScrolling(boolean value) {
+    inertialScrolling.set(value);
+  }
+
+  public BooleanProperty inertialScrollingProperty() {
+    return inertialScrolling;
+  }
+
+  public double getScrollFriction() {
+    return scrollFriction.get();
+  }
+
+  public void setScrollFriction(double friction) {
+    scrollFriction.set(friction);
+  }
+
+  public DoubleProperty scrollFrictionProperty() {
+    return scrollFriction;
+  }
+
+  GridNavigator getNavigator() {
+    return navigator;
+  }
+
+  // Coordinate Transforms
+  //
+  // Screen coordinates are canvas pixels. Grid to screen and snapping use the same line arithmetic
+  // as the renderers, so a snapped point lies exactly on the drawn line and cellColumnAt() agrees
+  // exactly with the drawn cell edges. Snapping targets the finest and the coarsest level drawn
+  // over the canvas at the current scale: level of detail may have promoted them to multiples of
+  // the styled spacings, and hidden levels, levels faded out below lodMinSpacing and levels over
+  // the line budget are skipped. Snapping returns NaN while no level is drawn. Coordinate queries
+  // return NaN, and cell queries throw IllegalStateException, while the scale or position is
+  // degenerate. Batch forms read and write interleaved x, y pairs and may be given
+  // the same array and offset for source and target.
+
+  public double screenToGridX(double x) {
+    return coordinates().screenToGridX(x);
+  }
+
+  public double screenToGridY(double y) {
+    return coordinates().screenToGridY(y);
+  }
+
+  public double gridToScreenX(double x) {
+    return coordinates().gridToScreenX(x);
+  }
+
+  public double gridToScreenY(double y) {
+    return coordinates().gridToScreenY(y);
+  }
+
+  // Screen position of the nearest line of the finest drawn level
+  public double snapToMinorX(double x) {
+    return coordinates().snapToMinorX(x);
+  }
+
+  public double snapToMinorY(double y) {
+    return coordinates().snapToMinorY(y);
+  }
+
+  // Screen position of the nearest line of the coarsest drawn level
+  public double snapToMajorX(double x) {
+    return coordinates().snapToMajorX(x);
+  }
+
+  public double snapToMajorY(double y) {
+    return coordinates().snapToMajorY(y);
+  }
+
+  // Column of the cell under a screen coordinate, clamped to the int range
+  public int cellColumnAt(double x) {
+    return coordinates().cellColumnAt(x);
+  }
+
+  public int cellRowAt(double y) {
+    return coordinates().cellRowAt(y);
+  }
+
+  public void screenToGrid(
+      double[] source, int sourceOffset, double[] target, int targetOffset, int count) {
+    coordinates().screenToGrid(source, sourceOffset, target, targetOffset, count);
+  }
+
+  public void gridToScreen(
+      double[] source, int sourceOffset, double[] target, int targetOffset, int count) {
+    coordinates().gridToScreen(source, sourceOffset, target, targetOffset, count);
+  }
+
+  public void snapToMinor(
+      double[] source, int sourceOffset, double[] target, int targetOffset, int count) {
+    coordinates().snapToMinor(source, sourceOffset, target, targetOffset, count);
+  }
+
+  public void snapToMajor(
+      double[] source, int sourceOffset, double[] target, int targetOffset, int count) {
+    coordinates().snapToMajor(source, sourceOffset, target, targetOffset, count);
+  }
+
+  // Writes the column and row of the cell under each screen point
+  public void cellAt(double[] source, int sourceOffset, int[] target, int targetOffset, int count) {
+    coordinates().cellAt(source, sourceOffset, target, targetOffset, count);
+  }
+
+  private GridCoordinates coordinates() {
+    coordinates.update(
+        style(), gridScale.get(), gridX.get(), gridY.get(), getWidth(), getHeight());
+    return coordinates;
+  }
+
+  // Level of Detail Properties
+
+  public double getLodFadeSpacing() {
+    return lodFadeSpacing.get();
+  }
+
+  public void setLodFadeSpacing(double pixels) {
+    lodFadeSpacing.set(pixels);
+  }
+
+  public DoubleProperty lodFadeSpacingProperty() {
+    return lodFadeSpacing;
+  }
+
+  public double getLodMinSpacing() {
+    return lodMinSpacing.get();
+  }
+
+  public void setLodMinSpacing(double pixels) {
+    lodMinSpacing.set(pixels);
+  }
+
+  public DoubleProperty lodMinSpacingProperty() {
+    return lodMinSpacing;
+  }
+
   // Grid Scale Property
 
   public double getGridScale() {
@@ -371,4 +1568,24 @@ public class InfiniteGrid extends Canvas {
   public DoubleProperty gridScaleProperty() {
     return gridScale;
   }
-}
\ No newline at end of file
+
+  private static final class SizeSequenceCssMetaData extends CssMetaData<InfiniteGrid, Number[]> {
+    private final Function<InfiniteGrid, StyleableObjectProperty<Number[]>> property;
+
+    SizeSequenceCssMetaData(
+        String name, Function<InfiniteGrid, StyleableObjectProperty<Number[]>> property) {
+      super(name, SizeConverter.SequenceConverter.getInstance(), NO_GRID_LEVELS);
+      this.property = property;
+    }
+
+    @Override
+    public boolean isSettable(InfiniteGrid grid) {
+      return !property.apply(grid).isBound();
+    }
+
+    @Override
+    public StyleableProperty<Number[]> getStyleableProperty(InfiniteGrid grid) {
+      return property.apply(grid);
+    }
+  }
+}
@@ -8,42 +8,19 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
-import javafx.animation.Animation;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
-import javafx.util.Duration;
+import javafx.animation.AnimationTimer;
 
 public class InfiniteGridTest extends Application {
 
-    private Timeline horizontalTimeline;
-    private Timeline verticalTimeline;
+    private AnimationTimer scrollTimer;
 
     @Override
     public void start(Stage primaryStage) {
-        // Create the GridCanvas with fixed size
+        // Create the GridCanvas at its preferred size; it grows and shrinks with the window
         InfiniteGrid canvas = new InfiniteGrid(800, 600);
         canvas.setMinorGridSpacing(20);
         canvas.setMajorGridSpacing(100);
 
-        // Create scrolling animations
-        horizontalTimeline = new Timeline(
-            new KeyFrame(Duration.ZERO),
-            new KeyFrame(Duration.millis(16), e -> {
-                canvas.setGridX(canvas.getGridX() + 1);
-                canvas.render();
-            })
-        );
-        horizontalTimeline.setCycleCount(Animation.INDEFINITE);
-
-        verticalTimeline = new Timeline(
-            new KeyFrame(Duration.ZERO),
-            new KeyFrame(Duration.millis(16), e -> {
-                canvas.setGridY(canvas.getGridY() + 1);
-                canvas.render();
-            })
-        );
-        verticalTimeline.setCycleCount(Animation.INDEFINITE);
-
         // Create sidebar controls
         VBox sidebar = new VBox(10);
         sidebar.setPadding(new Insets(10));
@@ -58,24 +35,32 @@ public class InfiniteGridTest extends Application {
         showGridCheck.setSelected(true);
         showGridCheck.selectedProperty().addListener((obs, old, nv) -> {
             canvas.setShowGrid(nv);
-            canvas.render();
         });
 
         CheckBox showMinorGridCheck = new CheckBox("Show Minor Grid");
         showMinorGridCheck.setSelected(true);
         showMinorGridCheck.selectedProperty().addListener((obs, old, nv) -> {
             canvas.setShowMinorGrid(nv);
-            canvas.render();
         });
 
         CheckBox showMajorGridCheck = new CheckBox("Show Major Grid");
         showMajorGridCheck.setSelected(true);
         showMajorGridCheck.selectedProperty().addListener((obs, old, nv) -> {
             canvas.setShowMajorGrid(nv);
-            canvas.render();
         });
 
-        visibilityBox.getChildren().addAll(showGridCheck, showMinorGridCheck, showMajorGridCheck);
+        // Four levels at five times the spacing of the one below, instead of minor and major
+        CheckBox levelsCheck = new CheckBox("Four Grid Levels");
+        levelsCheck.selectedProperty().addListener((obs, old, nv) -> {
+            if (nv) {
+                canvas.setGridLevelSpacings(20, 100, 500, 2500);
+            } else {
+                canvas.setGridLevelSpacings();
+            }
+        });
+
+        visibilityBox.getChildren().addAll(showGridCheck, showMinorGridCheck, showMajorGridCheck,
+                                           levelsCheck);
         visibilityPane.setContent(visibilityBox);
 
         // Spacing Controls
@@ -89,7 +74,6 @@ public class InfiniteGridTest extends Application {
         minorSpacingSlider.setShowTickMarks(true);
         minorSpacingSlider.valueProperty().addListener((obs, old, nv) -> {
             canvas.setMinorGridSpacing(nv.doubleValue());
-            canvas.render();
         });
 
         Label majorSpacingLabel = new Label("Major Grid Spacing:");
@@ -98,7 +82,6 @@ public class InfiniteGridTest extends Application {
         majorSpacingSlider.setShowTickMarks(true);
         majorSpacingSlider.valueProperty().addListener((obs, old, nv) -> {
             canvas.setMajorGridSpacing(nv.doubleValue());
-            canvas.render();
         });
 
         spacingBox.getChildren().addAll(minorSpacingLabel, minorSpacingSlider, 
@@ -116,7 +99,6 @@ public class InfiniteGridTest extends Application {
         minorWidthSlider.setShowTickMarks(true);
         minorWidthSlider.valueProperty().addListener((obs, old, nv) -> {
             canvas.setMinorGridLineWidth(nv.doubleValue());
-            canvas.render();
         });
 
         Label majorWidthLabel = new Label("Major Line Width:");
@@ -125,7 +107,6 @@ public class InfiniteGridTest extends Application {
         majorWidthSlider.setShowTickMarks(true);
         majorWidthSlider.valueProperty().addListener((obs, old, nv) -> {
             canvas.setMajorGridLineWidth(nv.doubleValue());
-            canvas.render();
         });
 
         lineWidthBox.getChildren().addAll(minorWidthLabel, minorWidthSlider, 
@@ -141,21 +122,18 @@ public class InfiniteGridTest extends Application {
         ColorPicker backgroundPicker = new ColorPicker(Color.WHITE);
         backgroundPicker.setOnAction(e -> {
             canvas.setGridBackground(backgroundPicker.getValue());
-            canvas.render();
         });
 
         Label minorColorLabel = new Label("Minor Grid Color:");
         ColorPicker minorColorPicker = new ColorPicker(Color.LIGHTGRAY);
         minorColorPicker.setOnAction(e -> {
             canvas.setMinorGridLineStroke(minorColorPicker.getValue());
-            canvas.render();
         });
 
         Label majorColorLabel = new Label("Major Grid Color:");
         ColorPicker majorColorPicker = new ColorPicker(Color.GRAY);
         majorColorPicker.setOnAction(e -> {
             canvas.setMajorGridLineStroke(majorColorPicker.getValue());
-            canvas.render();
         });
 
         colorBox.getChildren().addAll(backgroundLabel, backgroundPicker, 
@@ -169,39 +147,111 @@ public class InfiniteGridTest extends Application {
         VBox scrollBox = new VBox(5);
 
         CheckBox horizontalScrollCheck = new CheckBox("Scroll Horizontally");
-        horizontalScrollCheck.selectedProperty().addListener((obs, old, nv) -> {
-            if (nv) {
-                horizontalTimeline.play();
-            } else {
-                horizontalTimeline.stop();
-            }
-        });
-
         CheckBox verticalScrollCheck = new CheckBox("Scroll Vertically");
-        verticalScrollCheck.selectedProperty().addListener((obs, old, nv) -> {
-            if (nv) {
-                verticalTimeline.play();
-            } else {
-                verticalTimeline.stop();
-            }
-        });
 
         Label scrollSpeedLabel = new Label("Scroll Speed:");
         Slider scrollSpeedSlider = new Slider(0.1, 5, 1);
         scrollSpeedSlider.setShowTickLabels(true);
         scrollSpeedSlider.setShowTickMarks(true);
 
+        // Scroll by the slider's speed in pixels per 60 Hz frame, scaled by the actual time
+        // between pulses so the speed doesn't depend on the frame rate
+        scrollTimer = new AnimationTimer() {
+            private long lastFrame;
+
+            @Override
+            public void handle(long now) {
+                double frames = lastFrame == 0 ? 0 : (now - lastFrame) / 1e9 * 60;
+                lastFrame = now;
+                double step = scrollSpeedSlider.getValue() * frames;
+                canvas.panBy(horizontalScrollCheck.isSelected() ? -step : 0,
+                             verticalScrollCheck.isSelected() ? -step : 0);
+            }
+
+            @Override
+            public void stop() {
+                super.stop();
+                lastFrame = 0;
+            }
+        };
+
+        horizontalScrollCheck.selectedProperty().addListener((obs, old, nv) -> {
+            updateScrolling(horizontalScrollCheck, verticalScrollCheck);
+        });
+        verticalScrollCheck.selectedProperty().addListener((obs, old, nv) -> {
+            updateScrolling(horizontalScrollCheck, verticalScrollCheck);
+        });
+
         scrollBox.getChildren().addAll(horizontalScrollCheck, verticalScrollCheck, 
                                      scrollSpeedLabel, scrollSpeedSlider);
         scrollPane.setContent(scrollBox);
 
+        // Rendering Controls
+        TitledPane renderingPane = new TitledPane();
+        renderingPane.setText("Rendering");
+        VBox renderingBox = new VBox(5);
+
+        Label renderModeLabel = new Label("Render Mode:");
+        ChoiceBox<GridRenderMode> renderModeChoice = new ChoiceBox<>();
+        renderModeChoice.getItems().addAll(GridRenderMode.values());
+        renderModeChoice.setValue(canvas.getRenderMode());
+        renderModeChoice.valueProperty().addListener((obs, old, nv) -> {
+            canvas.setRenderMode(nv);
+        });
+
+        Label zoomLabel = new Label("Zoom:");
+        Slider zoomSlider = new Slider(0.05, 4, 1);
+        zoomSlider.setShowTickLabels(true);
+        zoomSlider.setShowTickMarks(true);
+        zoomSlider.valueProperty().addListener((obs, old, nv) -> {
+            double factor = nv.doubleValue() / canvas.getGridScale();
+            canvas.zoom(factor, canvas.getWidth() / 2, canvas.getHeight() / 2);
+        });
+
+        CheckBox scrollBlitCheck = new CheckBox("Scroll Blitting");
+        scrollBlitCheck.selectedProperty().addListener((obs, old, nv) -> {
+            canvas.setScrollBlit(nv);
+        });
+
+        CheckBox statsOverlayCheck = new CheckBox("Render Stats Overlay");
+        statsOverlayCheck.selectedProperty().addListener((obs, old, nv) -> {
+            canvas.setRenderStatsOverlay(nv);
+        });
+
+        renderingBox.getChildren().addAll(renderModeLabel, renderModeChoice, zoomLabel, zoomSlider,
+                                          scrollBlitCheck, statsOverlayCheck);
+        renderingPane.setContent(renderingBox);
+
+        // Minimap drawn from downsampled tiles of the canvas
+        TitledPane minimapPane = new TitledPane();
+        minimapPane.setText("Minimap");
+        VBox minimapBox = new VBox(5);
+
+        GridMinimap minimap = new GridMinimap(canvas, 220, 150);
+
+        Label mipLevelsLabel = new Label("Mip Levels:");
+        Slider mipLevelsSlider = new Slider(1, 5, minimap.getMipLevels());
+        mipLevelsSlider.setMajorTickUnit(1);
+        mipLevelsSlider.setMinorTickCount(0);
+        mipLevelsSlider.setSnapToTicks(true);
+        mipLevelsSlider.setShowTickLabels(true);
+        mipLevelsSlider.setShowTickMarks(true);
+        mipLevelsSlider.valueProperty().addListener((obs, old, nv) -> {
+            minimap.setMipLevels((int) Math.round(nv.doubleValue()));
+        });
+
+        minimapBox.getChildren().addAll(minimap, mipLevelsLabel, mipLevelsSlider);
+        minimapPane.setContent(minimapBox);
+
         // Add all sections to sidebar
         sidebar.getChildren().addAll(
             visibilityPane,
             spacingPane,
             lineWidthPane,
             colorPane,
-            scrollPane
+            scrollPane,
+            renderingPane,
+            minimapPane
         );
 
         // Create main layout
@@ -216,6 +266,14 @@ public class InfiniteGridTest extends Application {
         primaryStage.show();
     }
 
+    private void updateScrolling(CheckBox horizontal, CheckBox vertical) {
+        if (horizontal.isSelected() || vertical.isSelected()) {
+            scrollTimer.start();
+        } else {
+            scrollTimer.stop();
+        }
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -0,0 +1,26 @@
+package com.kynesis;
+
+// What invalidated the canvas and scheduled a redraw. When several invalidations coalesce into
+// one frame, the frame is attributed to the first.
+public enum RedrawReason {
+  // First frame after the canvas was created
+  INITIAL,
+
+  // The grid position or scale changed
+  VIEWPORT,
+
+  // A style or render setting changed
+  STYLE,
+
+  // Cells, the model or the cell colour map changed
+  CONTENT,
+
+  // The canvas was resized
+  SIZE,
+
+  // Background tiles finished rendering in ASYNC_TILES mode
+  TILE,
+
+  // requestRender() was called by the application
+  REQUESTED
+}
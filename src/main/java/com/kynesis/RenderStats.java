@@ -0,0 +1,243 @@
+package com.kynesis;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.beans.property.ReadOnlyLongProperty;
+import javafx.beans.property.ReadOnlyLongWrapper;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Per-frame measurements of an InfiniteGrid, recorded while its render statistics are enabled:
+// wall time of each render() in a histogram, the stroke, fill and image commands issued, the lines
+// drawn per level, and the invalidation that caused the redraw. The properties describe the last
+// frame and are updated on the FX thread.
+//
+// Levels are the level of detail window positions drawn, from the finest up, so level 0 is the
+// finest level drawn at the frame's scale. The minor lines are those of all levels but the
+// coarsest, whose lines are the major ones.
+public final class RenderStats implements RenderStatsMXBean {
+  private static final double NANOS_PER_MILLI = 1e6;
+
+  private final FrameTimeHistogram frameTimes = new FrameTimeHistogram();
+  private final long[] redrawCounts = new long[RedrawReason.values().length];
+
+  private final ReadOnlyLongWrapper frameCount = new ReadOnlyLongWrapper(this, "frameCount");
+  private final ReadOnlyLongWrapper lastFrameTime = new ReadOnlyLongWrapper(this, "lastFrameTime");
+  private final ReadOnlyIntegerWrapper strokeCommands =
+      new ReadOnlyIntegerWrapper(this, "strokeCommands");
+  private final ReadOnlyIntegerWrapper fillCommands =
+      new ReadOnlyIntegerWrapper(this, "fillCommands");
+  private final ReadOnlyIntegerWrapper imageCommands =
+      new ReadOnlyIntegerWrapper(this, "imageCommands");
+  private final ReadOnlyLongWrapper minorLines = new ReadOnlyLongWrapper(this, "minorLines");
+  private final ReadOnlyLongWrapper majorLines = new ReadOnlyLongWrapper(this, "majorLines");
+  private final ReadOnlyObjectWrapper<RedrawReason> lastRedrawReason =
+      new ReadOnlyObjectWrapper<>(this, "lastRedrawReason");
+
+  // Lines of the last frame per level, replaced only when the level count changes
+  private volatile long[] levelLines = new long[0];
+
+  RenderStats() {}
+
+  void record(
+      long nanos,
+      int strokes,
+      int fills,
+      int images,
+      long[] lines,
+      int levels,
+      RedrawReason reason) {
+    long[] perLevel = levelLines;
+    if (perLevel.length != levels) {
+      perLevel = new long[levels];
+    }
+    System.arraycopy(lines, 0, perLevel, 0, levels);
+    levelLines = perLevel;
+    long minor = 0;
+    for (int i = 0; i < levels - 1; i++) {
+      minor += lines[i];
+    }
+
+    frameTimes.record(nanos);
+    redrawCounts[reason.ordinal()]++;
+    lastFrameTime.set(nanos);
+    strokeCommands.set(strokes);
+    fillCommands.set(fills);
+    imageCommands.set(images);
+    minorLines.set(minor);
+    majorLines.set(levels > 0 ? lines[levels - 1] : 0);
+    lastRedrawReason.set(reason);
+    frameCount.set(frameCount.get() + 1);
+  }
+
+  // Clears the histogram and totals; the last frame's values are kept
+  @Override
+  public void reset() {
+    frameTimes.reset();
+    for (int i = 0; i < redrawCounts.length; i++) {
+      redrawCounts[i] = 0;
+    }
+  }
+
+  // Frame time, in nanoseconds, that the given percentage of recorded frames didn't exceed
+  public long getFrameTimePercentile(double percentile) {
+    return frameTimes.getValueAtPercentile(percentile);
+  }
+
+  // Frames recorded since the last reset
+  public long getRecordedFrames() {
+    return frameTimes.getCount();
+  }
+
+  public long getRedrawCount(RedrawReason reason) {
+    return redrawCounts[reason.ordinal()];
+  }
+
+  // Levels drawn in the last frame
+  public int getLevelCount() {
+    return levelLines.length;
+  }
+
+  // Lines of the given level in the last frame, 0 for a level it didn't have
+  public long getLevelLines(int level) {
+    long[] perLevel = levelLines;
+    return level >= 0 && level < perLevel.length ? perLevel[level] : 0;
+  }
+
+  // Registers this object with the platform MBean server under
+  // com.kynesis:type=RenderStats,name=<name>
+  public ObjectName register(String name) throws JMException {
+    ObjectName objectName =
+        new ObjectName("com.kynesis:type=RenderStats,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    return objectName;
+  }
+
+  public void unregister(ObjectName objectName) throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    if (server.isRegistered(objectName)) {
+      server.unregisterMBean(objectName);
+    }
+  }
+
+  // MXBean attributes
+
+  @Override
+  public long getFrameCount() {
+    return frameCount.get();
+  }
+
+  @Override
+  public double getLastFrameTimeMillis() {
+    return lastFrameTime.get() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getMeanFrameTimeMillis() {
+    return frameTimes.getMean() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getMedianFrameTimeMillis() {
+    return frameTimes.getValueAtPercentile(50) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getP99FrameTimeMillis() {
+    return frameTimes.getValueAtPercentile(99) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getMaxFrameTimeMillis() {
+    return frameTimes.getMax() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public int getStrokeCommands() {
+    return strokeCommands.get();
+  }
+
+  @Override
+  public int getFillCommands() {
+    return fillCommands.get();
+  }
+
+  @Override
+  public int getImageCommands() {
+    return imageCommands.get();
+  }
+
+  @Override
+  public long[] getLevelLines() {
+    return levelLines.clone();
+  }
+
+  @Override
+  public long getMinorLines() {
+    return minorLines.get();
+  }
+
+  @Override
+  public long getMajorLines() {
+    return majorLines.get();
+  }
+
+  @Override
+  public RedrawReason getLastRedrawReason() {
+    return lastRedrawReason.get();
+  }
+
+  @Override
+  public Map<String, Long> getRedrawCounts() {
+    Map<String, Long> counts = new LinkedHashMap<>();
+    for (RedrawReason reason : RedrawReason.values()) {
+      counts.put(reason.name(), redrawCounts[reason.ordinal()]);
+    }
+    return counts;
+  }
+
+  // Properties
+
+  public ReadOnlyLongProperty frameCountProperty() {
+    return frameCount.getReadOnlyProperty();
+  }
+
+  // Wall time of the last render(), in nanoseconds
+  public long getLastFrameTime() {
+    return lastFrameTime.get();
+  }
+
+  public ReadOnlyLongProperty lastFrameTimeProperty() {
+    return lastFrameTime.getReadOnlyProperty();
+  }
+
+  public ReadOnlyIntegerProperty strokeCommandsProperty() {
+    return strokeCommands.getReadOnlyProperty();
+  }
+
+  public ReadOnlyIntegerProperty fillCommandsProperty() {
+    return fillCommands.getReadOnlyProperty();
+  }
+
+  public ReadOnlyIntegerProperty imageCommandsProperty() {
+    return imageCommands.getReadOnlyProperty();
+  }
+
+  public ReadOnlyLongProperty minorLinesProperty() {
+    return minorLines.getReadOnlyProperty();
+  }
+
+  public ReadOnlyLongProperty majorLinesProperty() {
+    return majorLines.getReadOnlyProperty();
+  }
+
+  public ReadOnlyObjectProperty<RedrawReason> lastRedrawReasonProperty() {
+    return lastRedrawReason.getReadOnlyProperty();
+  }
+}
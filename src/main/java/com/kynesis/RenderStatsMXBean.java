@@ -0,0 +1,41 @@
+package com.kynesis;
+
+import java.util.Map;
+
+// JMX view of an InfiniteGrid's RenderStats. Times are in milliseconds; counts refer to the last
+// frame unless named as totals. Values are read without synchronizing with the FX thread, so a
+// reading taken while a frame is recorded may mix two frames.
+public interface RenderStatsMXBean {
+  long getFrameCount();
+
+  double getLastFrameTimeMillis();
+
+  double getMeanFrameTimeMillis();
+
+  double getMedianFrameTimeMillis();
+
+  double getP99FrameTimeMillis();
+
+  double getMaxFrameTimeMillis();
+
+  int getStrokeCommands();
+
+  int getFillCommands();
+
+  int getImageCommands();
+
+  // Lines per level, from the finest up
+  long[] getLevelLines();
+
+  // Lines of all levels but the coarsest, and of the coarsest
+  long getMinorLines();
+
+  long getMajorLines();
+
+  RedrawReason getLastRedrawReason();
+
+  // Total frames per redraw reason
+  Map<String, Long> getRedrawCounts();
+
+  void reset();
+}
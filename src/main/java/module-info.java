@@ -2,6 +2,7 @@ module com.kynesis {
     requires javafx.fxml;
     requires javafx.controls;
     requires transitive javafx.graphics;
+    requires transitive java.management;
 
     opens com.kynesis to javafx.fxml;
     exports com.kynesis;
@@ -0,0 +1,122 @@
+package com.kynesis;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class CanvasGridRendererTest {
+  private static final int WIDTH = 320;
+  private static final int HEIGHT = 240;
+
+  @BeforeAll
+  static void startToolkit() throws InterruptedException {
+    GridRasterCanvasTest.startToolkit();
+  }
+
+  @Test
+  void tilesWaitForTheScaleToSettle() throws Exception {
+    GridStyle style = GridStyle.builder().build();
+    onFxThread(
+        renderer -> {
+          renderer.setMode(GridRenderMode.TILE);
+          // A zoom paints a new scale every time and draws paths
+          for (double scale : new double[] {1, 2, 3, 4}) {
+            renderer.paint(style, scale, 0, 0, null, null);
+          }
+          Assertions.assertEquals(0, renderer.tileRasterCount);
+
+          // Once settled the tile is rasterized, then reused by pans
+          renderer.paint(style, 4, 0, 0, null, null);
+          Assertions.assertEquals(1, renderer.tileRasterCount);
+          for (int i = 0; i < 10; i++) {
+            renderer.paint(style, 4, i * 0.7, -i * 1.3, null, null);
+          }
+          Assertions.assertEquals(1, renderer.tileRasterCount);
+
+          // Zooming back to a settled scale reuses its tile straight away
+          renderer.paint(style, 1, 0, 0, null, null);
+          renderer.paint(style, 1, 0, 0, null, null);
+          renderer.paint(style, 4, 0, 0, null, null);
+          renderer.paint(style, 1, 0, 0, null, null);
+          Assertions.assertEquals(2, renderer.tileRasterCount);
+
+          // A style change needs its own tile
+          GridStyle other = GridStyle.builder().background(Color.NAVY).build();
+          renderer.paint(other, 1, 0, 0, null, null);
+          Assertions.assertEquals(3, renderer.tileRasterCount);
+        });
+  }
+
+  @Test
+  void tilesMatchPaths() throws Exception {
+    // Origins on whole and half pixels, shifting the pattern both ways. Other fractions resample
+    // the tile between texels, which blurs its lines where paths stay sharp.
+    assertTileMatchesPath(1, 0, 0);
+    assertTileMatchesPath(2, -13, 7.5);
+    assertTileMatchesPath(4, 1234.5, -55.25);
+  }
+
+  private static void assertTileMatchesPath(double scale, double originX, double originY)
+      throws Exception {
+    GridStyle style = GridStyle.builder().build();
+    GridModel content = GridRasterTest.content();
+    int[][] images = new int[2][];
+    onFxThread(
+        renderer -> {
+          Canvas canvas = new Canvas(WIDTH, HEIGHT);
+          CanvasGridRenderer tiles = new CanvasGridRenderer(canvas.getGraphicsContext2D());
+          tiles.setMode(GridRenderMode.TILE);
+          tiles.paint(style, scale, originX, originY, content, GridRasterTest.COLORS);
+          tiles.paint(style, scale, originX, originY, content, GridRasterTest.COLORS);
+          Assertions.assertEquals(1, tiles.tileRasterCount);
+          images[0] = pixels(canvas);
+
+          new CanvasGridRenderer(canvas.getGraphicsContext2D())
+              .paint(style, scale, originX, originY, content, GridRasterTest.COLORS);
+          images[1] = pixels(canvas);
+        });
+    for (int i = 0; i < images[0].length; i++) {
+      for (int shift = 0; shift < 32; shift += 8) {
+        int difference = Math.abs((images[0][i] >> shift & 0xFF) - (images[1][i] >> shift & 0xFF));
+        Assertions.assertTrue(
+            difference <= 2,
+            String.format(
+                "scale %s origin %s,%s at %d,%d: tile %08x path %08x",
+                scale, originX, originY, i % WIDTH, i / WIDTH, images[0][i], images[1][i]));
+      }
+    }
+  }
+
+  // Runs the check on the FX thread with a renderer for a fresh canvas
+  private static void onFxThread(Consumer<CanvasGridRenderer> check) throws Exception {
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    Platform.runLater(
+        () -> {
+          try {
+            Canvas canvas = new Canvas(WIDTH, HEIGHT);
+            check.accept(new CanvasGridRenderer(canvas.getGraphicsContext2D()));
+            done.complete(null);
+          } catch (RuntimeException | Error e) {
+            done.completeExceptionally(e);
+          }
+        });
+    done.get(30, TimeUnit.SECONDS);
+  }
+
+  private static int[] pixels(Canvas canvas) {
+    WritableImage image = canvas.snapshot(null, null);
+    int[] pixels = new int[WIDTH * HEIGHT];
+    image
+        .getPixelReader()
+        .getPixels(0, 0, WIDTH, HEIGHT, PixelFormat.getIntArgbInstance(), pixels, 0, WIDTH);
+    return pixels;
+  }
+}
@@ -0,0 +1,179 @@
+package com.kynesis;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ChunkStoreTest {
+  // Enough chunks to grow the index past its initial 1024 entries
+  private static final int CHUNKS_X = 40;
+  private static final int CHUNKS_Y = 20;
+
+  // Resident bytes of a promoted chunk, so budgets can be given in chunks
+  private static final long CHUNK_BYTES = chunkBytes();
+
+  @TempDir Path dir;
+
+  @Test
+  void evictsAndReopens() throws IOException {
+    Path file = dir.resolve("evict.chunks");
+    GridModel expected = new GridModel();
+    try (GridModel model = GridModel.open(file)) {
+      model.setMemoryBudget(4 * CHUNK_BYTES);
+      write(model, expected, 0);
+      // Every chunk was written back on eviction and faults in again
+      Assertions.assertTrue(model.getResidentChunkCount() <= 5);
+      Assertions.assertEquals(CHUNKS_X * CHUNKS_Y, model.getChunkCount());
+      Assertions.assertEquals(expected.getCellCount(), model.getCellCount());
+      Assertions.assertEquals(TestModels.cells(expected), TestModels.cells(model));
+      Assertions.assertTrue(model.getResidentChunkCount() <= 5);
+    }
+
+    try (GridModel model = GridModel.open(file)) {
+      Assertions.assertEquals(0, model.getResidentChunkCount());
+      Assertions.assertEquals(CHUNKS_X * CHUNKS_Y, model.getChunkCount());
+      Assertions.assertEquals(expected.getCellCount(), model.getCellCount());
+      Assertions.assertEquals(TestModels.cells(expected), TestModels.cells(model));
+    }
+  }
+
+  @Test
+  void flushSavesCellCount() throws IOException {
+    Path file = dir.resolve("flush.chunks");
+    GridModel expected = new GridModel();
+    try (GridModel model = GridModel.open(file)) {
+      write(model, expected, 0);
+      model.flush();
+      try (GridModel other = GridModel.open(file)) {
+        Assertions.assertEquals(expected.getCellCount(), other.getCellCount());
+        Assertions.assertEquals(TestModels.cells(expected), TestModels.cells(other));
+      }
+    }
+  }
+
+  @Test
+  void reusesFreedSlots() throws IOException {
+    Path file = dir.resolve("reuse.chunks");
+    GridModel expected = new GridModel();
+    long size;
+    try (GridModel model = GridModel.open(file)) {
+      model.setMemoryBudget(4 * CHUNK_BYTES);
+      write(model, expected, 0);
+      model.flush();
+      size = Files.size(file);
+
+      // Emptying every chunk frees its slot; chunks elsewhere take them over
+      for (int row = 0; row < CHUNKS_Y * GridModel.CHUNK_SIZE; row += GridModel.CHUNK_SIZE) {
+        for (int column = 0; column < CHUNKS_X * GridModel.CHUNK_SIZE; column++) {
+          model.set(column, row, 0);
+          model.set(column, row + 1, 0);
+        }
+      }
+      Assertions.assertEquals(0, model.getChunkCount());
+      Assertions.assertEquals(0, model.getCellCount());
+      expected.clear();
+      write(model, expected, CHUNKS_Y);
+      Assertions.assertEquals(CHUNKS_X * CHUNKS_Y, model.getChunkCount());
+    }
+    Assertions.assertEquals(size, Files.size(file));
+
+    try (GridModel model = GridModel.open(file)) {
+      Assertions.assertEquals(expected.getCellCount(), model.getCellCount());
+      Assertions.assertEquals(TestModels.cells(expected), TestModels.cells(model));
+    }
+  }
+
+  @Test
+  void clearEmptiesTheFile() throws IOException {
+    Path file = dir.resolve("clear.chunks");
+    try (GridModel model = GridModel.open(file)) {
+      write(model, new GridModel(), 0);
+      model.clear();
+      Assertions.assertEquals(0, model.getChunkCount());
+      model.set(-5, -5, 5);
+    }
+    try (GridModel model = GridModel.open(file)) {
+      Assertions.assertEquals(1, model.getChunkCount());
+      Assertions.assertEquals(1, model.getCellCount());
+      Assertions.assertEquals(5, model.get(-5, -5));
+    }
+  }
+
+  @Test
+  void storeIndexAndFreeList() throws IOException {
+    Path file = dir.resolve("store.chunks");
+    int[] cells = new int[ChunkStore.CELLS];
+    Map<Long, Integer> slots = new HashMap<>();
+    try (ChunkStore store = ChunkStore.open(file)) {
+      // Past half of each index size, so the index grows twice
+      for (int i = 0; i < 2000; i++) {
+        long key = GridModel.chunkKey(i * 7 - 7000, i * 13 - 1000);
+        int slot = store.allocate(key);
+        Assertions.assertFalse(slots.containsValue(slot));
+        slots.put(key, slot);
+        Arrays.fill(cells, i + 1);
+        store.write(slot, cells);
+      }
+      Assertions.assertEquals(2000, store.getChunkCount());
+      for (Map.Entry<Long, Integer> entry : slots.entrySet()) {
+        Assertions.assertEquals((int) entry.getValue(), store.find(entry.getKey()));
+      }
+
+      // A freed slot is handed out again, zeroed
+      long key = GridModel.chunkKey(-7000, -1000);
+      int slot = slots.remove(key);
+      store.delete(key);
+      Assertions.assertEquals(-1, store.find(key));
+      long other = GridModel.chunkKey(123_456, -654_321);
+      Assertions.assertEquals(slot, store.allocate(other));
+      store.read(slot, cells);
+      Assertions.assertArrayEquals(new int[ChunkStore.CELLS], cells);
+      slots.put(other, slot);
+    }
+
+    try (ChunkStore store = ChunkStore.open(file)) {
+      Assertions.assertEquals(2000, store.getChunkCount());
+      long[] count = new long[1];
+      store.forEachKey(
+          key -> {
+            Assertions.assertTrue(slots.containsKey(key));
+            count[0]++;
+          });
+      Assertions.assertEquals(2000, count[0]);
+      for (Map.Entry<Long, Integer> entry : slots.entrySet()) {
+        Assertions.assertEquals((int) entry.getValue(), store.find(entry.getKey()));
+      }
+      int slot = store.find(GridModel.chunkKey(-7000 + 7, -1000 + 13));
+      store.read(slot, cells);
+      Assertions.assertEquals(2, cells[ChunkStore.CELLS - 1]);
+    }
+  }
+
+  // Two cells in the first two rows of every chunk from the given chunk row on, one of them too
+  // large for a compact chunk, mirrored into expected
+  private static void write(GridModel model, GridModel expected, int firstChunkY) {
+    for (int chunkY = firstChunkY; chunkY < firstChunkY + CHUNKS_Y; chunkY++) {
+      for (int chunkX = 0; chunkX < CHUNKS_X; chunkX++) {
+        int column = chunkX * GridModel.CHUNK_SIZE + (chunkX + chunkY) % GridModel.CHUNK_SIZE;
+        int row = chunkY * GridModel.CHUNK_SIZE;
+        int value = chunkY * CHUNKS_X + chunkX + 1;
+        model.set(column, row, value);
+        model.set(column, row + 1, -value * 100_000);
+        expected.set(column, row, value);
+        expected.set(column, row + 1, -value * 100_000);
+      }
+    }
+  }
+
+  private static long chunkBytes() {
+    GridModel model = new GridModel();
+    model.set(0, 0, Integer.MAX_VALUE);
+    return model.getChunk(0, 0).getMemoryUsage();
+  }
+}
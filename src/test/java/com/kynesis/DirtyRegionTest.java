@@ -0,0 +1,135 @@
+package com.kynesis;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DirtyRegionTest {
+  @Test
+  void brushStampsMerge() {
+    DirtyRegion region = new DirtyRegion();
+    // Overlapping 3 x 3 stamps along a row, then adjacent ones down a column
+    for (int column = 0; column <= 10; column++) {
+      region.add(column, 0, column + 2, 2);
+    }
+    for (int row = 3; row <= 30; row += 3) {
+      region.add(10, row, 12, row + 2);
+    }
+    Assertions.assertEquals(rects(rect(0, 0, 12, 2), rect(10, 3, 12, 32)), rects(region));
+
+    // A stamp continuing the row joins it, and the column stays separate
+    region.add(13, 0, 15, 2);
+    Assertions.assertEquals(rects(rect(0, 0, 15, 2), rect(10, 3, 12, 32)), rects(region));
+  }
+
+  @Test
+  void diagonalStampsStaySeparate() {
+    DirtyRegion region = new DirtyRegion();
+    region.add(0, 0, 2, 2);
+    region.add(3, 3, 5, 5);
+    Assertions.assertEquals(rects(rect(0, 0, 2, 2), rect(3, 3, 5, 5)), rects(region));
+  }
+
+  @Test
+  void containedRectanglesAreAbsorbed() {
+    DirtyRegion region = new DirtyRegion();
+    region.add(0, 0, 99, 99);
+    region.add(10, 10, 20, 20);
+    Assertions.assertEquals(rects(rect(0, 0, 99, 99)), rects(region));
+
+    // A rectangle covering earlier ones replaces all of them
+    region.add(200, 0, 200, 0);
+    region.add(300, 50, 310, 60);
+    region.add(-5, -5, 400, 200);
+    Assertions.assertEquals(rects(rect(-5, -5, 400, 200)), rects(region));
+  }
+
+  @Test
+  void grownUnionMergesAgain() {
+    DirtyRegion region = new DirtyRegion();
+    region.add(0, 0, 0, 0);
+    region.add(2, 0, 2, 0);
+    Assertions.assertEquals(2, region.count());
+    // Merged with the first cell, the union is then adjacent to the second
+    region.add(1, 0, 1, 0);
+    Assertions.assertEquals(rects(rect(0, 0, 2, 0)), rects(region));
+  }
+
+  @Test
+  void disjointEditsKeepSixteenRectangles() {
+    DirtyRegion region = new DirtyRegion();
+    Set<List<Integer>> expected = new HashSet<>();
+    for (int i = 0; i < 16; i++) {
+      region.add(i * 100, i * 10, i * 100 + 1, i * 10);
+      expected.add(rect(i * 100, i * 10, i * 100 + 1, i * 10));
+    }
+    Assertions.assertEquals(expected, rects(region));
+
+    // The 17th merges with the rectangle the union wastes the fewest cells for
+    region.add(503, 50, 503, 50);
+    expected.remove(rect(500, 50, 501, 50));
+    expected.add(rect(500, 50, 503, 50));
+    Assertions.assertEquals(expected, rects(region));
+
+    // Still full, so the next one merges too, wherever it is cheapest
+    region.add(1402, 138, 1402, 138);
+    expected.remove(rect(1400, 140, 1401, 140));
+    expected.add(rect(1400, 138, 1402, 140));
+    Assertions.assertEquals(expected, rects(region));
+  }
+
+  @Test
+  void fullRangeDoesNotOverflow() {
+    int min = Integer.MIN_VALUE;
+    int max = Integer.MAX_VALUE;
+    DirtyRegion region = new DirtyRegion();
+    // Two halves of the plane are adjacent, and whatever is added later is inside
+    region.add(min, min, -1, max);
+    region.add(0, min, max, max);
+    region.add(-5, -5, 5, 5);
+    Assertions.assertEquals(rects(rect(min, min, max, max)), rects(region));
+
+    // Full-width rows, 16 of them, then a 17th next to the first
+    region.clear();
+    Assertions.assertTrue(region.isEmpty());
+    Set<List<Integer>> expected = new HashSet<>();
+    for (int i = 0; i < 16; i++) {
+      region.add(min, i * 1000, max, i * 1000);
+      expected.add(rect(min, i * 1000, max, i * 1000));
+    }
+    region.add(min, 2, max, 2);
+    expected.remove(rect(min, 0, max, 0));
+    expected.add(rect(min, 0, max, 2));
+    Assertions.assertEquals(expected, rects(region));
+  }
+
+  @Test
+  void ignoresEmptyRectangles() {
+    DirtyRegion region = new DirtyRegion();
+    region.add(5, 5, 4, 5);
+    region.add(5, 5, 5, 4);
+    Assertions.assertTrue(region.isEmpty());
+  }
+
+  private static List<Integer> rect(int minColumn, int minRow, int maxColumn, int maxRow) {
+    return Arrays.asList(minColumn, minRow, maxColumn, maxRow);
+  }
+
+  @SafeVarargs
+  private static Set<List<Integer>> rects(List<Integer>... rects) {
+    return new HashSet<>(Arrays.asList(rects));
+  }
+
+  private static Set<List<Integer>> rects(DirtyRegion region) {
+    Set<List<Integer>> rects = new HashSet<>();
+    for (int i = 0; i < region.count(); i++) {
+      rects.add(
+          rect(region.minColumn(i), region.minRow(i), region.maxColumn(i), region.maxRow(i)));
+    }
+    Assertions.assertEquals(region.count(), rects.size());
+    return rects;
+  }
+}
@@ -0,0 +1,167 @@
+package com.kynesis;
+
+import java.util.Arrays;
+import java.util.Random;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class GridCoordinatesTest {
+  private static final double WIDTH = 800;
+  private static final double HEIGHT = 600;
+  private static final double ORIGIN_X = 1e9 + 0.3;
+  private static final double ORIGIN_Y = -1e6 - 0.7;
+
+  @Test
+  void snapsToFinestDrawnLevel() {
+    // At 1.5 pixels per unit the 1 unit level is below lodMinSpacing and culled
+    assertSnapsToDrawnLines(levels(true, true), 1.5, 1, 3);
+  }
+
+  @Test
+  void skipsHiddenLevels() {
+    assertSnapsToDrawnLines(levels(true, false), 1.5, 2, 3);
+    assertSnapsToDrawnLines(levels(true, false), 10, 0, 3);
+  }
+
+  @Test
+  void skipsLevelsOverLineBudget() {
+    // 800 x 600 pixels at 10 pixels per unit hold about 140 lines of the 1 unit level
+    GridStyle style = GridStyle.builder().levels(levels(true, true).getLevels()).build();
+    GridStyle budget =
+        GridStyle.builder().levels(style.getLevels()).maxLinesPerFrame(100).build();
+    assertSnapsToDrawnLines(budget, 10, 1, 3);
+  }
+
+  @Test
+  void noSnappingWithoutDrawnLines() {
+    GridStyle hidden =
+        GridStyle.builder().levels(levels(true, true).getLevels()).showGrid(false).build();
+    GridCoordinates coordinates = new GridCoordinates();
+    Assertions.assertTrue(coordinates.update(hidden, 10, ORIGIN_X, ORIGIN_Y, WIDTH, HEIGHT));
+    Assertions.assertTrue(Double.isNaN(coordinates.snapToMinorX(100)));
+    Assertions.assertTrue(Double.isNaN(coordinates.snapToMajorY(100)));
+    Assertions.assertNotEquals(0, coordinates.cellColumnAt(100));
+  }
+
+  @Test
+  void cellsMatchDrawnEdges() {
+    GridStyle style = levels(true, true);
+    GridLevelLines lines = new GridLevelLines();
+    Assertions.assertTrue(lines.compute(style, 10, ORIGIN_X, ORIGIN_Y, 0, 0, WIDTH, HEIGHT));
+    Assertions.assertTrue(lines.drawn[0]);
+    double[] columns = allPositions(lines, true);
+    double[] rows = allPositions(lines, false);
+
+    GridCoordinates coordinates = new GridCoordinates();
+    coordinates.update(style, 10, ORIGIN_X, ORIGIN_Y, WIDTH, HEIGHT);
+    Random random = new Random(1);
+    for (int i = 0; i < 1000; i++) {
+      double x = random.nextDouble() * WIDTH;
+      double y = random.nextDouble() * HEIGHT;
+      int column = coordinates.cellColumnAt(x);
+      int row = coordinates.cellRowAt(y);
+      int left = edgeBefore(columns, x);
+      int top = edgeBefore(rows, y);
+      // Cells cut by the canvas edge have only the lines inside it
+      if (left < 0 || left + 1 >= columns.length || top < 0 || top + 1 >= rows.length) {
+        continue;
+      }
+      Assertions.assertEquals(columns[left], coordinates.gridToScreenX(column), 0);
+      Assertions.assertEquals(columns[left + 1], coordinates.gridToScreenX(column + 1.0), 0);
+      Assertions.assertEquals(rows[top], coordinates.gridToScreenY(row), 0);
+      Assertions.assertEquals(rows[top + 1], coordinates.gridToScreenY(row + 1.0), 0);
+
+      int[] cell = new int[2];
+      coordinates.cellAt(new double[] {x, y}, 0, cell, 0, 1);
+      Assertions.assertArrayEquals(new int[] {column, row}, cell);
+    }
+  }
+
+  // Snapped points land on the nearest line drawn by the finest, and the coarsest, drawn level
+  private static void assertSnapsToDrawnLines(
+      GridStyle style, double scale, int finest, int coarsest) {
+    GridLevelLines lines = new GridLevelLines();
+    Assertions.assertTrue(lines.compute(style, scale, ORIGIN_X, ORIGIN_Y, 0, 0, WIDTH, HEIGHT));
+    Assertions.assertEquals(finest, lines.finestDrawn());
+    Assertions.assertEquals(coarsest, lines.coarsestDrawn());
+    // Lines are emitted by the coarsest level they lie on, so the finest drawn level's lines are
+    // those of all drawn levels
+    double[] minorColumns = allPositions(lines, true);
+    double[] minorRows = allPositions(lines, false);
+    double[] majorColumns = sorted(lines.columns[coarsest], lines.columnCounts[coarsest]);
+    double[] majorRows = sorted(lines.rows[coarsest], lines.rowCounts[coarsest]);
+
+    GridCoordinates coordinates = new GridCoordinates();
+    Assertions.assertTrue(coordinates.update(style, scale, ORIGIN_X, ORIGIN_Y, WIDTH, HEIGHT));
+    Random random = new Random(2);
+    double[] points = new double[2];
+    double[] snapped = new double[2];
+    for (int i = 0; i < 1000; i++) {
+      double x = random.nextDouble() * WIDTH;
+      double y = random.nextDouble() * HEIGHT;
+      assertNearest(minorColumns, x, coordinates.snapToMinorX(x));
+      assertNearest(minorRows, y, coordinates.snapToMinorY(y));
+      assertNearest(majorColumns, x, coordinates.snapToMajorX(x));
+      assertNearest(majorRows, y, coordinates.snapToMajorY(y));
+
+      points[0] = x;
+      points[1] = y;
+      coordinates.snapToMinor(points, 0, snapped, 0, 1);
+      assertNearest(minorColumns, x, snapped[0]);
+      assertNearest(minorRows, y, snapped[1]);
+    }
+  }
+
+  // Spacings 1, 5, 25 and 125, the second of them optionally hidden
+  private static GridStyle levels(boolean showFinest, boolean showSecond) {
+    return GridStyle.builder()
+        .levels(
+            new GridLevel(1, 0.5, Color.LIGHTGRAY, showFinest),
+            new GridLevel(5, 0.5, Color.GRAY, showSecond),
+            new GridLevel(25, 1, Color.DARKGRAY, true),
+            new GridLevel(125, 1, Color.BLACK, true))
+        .build();
+  }
+
+  private static double[] allPositions(GridLevelLines lines, boolean columns) {
+    double[] all = new double[0];
+    for (int p = 0; p < lines.count; p++) {
+      if (!lines.drawn[p]) {
+        continue;
+      }
+      int count = columns ? lines.columnCounts[p] : lines.rowCounts[p];
+      int at = all.length;
+      all = Arrays.copyOf(all, at + count);
+      System.arraycopy(columns ? lines.columns[p] : lines.rows[p], 0, all, at, count);
+    }
+    Arrays.sort(all);
+    return all;
+  }
+
+  private static double[] sorted(double[] positions, int count) {
+    double[] copy = Arrays.copyOf(positions, count);
+    Arrays.sort(copy);
+    return copy;
+  }
+
+  // Checks a snapped pixel against the nearest emitted line, where there are lines on both sides;
+  // lines are only emitted where they reach into the area
+  private static void assertNearest(double[] positions, double pixel, double snapped) {
+    int before = edgeBefore(positions, pixel);
+    if (before < 0 || before + 1 >= positions.length) {
+      return;
+    }
+    double nearest =
+        pixel - positions[before] < positions[before + 1] - pixel
+            ? positions[before]
+            : positions[before + 1];
+    Assertions.assertEquals(nearest, snapped, 0);
+  }
+
+  // Index of the last position at or before the pixel
+  private static int edgeBefore(double[] positions, double pixel) {
+    int index = Arrays.binarySearch(positions, pixel);
+    return index >= 0 ? index : -index - 2;
+  }
+}
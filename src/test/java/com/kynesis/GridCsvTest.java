@@ -0,0 +1,88 @@
+package com.kynesis;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GridCsvTest {
+  @TempDir Path dir;
+
+  @Test
+  void readsHeaderCrlfAndBlankLines() throws IOException {
+    GridModel model = new GridModel();
+    model.set(7, 8, 99);
+    String csv =
+        "column,row,value\r\n"
+            + "\r\n"
+            + "-2147483648,-2147483648,-2147483648\r\n"
+            + "2147483647,0,1\r\n"
+            + "\n"
+            + "-65,64,-12\n"
+            + "7,8,0\r\n"
+            + "3,-4,2147483647";
+    Assertions.assertEquals(5, GridCsv.read(new StringReader(csv), model));
+
+    Map<Long, Integer> expected = new HashMap<>();
+    expected.put(GridModel.chunkKey(Integer.MIN_VALUE, Integer.MIN_VALUE), Integer.MIN_VALUE);
+    expected.put(GridModel.chunkKey(Integer.MAX_VALUE, 0), 1);
+    expected.put(GridModel.chunkKey(-65, 64), -12);
+    expected.put(GridModel.chunkKey(3, -4), Integer.MAX_VALUE);
+    Assertions.assertEquals(expected, TestModels.cells(model));
+  }
+
+  @Test
+  void readsWithoutHeader() throws IOException {
+    GridModel model = new GridModel();
+    Assertions.assertEquals(2, GridCsv.read(new StringReader("1,2,3\n-1,-2,-3\n"), model));
+    Assertions.assertEquals(3, model.get(1, 2));
+    Assertions.assertEquals(-3, model.get(-1, -2));
+  }
+
+  @Test
+  void roundTrip() throws IOException {
+    GridModel model = new GridModel();
+    model.fillRect(-70, -70, 10, 5, -1);
+    for (int i = 0; i < 2000; i++) {
+      model.set(i * 37 % 400 - 200, i * 91 % 300 - 150, i * 7919 - 1_000_000);
+    }
+    model.set(Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE);
+    long cells = TestModels.cells(model).size();
+
+    StringWriter out = new StringWriter();
+    Assertions.assertEquals(cells, GridCsv.write(model, out));
+    Assertions.assertTrue(out.toString().startsWith(GridCsv.HEADER + "\n"));
+    GridModel read = new GridModel();
+    Assertions.assertEquals(cells, GridCsv.read(new StringReader(out.toString()), read));
+    Assertions.assertEquals(TestModels.cells(model), TestModels.cells(read));
+
+    // A grid file gives the same lines as its model
+    Path file = dir.resolve("csv.grid");
+    GridFileWriter.write(model, file);
+    StringWriter fromFile = new StringWriter();
+    try (GridFileReader reader = GridFileReader.open(file)) {
+      Assertions.assertEquals(cells, GridCsv.write(reader, fromFile));
+    }
+    Assertions.assertEquals(out.toString(), fromFile.toString());
+  }
+
+  @Test
+  void rejectsMalformedLines() {
+    assertMalformed("column,row,value\n1,2,3\n1,2\n", 3);
+    assertMalformed("1,2,3\r\n\r\n1,x,3\r\n", 3);
+    assertMalformed("1,2,3,4\n", 1);
+    assertMalformed("1,2,2147483648\n", 1);
+  }
+
+  private static void assertMalformed(String csv, int line) {
+    IOException e =
+        Assertions.assertThrows(
+            IOException.class, () -> GridCsv.read(new StringReader(csv), new GridModel()));
+    Assertions.assertEquals("Malformed CSV at line " + line, e.getMessage());
+  }
+}
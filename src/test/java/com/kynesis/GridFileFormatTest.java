@@ -0,0 +1,117 @@
+package com.kynesis;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class GridFileFormatTest {
+  @Test
+  void sparseChunkEncodesAsRuns() throws IOException {
+    GridModel model = new GridModel();
+    model.set(-64, -64, 1);
+    model.set(-60, -50, Integer.MIN_VALUE);
+    model.set(-1, -1, Integer.MAX_VALUE);
+    model.fillRect(-40, -30, -20, -25, -7);
+    GridChunk chunk = model.getChunk(-1, -1);
+
+    ByteBuffer buffer = roundTrip(chunk, GridFileFormat.RUNS);
+    Assertions.assertTrue(buffer.getInt(GridFileFormat.R_LENGTH) < GridFileFormat.RAW_BYTES);
+  }
+
+  @Test
+  void noisyChunkEncodesRaw() throws IOException {
+    GridModel model = new GridModel();
+    for (int row = 0; row < GridModel.CHUNK_SIZE; row++) {
+      for (int column = 0; column < GridModel.CHUNK_SIZE; column++) {
+        model.set(column + 128, row - 192, row * 1_000_003 + column * 7919 + 1);
+      }
+    }
+    GridChunk chunk = model.getChunk(2, -3);
+
+    ByteBuffer buffer = roundTrip(chunk, GridFileFormat.RAW);
+    Assertions.assertEquals(GridFileFormat.RAW_BYTES, buffer.getInt(GridFileFormat.R_LENGTH));
+  }
+
+  @Test
+  void varintsRoundTrip() throws IOException {
+    int[] values = {0, 1, -1, 63, -64, 64, 127, 128, 1 << 20, Integer.MIN_VALUE, Integer.MAX_VALUE};
+    ByteBuffer buffer = ByteBuffer.allocate(values.length * 10);
+    for (int value : values) {
+      GridFileFormat.putSigned(buffer, value);
+    }
+    buffer.flip();
+    for (int value : values) {
+      Assertions.assertEquals(value, GridFileFormat.getSigned(buffer));
+    }
+    Assertions.assertFalse(buffer.hasRemaining());
+
+    ByteBuffer overlong = ByteBuffer.wrap(new byte[] {-1, -1, -1, -1, -1, 1});
+    IOException e =
+        Assertions.assertThrows(IOException.class, () -> GridFileFormat.getUnsigned(overlong));
+    Assertions.assertEquals("Corrupt varint", e.getMessage());
+  }
+
+  @Test
+  void rejectsCorruptRuns() {
+    // A run past the end of the chunk
+    assertCorruptRuns(runs(GridFileFormat.CELLS + 1, 5));
+    // Runs that stop short of the end
+    assertCorruptRuns(runs(100, 5, GridFileFormat.CELLS - 101, 0));
+    // An empty run
+    assertCorruptRuns(runs(0, 5, GridFileFormat.CELLS, 0));
+    // Bytes left over after the last run
+    ByteBuffer trailing = runs(GridFileFormat.CELLS, 0);
+    assertCorruptRuns(ByteBuffer.wrap(trailing.array(), 0, trailing.limit() + 1).slice());
+
+    ByteBuffer buffer = runs(GridFileFormat.CELLS, 0);
+    int[] cells = new int[GridFileFormat.CELLS];
+    IOException e =
+        Assertions.assertThrows(
+            IOException.class, () -> GridFileFormat.getCells(buffer, 2, buffer.limit(), cells));
+    Assertions.assertEquals("Unknown chunk encoding 2", e.getMessage());
+  }
+
+  // Encodes the chunk, checks its record and decodes it again; returns the record
+  private static ByteBuffer roundTrip(GridChunk chunk, int encoding) throws IOException {
+    ByteBuffer buffer =
+        ByteBuffer.allocate(GridFileFormat.MAX_RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    GridFileFormat.putChunk(buffer, chunk);
+    int length = buffer.getInt(GridFileFormat.R_LENGTH);
+    Assertions.assertEquals(GridFileFormat.RECORD_HEADER_BYTES + length, buffer.position());
+    Assertions.assertEquals(chunk.getChunkX(), buffer.getInt(GridFileFormat.R_CHUNK_X));
+    Assertions.assertEquals(chunk.getChunkY(), buffer.getInt(GridFileFormat.R_CHUNK_Y));
+    Assertions.assertEquals(encoding, buffer.get(GridFileFormat.R_ENCODING));
+
+    int[] cells = new int[GridFileFormat.CELLS];
+    buffer.position(GridFileFormat.RECORD_HEADER_BYTES);
+    GridFileFormat.getCells(buffer, encoding, length, cells);
+    Assertions.assertEquals(GridFileFormat.RECORD_HEADER_BYTES + length, buffer.position());
+    for (int i = 0; i < GridFileFormat.CELLS; i++) {
+      Assertions.assertEquals(chunk.get(i), cells[i], "cell " + i);
+    }
+    return buffer;
+  }
+
+  // A runs payload of (length, value) pairs
+  private static ByteBuffer runs(int... runs) {
+    ByteBuffer buffer = ByteBuffer.allocate(runs.length * 10);
+    for (int i = 0; i < runs.length; i += 2) {
+      GridFileFormat.putUnsigned(buffer, runs[i]);
+      GridFileFormat.putSigned(buffer, runs[i + 1]);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static void assertCorruptRuns(ByteBuffer payload) {
+    IOException e =
+        Assertions.assertThrows(
+            IOException.class,
+            () ->
+                GridFileFormat.getCells(
+                    payload, GridFileFormat.RUNS, payload.limit(), new int[GridFileFormat.CELLS]));
+    Assertions.assertEquals("Corrupt chunk runs", e.getMessage());
+  }
+}
@@ -0,0 +1,166 @@
+package com.kynesis;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GridFileTest {
+  @TempDir Path dir;
+
+  @Test
+  void roundTrip() throws IOException {
+    GridModel model = content();
+    Path file = dir.resolve("round-trip.grid");
+    GridFileWriter.write(model, file);
+
+    GridModel read = new GridModel();
+    try (GridFileReader reader = GridFileReader.open(file)) {
+      Assertions.assertEquals(model.getChunkCount(), reader.getChunkCount());
+      Assertions.assertEquals(TestModels.cells(model).size(), reader.getCellCount());
+      reader.readInto(read);
+    }
+    Assertions.assertEquals(TestModels.cells(model), TestModels.cells(read));
+  }
+
+  @Test
+  void emptyChunksAreSkipped() throws IOException {
+    GridModel model = new GridModel();
+    model.set(-100, -100, 4);
+    model.set(-100, -100, 0);
+    model.set(5, 5, 6);
+    Path file = dir.resolve("sparse.grid");
+    GridFileWriter.write(model, file);
+
+    try (GridFileReader reader = GridFileReader.open(file)) {
+      Assertions.assertEquals(1, reader.getChunkCount());
+      Assertions.assertEquals(1, reader.getCellCount());
+    }
+  }
+
+  @Test
+  void readRegion() throws IOException {
+    GridModel model = content();
+    Path file = dir.resolve("region.grid");
+    GridFileWriter.write(model, file);
+
+    // The target has content of its own inside and outside the region, and in chunks the file
+    // doesn't store
+    GridModel target = new GridModel();
+    target.fillRect(-500, -500, 500, 500, -3);
+    Map<Long, Integer> before = TestModels.cells(target);
+    int minColumn = -150;
+    int minRow = -80;
+    int maxColumn = 37;
+    int maxRow = 200;
+    try (GridFileReader reader = GridFileReader.open(file)) {
+      reader.readInto(target, minColumn, minRow, maxColumn, maxRow);
+    }
+
+    Map<Long, Integer> cells = TestModels.cells(model);
+    for (int row = -500; row <= 500; row++) {
+      for (int column = -500; column <= 500; column++) {
+        long key = GridModel.chunkKey(column, row);
+        boolean replaced =
+            column >= minColumn
+                && column <= maxColumn
+                && row >= minRow
+                && row <= maxRow
+                && model.getChunk(column >> GridModel.CHUNK_SHIFT, row >> GridModel.CHUNK_SHIFT)
+                    != null;
+        int expected = replaced ? cells.getOrDefault(key, 0) : before.getOrDefault(key, 0);
+        Assertions.assertEquals(expected, target.get(column, row), column + "," + row);
+      }
+    }
+  }
+
+  @Test
+  void rejectsUnfinishedFile() throws IOException {
+    // Enough raw chunks that the writer drains its buffer before it is closed
+    GridModel model = new GridModel();
+    for (int i = 0; i < 4096 * 100; i++) {
+      model.set(i % 640 - 320, i / 640 - 320, i * 7919 + 1);
+    }
+    Path file = dir.resolve("unfinished.grid");
+    try (GridFileWriter writer = GridFileWriter.create(file)) {
+      model.forEachChunk(
+          chunk -> {
+            try {
+              writer.writeChunk(chunk);
+            } catch (IOException e) {
+              throw new AssertionError(e);
+            }
+          });
+      Assertions.assertTrue(file.toFile().length() > GridFileFormat.HEADER_BYTES);
+      assertRejected(file, "Unfinished grid file");
+    }
+    try (GridFileReader reader = GridFileReader.open(file)) {
+      Assertions.assertEquals(100, reader.getChunkCount());
+    }
+  }
+
+  @Test
+  void rejectsCorruptRuns() throws IOException {
+    GridModel model = new GridModel();
+    model.set(0, 0, 1);
+    Path file = dir.resolve("corrupt.grid");
+    GridFileWriter.write(model, file);
+
+    // The only record's first run covers cell 0; one more makes the runs overrun the chunk
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      ByteBuffer run = ByteBuffer.allocate(1);
+      GridFileFormat.putUnsigned(run, 2);
+      run.flip();
+      channel.write(run, GridFileFormat.HEADER_BYTES + GridFileFormat.RECORD_HEADER_BYTES);
+    }
+    try (GridFileReader reader = GridFileReader.open(file)) {
+      IOException e = Assertions.assertThrows(IOException.class, () -> reader.readInto(model));
+      Assertions.assertEquals("Corrupt chunk runs", e.getMessage());
+    }
+  }
+
+  @Test
+  void rejectsBadHeaders() throws IOException {
+    Path file = dir.resolve("header.grid");
+    GridFileWriter.write(content(), file);
+    patchLong(file, GridFileFormat.H_INDEX_OFFSET, 0);
+    assertRejected(file, "Unfinished grid file");
+
+    patchLong(file, GridFileFormat.H_INDEX_OFFSET, Long.MAX_VALUE / 2);
+    assertRejected(file, "Corrupt grid file header");
+
+    patchLong(file, GridFileFormat.H_MAGIC, 0);
+    assertRejected(file, "Not a grid file");
+  }
+
+  // Sparse content, dense runs and single cells over chunks on both sides of the origin
+  private static GridModel content() {
+    GridModel model = new GridModel();
+    model.fillRect(-130, -70, -60, 10, 9);
+    for (int i = 0; i < 3000; i++) {
+      model.set(i * 37 % 400 - 200, i * 91 % 300 - 150, i * 7919 - 1_000_000);
+    }
+    model.set(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE);
+    model.set(Integer.MAX_VALUE, -1, Integer.MAX_VALUE);
+    return model;
+  }
+
+  private static void patchLong(Path file, int offset, long value) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      ByteBuffer bytes = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+      bytes.putLong(value).flip();
+      channel.write(bytes, offset);
+    }
+  }
+
+  private static void assertRejected(Path file, String message) {
+    IOException e = Assertions.assertThrows(IOException.class, () -> GridFileReader.open(file));
+    Assertions.assertEquals(message, e.getMessage());
+  }
+}
@@ -0,0 +1,177 @@
+package com.kynesis;
+
+import java.io.IOException;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class GridJournalTest {
+  private GridModel model;
+  private GridJournal journal;
+
+  @BeforeEach
+  void setUp() {
+    model = new GridModel();
+    // Scattered content over several chunks on both sides of the origin
+    for (int i = 0; i < 500; i++) {
+      model.set(i * 37 % 300 - 150, i * 91 % 200 - 100, i + 1);
+    }
+    journal = new GridJournal(model);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    journal.close();
+  }
+
+  @Test
+  void cellEdits() {
+    Map<Long, Integer> before = TestModels.cells(model);
+    journal.beginStep();
+    model.set(-1, -1, 7);
+    model.set(1000, -2000, -5);
+    model.set(0, 0, Integer.MIN_VALUE);
+    journal.endStep();
+    model.set(3, 4, 9);
+    Map<Long, Integer> after = TestModels.cells(model);
+
+    Assertions.assertEquals(2, journal.getUndoCount());
+    assertUndoRedo(before, after, 2);
+  }
+
+  @Test
+  void coalescedCellEdits() {
+    journal.setCoalesceWindow(60_000);
+    for (int i = 0; i < 10; i++) {
+      model.set(i, i, 42);
+    }
+    Assertions.assertEquals(1, journal.getUndoCount());
+
+    journal.setCoalesceWindow(0);
+    for (int i = 0; i < 10; i++) {
+      model.set(i, -i, 43);
+    }
+    Assertions.assertEquals(11, journal.getUndoCount());
+  }
+
+  @Test
+  void fills() {
+    Map<Long, Integer> before = TestModels.cells(model);
+    // Over full, partial and missing chunks, then clearing across the origin
+    model.fillRect(-200, -130, 250, 90, 5);
+    model.fillRect(-70, -70, 70, 70, 0);
+    model.fillRect(1000, 1000, 1200, 1063, 8);
+    Map<Long, Integer> after = TestModels.cells(model);
+
+    assertUndoRedo(before, after, 3);
+  }
+
+  @Test
+  void pastes() {
+    Map<Long, Integer> before = TestModels.cells(model);
+    GridRegion region = model.copyRegion(-150, -100, -51, -1);
+    model.pasteRegion(region, 10, 20);
+    model.pasteRegion(region, -33, -17);
+    Map<Long, Integer> after = TestModels.cells(model);
+
+    assertUndoRedo(before, after, 2);
+  }
+
+  @Test
+  void floodFills() {
+    // A closed square outline, filled inside and then refilled
+    journal.beginStep();
+    for (int i = 0; i <= 100; i++) {
+      model.set(-300 + i, -300, 1);
+      model.set(-300 + i, -200, 1);
+      model.set(-300, -300 + i, 1);
+      model.set(-200, -300 + i, 1);
+    }
+    journal.endStep();
+    Map<Long, Integer> before = TestModels.cells(model);
+    Assertions.assertEquals(99 * 99, model.floodFill(-250, -250, 2, Long.MAX_VALUE));
+    Assertions.assertEquals(4 * 100, model.floodFill(-300, -300, 3, Long.MAX_VALUE));
+    Map<Long, Integer> after = TestModels.cells(model);
+
+    assertUndoRedo(before, after, 2);
+  }
+
+  @Test
+  void groupedBulkEdits() {
+    Map<Long, Integer> before = TestModels.cells(model);
+    journal.beginStep();
+    model.set(5, 5, 11);
+    model.fillRect(-20, -20, 80, 10, 12);
+    model.pasteRegion(model.copyRegion(-150, -100, -100, -50), 40, 0);
+    model.floodFill(-20, -20, 13, Long.MAX_VALUE);
+    journal.endStep();
+    Map<Long, Integer> after = TestModels.cells(model);
+
+    Assertions.assertEquals(1, journal.getUndoCount());
+    assertUndoRedo(before, after, 1);
+  }
+
+  @Test
+  void newEditDiscardsRedo() {
+    model.set(1, 1, 1);
+    model.set(2, 2, 2);
+    journal.undo();
+    Assertions.assertTrue(journal.canRedo());
+    model.set(3, 3, 3);
+    Assertions.assertFalse(journal.canRedo());
+    Assertions.assertFalse(journal.redo());
+  }
+
+  @Test
+  void budgetDropsOldestSteps() {
+    journal.setMemoryBudget(4096);
+    Map<Long, Integer> kept = null;
+    for (int i = 0; i < 100; i++) {
+      if (i == 100 - 10) {
+        kept = TestModels.cells(model);
+      }
+      model.fillRect(-150 + i, -100, 150 - i, 100, i + 100);
+    }
+    Assertions.assertTrue(journal.getUndoCount() < 100);
+    Assertions.assertTrue(journal.getMemoryUsage() <= 4096);
+    Assertions.assertEquals(0, journal.getSpilledBytes());
+
+    // The newest steps still undo exactly
+    for (int i = 0; i < 10; i++) {
+      Assertions.assertTrue(journal.undo());
+    }
+    Assertions.assertEquals(kept, TestModels.cells(model));
+  }
+
+  @Test
+  void spilledStepsReplay() {
+    Map<Long, Integer> before = TestModels.cells(model);
+    // Spilled steps keep a small footprint in memory
+    journal.setSpillEnabled(true);
+    journal.setMemoryBudget(16384);
+    for (int i = 0; i < 100; i++) {
+      model.fillRect(-150 + i, -100, 150 - i, 100, i + 100);
+      model.set(i, -i, i);
+    }
+    Map<Long, Integer> after = TestModels.cells(model);
+    Assertions.assertEquals(200, journal.getUndoCount());
+    Assertions.assertTrue(journal.getSpilledBytes() > 0);
+    Assertions.assertTrue(journal.getMemoryUsage() <= 16384);
+
+    assertUndoRedo(before, after, 200);
+    Assertions.assertTrue(journal.getMemoryUsage() <= 16384);
+  }
+
+  private void assertUndoRedo(Map<Long, Integer> before, Map<Long, Integer> after, int steps) {
+    for (int i = 0; i < steps; i++) {
+      Assertions.assertTrue(journal.undo());
+    }
+    Assertions.assertEquals(before, TestModels.cells(model));
+    for (int i = 0; i < steps; i++) {
+      Assertions.assertTrue(journal.redo());
+    }
+    Assertions.assertEquals(after, TestModels.cells(model));
+  }
+}
@@ -0,0 +1,84 @@
+package com.kynesis;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class GridLinesTest {
+  // 3.25 past a line at 10 units per line, exactly representable at all of these magnitudes
+  private static final double[] FAR_ORIGINS = {1e9 + 3.25, 1e12 + 3.25, 1e15 + 3.25};
+
+  @Test
+  void exactLinesFarFromOrigin() {
+    for (double origin : FAR_ORIGINS) {
+      GridLines lines = new GridLines();
+      Assertions.assertEquals(10, lines.compute(origin, 100, 10, 1));
+      long base = (long) ((origin - 3.25) / 10);
+      for (int i = 0; i < 10; i++) {
+        Assertions.assertEquals(base + 1 + i, lines.index(i), "index at " + origin);
+        Assertions.assertEquals(6.75 + 10 * i, lines.position(i), 0, "position at " + origin);
+        Assertions.assertEquals(lines.position(i), lines.positionOf(lines.index(i)), 0);
+      }
+    }
+  }
+
+  @Test
+  void exactLinesFarBeforeOrigin() {
+    GridLines lines = new GridLines();
+    Assertions.assertEquals(10, lines.compute(-1e15 - 3.25, 100, 10, 1));
+    for (int i = 0; i < 10; i++) {
+      Assertions.assertEquals(-100_000_000_000_000L + i, lines.index(i));
+      Assertions.assertEquals(3.25 + 10 * i, lines.position(i), 0);
+    }
+  }
+
+  @Test
+  void sameLinesEveryFrame() {
+    // Panning by whole lines moves every position by whole spacings, with no drift
+    GridLines first = new GridLines();
+    GridLines moved = new GridLines();
+    first.compute(1e15 + 3.25, 100, 10, 2);
+    moved.compute(1e15 + 3.25 + 10 * 1000, 100, 10, 2);
+    Assertions.assertEquals(first.count(), moved.count());
+    for (int i = 0; i < first.count(); i++) {
+      Assertions.assertEquals(first.index(i) + 1000, moved.index(i));
+      Assertions.assertEquals(first.position(i), moved.position(i), 0);
+    }
+  }
+
+  @Test
+  void degenerateSpacingHasNoLines() {
+    GridLines lines = new GridLines();
+    for (double spacing : new double[] {0, -10, Double.NaN, Double.NEGATIVE_INFINITY}) {
+      Assertions.assertEquals(0, lines.compute(0, 100, spacing, 1), "spacing " + spacing);
+      Assertions.assertEquals(0, lines.count());
+      Assertions.assertFalse(lines.locate(0, spacing, 1));
+    }
+    Assertions.assertEquals(0, lines.compute(Double.NaN, 100, 10, 1));
+    Assertions.assertEquals(0, lines.compute(0, 100, 10, 0));
+  }
+
+  @Test
+  void lineBudgetDropsMinorLevelFirst() {
+    // 1000 x 1000 pixels: 101 minor and 21 major lines per axis, 40 of the minor ones beneath
+    // major lines
+    GridLevelLines lines = new GridLevelLines();
+    Assertions.assertTrue(lines.compute(style(8192), 1, 0, 0, 0, 0, 1000, 1000));
+    Assertions.assertTrue(lines.drawn[0]);
+    Assertions.assertTrue(lines.drawn[1]);
+    Assertions.assertEquals(160, lines.lineCount(0));
+    Assertions.assertEquals(42, lines.lineCount(1));
+
+    Assertions.assertTrue(lines.compute(style(100), 1, 0, 0, 0, 0, 1000, 1000));
+    Assertions.assertFalse(lines.drawn[0]);
+    Assertions.assertTrue(lines.drawn[1]);
+    Assertions.assertEquals(42, lines.lineCount(1));
+
+    Assertions.assertFalse(lines.compute(style(40), 1, 0, 0, 0, 0, 1000, 1000));
+    Assertions.assertFalse(lines.drawn[0]);
+    Assertions.assertFalse(lines.drawn[1]);
+  }
+
+  private static GridStyle style(int maxLinesPerFrame) {
+    return GridStyle.builder().maxLinesPerFrame(maxLinesPerFrame).build();
+  }
+}
@@ -0,0 +1,192 @@
+package com.kynesis;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Bulk edits are checked against the same edits applied cell by cell to a map. Edits of 65536
+// cells and more split across the common pool in memory, while a file-backed model always edits
+// on one thread, so each test runs on both.
+class GridModelTest {
+  @TempDir Path dir;
+
+  @BeforeEach
+  void checkPool() {
+    // Set by the surefire configuration; with fewer threads no edit takes the parallel path
+    Assertions.assertTrue(ForkJoinPool.getCommonPoolParallelism() >= 2);
+  }
+
+  @Test
+  void fillRectInMemory() {
+    assertFills(content(new GridModel()));
+  }
+
+  @Test
+  void fillRectOnFile() throws IOException {
+    try (GridModel model = GridModel.open(dir.resolve("fill.chunks"))) {
+      model.setMemoryBudget(16 * ChunkStore.SLOT_BYTES);
+      assertFills(content(model));
+    }
+  }
+
+  @Test
+  void floodFillInMemory() {
+    assertFloodFills(new GridModel());
+  }
+
+  @Test
+  void floodFillOnFile() throws IOException {
+    try (GridModel model = GridModel.open(dir.resolve("flood.chunks"))) {
+      model.setMemoryBudget(16 * ChunkStore.SLOT_BYTES);
+      assertFloodFills(model);
+    }
+  }
+
+  @Test
+  void copyAndPasteInMemory() {
+    assertCopiesAndPastes(content(new GridModel()));
+  }
+
+  @Test
+  void copyAndPasteOnFile() throws IOException {
+    try (GridModel model = GridModel.open(dir.resolve("paste.chunks"))) {
+      model.setMemoryBudget(16 * ChunkStore.SLOT_BYTES);
+      assertCopiesAndPastes(content(model));
+    }
+  }
+
+  private static void assertFills(GridModel model) {
+    Map<Long, Integer> expected = TestModels.cells(model);
+    // Large and small fills over full, partial and missing chunks, and clears of both sizes
+    int[][] fills = {
+      {-200, -130, 250, 90, 5},
+      {-70, -70, 70, 70, 0},
+      {1000, 1000, 1200, 1063, Integer.MIN_VALUE},
+      {-10, -10, 10, 10, 70_000},
+      {-300, -300, 300, 300, 0},
+      {3, 4, 3, 4, 1}
+    };
+    for (int[] fill : fills) {
+      model.fillRect(fill[0], fill[1], fill[2], fill[3], fill[4]);
+      fill(expected, fill[0], fill[1], fill[2], fill[3], fill[4]);
+      Assertions.assertEquals(expected, TestModels.cells(model));
+      Assertions.assertEquals(expected.size(), model.getCellCount());
+    }
+
+    // Clearing the whole grid visits only the chunks that hold cells
+    model.fillRect(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, 0);
+    Assertions.assertEquals(0, model.getCellCount());
+    Assertions.assertEquals(0, model.getChunkCount());
+  }
+
+  private static void assertFloodFills(GridModel model) {
+    // A closed 301 x 301 outline with a few cells of another value inside
+    for (int i = 0; i <= 300; i++) {
+      model.set(-150 + i, -150, 1);
+      model.set(-150 + i, 150, 1);
+      model.set(-150, -150 + i, 1);
+      model.set(150, -150 + i, 1);
+    }
+    model.set(0, 0, 2);
+    model.set(100, -100, 2);
+    Map<Long, Integer> before = TestModels.cells(model);
+    long inside = 299L * 299 - 2;
+
+    // Over the limit, every span filled so far is rolled back
+    Assertions.assertEquals(-1, model.floodFill(-1, 0, 3, inside - 1));
+    Assertions.assertEquals(before, TestModels.cells(model));
+    Assertions.assertEquals(before.size(), model.getCellCount());
+
+    // Open to unbounded space
+    Assertions.assertEquals(-1, model.floodFill(-1000, 0, 3, 1_000_000));
+    Assertions.assertEquals(before, TestModels.cells(model));
+
+    Assertions.assertEquals(inside, model.floodFill(-1, 0, 3, inside));
+    Map<Long, Integer> expected = new HashMap<>(before);
+    for (int row = -149; row <= 149; row++) {
+      for (int column = -149; column <= 149; column++) {
+        expected.merge(GridModel.chunkKey(column, row), 3, (old, value) -> old);
+      }
+    }
+    Assertions.assertEquals(expected, TestModels.cells(model));
+
+    // Back to empty, so the area is no longer bounded by other values inside
+    Assertions.assertEquals(inside, model.floodFill(-1, 0, 0, Long.MAX_VALUE));
+    Assertions.assertEquals(before, TestModels.cells(model));
+  }
+
+  private static void assertCopiesAndPastes(GridModel model) {
+    Map<Long, Integer> expected = TestModels.cells(model);
+    // A region large enough to paste in parallel, pasted over itself, and a small one pasted into
+    // empty space and over existing cells
+    int[][] pastes = {
+      {-200, -150, 199, 149, -37, 21},
+      {-20, -20, 9, 9, 5000, -5000},
+      {-20, -20, 9, 9, -150, -100}
+    };
+    for (int[] paste : pastes) {
+      GridRegion region = model.copyRegion(paste[0], paste[1], paste[2], paste[3]);
+      Assertions.assertEquals(paste[2] - paste[0] + 1, region.getWidth());
+      Assertions.assertEquals(paste[3] - paste[1] + 1, region.getHeight());
+      model.pasteRegion(region, paste[4], paste[5]);
+      copy(expected, paste[0], paste[1], paste[2], paste[3], paste[4], paste[5]);
+      Assertions.assertEquals(expected, TestModels.cells(model));
+      Assertions.assertEquals(expected.size(), model.getCellCount());
+    }
+  }
+
+  // Scattered content over several chunks on both sides of the origin
+  private static GridModel content(GridModel model) {
+    for (int i = 0; i < 3000; i++) {
+      model.set(i * 37 % 400 - 200, i * 91 % 300 - 150, i * 7919 - 1_000_000);
+    }
+    return model;
+  }
+
+  private static void fill(
+      Map<Long, Integer> cells, int minColumn, int minRow, int maxColumn, int maxRow, int value) {
+    cells.keySet().removeIf(key -> inside(key, minColumn, minRow, maxColumn, maxRow));
+    if (value == 0) {
+      return;
+    }
+    for (int row = minRow; row <= maxRow; row++) {
+      for (int column = minColumn; column <= maxColumn; column++) {
+        cells.put(GridModel.chunkKey(column, row), value);
+      }
+    }
+  }
+
+  private static void copy(
+      Map<Long, Integer> cells,
+      int minColumn,
+      int minRow,
+      int maxColumn,
+      int maxRow,
+      int column,
+      int row) {
+    Map<Long, Integer> region = new HashMap<>();
+    for (Map.Entry<Long, Integer> cell : cells.entrySet()) {
+      long key = cell.getKey();
+      if (inside(key, minColumn, minRow, maxColumn, maxRow)) {
+        int toColumn = GridModel.chunkX(key) - minColumn + column;
+        int toRow = GridModel.chunkY(key) - minRow + row;
+        region.put(GridModel.chunkKey(toColumn, toRow), cell.getValue());
+      }
+    }
+    fill(cells, column, row, column + maxColumn - minColumn, row + maxRow - minRow, 0);
+    cells.putAll(region);
+  }
+
+  // Whether a cell key from TestModels.cells() lies in the inclusive rectangle
+  private static boolean inside(long key, int minColumn, int minRow, int maxColumn, int maxRow) {
+    int column = GridModel.chunkX(key);
+    int row = GridModel.chunkY(key);
+    return column >= minColumn && column <= maxColumn && row >= minRow && row <= maxRow;
+  }
+}
@@ -0,0 +1,176 @@
+package com.kynesis;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+// Input is applied with flush() rather than waiting for a pulse; the grids are still created and
+// driven on the FX thread, as the navigator's timer requires.
+class GridNavigatorTest {
+  private static final long MILLIS = 1_000_000L;
+
+  @BeforeAll
+  static void startToolkit() throws InterruptedException {
+    GridRasterCanvasTest.startToolkit();
+  }
+
+  @Test
+  void zoomKeepsThePivotFixed() throws Exception {
+    onFxThread(
+        grid -> {
+          GridNavigator navigator = grid.getNavigator();
+          double[][] zooms = {{1.5, 100, 50}, {0.2, 639, 0}, {7, -40, 300.5}, {1, 320, 240}};
+          for (double[] zoom : zooms) {
+            double gridX = grid.screenToGridX(zoom[1]);
+            double gridY = grid.screenToGridY(zoom[2]);
+            double scale = grid.getGridScale();
+            navigator.zoomBy(zoom[0], zoom[1], zoom[2]);
+            navigator.flush();
+            Assertions.assertEquals(scale * zoom[0], grid.getGridScale(), 1e-12 * scale);
+            Assertions.assertEquals(zoom[1], grid.gridToScreenX(gridX), 1e-9);
+            Assertions.assertEquals(zoom[2], grid.gridToScreenY(gridY), 1e-9);
+          }
+
+          // Degenerate factors are ignored
+          double scale = grid.getGridScale();
+          navigator.zoomBy(0, 10, 10);
+          navigator.zoomBy(-2, 10, 10);
+          navigator.zoomBy(Double.NaN, 10, 10);
+          navigator.zoomBy(Double.POSITIVE_INFINITY, 10, 10);
+          navigator.flush();
+          Assertions.assertEquals(scale, grid.getGridScale());
+        });
+  }
+
+  @Test
+  void panMovesContentWithThePointer() throws Exception {
+    onFxThread(
+        grid -> {
+          double gridX = grid.screenToGridX(100);
+          double gridY = grid.screenToGridY(200);
+          grid.panBy(12.5, -30);
+          // Nothing moves until the frame
+          Assertions.assertEquals(gridX, grid.screenToGridX(100));
+          grid.getNavigator().flush();
+          Assertions.assertEquals(112.5, grid.gridToScreenX(gridX), 1e-9);
+          Assertions.assertEquals(170, grid.gridToScreenY(gridY), 1e-9);
+        });
+  }
+
+  @Test
+  void inputWithinAFrameComposes() throws Exception {
+    onFxThread(
+        stepped -> {
+          InfiniteGrid batched = grid();
+          int[] changes = new int[1];
+          batched.gridScaleProperty().addListener((obs, old, nv) -> changes[0]++);
+          batched.gridXProperty().addListener((obs, old, nv) -> changes[0]++);
+
+          double[][] input = {
+            {1.25, 30, 40}, {0, 7, -3}, {0.5, 300, 200}, {0, -2.5, 11}, {3, 0, 480}, {0, 1, 1}
+          };
+          for (double[] step : input) {
+            for (InfiniteGrid grid : new InfiniteGrid[] {stepped, batched}) {
+              if (step[0] == 0) {
+                grid.getNavigator().panBy(step[1], step[2]);
+              } else {
+                grid.getNavigator().zoomBy(step[0], step[1], step[2]);
+              }
+            }
+            stepped.getNavigator().flush();
+          }
+          batched.getNavigator().flush();
+
+          // One change each of scale and position, to the same viewport as one step at a time
+          Assertions.assertEquals(2, changes[0]);
+          Assertions.assertEquals(stepped.getGridScale(), batched.getGridScale(), 1e-12);
+          Assertions.assertEquals(stepped.getGridX(), batched.getGridX(), 1e-9);
+          Assertions.assertEquals(stepped.getGridY(), batched.getGridY(), 1e-9);
+        });
+  }
+
+  @Test
+  void glideStartsAtTheReleaseVelocity() throws Exception {
+    onFxThread(
+        grid -> {
+          GridNavigator navigator = grid.getNavigator();
+          long[] now = {0};
+          navigator.clock = () -> now[0];
+
+          // A pause, then 1000 px/s across and 500 px/s up over the last 80 ms. The sample before
+          // the pause is outside the window.
+          navigator.addSample(0, 0);
+          for (int i = 0; i <= 4; i++) {
+            now[0] = (500 + 20 * i) * MILLIS;
+            navigator.addSample(20 * i, -10 * i);
+          }
+          navigator.startGlide();
+          Assertions.assertTrue(navigator.isGliding());
+          Assertions.assertEquals(1000, navigator.getVelocityX(), 1e-6);
+          Assertions.assertEquals(-500, navigator.getVelocityY(), 1e-6);
+
+          // Each frame moves the grid by the velocity and slows it down by the friction
+          double scale = grid.getGridScale();
+          double gridX = grid.getGridX();
+          navigator.frame(1000 * MILLIS);
+          Assertions.assertEquals(gridX, grid.getGridX());
+          navigator.frame(1016 * MILLIS);
+          Assertions.assertEquals(gridX - 16 / scale, grid.getGridX(), 1e-9);
+          double decay = Math.exp(-grid.getScrollFriction() * 0.016);
+          Assertions.assertEquals(1000 * decay, navigator.getVelocityX(), 1e-6);
+          // A stalled frame covers at most 50 ms
+          gridX = grid.getGridX();
+          navigator.frame(3000 * MILLIS);
+          Assertions.assertEquals(gridX - 1000 * decay * 0.05 / scale, grid.getGridX(), 1e-9);
+          navigator.stopGlide();
+
+          // More samples than the buffer holds, every 5 ms
+          navigator.clearSamples();
+          for (int i = 0; i < 40; i++) {
+            now[0] = (5000 + 5 * i) * MILLIS;
+            navigator.addSample(3 * i, 0);
+          }
+          navigator.startGlide();
+          Assertions.assertEquals(600, navigator.getVelocityX(), 1e-6);
+          navigator.stopGlide();
+
+          // Too slow, and a single sample, don't glide
+          navigator.clearSamples();
+          navigator.addSample(0, 0);
+          now[0] += 100 * MILLIS;
+          navigator.addSample(0.5, 0);
+          navigator.startGlide();
+          Assertions.assertFalse(navigator.isGliding());
+          navigator.clearSamples();
+          navigator.addSample(10, 10);
+          navigator.startGlide();
+          Assertions.assertFalse(navigator.isGliding());
+        });
+  }
+
+  private static InfiniteGrid grid() {
+    InfiniteGrid grid = new InfiniteGrid(640, 480);
+    grid.setGridScale(2);
+    grid.setGridX(10);
+    grid.setGridY(-20);
+    return grid;
+  }
+
+  private static void onFxThread(Consumer<InfiniteGrid> check) throws Exception {
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    Platform.runLater(
+        () -> {
+          try {
+            check.accept(grid());
+            done.complete(null);
+          } catch (RuntimeException | Error e) {
+            done.completeExceptionally(e);
+          }
+        });
+    done.get(30, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,225 @@
+package com.kynesis;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import javafx.scene.paint.Color;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GridPngExporterTest {
+  // 23 x 17.5 grid units at 3.5 pixels per unit, from a fractional origin
+  private static final double SCALE = 3.5;
+  private static final double GRID_X = -40.3;
+  private static final double GRID_Y = -2.7;
+  private static final int WIDTH = (int) Math.ceil(23 * SCALE);
+  private static final int HEIGHT = (int) Math.ceil(17.5 * SCALE);
+
+  @TempDir Path dir;
+
+  private ForkJoinPool pool;
+
+  @BeforeEach
+  void setUp() {
+    pool = new ForkJoinPool(4);
+  }
+
+  @AfterEach
+  void tearDown() {
+    pool.shutdown();
+  }
+
+  @Test
+  void bandsJoinIntoOneImage() throws IOException, DataFormatException {
+    GridStyle style = GridStyle.builder().build();
+    GridModel content = GridRasterTest.content();
+    int[] expected = new int[WIDTH * HEIGHT];
+    GridRaster.paint(
+        expected, WIDTH, HEIGHT, style, SCALE, GRID_X, GRID_Y, content, GridRasterTest.COLORS);
+
+    for (int level : new int[] {Deflater.NO_COMPRESSION, Deflater.DEFAULT_COMPRESSION, 9}) {
+      GridPngExporter exporter = new GridPngExporter(pool);
+      exporter.setBandHeight(3);
+      exporter.setCompressionLevel(level);
+      byte[] png = export(exporter, content, style);
+      assertPixels(expected, png);
+    }
+
+    // A file-backed model is painted a band at a time from copies
+    try (GridModel file = GridModel.open(dir.resolve("export.chunks"))) {
+      content.forEachChunk(
+          chunk -> {
+            int baseColumn = chunk.getChunkX() << GridModel.CHUNK_SHIFT;
+            int baseRow = chunk.getChunkY() << GridModel.CHUNK_SHIFT;
+            for (int i = 0; i < ChunkStore.CELLS; i++) {
+              file.set(
+                  baseColumn + (i & GridModel.CHUNK_MASK),
+                  baseRow + (i >> GridModel.CHUNK_SHIFT),
+                  chunk.get(i));
+            }
+          });
+      GridPngExporter exporter = new GridPngExporter(pool);
+      exporter.setBandHeight(5);
+      assertPixels(expected, export(exporter, file, style));
+    }
+  }
+
+  @Test
+  void combinesAdlerChecksums() {
+    Random random = new Random(3);
+    int[] lengths = {0, 1, 2, 100, 5552, 65520, 65521, 65522, 200_000};
+    for (int first : lengths) {
+      for (int second : lengths) {
+        byte[] a = new byte[first];
+        byte[] b = new byte[second];
+        // All ones drive both sums to their largest values
+        if (random.nextBoolean()) {
+          random.nextBytes(a);
+          random.nextBytes(b);
+        } else {
+          Arrays.fill(a, (byte) 0xFF);
+          Arrays.fill(b, (byte) 0xFF);
+        }
+        Adler32 whole = new Adler32();
+        whole.update(a);
+        whole.update(b);
+        Adler32 firstSum = new Adler32();
+        firstSum.update(a);
+        Adler32 secondSum = new Adler32();
+        secondSum.update(b);
+        Assertions.assertEquals(
+            whole.getValue(),
+            GridPngExporter.combineAdler(
+                firstSum.getValue(), (int) secondSum.getValue(), second),
+            first + " then " + second + " bytes");
+      }
+    }
+  }
+
+  @Test
+  void cancelStopsSubmittingBands() {
+    // Cell values name their row, so the color map sees which rows were painted; cells are one
+    // unit, and so one pixel, high
+    GridStyle style = GridStyle.builder().levels(new GridLevel(1, 1, Color.BLACK, true)).build();
+    GridModel content = new GridModel();
+    for (int row = -10; row < 100; row++) {
+      content.set(-30, row, 0xFF000000 | row + 10);
+    }
+    Set<Integer> paintedRows = ConcurrentHashMap.newKeySet();
+    AtomicInteger progress = new AtomicInteger();
+    ForkJoinPool single = new ForkJoinPool(1);
+    try {
+      GridPngExporter exporter = new GridPngExporter(single);
+      exporter.setBandHeight(3);
+      exporter.setProgressListener(
+          (rowsWritten, rows) -> {
+            progress.incrementAndGet();
+            exporter.cancel();
+          });
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      Assertions.assertThrows(
+          CancellationException.class,
+          () ->
+              exporter.export(
+                  content,
+                  value -> {
+                    paintedRows.add(value & 0xFFFFFF);
+                    return value;
+                  },
+                  style,
+                  1,
+                  -40,
+                  -10,
+                  40,
+                  100,
+                  out));
+      Assertions.assertTrue(exporter.isCancelled());
+      Assertions.assertEquals(1, progress.get());
+      // The first band and the one in flight beside it, of 3 rows each
+      Assertions.assertFalse(paintedRows.isEmpty());
+      Assertions.assertTrue(paintedRows.stream().allMatch(row -> row < 6), paintedRows::toString);
+      byte[] png = out.toByteArray();
+      Assertions.assertFalse(
+          new String(png, StandardCharsets.ISO_8859_1).contains("IEND"), "complete image");
+    } finally {
+      single.shutdown();
+    }
+  }
+
+  private static byte[] export(GridPngExporter exporter, GridModel content, GridStyle style)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    exporter.export(
+        content,
+        GridRasterTest.COLORS,
+        style,
+        SCALE,
+        GRID_X,
+        GRID_Y,
+        WIDTH / SCALE,
+        HEIGHT / SCALE,
+        out);
+    return out.toByteArray();
+  }
+
+  // Checks the image both through ImageIO and by inflating its IDAT chunks to the end of the zlib
+  // stream, which verifies the combined checksum that a decoder may stop short of
+  private static void assertPixels(int[] expected, byte[] png)
+      throws IOException, DataFormatException {
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+    Assertions.assertEquals(WIDTH, image.getWidth());
+    Assertions.assertEquals(HEIGHT, image.getHeight());
+    Assertions.assertArrayEquals(expected, image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH));
+
+    ByteBuffer buffer = ByteBuffer.wrap(png);
+    buffer.position(8);
+    ByteArrayOutputStream idat = new ByteArrayOutputStream();
+    String type;
+    do {
+      int length = buffer.getInt();
+      byte[] typeAndData = new byte[4 + length];
+      buffer.get(typeAndData);
+      CRC32 crc = new CRC32();
+      crc.update(typeAndData);
+      Assertions.assertEquals((int) crc.getValue(), buffer.getInt());
+      type = new String(typeAndData, 0, 4, StandardCharsets.US_ASCII);
+      if (type.equals("IDAT")) {
+        idat.write(typeAndData, 4, length);
+      }
+    } while (!type.equals("IEND"));
+    Assertions.assertFalse(buffer.hasRemaining());
+
+    int stride = 4 * WIDTH + 1;
+    byte[] raw = new byte[stride * HEIGHT + 1];
+    Inflater inflater = new Inflater();
+    inflater.setInput(idat.toByteArray());
+    int length = inflater.inflate(raw);
+    Assertions.assertTrue(inflater.finished());
+    Assertions.assertEquals(0, inflater.getRemaining());
+    Assertions.assertEquals(stride * HEIGHT, length);
+    inflater.end();
+    for (int y = 0; y < HEIGHT; y++) {
+      Assertions.assertEquals(0, raw[y * stride]);
+    }
+  }
+}
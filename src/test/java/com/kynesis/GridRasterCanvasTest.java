@@ -0,0 +1,93 @@
+package com.kynesis;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+// Compares the raster path with the canvas path, rendered by the toolkit on the headless Monocle
+// platform and software pipeline the surefire configuration selects.
+class GridRasterCanvasTest {
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+
+  @BeforeAll
+  static void startToolkit() throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    try {
+      Platform.startup(started::countDown);
+    } catch (IllegalStateException e) {
+      // Already started by another test
+      started.countDown();
+    }
+    Platform.setImplicitExit(false);
+    Assertions.assertTrue(started.await(30, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void matchesCanvasOnWholePixels() throws Exception {
+    // Line and cell edges on whole or half pixels, where both paths agree within rounding
+    assertMatchesCanvas(1, -5, 0, 2);
+    assertMatchesCanvas(4, 12.25, 4.5, 2);
+    // Lines faded below full alpha
+    assertMatchesCanvas(0.3, 0, 0, 2);
+  }
+
+  @Test
+  void matchesCanvasOnFractionalPixels() throws Exception {
+    // The canvas rasterizer samples coverage at eighths of a pixel down, so horizontal edges
+    // between those samples differ by up to a sixteenth of the contrast across them
+    assertMatchesCanvas(1.7, 3.3, -7.7, 16);
+  }
+
+  private static void assertMatchesCanvas(
+      double scale, double originX, double originY, int tolerance) throws Exception {
+    GridStyle style = GridStyle.builder().build();
+    GridModel content = GridRasterTest.content();
+    CompletableFuture<int[]> rendered = new CompletableFuture<>();
+    Platform.runLater(
+        () -> {
+          try {
+            Canvas canvas = new Canvas(WIDTH, HEIGHT);
+            new CanvasGridRenderer(canvas.getGraphicsContext2D())
+                .paint(style, scale, originX, originY, content, GridRasterTest.COLORS);
+            WritableImage image = canvas.snapshot(null, null);
+            int[] pixels = new int[WIDTH * HEIGHT];
+            image
+                .getPixelReader()
+                .getPixels(0, 0, WIDTH, HEIGHT, PixelFormat.getIntArgbInstance(), pixels, 0, WIDTH);
+            rendered.complete(pixels);
+          } catch (RuntimeException | Error e) {
+            rendered.completeExceptionally(e);
+          }
+        });
+    int[] canvas = rendered.get(30, TimeUnit.SECONDS);
+
+    int[] raster = new int[WIDTH * HEIGHT];
+    GridRaster.paint(
+        raster, WIDTH, HEIGHT, style, scale, originX, originY, content, GridRasterTest.COLORS);
+    int worst = 0;
+    int worstPixel = 0;
+    for (int i = 0; i < raster.length; i++) {
+      for (int shift = 0; shift < 32; shift += 8) {
+        int difference = Math.abs((canvas[i] >> shift & 0xFF) - (raster[i] >> shift & 0xFF));
+        if (difference > worst) {
+          worst = difference;
+          worstPixel = i;
+        }
+      }
+    }
+    Assertions.assertTrue(
+        worst <= tolerance,
+        String.format(
+            "scale %s origin %s,%s: %d levels apart at %d,%d, canvas %08x raster %08x",
+            scale, originX, originY, worst, worstPixel % WIDTH, worstPixel / WIDTH,
+            canvas[worstPixel], raster[worstPixel]));
+  }
+}
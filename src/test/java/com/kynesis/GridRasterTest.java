@@ -0,0 +1,134 @@
+package com.kynesis;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntUnaryOperator;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class GridRasterTest {
+  private static final int WIDTH = 200;
+  private static final int HEIGHT = 150;
+  private static final int WHITE = 0xFFFFFFFF;
+  private static final int BLACK = 0xFF000000;
+  private static final int CELL = 0xFF3366CC;
+
+  // Cell values are colors
+  static final IntUnaryOperator COLORS = IntUnaryOperator.identity();
+
+  @Test
+  void linesOnWholePixels() {
+    // At 2 pixels per unit and origin -0.25, the lines every 10 units lie on the centres of pixels
+    // 20k; cell (2, 3) covers pixels 40.5 to 60.5 across and 60.5 to 80.5 down
+    GridModel content = new GridModel();
+    content.set(2, 3, CELL);
+    int[] pixels = paint(style(), 2, -0.25, -0.25, content);
+
+    Assertions.assertEquals(BLACK, pixel(pixels, 20, 10));
+    Assertions.assertEquals(BLACK, pixel(pixels, 10, 20));
+    Assertions.assertEquals(BLACK, pixel(pixels, 40, 70));
+    Assertions.assertEquals(BLACK, pixel(pixels, 60, 70));
+    Assertions.assertEquals(BLACK, pixel(pixels, 50, 80));
+    Assertions.assertEquals(WHITE, pixel(pixels, 10, 10));
+    Assertions.assertEquals(WHITE, pixel(pixels, 59, 59));
+    Assertions.assertEquals(WHITE, pixel(pixels, 61, 70));
+    Assertions.assertEquals(CELL, pixel(pixels, 41, 61));
+    Assertions.assertEquals(CELL, pixel(pixels, 50, 70));
+    Assertions.assertEquals(CELL, pixel(pixels, 59, 79));
+  }
+
+  @Test
+  void linesBetweenPixels() {
+    // Lines on pixel edges cover half of the pixels either side, and crossings three quarters
+    int[] pixels = paint(style(), 2, 0, 0, null);
+    Assertions.assertEquals(0xFF808080, pixel(pixels, 19, 10));
+    Assertions.assertEquals(0xFF808080, pixel(pixels, 20, 10));
+    Assertions.assertEquals(0xFF404040, pixel(pixels, 20, 20));
+    Assertions.assertEquals(WHITE, pixel(pixels, 18, 10));
+    Assertions.assertEquals(WHITE, pixel(pixels, 21, 10));
+  }
+
+  @Test
+  void translucentCellsBlend() {
+    GridModel content = new GridModel();
+    content.set(2, 3, 0x80FF0000);
+    int[] pixels = paint(style(), 2, -0.25, -0.25, content);
+    Assertions.assertEquals(0xFFFF7F7F, pixel(pixels, 50, 70));
+  }
+
+  @Test
+  void hiddenGridPaintsOnlyCells() {
+    GridStyle hidden = GridStyle.builder().background(Color.WHITE).showGrid(false).build();
+    Assertions.assertNull(GridRaster.lines(hidden, 2, 0, 0, WIDTH, HEIGHT));
+    int[] pixels = paint(hidden, 2, 0, 0, null);
+    for (int pixel : pixels) {
+      Assertions.assertEquals(WHITE, pixel);
+    }
+  }
+
+  @Test
+  void bandsAddUpToOnePaint() {
+    GridStyle style = GridStyle.builder().build();
+    GridModel content = content();
+    double scale = 1.7;
+    double originX = 3.3;
+    double originY = -7.7;
+    int[] whole = paint(style, scale, originX, originY, content);
+
+    // Bands of 7 rows from one shared layout, painted in order into their own buffers
+    GridRaster.Lines lines = GridRaster.lines(style, scale, originX, originY, WIDTH, HEIGHT);
+    for (int top = 0; top < HEIGHT; top += 7) {
+      int bottom = Math.min(top + 7, HEIGHT);
+      int[] band = new int[WIDTH * (bottom - top)];
+      GridRaster.paintBand(
+          band, WIDTH, top, bottom, style, scale, originX, originY, content, COLORS, lines);
+      for (int i = 0; i < band.length; i++) {
+        Assertions.assertEquals(whole[top * WIDTH + i], band[i], "pixel " + (top * WIDTH + i));
+      }
+    }
+
+    // The renderer splits a large target across its pool
+    int width = 640;
+    int height = 480;
+    int[] serial = new int[width * height];
+    GridRaster.paint(serial, width, height, style, scale, originX, originY, content, COLORS);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      RasterGridRenderer renderer = new RasterGridRenderer(width, height, pool);
+      renderer.paint(style, scale, originX, originY, content, COLORS);
+      Assertions.assertArrayEquals(serial, renderer.getPixels());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  // Rows of cells in two colors, some of them translucent
+  static GridModel content() {
+    GridModel content = new GridModel();
+    for (int column = -70; column < 300; column++) {
+      for (int row = 0; row < 40; row += 3) {
+        content.set(column, row, (column % 3 == 0 ? 0x80FF0000 : 0xFF00C000) + row);
+      }
+    }
+    return content;
+  }
+
+  // One level of 1 unit wide black lines every 10 units on white
+  private static GridStyle style() {
+    return GridStyle.builder()
+        .background(Color.WHITE)
+        .levels(new GridLevel(10, 1, Color.BLACK, true))
+        .build();
+  }
+
+  private static int[] paint(
+      GridStyle style, double scale, double originX, double originY, GridModel content) {
+    int[] pixels = new int[WIDTH * HEIGHT];
+    GridRaster.paint(pixels, WIDTH, HEIGHT, style, scale, originX, originY, content, COLORS);
+    return pixels;
+  }
+
+  private static int pixel(int[] pixels, int x, int y) {
+    return pixels[y * WIDTH + x];
+  }
+}
@@ -0,0 +1,284 @@
+package com.kynesis;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntUnaryOperator;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class GridTileCacheTest {
+  private static final int SIZE = GridTileCache.TILE_SIZE;
+  private static final long TILE_BYTES = 4L * SIZE * SIZE;
+  private static final long MILLIS = 1_000_000L;
+
+  @BeforeAll
+  static void startToolkit() throws InterruptedException {
+    // Requested tiles are rendered on workers and delivered on the FX thread
+    GridRasterCanvasTest.startToolkit();
+  }
+
+  @Test
+  void averageRoundsEachChannel() {
+    int color = 0x12345678;
+    Assertions.assertEquals(color, GridTileCache.average(color, color, color, color));
+    // Halves round up, in every channel including alpha
+    Assertions.assertEquals(0x01010101, GridTileCache.average(0x01010101, 0x01010101, 0, 0));
+    Assertions.assertEquals(0, GridTileCache.average(0x01010101, 0, 0, 0));
+    // Sums up to 4 x 255 don't carry into the next channel
+    Assertions.assertEquals(-1, GridTileCache.average(-1, -1, -1, -1));
+    Assertions.assertEquals(
+        0x40404040, GridTileCache.average(0xFF000000, 0x00FF0000, 0x0000FF00, 0x000000FF));
+
+    Random random = new Random(17);
+    for (int i = 0; i < 10_000; i++) {
+      int a = random.nextInt();
+      int b = random.nextInt();
+      int c = random.nextInt();
+      int d = random.nextInt();
+      int expected = 0;
+      for (int shift = 0; shift < 32; shift += 8) {
+        int sum = (a >>> shift & 0xFF) + (b >>> shift & 0xFF) + (c >>> shift & 0xFF);
+        sum += d >>> shift & 0xFF;
+        expected |= (sum + 2) / 4 << shift;
+      }
+      Assertions.assertEquals(expected, GridTileCache.average(a, b, c, d));
+    }
+  }
+
+  @Test
+  void quadrantsOfPixelRanges() {
+    int half = SIZE / 2;
+    Assertions.assertEquals(0xF, GridTileCache.quadrants(0, 0, SIZE, SIZE));
+    Assertions.assertEquals(0x1, GridTileCache.quadrants(0, 0, half, half));
+    Assertions.assertEquals(0x2, GridTileCache.quadrants(half, 0, SIZE, half));
+    Assertions.assertEquals(0x4, GridTileCache.quadrants(0, half, 1, half + 1));
+    Assertions.assertEquals(0x8, GridTileCache.quadrants(200, 200, SIZE, SIZE));
+    Assertions.assertEquals(0xF, GridTileCache.quadrants(half - 1, half - 1, half + 1, half + 1));
+    Assertions.assertEquals(0x3, GridTileCache.quadrants(-50, -50, SIZE + 50, 10));
+    Assertions.assertEquals(0xA, GridTileCache.quadrants(SIZE - 1, 0, SIZE + 50, SIZE));
+    // Ranges off the tile touch no quadrant
+    Assertions.assertEquals(0, GridTileCache.quadrants(SIZE, 0, SIZE + 10, SIZE));
+    Assertions.assertEquals(0, GridTileCache.quadrants(0, -10, SIZE, 0));
+  }
+
+  @Test
+  void downsampleFillsOneQuadrant() {
+    int half = SIZE / 2;
+    int[] source = new int[SIZE * SIZE];
+    Random random = new Random(3);
+    for (int i = 0; i < source.length; i++) {
+      source[i] = random.nextInt();
+    }
+    for (int quadrant = 0; quadrant < 4; quadrant++) {
+      int[] target = new int[SIZE * SIZE];
+      GridTileCache.downsample(source, target, quadrant);
+      int left = (quadrant & 1) * half;
+      int top = (quadrant >> 1) * half;
+      for (int y = 0; y < SIZE; y++) {
+        for (int x = 0; x < SIZE; x++) {
+          int expected = 0;
+          if (x >= left && x < left + half && y >= top && y < top + half) {
+            int from = 2 * (y - top) * SIZE + 2 * (x - left);
+            expected =
+                GridTileCache.average(
+                    source[from], source[from + 1], source[from + SIZE], source[from + SIZE + 1]);
+          }
+          Assertions.assertEquals(expected, target[y * SIZE + x]);
+        }
+      }
+    }
+  }
+
+  @Test
+  void copyQuadrantCopiesOnlyThatQuadrant() {
+    int half = SIZE / 2;
+    int[] source = new int[SIZE * SIZE];
+    for (int i = 0; i < source.length; i++) {
+      source[i] = i + 1;
+    }
+    for (int quadrant = 0; quadrant < 4; quadrant++) {
+      int[] target = new int[SIZE * SIZE];
+      GridTileCache.copyQuadrant(source, target, quadrant);
+      for (int i = 0; i < target.length; i++) {
+        boolean inside =
+            (i % SIZE >= half) == ((quadrant & 1) != 0)
+                && (i / SIZE >= half) == ((quadrant >> 1) != 0);
+        Assertions.assertEquals(inside ? source[i] : 0, target[i]);
+      }
+    }
+  }
+
+  @Test
+  void renderedQuadrantsCombine() {
+    GridTileCache cache = new GridTileCache();
+    GridTileCache.Level level =
+        cache.level(GridStyle.builder().build(), 1, null, GridRasterTest.COLORS).mip();
+    GridTileCache.Tile tile = new GridTileCache.Tile(level, 0, 0, 0);
+    int[] redraws = new int[1];
+    cache.addTileListener(() -> redraws[0]++);
+
+    // Two builds of one version, each with one quadrant, end up with both
+    cache.tileRendered(tile, 0, filled(1), 0x1, true);
+    cache.tileRendered(tile, 0, filled(2), 0x2, true);
+    Assertions.assertEquals(0x3, tile.coverage);
+    Assertions.assertEquals(1, tile.pixels[0]);
+    Assertions.assertEquals(2, tile.pixels[SIZE - 1]);
+    Assertions.assertEquals(2, tile.pixels[SIZE * SIZE - 1]);
+    Assertions.assertEquals(2, cache.getDownsampledTileCount());
+    Assertions.assertEquals(2, redraws[0]);
+
+    // An older version is dropped, a newer one replaces every quadrant
+    cache.tileRendered(tile, -1, filled(3), 0xF, true);
+    Assertions.assertEquals(1, tile.pixels[0]);
+    tile.version = 1;
+    Assertions.assertFalse(tile.covers(0x1));
+    cache.tileRendered(tile, 1, filled(4), 0x4, true);
+    Assertions.assertEquals(0x4, tile.coverage);
+    Assertions.assertEquals(4, tile.pixels[0]);
+    Assertions.assertTrue(tile.covers(0x4));
+    Assertions.assertEquals(3, redraws[0]);
+
+    // Nothing is kept for an evicted tile
+    tile.evicted = true;
+    cache.tileRendered(tile, 2, filled(5), 0xF, true);
+    Assertions.assertEquals(4, tile.pixels[0]);
+  }
+
+  @Test
+  void trimEvictsLeastRecentlyDrawn() {
+    long[] now = {0};
+    GridTileCache cache = new GridTileCache(3 * TILE_BYTES);
+    cache.clock = () -> now[0];
+    GridTileCache.Level level =
+        cache.level(GridStyle.builder().build(), 1, new GridModel(), GridRasterTest.COLORS);
+    GridTileCache.Tile[] tiles = new GridTileCache.Tile[4];
+    for (int i = 0; i < tiles.length; i++) {
+      now[0] = i * MILLIS;
+      tiles[i] = level.request(i, 0);
+    }
+
+    // Over the budget, the tile drawn first goes once it is no longer recent
+    cache.trim();
+    Assertions.assertEquals(4, cache.getTileCount());
+    now[0] = 1000 * MILLIS;
+    cache.trim();
+    Assertions.assertEquals(3, cache.getTileCount());
+    Assertions.assertTrue(tiles[0].evicted);
+    Assertions.assertNotSame(tiles[0], level.request(0, 0));
+    Assertions.assertEquals(4, cache.getTileCount());
+
+    // Drawing a tile again moves it to the back of the queue
+    now[0] = 1100 * MILLIS;
+    level.request(1, 0);
+    cache.trim();
+    Assertions.assertTrue(tiles[2].evicted);
+    Assertions.assertFalse(tiles[1].evicted);
+    Assertions.assertSame(tiles[1], level.request(1, 0));
+
+    // Tiles drawn within the last 250 ms stay over the budget
+    now[0] = 1300 * MILLIS;
+    cache.setMemoryBudget(0);
+    Assertions.assertEquals(1, cache.getTileCount());
+    Assertions.assertFalse(tiles[1].evicted);
+    now[0] = 1400 * MILLIS;
+    cache.trim();
+    Assertions.assertEquals(0, cache.getTileCount());
+    Assertions.assertEquals(0, cache.getMemoryUsage());
+
+    // An empty level is forgotten
+    GridTileCache.LevelKey key = level.getKey();
+    Assertions.assertNotSame(level, cache.level(key));
+    Assertions.assertEquals(key, cache.level(key).getKey());
+  }
+
+  @Test
+  void editsInvalidateTheirTiles() {
+    GridModel model = new GridModel();
+    GridModel other = new GridModel();
+    GridTileCache cache = new GridTileCache();
+    GridStyle style = GridStyle.builder().build();
+    // Cells of 10 pixels, so a tile is 25.6 cells across
+    GridTileCache.Level level = cache.level(style, 1, model, GridRasterTest.COLORS);
+    GridTileCache.Level mip = level.mip();
+    GridTileCache.Tile[] tiles = {
+      level.request(0, 0), level.request(1, 0), level.request(-1, 0), level.request(0, 1),
+      mip.request(0, 0), mip.request(-1, 0)
+    };
+    GridTileCache.Tile unrelated =
+        cache.level(style, 1, other, GridRasterTest.COLORS).request(0, 0);
+
+    model.set(5, 5, 1);
+    assertVersions(tiles, 1, 0, 0, 0, 1, 0);
+
+    // On the boundary between tiles, both are stale
+    model.set(25, 5, 1);
+    assertVersions(tiles, 2, 1, 0, 0, 2, 0);
+    model.set(-1, 25, 1);
+    assertVersions(tiles, 3, 1, 1, 1, 3, 1);
+
+    model.fillRect(-100, -100, 100, 100, 2);
+    assertVersions(tiles, 4, 2, 2, 2, 4, 2);
+    Assertions.assertEquals(0, unrelated.version);
+
+    // A level with the same content at another scale follows it too
+    GridTileCache.Tile zoomed = cache.level(style, 4, model, GridRasterTest.COLORS).request(1, 1);
+    model.set(7, 7, 3);
+    Assertions.assertEquals(1, zoomed.version);
+    model.set(3, 3, 3);
+    Assertions.assertEquals(1, zoomed.version);
+
+    // Once cleared, the cache stops listening
+    int version = tiles[0].version;
+    cache.clear();
+    Assertions.assertTrue(tiles[0].evicted);
+    model.set(5, 5, 9);
+    Assertions.assertEquals(version, tiles[0].version);
+  }
+
+  @Test
+  void levelKeysCompareContentByIdentity() {
+    GridStyle style = GridStyle.builder().build();
+    GridModel content = new GridModel();
+    IntUnaryOperator colors = GridRasterTest.COLORS;
+    GridTileCache.LevelKey key = new GridTileCache.LevelKey(style, 2, content, colors, 0);
+
+    GridTileCache.LevelKey same =
+        new GridTileCache.LevelKey(GridStyle.builder().build(), 2, content, colors, 0);
+    Assertions.assertEquals(key, same);
+    Assertions.assertEquals(key.hashCode(), same.hashCode());
+    Assertions.assertEquals(key, key.withDepth(1).withDepth(0));
+
+    Assertions.assertNotEquals(key, key.withDepth(1));
+    Assertions.assertNotEquals(key, new GridTileCache.LevelKey(style, 2.5, content, colors, 0));
+    Assertions.assertNotEquals(
+        key, new GridTileCache.LevelKey(style, 2, new GridModel(), colors, 0));
+    Assertions.assertNotEquals(
+        key, new GridTileCache.LevelKey(style, 2, content, value -> value, 0));
+    Assertions.assertNotEquals(
+        key,
+        new GridTileCache.LevelKey(
+            GridStyle.builder().background(Color.BLACK).build(), 2, content, colors, 0));
+
+    // Equal keys share a level, and a mip level is the base level's key one deeper
+    GridTileCache cache = new GridTileCache();
+    GridTileCache.Level level = cache.level(style, 2, content, colors);
+    Assertions.assertSame(level, cache.level(same));
+    Assertions.assertSame(level.mip(), cache.level(key.withDepth(1)));
+    Assertions.assertSame(level.mip(2), level.mip().mip());
+    Assertions.assertEquals(0.5, level.mip(2).getScale());
+  }
+
+  private static void assertVersions(GridTileCache.Tile[] tiles, int... versions) {
+    for (int i = 0; i < tiles.length; i++) {
+      Assertions.assertEquals(versions[i], tiles[i].version, "tile " + i);
+    }
+  }
+
+  private static int[] filled(int value) {
+    int[] pixels = new int[SIZE * SIZE];
+    Arrays.fill(pixels, value);
+    return pixels;
+  }
+}
@@ -0,0 +1,34 @@
+package com.kynesis;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class RenderStatsTest {
+  @Test
+  void minorAndMajorDeriveFromLevels() {
+    RenderStats stats = new RenderStats();
+    // The renderer's buffer may be longer than the frame's levels
+    long[] lines = {280, 56, 12, 4, 99};
+    stats.record(1000, 4, 1, 0, lines, 4, RedrawReason.VIEWPORT);
+
+    Assertions.assertEquals(4, stats.getLevelCount());
+    Assertions.assertArrayEquals(new long[] {280, 56, 12, 4}, stats.getLevelLines());
+    Assertions.assertEquals(56, stats.getLevelLines(1));
+    Assertions.assertEquals(0, stats.getLevelLines(4));
+    Assertions.assertEquals(280 + 56 + 12, stats.getMinorLines());
+    Assertions.assertEquals(4, stats.getMajorLines());
+
+    // Readers get a copy
+    stats.getLevelLines()[0] = 0;
+    Assertions.assertEquals(280, stats.getLevelLines(0));
+  }
+
+  @Test
+  void noLevelsDrawn() {
+    RenderStats stats = new RenderStats();
+    stats.record(1000, 0, 1, 0, new long[2], 0, RedrawReason.STYLE);
+    Assertions.assertEquals(0, stats.getLevelCount());
+    Assertions.assertEquals(0, stats.getMinorLines());
+    Assertions.assertEquals(0, stats.getMajorLines());
+  }
+}
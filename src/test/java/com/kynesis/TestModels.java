@@ -0,0 +1,28 @@
+package com.kynesis;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Model contents as plain maps, for comparing models in tests
+final class TestModels {
+  private TestModels() {}
+
+  // Non-empty cells keyed by chunkKey(column, row)
+  static Map<Long, Integer> cells(GridModel model) {
+    Map<Long, Integer> cells = new HashMap<>();
+    model.forEachChunk(
+        chunk -> {
+          int baseColumn = chunk.getChunkX() << GridModel.CHUNK_SHIFT;
+          int baseRow = chunk.getChunkY() << GridModel.CHUNK_SHIFT;
+          for (int row = 0; row < GridModel.CHUNK_SIZE; row++) {
+            for (int column = 0; column < GridModel.CHUNK_SIZE; column++) {
+              int value = chunk.get(column, row);
+              if (value != 0) {
+                cells.put(GridModel.chunkKey(baseColumn + column, baseRow + row), value);
+              }
+            }
+          }
+        });
+    return cells;
+  }
+}